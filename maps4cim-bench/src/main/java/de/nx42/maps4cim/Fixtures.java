@@ -0,0 +1,496 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import de.nx42.maps4cim.map.relief.SRTM;
+import de.nx42.maps4cim.map.relief.srtm.SrtmResolution;
+import de.nx42.maps4cim.map.relief.srtm.TileDownload;
+import de.nx42.maps4cim.util.gis.Area;
+
+/**
+ * Generates the offline source data for the benchmarks: synthetic SRTM
+ * tiles (.hgt) and OSM files (XML or PBF).
+ *
+ * The generated data is deterministic, so results of different runs (and
+ * versions) are comparable. The terrain is a function of the absolute
+ * coordinate, so neighboring tiles match in the overlapping row / column,
+ * just like real SRTM tiles. Each tile can have a few voids in it's
+ * interior, which must be interpolated.
+ * The OSM data resembles a small town: a grid of streets with buildings
+ * in each block, some forests, farmland, a lake, a river and a railway.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class Fixtures {
+
+    /** number of voids per tile */
+    protected static final int voidCount = 12;
+    /** max edge length of a void, in samples */
+    protected static final int voidLength = 40;
+
+    /**
+     * Calculates the synthetic elevation at the specified coordinate
+     * @param lat the latitude
+     * @param lon the longitude
+     * @return the elevation in meters
+     */
+    public static short elevation(double lat, double lon) {
+        double h = 650
+                + 420 * Math.sin(lat * 23.0) * Math.cos(lon * 17.0)
+                + 90 * Math.sin(lat * 161.0 + lon * 97.0)
+                + 12 * Math.cos(lat * 1320.0) * Math.sin(lon * 1170.0);
+        return (short) Math.round(h);
+    }
+
+    /**
+     * Generates the contents of a synthetic SRTM tile in the native format
+     * (16bit signed big endian integers, row by row from north to south)
+     * @param res the resolution of the tile
+     * @param lat the latitude of the tile (southwest corner)
+     * @param lon the longitude of the tile (southwest corner)
+     * @param voids true to add some voids to the tile
+     * @return the contents of the .hgt file
+     */
+    public static byte[] hgt(SrtmResolution res, int lat, int lon, boolean voids) {
+        int len = res.getTileLength();
+        int max = res.getMaxIndex();
+        short[] row = new short[len];
+        ByteBuffer bb = ByteBuffer.allocate(len * len * 2);
+        ShortBuffer sb = bb.asShortBuffer();
+        for (int y = 0; y < len; y++) {
+            double rowLat = lat + 1.0 - (double) y / max;
+            for (int x = 0; x < len; x++) {
+                row[x] = elevation(rowLat, lon + (double) x / max);
+            }
+            sb.put(row);
+        }
+
+        if(voids) {
+            // voids in the interior only, so the overlap still matches
+            Random rand = new Random(lat * 360L + lon);
+            for (int i = 0; i < voidCount; i++) {
+                int w = 1 + rand.nextInt(voidLength);
+                int h = 1 + rand.nextInt(voidLength);
+                int left = 1 + rand.nextInt(len - w - 2);
+                int top = 1 + rand.nextInt(len - h - 2);
+                for (int y = top; y < top + h; y++) {
+                    for (int x = left; x < left + w; x++) {
+                        sb.put(y * len + x, SRTM.gap);
+                    }
+                }
+            }
+        }
+        return bb.array();
+    }
+
+    /**
+     * Writes synthetic SRTM tiles for all tiles that intersect with the
+     * specified area into the directory, as raw .hgt files (see
+     * {@link de.nx42.maps4cim.map.relief.srtm.TileDirectory})
+     * @param dir the directory to write the tiles to
+     * @param res the resolution of the tiles
+     * @param bounds the area that must be covered by the tiles
+     * @return the tiles that have been written
+     * @throws IOException if the tiles can't be written
+     */
+    public static List<File> writeHgt(File dir, SrtmResolution res, Area bounds)
+            throws IOException {
+        List<File> tiles = new ArrayList<File>();
+        int minLat = (int) Math.floor(bounds.getMinLat());
+        int minLon = (int) Math.floor(bounds.getMinLon());
+        int maxLat = (int) Math.floor(bounds.getMaxLat());
+        int maxLon = (int) Math.floor(bounds.getMaxLon());
+        for (int lat = minLat; lat <= maxLat; lat++) {
+            for (int lon = minLon; lon <= maxLon; lon++) {
+                File tile = new File(dir, TileDownload.getNonationNSEW(lat, lon) + ".hgt");
+                Files.write(hgt(res, lat, lon, true), tile);
+                tiles.add(tile);
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Writes a synthetic OSM XML file that covers the specified area
+     * @param file the file to write to
+     * @param bounds the area to cover
+     * @param blocks the number of street blocks along each axis
+     * @throws IOException if the file can't be written
+     */
+    public static void writeOsm(File file, Area bounds, int blocks) throws IOException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), Charsets.UTF_8));
+        try {
+            new OsmWriter(w, bounds, blocks).write();
+        } finally {
+            w.close();
+        }
+    }
+
+    /**
+     * Writes a synthetic OSM PBF file with the same contents as
+     * {@link #writeOsm(File, Area, int)}
+     * @param file the file to write to
+     * @param bounds the area to cover
+     * @param blocks the number of street blocks along each axis
+     * @throws IOException if the file can't be written
+     */
+    public static void writePbf(File file, Area bounds, int blocks) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            new PbfWriter(out, bounds, blocks).write();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the synthetic town as OSM XML. Nodes are written on demand and
+     * are declared before the ways that use them.
+     */
+    protected static class OsmWriter {
+
+        protected final Writer w;
+        protected final Area bounds;
+        protected final int blocks;
+        protected final Random rand = new Random(42);
+        protected final StringBuilder ways = new StringBuilder(1 << 16);
+        protected long nextNode = 1;
+        protected long nextWay = 1;
+
+        public OsmWriter(Writer w, Area bounds, int blocks) {
+            this.w = w;
+            this.bounds = bounds;
+            this.blocks = blocks;
+        }
+
+        public void write() throws IOException {
+            begin();
+
+            // land use below everything else
+            for (int i = 0; i < blocks / 2; i++) {
+                double x = rand.nextDouble() * 0.8, y = rand.nextDouble() * 0.8;
+                double size = 0.05 + rand.nextDouble() * 0.15;
+                polygon(x, y, size, size * 0.7, 24, i % 2 == 0 ? "landuse" : "natural",
+                        i % 2 == 0 ? (i % 4 == 0 ? "farmland" : "meadow") : "wood");
+            }
+            polygon(0.6, 0.15, 0.15, 0.1, 64, "natural", "water");
+
+            // streets and buildings
+            double step = 1.0 / blocks;
+            for (int i = 0; i <= blocks; i++) {
+                String type = i % 5 == 0 ? "primary" : "residential";
+                line(new double[] { 0, i * step, 1, i * step }, 2 * blocks, "highway", type);
+                line(new double[] { i * step, 0, i * step, 1 }, 2 * blocks, "highway", type);
+            }
+            for (int by = 0; by < blocks; by++) {
+                for (int bx = 0; bx < blocks; bx++) {
+                    for (int k = 0; k < 4; k++) {
+                        double x = (bx + 0.15 + (k % 2) * 0.4) * step;
+                        double y = (by + 0.15 + (k / 2) * 0.4) * step;
+                        polygon(x, y, step * 0.3, step * 0.3, 4, "building", "yes");
+                    }
+                }
+            }
+
+            // river and railway across the map
+            line(wave(0.3, 0.02, 400), 0, "waterway", "river");
+            line(wave(0.75, 0.01, 200), 0, "railway", "rail");
+
+            end();
+        }
+
+        protected void begin() throws IOException {
+            w.write("<?xml version='1.0' encoding='UTF-8'?>\n");
+            w.write("<osm version=\"0.6\" generator=\"maps4cim-bench\">\n");
+            w.write(String.format(Locale.ENGLISH,
+                    "  <bounds minlat=\"%.7f\" minlon=\"%.7f\" maxlat=\"%.7f\" maxlon=\"%.7f\"/>\n",
+                    bounds.getMinLat(), bounds.getMinLon(), bounds.getMaxLat(), bounds.getMaxLon()));
+        }
+
+        protected void end() throws IOException {
+            w.write(ways.toString());
+            w.write("</osm>\n");
+        }
+
+        /**
+         * @return a line from west to east, with a sine-shaped deviation
+         */
+        protected double[] wave(double y, double amplitude, int points) {
+            double[] xy = new double[points * 2];
+            for (int i = 0; i < points; i++) {
+                double x = (double) i / (points - 1);
+                xy[i * 2] = x;
+                xy[i * 2 + 1] = y + amplitude * Math.sin(x * 25);
+            }
+            return xy;
+        }
+
+        /**
+         * Writes a polyline, the points are relative coordinates (0..1)
+         * within the bounds, alternating x and y. If segments is greater than
+         * 0, the line between the first two points is split into segments.
+         */
+        protected void line(double[] xy, int segments, String key, String value)
+                throws IOException {
+            List<Long> ids = new ArrayList<Long>();
+            if(segments > 0) {
+                for (int i = 0; i <= segments; i++) {
+                    double f = (double) i / segments;
+                    ids.add(node(xy[0] + (xy[2] - xy[0]) * f, xy[1] + (xy[3] - xy[1]) * f));
+                }
+            } else {
+                for (int i = 0; i < xy.length; i += 2) {
+                    ids.add(node(xy[i], xy[i + 1]));
+                }
+            }
+            way(ids, key, value);
+        }
+
+        /**
+         * Writes a closed polygon (an ellipse with the specified number of
+         * corners), relative coordinates (0..1) within the bounds
+         */
+        protected void polygon(double x, double y, double width, double height,
+                int corners, String key, String value) throws IOException {
+            List<Long> ids = new ArrayList<Long>(corners + 1);
+            for (int i = 0; i < corners; i++) {
+                double a = Math.PI * 2 * i / corners + Math.PI / 4;
+                ids.add(node(x + width * (0.5 + 0.5 * Math.cos(a)),
+                        y + height * (0.5 + 0.5 * Math.sin(a))));
+            }
+            ids.add(ids.get(0));
+            way(ids, key, value);
+        }
+
+        protected long node(double x, double y) throws IOException {
+            double lat = bounds.getMaxLat() - y * (bounds.getMaxLat() - bounds.getMinLat());
+            double lon = bounds.getMinLon() + x * (bounds.getMaxLon() - bounds.getMinLon());
+            long id = nextNode++;
+            writeNode(id, lat, lon);
+            return id;
+        }
+
+        protected void writeNode(long id, double lat, double lon) throws IOException {
+            w.write(String.format(Locale.ENGLISH, "  <node id=\"%d\" version=\"1\" "
+                    + "timestamp=\"2013-05-01T08:00:00Z\" uid=\"1\" user=\"bench\" "
+                    + "changeset=\"1\" lat=\"%.7f\" lon=\"%.7f\"/>\n", id, lat, lon));
+        }
+
+        protected void way(List<Long> nodes, String key, String value) throws IOException {
+            writeWay(nextWay++, nodes, key, value);
+        }
+
+        protected void writeWay(long id, List<Long> nodes, String key, String value)
+                throws IOException {
+            ways.append("  <way id=\"").append(id).append("\" version=\"1\" "
+                    + "timestamp=\"2013-05-01T08:00:00Z\" uid=\"1\" user=\"bench\" changeset=\"1\">\n");
+            for (Long ref : nodes) {
+                ways.append("    <nd ref=\"").append(ref).append("\"/>\n");
+            }
+            ways.append("    <tag k=\"").append(key).append("\" v=\"").append(value).append("\"/>\n");
+            ways.append("  </way>\n");
+        }
+
+    }
+
+    /**
+     * Writes the synthetic town as OSM PBF (zlib compressed blocks of dense
+     * nodes and ways, without metadata)
+     */
+    protected static class PbfWriter extends OsmWriter {
+
+        /** entities per block */
+        protected static final int blockSize = 8000;
+
+        protected final OutputStream out;
+        protected final List<long[]> nodes = new ArrayList<long[]>();
+        protected final List<WayData> wayList = new ArrayList<WayData>();
+
+        public PbfWriter(OutputStream out, Area bounds, int blocks) {
+            super(null, bounds, blocks);
+            this.out = out;
+        }
+
+        @Override
+        protected void begin() throws IOException {
+            Proto header = new Proto();
+            header.string(4, "OsmSchema-V0.6").string(4, "DenseNodes")
+                    .string(16, "maps4cim-bench");
+            blob("OSMHeader", header.toByteArray());
+        }
+
+        @Override
+        protected void end() throws IOException {
+            for (int i = 0; i < nodes.size(); i += blockSize) {
+                List<long[]> block = nodes.subList(i, Math.min(nodes.size(), i + blockSize));
+                Proto ids = new Proto(), lats = new Proto(), lons = new Proto();
+                long[] prev = new long[3];
+                for (long[] node : block) {
+                    for (int k = 0; k < 3; k++) {
+                        (k == 0 ? ids : k == 1 ? lats : lons).sint(node[k] - prev[k]);
+                    }
+                    prev = node;
+                }
+                Proto dense = new Proto().bytes(1, ids).bytes(8, lats).bytes(9, lons);
+                primitiveBlock(new String[] { "" }, new Proto().bytes(2, dense));
+            }
+            for (int i = 0; i < wayList.size(); i += blockSize) {
+                List<String> strings = new ArrayList<String>();
+                strings.add("");
+                Proto group = new Proto();
+                for (WayData way : wayList.subList(i, Math.min(wayList.size(), i + blockSize))) {
+                    Proto refs = new Proto();
+                    long prev = 0;
+                    for (Long ref : way.refs) {
+                        refs.sint(ref - prev);
+                        prev = ref;
+                    }
+                    Proto w = new Proto().varint(1, way.id)
+                            .bytes(2, new Proto().varint(index(strings, way.key)))
+                            .bytes(3, new Proto().varint(index(strings, way.value)))
+                            .bytes(8, refs);
+                    group.bytes(3, w);
+                }
+                primitiveBlock(strings.toArray(new String[strings.size()]), group);
+            }
+        }
+
+        @Override
+        protected void writeNode(long id, double lat, double lon) {
+            nodes.add(new long[] { id, Math.round(lat * 1e7), Math.round(lon * 1e7) });
+        }
+
+        @Override
+        protected void writeWay(long id, List<Long> refs, String key, String value) {
+            wayList.add(new WayData(id, refs, key, value));
+        }
+
+        protected static class WayData {
+            final long id;
+            final List<Long> refs;
+            final String key;
+            final String value;
+            WayData(long id, List<Long> refs, String key, String value) {
+                this.id = id;
+                this.refs = refs;
+                this.key = key;
+                this.value = value;
+            }
+        }
+
+        protected static int index(List<String> strings, String s) {
+            int i = strings.indexOf(s);
+            if(i < 0) {
+                strings.add(s);
+                i = strings.size() - 1;
+            }
+            return i;
+        }
+
+        protected void primitiveBlock(String[] strings, Proto group) throws IOException {
+            Proto table = new Proto();
+            for (String s : strings) {
+                table.string(1, s);
+            }
+            blob("OSMData", new Proto().bytes(1, table).bytes(2, group).toByteArray());
+        }
+
+        protected void blob(String type, byte[] data) throws IOException {
+            Deflater deflater = new Deflater();
+            ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+            DeflaterOutputStream dos = new DeflaterOutputStream(zlib, deflater);
+            dos.write(data);
+            dos.close();
+            deflater.end();
+            byte[] blob = new Proto().varint(2, data.length)
+                    .bytes(3, zlib.toByteArray()).toByteArray();
+            byte[] header = new Proto().string(1, type).varint(3, blob.length).toByteArray();
+            new DataOutputStream(out).writeInt(header.length);
+            out.write(header);
+            out.write(blob);
+        }
+
+    }
+
+    /**
+     * Encodes protocol buffer messages (just what is needed for OSM PBF)
+     */
+    protected static class Proto {
+
+        protected final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+        public Proto varint(long value) {
+            while((value & ~0x7FL) != 0) {
+                buf.write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf.write((int) value);
+            return this;
+        }
+
+        public Proto sint(long value) {
+            return varint((value << 1) ^ (value >> 63));
+        }
+
+        public Proto varint(int field, long value) {
+            return varint(field << 3).varint(value);
+        }
+
+        public Proto bytes(int field, byte[] value) {
+            varint(field << 3 | 2).varint(value.length);
+            buf.write(value, 0, value.length);
+            return this;
+        }
+
+        public Proto bytes(int field, Proto message) {
+            return bytes(field, message.toByteArray());
+        }
+
+        public Proto string(int field, String value) {
+            return bytes(field, value.getBytes(Charsets.UTF_8));
+        }
+
+        public byte[] toByteArray() {
+            return buf.toByteArray();
+        }
+
+    }
+
+}
@@ -0,0 +1,171 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.io.Files;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.nx42.maps4cim.config.Config;
+import de.nx42.maps4cim.config.bounds.BBoxDef;
+import de.nx42.maps4cim.config.header.HeaderDef;
+import de.nx42.maps4cim.config.relief.SrtmDef;
+import de.nx42.maps4cim.config.texture.ColorDef;
+import de.nx42.maps4cim.config.texture.OsmFileDef;
+import de.nx42.maps4cim.config.texture.osm.EntityDef;
+import de.nx42.maps4cim.map.Cache;
+import de.nx42.maps4cim.map.MapResources;
+import de.nx42.maps4cim.map.SectionCache;
+import de.nx42.maps4cim.map.ex.MapGeneratorException;
+import de.nx42.maps4cim.map.relief.srtm.SrtmResolution;
+import de.nx42.maps4cim.map.relief.srtm.TileCache;
+import de.nx42.maps4cim.map.relief.srtm.TileDirectory;
+import de.nx42.maps4cim.util.Result;
+import de.nx42.maps4cim.util.gis.Area;
+
+/**
+ * Generates a complete map (header, relief from SRTM and texture from OSM)
+ * without any network access: the source data are synthetic SRTM tiles in
+ * a local directory and a synthetic OSM XML file (see {@link Fixtures}).
+ * The map spans two SRTM tiles.
+ *
+ * With cold resources, the SRTM tiles and the OSM data are read and parsed
+ * again for each map, with shared resources they are kept in memory (like
+ * in batch runs or the GUI). Generated sections are not cached, except for
+ * the cached sections benchmark, which repeats a map whose relief and
+ * texture are already in the section cache.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MapGeneratorBenchmark {
+
+    /** the SRTM resolution (arc-seconds) */
+    @Param({"3", "1"})
+    public String resolution;
+
+    /** generate relief and texture concurrently */
+    @Param({"true", "false"})
+    public boolean parallel;
+
+    protected final Area bounds = new Area(47.40, 11.94, 47.48, 12.06);
+
+    protected File dir;
+    protected File output;
+    protected Config config;
+    protected TileDirectory tiles;
+    protected MapResources shared;
+    protected MapResources cached;
+
+    @Setup
+    public void setup() throws IOException, MapGeneratorException {
+        SrtmResolution res = SrtmResolution.of(Integer.parseInt(resolution));
+        dir = Files.createTempDir();
+        output = new File(dir, "bench.map");
+        Fixtures.writeHgt(dir, res, bounds);
+        tiles = new TileDirectory(dir, res);
+        File osmXml = new File(dir, "bench.osm");
+        Fixtures.writeOsm(osmXml, bounds, 40);
+
+        SrtmDef relief = SrtmDef.of("auto", "auto");
+        relief.resolution = resolution;
+        OsmFileDef texture = new OsmFileDef();
+        texture.osmXmlFilePath = osmXml.getAbsolutePath();
+        texture.colors = ColorDef.getDefaults();
+        texture.entities = EntityDef.getDefaults();
+        HeaderDef header = new HeaderDef();
+        header.name = "maps4cim-bench";
+
+        config = new Config();
+        config.setBoundsTrans(BBoxDef.of(bounds.getMinLat(), bounds.getMinLon(),
+                bounds.getMaxLat(), bounds.getMaxLon()));
+        config.setReliefTrans(relief);
+        config.setTextureTrans(texture);
+        config.setHeader(header);
+
+        // make sure the fallbacks (planar relief, grass) are not measured
+        shared = resources();
+        cached = resources();
+        cached.setSectionCache(new SectionCache(new File(dir, "sections")));
+        for (MapResources resources : new MapResources[] { shared, cached }) {
+            Result result = generate(resources);
+            if(result.isFailure()) {
+                throw new IllegalStateException("The map could not be generated from "
+                        + "the fixtures: " + result.getReport());
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Cache.deleteFolder(dir);
+    }
+
+    @Benchmark
+    public Result coldResources() throws MapGeneratorException {
+        return generate(resources());
+    }
+
+    @Benchmark
+    public Result sharedResources() throws MapGeneratorException {
+        return generate(shared);
+    }
+
+    @Benchmark
+    public Result cachedSections() throws MapGeneratorException {
+        return generate(cached);
+    }
+
+    protected Result generate(MapResources resources) throws MapGeneratorException {
+        MapGenerator mg = new MapGenerator(config, resources);
+        mg.setParallel(parallel);
+        return mg.generateMap(output);
+    }
+
+    /**
+     * @return new resources with a private tile cache, which read all
+     * tiles from the fixture directory and don't cache any sections
+     */
+    protected MapResources resources() {
+        MapResources resources = new MapResources(
+                new TileCache(TileCache.defaultBudget), MapResources.defaultOsmDumps);
+        resources.setTileDownload(tiles);
+        resources.setSectionCache(null);
+        return resources;
+    }
+
+}
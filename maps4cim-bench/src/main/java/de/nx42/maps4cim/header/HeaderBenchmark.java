@@ -0,0 +1,65 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.header;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the generation of the map header (including the default
+ * overview image).
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class HeaderBenchmark {
+
+    protected CustomHeader header;
+
+    @Setup
+    public void setup() {
+        header = new CustomHeader();
+        header.setMapName("maps4cim-bench");
+    }
+
+    @Benchmark
+    public byte[] generateHeader() throws IOException {
+        return header.generateHeader();
+    }
+
+    @Benchmark
+    public byte[] newHeader() throws IOException {
+        return new CustomHeader().generateHeader();
+    }
+
+}
@@ -0,0 +1,118 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.io.LittleEndianDataOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.nx42.maps4cim.map.ex.MapGeneratorException;
+import de.nx42.maps4cim.map.ex.TextureProcessingException;
+import de.nx42.maps4cim.util.arr2d.IntGrid;
+
+/**
+ * Compares the encoding of the texture section with the original
+ * implementation, which traversed a texture map of type int[x][y] column by
+ * column and buffered the encoded section in a ByteArrayOutputStream.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TextureMapBenchmark {
+
+    protected int[][] texture;
+    protected IntGrid textureGrid;
+    protected TextureMap textureMap;
+    protected File target;
+
+    @Setup
+    public void setup() throws IOException {
+        Random rand = new Random(42);
+        texture = new int[TextureMap.edgeLength][TextureMap.edgeLength];
+        textureGrid = IntGrid.allocate(TextureMap.edgeLength, TextureMap.edgeLength);
+        for (int x = 0; x < texture.length; x++) {
+            for (int y = 0; y < texture[x].length; y++) {
+                texture[x][y] = rand.nextInt();
+                textureGrid.set(x, y, texture[x][y]);
+            }
+        }
+        textureMap = new TextureMap() {
+            @Override
+            public IntGrid generateTexture() throws TextureProcessingException {
+                return textureGrid;
+            }
+        };
+        target = File.createTempFile("texture-bench", ".bin");
+    }
+
+    @TearDown
+    public void tearDown() {
+        target.delete();
+    }
+
+    @Benchmark
+    public void legacyByteArrayStream() throws IOException {
+        OutputStream out = new FileOutputStream(target);
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(TextureMap.byteAmount);
+            LittleEndianDataOutputStream dos = new LittleEndianDataOutputStream(bos);
+            for (int y = 0; y < TextureMap.edgeLength; y++) {
+                for (int x = 0; x < TextureMap.edgeLength; x++) {
+                    dos.writeInt(texture[x][y]);
+                }
+            }
+            bos.writeTo(out);
+            dos.close();
+        } finally {
+            out.close();
+        }
+    }
+
+    @Benchmark
+    public void channelWriter() throws IOException, MapGeneratorException {
+        OutputStream out = new FileOutputStream(target);
+        try {
+            textureMap.storeByteStream(out, textureGrid);
+        } finally {
+            out.close();
+        }
+    }
+
+}
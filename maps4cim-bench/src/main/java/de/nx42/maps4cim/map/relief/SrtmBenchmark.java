@@ -0,0 +1,114 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map.relief;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.nx42.maps4cim.Fixtures;
+import de.nx42.maps4cim.config.relief.SrtmDef;
+import de.nx42.maps4cim.map.relief.srtm.SrtmResolution;
+import de.nx42.maps4cim.util.arr2d.Arrays2D;
+import de.nx42.maps4cim.util.arr2d.FloatGrid;
+import de.nx42.maps4cim.util.arr2d.ShortGrid;
+import de.nx42.maps4cim.util.gis.Area;
+
+/**
+ * Measures the processing steps of SRTM tiles: decoding of the native
+ * format, combination of neighboring tiles and the interpolation of voids
+ * (linear fill of the whole region vs. the star algorithm for each gap).
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SrtmBenchmark {
+
+    @Param({"3", "1"})
+    public String resolution;
+
+    protected SRTM srtm;
+    protected byte[] raw;
+    protected ShortGrid[][] tiles;
+    protected ShortGrid tile;
+    protected int margin;
+
+    @Setup
+    public void setup() throws IOException {
+        final SrtmResolution res = SrtmResolution.of(Integer.parseInt(resolution));
+        SrtmDef def = SrtmDef.of("auto", "auto");
+        def.resolution = resolution;
+        srtm = new SRTM(def, new Area(47.4, 11.4, 47.5, 11.5));
+
+        raw = Fixtures.hgt(res, 47, 11, true);
+        tile = srtm.getNativeSRTM(raw);
+        tiles = new ShortGrid[][] {
+            { srtm.getNativeSRTM(Fixtures.hgt(res, 48, 11, true)),
+              srtm.getNativeSRTM(Fixtures.hgt(res, 48, 12, true)) },
+            { tile,
+              srtm.getNativeSRTM(Fixtures.hgt(res, 47, 12, true)) }
+        };
+        margin = SRTM.gip.getReach();
+    }
+
+    @Benchmark
+    public ShortGrid decode() throws IOException {
+        return srtm.getNativeSRTM(raw);
+    }
+
+    @Benchmark
+    public ShortGrid combine() {
+        return Arrays2D.combine(tiles, 1, true);
+    }
+
+    @Benchmark
+    public FloatGrid gapFill() {
+        int len = tile.getWidth() - 2 * margin;
+        return SRTM.gip.fill(tile, margin, margin, len, len);
+    }
+
+    @Benchmark
+    public FloatGrid gapStar() {
+        int len = tile.getWidth() - 2 * margin;
+        FloatGrid result = FloatGrid.allocate(len, len);
+        for (int y = 0; y < len; y++) {
+            for (int x = 0; x < len; x++) {
+                short value = tile.get(x + margin, y + margin);
+                result.set(x, y, value == SRTM.gap ?
+                        SRTM.gip.star(tile, x + margin, y + margin) : value);
+            }
+        }
+        return result;
+    }
+
+}
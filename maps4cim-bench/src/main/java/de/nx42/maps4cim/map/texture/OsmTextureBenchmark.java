@@ -0,0 +1,199 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map.texture;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+
+import com.google.common.io.Files;
+
+import de.nx42.maps4cim.Fixtures;
+import de.nx42.maps4cim.config.texture.ColorDef;
+import de.nx42.maps4cim.config.texture.OsmDef;
+import de.nx42.maps4cim.config.texture.osm.EntityDef;
+import de.nx42.maps4cim.map.Cache;
+import de.nx42.maps4cim.map.ex.OsmXmlFormatException;
+import de.nx42.maps4cim.map.texture.osm.EntityConverter;
+import de.nx42.maps4cim.map.texture.osm.OverpassTagMatcher;
+import de.nx42.maps4cim.map.texture.osm.RenderContainer;
+import de.nx42.maps4cim.map.texture.osm.SimpleOsmDump;
+import de.nx42.maps4cim.map.texture.osm.TagFilter;
+import de.nx42.maps4cim.map.texture.osm.TextureRenderer;
+import de.nx42.maps4cim.map.texture.osm.TiledRenderer;
+import de.nx42.maps4cim.map.texture.osm.extract.ExtractStore;
+import de.nx42.maps4cim.util.arr2d.IntGrid;
+import de.nx42.maps4cim.util.gis.Area;
+import de.nx42.maps4cim.util.gis.Projection;
+
+/**
+ * Measures the steps of the OSM texture generation, based on a synthetic
+ * OSM XML file and the default entity definitions: parsing (with and
+ * without filtering of the entities, XML vs. PBF vs. the spatial index of
+ * the extract), matching of the tags (each matcher vs. the compiled
+ * dispatch table), conversion into render primitives and rendering into
+ * the native texture format (tiled vs. a single tile).
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class OsmTextureBenchmark {
+
+    /** number of street blocks along each axis of the synthetic town */
+    @Param({"20", "60"})
+    public int blocks;
+
+    protected final Area bounds = new Area(47.40, 11.40, 47.48, 11.52);
+    protected final Projection projection = new Projection(bounds,
+            TiledRenderer.CiM2MapSize, TiledRenderer.CiM2MapSize);
+
+    protected File osmXml;
+    protected File osmPbf;
+    protected ExtractStore store;
+    protected OsmDef osm;
+    protected SimpleOsmDump dump;
+    protected List<OverpassTagMatcher> matchers;
+    protected TagFilter filter;
+    protected BitSet matched;
+    protected List<Entity> entities;
+    protected List<RenderContainer> containers;
+
+    @Setup
+    public void setup() throws IOException, OsmXmlFormatException {
+        osmXml = File.createTempFile("texture-bench", ".osm");
+        Fixtures.writeOsm(osmXml, bounds, blocks);
+        osmPbf = File.createTempFile("texture-bench", ".osm.pbf");
+        Fixtures.writePbf(osmPbf, bounds, blocks);
+        store = new ExtractStore(osmXml, Files.createTempDir());
+        store.ensureImported();
+
+        osm = new OsmDef();
+        osm.colors = ColorDef.getDefaults();
+        osm.entities = EntityDef.getDefaults();
+
+        dump = SimpleOsmDump.readOsmXml(osmXml, osm);
+        matchers = new ArrayList<OverpassTagMatcher>(osm.entities.size());
+        for (EntityDef def : osm.entities) {
+            matchers.add(new OverpassTagMatcher(def));
+        }
+        filter = new TagFilter(matchers);
+        matched = new BitSet(matchers.size());
+        entities = new ArrayList<Entity>(dump.getNodes().size() + dump.getWays().size());
+        entities.addAll(dump.getNodes());
+        entities.addAll(dump.getWays());
+
+        containers = new EntityConverter(osm, dump, projection).buildRenderContainers();
+    }
+
+    @TearDown
+    public void tearDown() {
+        osmXml.delete();
+        osmPbf.delete();
+        Cache.deleteFolder(store.getDirectory().getParentFile());
+    }
+
+    @Benchmark
+    public SimpleOsmDump parse() {
+        return SimpleOsmDump.readOsmXml(osmXml);
+    }
+
+    @Benchmark
+    public SimpleOsmDump parseFiltered() {
+        return SimpleOsmDump.readOsmXml(osmXml, osm);
+    }
+
+    @Benchmark
+    public SimpleOsmDump parsePbf() throws IOException {
+        return SimpleOsmDump.readOsmPbf(osmPbf, bounds, osm);
+    }
+
+    @Benchmark
+    public SimpleOsmDump queryExtract() throws IOException {
+        return store.query(bounds, osm);
+    }
+
+    @Benchmark
+    public int matchTags() {
+        int matches = 0;
+        for (Entity entity : entities) {
+            for (OverpassTagMatcher matcher : matchers) {
+                if(matcher.matches(entity)) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int matchTagsIndexed() {
+        int matches = 0;
+        for (Entity entity : entities) {
+            if(filter.match(entity, matched)) {
+                matches += matched.cardinality();
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public List<RenderContainer> buildRenderContainers() throws OsmXmlFormatException {
+        return new EntityConverter(osm, dump, projection).buildRenderContainers();
+    }
+
+    @Benchmark
+    public IntGrid drawTexture() {
+        TextureRenderer renderer = new TextureRenderer(bounds);
+        for (RenderContainer rc : containers) {
+            renderer.draw(rc);
+        }
+        return renderer.getTexture();
+    }
+
+    @Benchmark
+    public IntGrid drawTextureSingleTile() {
+        TextureRenderer renderer = new TextureRenderer(TiledRenderer.CiM2MapSize,
+                TiledRenderer.CiM2MapSize, bounds, 1);
+        for (RenderContainer rc : containers) {
+            renderer.draw(rc);
+        }
+        return renderer.getTexture();
+    }
+
+}
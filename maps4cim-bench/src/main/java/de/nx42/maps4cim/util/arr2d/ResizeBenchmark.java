@@ -0,0 +1,87 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.util.arr2d;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the bicubic crop and resize of the SRTM data using ImageJ with
+ * the native resampler. The source sizes cover the usual cases: less, about
+ * as many and more samples than the relief map.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ResizeBenchmark {
+
+    /** edge length of the relief map */
+    protected static final int mapLength = 2049;
+
+    /** edge length of the (cropped) source grid */
+    @Param({ "700", "2400", "4800" })
+    public int sourceLength;
+
+    protected FloatGrid source;
+    protected FloatGrid output;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(42);
+        source = FloatGrid.allocate(sourceLength + 20, sourceLength + 20);
+        for (int i = 0; i < source.size(); i++) {
+            source.set(i, rand.nextFloat() * 3000);
+        }
+        output = FloatGrid.allocate(mapLength, mapLength);
+    }
+
+    @Benchmark
+    public FloatGrid imageJ() {
+        return ImageJInterpolation.cropAndResize(source, mapLength,
+                mapLength, 10, 10, 10 + sourceLength, 10 + sourceLength);
+    }
+
+    @Benchmark
+    public FloatGrid resampler() {
+        return BicubicResampler.cropAndResize(source, mapLength,
+                mapLength, 10, 10, 10 + sourceLength, 10 + sourceLength);
+    }
+
+    @Benchmark
+    public FloatGrid resamplerReuseOutput() {
+        BicubicResampler.resize(source, 10, 10, sourceLength, sourceLength, output);
+        return output;
+    }
+
+}
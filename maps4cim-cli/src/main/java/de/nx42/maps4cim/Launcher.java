@@ -18,11 +18,14 @@ package de.nx42.maps4cim;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
+import com.google.common.io.Files;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +36,7 @@ import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 
+import de.nx42.maps4cim.BatchMapGenerator.Job;
 import de.nx42.maps4cim.config.Config;
 import de.nx42.maps4cim.config.bounds.BoundsWrapper;
 import de.nx42.maps4cim.config.bounds.CenterDef;
@@ -43,8 +47,12 @@ import de.nx42.maps4cim.config.texture.ColorDef;
 import de.nx42.maps4cim.config.texture.OsmDef;
 import de.nx42.maps4cim.config.texture.TextureWrapper;
 import de.nx42.maps4cim.config.texture.osm.EntityDef;
+import de.nx42.maps4cim.map.relief.srtm.TileCache;
 import de.nx42.maps4cim.util.Serializer;
 import de.nx42.maps4cim.util.gis.Coordinate;
+import de.nx42.maps4cim.util.metrics.Metrics;
+import de.nx42.maps4cim.util.metrics.MetricsListener;
+import de.nx42.maps4cim.util.metrics.StageMetrics;
 
 
 /**
@@ -53,6 +61,10 @@ import de.nx42.maps4cim.util.gis.Coordinate;
  * <pre>
  * Usage: <main class> [options]
  *   Options:
+ *     -b, --batch
+ *        Batch mode: a comma separated list of config.xml files and/or directories
+ *        containing config.xml files. One map is generated for each config, named like
+ *        the config file. Source data is shared between all maps.
  *     -ce, --center
  *        The center of the map. This parameter requires exactly two values:
  *        latitude and longitude, each as decimal numbers split by a single comma WITHOUT
@@ -71,9 +83,27 @@ import de.nx42.maps4cim.util.gis.Coordinate;
  *     -h, -?, --help
  *        Prints these usage instructions.
  *        Default: false
+ *     -i, --incremental
+ *        Reuses the relief and texture of a previous version of the output map,
+ *        if their settings and source data did not change. A manifest of the map
+ *        is written next to it for this purpose. In batch mode, this applies to
+ *        every map of the batch.
+ *        Default: false
+ *     -m, --metrics
+ *        Path to a file where the time and memory used by each stage of the map
+ *        generation are written into, as JSON. In batch mode, the file contains
+ *        one entry for each map.
  *     -o, --output
  *        Path to the file where the resulting map shall be written into.
  *        Overwrites any existing file without warning!
+ *     -od, --output-dir
+ *        Batch mode only: the directory where all resulting maps are written
+ *        into. By default, each map is written next to it's config file.
+ *     -sc, --srtm-cache
+ *        The amount of memory in MB that may be used to keep decoded SRTM tiles
+ *        in memory, so they can be reused by other maps. Mostly useful in batch mode.
+ *     -t, --threads
+ *        Batch mode only: the number of maps that are generated concurrently.
  * </pre>
  * @author Sebastian Straub <sebastian-straub@gmx.net>
  */
@@ -127,6 +157,49 @@ public class Launcher {
  		       		"necessary." )
     protected Double heightScale;
 
+    @Parameter(names = { "-b", "--batch" },
+               description = "Batch mode: a comma separated list of " +
+                    "config.xml files and/or directories containing config.xml " +
+                    "files. One map is generated for each config, named like " +
+                    "the config file. Source data is shared between all maps." )
+    protected List<String> batch;
+
+    @Parameter(names = { "-od", "--output-dir" },
+               converter = FileConverter.class,
+               validateWith = FileValidator.class,
+               description = "Batch mode only: the directory where all " +
+                    "resulting maps are written into. By default, each map " +
+                    "is written next to it's config file." )
+    protected File outputDir;
+
+    @Parameter(names = { "-t", "--threads" },
+               description = "Batch mode only: the number of maps that are " +
+                    "generated concurrently." )
+    protected Integer threads;
+
+    @Parameter(names = { "-sc", "--srtm-cache" },
+               description = "The amount of memory in MB that may be used " +
+                    "to keep decoded SRTM tiles in memory, so they can be " +
+                    "reused by other maps. Mostly useful in batch mode." )
+    protected Integer srtmCache;
+
+    @Parameter(names = { "-m", "--metrics" },
+               converter = FileConverter.class,
+               validateWith = FileValidator.class,
+               description = "Path to a file where the time and memory used " +
+                    "by each stage of the map generation are written into, " +
+                    "as JSON. In batch mode, the file contains one entry for " +
+                    "each map." )
+    protected File metrics;
+
+    @Parameter(names = { "-i", "--incremental" },
+               description = "Reuses the relief and texture of a previous " +
+                    "version of the output map, if their settings and source " +
+                    "data did not change. A manifest of the map is written " +
+                    "next to it for this purpose. In batch mode, this " +
+                    "applies to every map of the batch." )
+    protected boolean incremental;
+
 
     /**
      * Quick run with arg: -c target/classes/sample-config.xml
@@ -139,8 +212,11 @@ public class Launcher {
 		try {
 			Launcher l = new Launcher();
 			l.parse(args);
+			l.configureCaches();
 
-			if(l.config != null) {
+			if(l.batch != null) {
+				l.runBatch();
+			} else if(l.config != null) {
 				l.runWithConfig();
 			} else {
 				l.runWithArgs();
@@ -166,12 +242,62 @@ public class Launcher {
     	try {
             Config conf = Serializer.deserialize(Config.class, config);
             File out = output == null ? MapGenerator.getDefaultOutput() : output;
-            MapGenerator.execute(conf, out);
+            MapGenerator.execute(conf, out, getMetricsWriter(), incremental);
         } catch (Exception e) {
             log.error("reading xml config failed", e);
         }
     }
 
+    /**
+     * Applies the memory budget of the SRTM tile cache, if specified
+     */
+    protected void configureCaches() {
+    	if(srtmCache != null) {
+    		TileCache.shared().setMemoryBudget((long) srtmCache << 20);
+    	}
+    }
+
+    /**
+     * Generates one map for each config XML file in the batch (directories
+     * are searched for config XML files). The maps are written into the
+     * output directory or next to their config files.
+     * The number of concurrent maps defaults to half the available processors.
+     */
+    protected void runBatch() {
+
+    	// required: batch (files or directories)
+    	// optional: outputDir (file), threads (int)
+
+    	List<File> sources = new ArrayList<File>(batch.size());
+    	for (String source : batch) {
+    		sources.add(new File(source));
+    	}
+    	int poolSize = threads != null ? threads
+    			: Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    	try {
+    		BatchMapGenerator bmg = new BatchMapGenerator(poolSize);
+    		bmg.setIncremental(incremental);
+    		if(outputDir != null) {
+    			outputDir.mkdirs();
+    			bmg.setOutputDir(outputDir);
+    		}
+    		List<Job> jobs = bmg.execute(sources);
+    		if(metrics != null) {
+    			StringBuilder sb = new StringBuilder(jobs.size() * 1024);
+    			sb.append('[');
+    			for (int i = 0; i < jobs.size(); i++) {
+    				sb.append(i > 0 ? ",\n" : "\n").append(jobs.get(i).toJson());
+    			}
+    			writeMetrics(sb.append("\n]\n").toString());
+    		}
+    	} catch (InterruptedException e) {
+    		log.error("batch map generation was interrupted", e);
+    	} catch (IllegalArgumentException e) {
+    		throw new ParameterException(e.getMessage());
+    	}
+    }
+
     /**
      * Runs the program without a user defined config XML. Just the basic
      * information that can be entered over the command line is used.
@@ -211,7 +337,40 @@ public class Launcher {
 
 		// run
 		File out = output == null ? MapGenerator.getDefaultOutput() : output;
-		MapGenerator.execute(c, out);
+		MapGenerator.execute(c, out, getMetricsWriter(), incremental);
+    }
+
+    /**
+     * @return a listener that writes the metrics of the map into the file
+     * specified by the user, or null if no file was specified
+     */
+    protected MetricsListener getMetricsWriter() {
+    	if(metrics == null) {
+    		return null;
+    	}
+    	return new MetricsListener() {
+    		@Override
+    		public void stageCompleted(StageMetrics stage) {
+    			log.debug("{}", stage);
+    		}
+    		@Override
+    		public void completed(Metrics result) {
+    			writeMetrics(result.toJson() + '\n');
+    		}
+    	};
+    }
+
+    /**
+     * Writes the metrics into the file specified by the user
+     * @param json the metrics as JSON
+     */
+    protected void writeMetrics(String json) {
+    	try {
+    		Files.write(json, metrics, Charsets.UTF_8);
+    		log.info("The metrics have been written to {}", metrics);
+    	} catch (IOException e) {
+    		log.error("The metrics could not be written to " + metrics, e);
+    	}
     }
 
     /**
@@ -4,6 +4,7 @@ package de.nx42.maps4cim;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.util.Arrays;
 
 import org.junit.Test;
 
@@ -52,6 +53,21 @@ public class LauncherTest {
 		}
 	}
 
+	@Test
+	public void testParseBatch() {
+		try {
+			String[] args = new String[]{ "-b", "a.xml,configs", "-od", "maps", "-t", "3" };
+			Launcher l = new Launcher();
+			l.parse(args);
+			assertEquals(Arrays.asList("a.xml", "configs"), l.batch);
+			assertEquals(new File("maps"), l.outputDir);
+			assertEquals(Integer.valueOf(3), l.threads);
+		} catch(Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
 	@Test
 	public void testParseFileFail() {
 		try {
@@ -0,0 +1,413 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.nx42.maps4cim.config.Config;
+import de.nx42.maps4cim.map.Cache;
+import de.nx42.maps4cim.map.MapResources;
+import de.nx42.maps4cim.util.Result;
+import de.nx42.maps4cim.util.Serializer;
+import de.nx42.maps4cim.util.metrics.Metrics;
+
+/**
+ * Generates many maps at once, based on a list of config XML files.
+ *
+ * The maps are generated on a bounded thread pool. All of them share the same
+ * {@link MapResources}, so SRTM tiles and OSM datasets that are required by
+ * more than one map (e.g. for neighbouring regions) are downloaded, decoded
+ * and parsed only once. For each map, the time it took to generate it and
+ * any errors are recorded in a {@link Job}.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class BatchMapGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchMapGenerator.class);
+
+    /** the file extension of the resulting maps */
+    public static final String mapExtension = ".map";
+
+    /** resources that are shared by all maps */
+    protected final MapResources resources;
+    /** the number of maps that are generated concurrently */
+    protected final int threads;
+    /** the directory to write the maps into (null: next to each config) */
+    protected File outputDir;
+    /** reuse unchanged sections of the previous version of each map */
+    protected boolean incremental = false;
+
+    /**
+     * Creates a new batch map generator with a new set of shared resources
+     * @param threads the number of maps that are generated concurrently
+     */
+    public BatchMapGenerator(int threads) {
+        this(threads, new MapResources());
+    }
+
+    /**
+     * Creates a new batch map generator
+     * @param threads the number of maps that are generated concurrently
+     * @param resources the resources that are shared by all maps
+     */
+    public BatchMapGenerator(int threads, MapResources resources) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("at least one thread is required");
+        }
+        this.threads = threads;
+        this.resources = resources;
+    }
+
+    /**
+     * Sets the directory where all resulting maps are written into. If no
+     * output directory is set, each map is written into the directory of
+     * it's config file.
+     * @param outputDir the directory to write the maps into
+     */
+    public void setOutputDir(File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * Enables or disables the incremental rebuild of all maps (see
+     * {@link MapGenerator#setIncremental(boolean)}). Without it, the
+     * manifests of existing maps are deleted when they are overwritten.
+     * @param incremental true to reuse unchanged sections of the previous
+     * version of each map
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * @return true, iff unchanged sections of the previous version of each
+     * map are reused
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * @return the resources that are shared by all maps
+     */
+    public MapResources getResources() {
+        return resources;
+    }
+
+    /**
+     * Generates one map for each config XML file in the list. Directories
+     * in the list are searched for config XML files (not recursive).
+     * Blocks until all maps have been generated.
+     * @param sources config XML files or directories containing them
+     * @return one job for each map, in the order of the config files, with
+     * information about the time it took to generate it and any errors
+     * @throws InterruptedException if the current thread was interrupted
+     * while waiting for the maps
+     */
+    public List<Job> execute(List<File> sources) throws InterruptedException {
+        List<File> configs = findConfigs(sources);
+        log.info("Batch map generator has been started: {} maps will be "
+                + "generated using {} threads.", configs.size(), threads);
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+
+        // one job per config, each output may only be used once
+        List<Job> jobs = new ArrayList<Job>(configs.size());
+        Set<File> outputs = new HashSet<File>();
+        for (File config : configs) {
+            Job job = new Job(config, getOutput(config));
+            if (!outputs.add(job.output.getAbsoluteFile())) {
+                job.error = new IllegalArgumentException("The output " + job.output
+                        + " is already used by another config");
+            }
+            jobs.add(job);
+        }
+
+        // jobs submit relief & texture to the workers, so they never share a pool
+        ExecutorService jobPool = newPool(threads, "maps4cim-batch-%d");
+        ExecutorService workers = MapGenerator.newWorkerPool(threads * 2);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(jobs.size());
+            for (Job job : jobs) {
+                if (job.error == null) {
+                    futures.add(jobPool.submit(createTask(job, workers)));
+                }
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // all errors are stored in the job
+                    log.error("Unexpected error in batch job", e.getCause());
+                }
+            }
+        } finally {
+            jobPool.shutdownNow();
+            workers.shutdownNow();
+            Cache.clearTemp();
+        }
+
+        stopwatch.stop();
+        logSummary(jobs, stopwatch);
+        log.info(resources.getSrtmTiles().toString());
+        return jobs;
+    }
+
+    /**
+     * Creates the task that generates the map for the specified job
+     * @param job the job to execute
+     * @param workers the executor for relief and texture generation
+     * @return the task that executes the job
+     */
+    protected Callable<Void> createTask(final Job job, final ExecutorService workers) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                final Stopwatch stopwatch = Stopwatch.createStarted();
+                log.info("Generating map {} from config {}", job.output, job.config);
+                try {
+                    Config conf = readConfig(job.config);
+                    MapGenerator mg = createMapGenerator(conf);
+                    mg.setExecutor(workers);
+                    mg.setClearTemp(false);
+                    mg.setIncremental(incremental);
+                    job.result = mg.generateMap(job.output);
+                } catch (Exception e) {
+                    // MapGeneratorExceptions are already logged
+                    job.error = e;
+                    log.error("Map {} could not be generated: {}", job.output,
+                            e.getMessage());
+                } finally {
+                    job.millis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Reads the configuration of a map
+     * @param config the config XML file
+     * @return the configuration
+     * @throws Exception if the config can't be read
+     */
+    protected Config readConfig(File config) throws Exception {
+        return Serializer.deserialize(Config.class, config);
+    }
+
+    /**
+     * Creates the map generator for a single map, using the shared resources
+     * @param conf the configuration of the map
+     * @return a new map generator
+     */
+    protected MapGenerator createMapGenerator(Config conf) {
+        return new MapGenerator(conf, resources);
+    }
+
+    /**
+     * Writes a short report about all jobs to the log
+     * @param jobs the jobs to report
+     * @param stopwatch the stopwatch that measured the whole batch
+     */
+    protected static void logSummary(List<Job> jobs, Stopwatch stopwatch) {
+        int failed = 0;
+        StringBuilder sb = new StringBuilder(jobs.size() * 80);
+        for (Job job : jobs) {
+            if (!job.isSuccess()) {
+                failed++;
+            }
+            sb.append('\n');
+            sb.append(job.toString());
+        }
+        String summary = String.format("Batch finished in %s: %s of %s maps "
+                + "were generated without errors.%s", stopwatch.toString(),
+                jobs.size() - failed, jobs.size(), sb.toString());
+        if (failed == 0) {
+            log.info(summary);
+        } else {
+            log.warn(summary);
+        }
+    }
+
+    /**
+     * Determines the file where the map for the specified config is written
+     * into: the config's name with the map file extension, either in the
+     * output directory or in the config's directory.
+     * @param config the config XML file
+     * @return the output file for this config
+     */
+    public File getOutput(File config) {
+        String name = Files.getNameWithoutExtension(config.getName()) + mapExtension;
+        File dir = outputDir != null ? outputDir : config.getAbsoluteFile().getParentFile();
+        return new File(dir, name);
+    }
+
+    /**
+     * Expands the specified list of files and directories to a list of config
+     * files. Directories are searched for xml files (not recursive), in
+     * alphabetical order.
+     * @param sources config XML files or directories containing them
+     * @return all config files
+     */
+    public static List<File> findConfigs(List<File> sources) {
+        List<File> configs = new ArrayList<File>();
+        for (File source : sources) {
+            if (source.isDirectory()) {
+                File[] xmls = source.listFiles(new FileFilter() {
+                    @Override
+                    public boolean accept(File f) {
+                        return f.isFile() && f.getName().toLowerCase().endsWith(".xml");
+                    }
+                });
+                if (xmls != null) {
+                    Arrays.sort(xmls);
+                    configs.addAll(Arrays.asList(xmls));
+                }
+            } else {
+                configs.add(source);
+            }
+        }
+        return configs;
+    }
+
+    /**
+     * Creates a fixed size pool of daemon threads
+     * @param threads the number of threads
+     * @param nameFormat the name format of the threads
+     * @return a new thread pool
+     */
+    protected static ExecutorService newPool(int threads, String nameFormat) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat(nameFormat).setDaemon(true).build());
+    }
+
+    /**
+     * A single map of a batch, with the outcome of it's generation
+     */
+    public static class Job {
+
+        /** the config XML file */
+        protected final File config;
+        /** the resulting map */
+        protected final File output;
+        /** the result of the map generator (null, if it failed completely) */
+        protected volatile Result result;
+        /** the error that stopped the map generator (null, if there was none) */
+        protected volatile Throwable error;
+        /** the time it took to generate the map, in milliseconds */
+        protected volatile long millis;
+
+        public Job(File config, File output) {
+            this.config = config;
+            this.output = output;
+        }
+
+        /**
+         * @return the config XML file
+         */
+        public File getConfig() {
+            return config;
+        }
+
+        /**
+         * @return the resulting map
+         */
+        public File getOutput() {
+            return output;
+        }
+
+        /**
+         * @return the result of the map generator, or null if no map was
+         * generated at all (see {@link #getError()})
+         */
+        public Result getResult() {
+            return result;
+        }
+
+        /**
+         * @return the error that stopped the map generator, or null if a
+         * map was generated
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * @return the time it took to generate the map, in milliseconds
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * @return true, iff the map has been generated without errors
+         * (no fallbacks were used)
+         */
+        public boolean isSuccess() {
+            return error == null && result != null && result.isSuccess();
+        }
+
+        /**
+         * @return this job as JSON object, including the metrics of the
+         * map generation (null, if no map was generated)
+         */
+        public String toJson() {
+            Metrics metrics = result != null ? result.getMetrics() : null;
+            return String.format("{\"config\":%s,\"output\":%s,\"success\":%s,"
+                    + "\"millis\":%s,\"metrics\":%s}", Metrics.quote(config.getPath()),
+                    Metrics.quote(output.getPath()), isSuccess(), millis,
+                    metrics != null ? metrics.toJson() : "null");
+        }
+
+        @Override
+        public String toString() {
+            String state;
+            if (error != null) {
+                state = "FAILED (" + error.getMessage() + ")";
+            } else if (result == null) {
+                state = "NOT EXECUTED";
+            } else if (result.isSuccess()) {
+                state = "OK";
+            } else {
+                state = "FALLBACK (" + result.getReport().replace('\n', ' ') + ")";
+            }
+            return String.format("%s -> %s: %s in %.1fs", config.getName(),
+                    output.getName(), state, millis / 1000.0);
+        }
+
+    }
+
+}
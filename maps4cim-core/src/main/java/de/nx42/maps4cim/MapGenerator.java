@@ -19,12 +19,20 @@ package de.nx42.maps4cim;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import net.sf.oval.ConstraintViolation;
 
@@ -46,6 +54,8 @@ import de.nx42.maps4cim.config.texture.TextureDef.TextureDefNone;
 import de.nx42.maps4cim.header.CustomHeader;
 import de.nx42.maps4cim.header.Header;
 import de.nx42.maps4cim.map.Cache;
+import de.nx42.maps4cim.map.MapManifest;
+import de.nx42.maps4cim.map.MapResources;
 import de.nx42.maps4cim.map.ReliefMap;
 import de.nx42.maps4cim.map.TextureMap;
 import de.nx42.maps4cim.map.ex.ConfigValidationException;
@@ -62,6 +72,11 @@ import de.nx42.maps4cim.update.ProgramVersion;
 import de.nx42.maps4cim.update.Update.Branch;
 import de.nx42.maps4cim.util.Result;
 import de.nx42.maps4cim.util.ValidatorUtils;
+import de.nx42.maps4cim.util.arr2d.FloatGrid;
+import de.nx42.maps4cim.util.arr2d.IntGrid;
+import de.nx42.maps4cim.util.metrics.Metrics;
+import de.nx42.maps4cim.util.metrics.MetricsListener;
+import de.nx42.maps4cim.util.metrics.Stage;
 
 /**
  * The MapGenerator transforms header, reliefmap, texturemap & game objects
@@ -83,6 +98,23 @@ public class MapGenerator {
     protected TextureMap tm;
     protected GameObjects go;
 
+    /** generate relief and texture concurrently (true by default) */
+    protected boolean parallel = true;
+    /** executor for the concurrent generation, null to use a private one */
+    protected ExecutorService executor;
+    /** delete all temporary files after the map has been generated */
+    protected boolean clearTemp = true;
+    /** are notified about the stages of each map that is generated */
+    protected final List<MetricsListener> metricsListeners = new CopyOnWriteArrayList<MetricsListener>();
+    /** the metrics of the current (or last) map */
+    protected Metrics metrics = new Metrics();
+    /** reuse unchanged sections of the previous version of the map */
+    protected boolean incremental = false;
+    /** the manifest of the previous version of the current map (incremental mode) */
+    protected MapManifest previous;
+    /** the manifest of the current map (incremental mode) */
+    protected MapManifest manifest;
+
     /**
      * Creates a new map generator instance with the specified config, using the
      * given ReliefMap and TextureMap implementation
@@ -107,8 +139,20 @@ public class MapGenerator {
      * @param config the configuration object
      */
     public MapGenerator(Config config) {
-        this(config, getReliefMap(config), getTextureMap(config), new CustomHeader(config),
-                new StaticGameObjects());
+        this(config, new MapResources());
+    }
+
+    /**
+     * Creates a new map generator instance with the specified config. The
+     * ReliefMap and TextureMap implementations are derived from the config
+     * and use the specified resources (which may be shared with other map
+     * generators)
+     * @param config the configuration object
+     * @param resources the resources to retrieve source data from
+     */
+    public MapGenerator(Config config, MapResources resources) {
+        this(config, getReliefMap(config, resources), getTextureMap(config, resources),
+                new CustomHeader(config), new StaticGameObjects());
     }
 
     /**
@@ -127,10 +171,21 @@ public class MapGenerator {
         
         Result res = new Result("generating map", true);
         FileOutputStream fos = null;
+        File tmp = null;
+
+        // record the stages of this map
+        metrics = new Metrics(metricsListeners);
+        rm.setMetrics(metrics);
+        tm.setMetrics(metrics);
+        res.setMetrics(metrics);
+
+        // the sections of the previous version of the map
+        previous = incremental ? MapManifest.read(output) : null;
+        manifest = incremental ? new MapManifest() : null;
 
         try {
-            // write to temporary file
-            final File tmp = Cache.temporaray(output.getName() + ".tmp");
+            // write to a temporary file (unique, other maps may have the same name)
+            tmp = Cache.createTemporary(output.getName() + ".", ".tmp");
             fos = new FileOutputStream(tmp);
 
             // actually write the map to the OutputStream
@@ -146,7 +201,10 @@ public class MapGenerator {
                 output.delete();
             }
             Files.move(tmp, output);
+            writeManifest(output);
 
+            metrics.complete();
+            log.debug("{}", metrics);
             return res;
         } catch (Exception e) {
             log.error("Error generating map: " + e.getMessage(), e);
@@ -160,7 +218,12 @@ public class MapGenerator {
                     log.error("Error while closing output stream to resulting map", e);
                 }
             }
-            Cache.clearTemp();
+            if (tmp != null && tmp.exists()) {
+                tmp.delete();
+            }
+            if (clearTemp) {
+                Cache.clearTemp();
+            }
         }
     }
 
@@ -168,6 +231,9 @@ public class MapGenerator {
      * Writes the 4 parts of a map (header, relief, texture, game objects) as
      * defined in this MapGenerator to the specified outputstream.
      * Any errors will be stored in the Result-object.
+     *
+     * In parallel mode (the default), relief and texture are generated
+     * concurrently, see {@link #setParallel(boolean)}.
      * @param out the stream to write the results to
      * @param res the Results-object where error-messages may be stored
      * @throws IOException writeMapToStream
@@ -177,44 +243,447 @@ public class MapGenerator {
     protected void writeMapToStream(OutputStream out, Result res)
             throws IOException, MapGeneratorException {
 
+        if (parallel) {
+            writeMapToStreamParallel(out, res);
+            return;
+        }
+
         // step 1/4: header
-        he.writeTo(out);
+        writeHeader(out);
 
-        // step 2/4: relief
+        // step 2/4: relief (reused from the previous map or the section cache, if possible)
+        long start = position(out);
+        String key = reliefKey();
         try {
-            rm.writeTo(out);
+            if (canReuse(MapManifest.relief, key)) {
+                reuse(out, MapManifest.relief);
+            } else {
+                if (!rm.writeCached(out)) {
+                    rm.writeTo(out);
+                }
+                key = reliefKey();
+            }
+            record(MapManifest.relief, key, start, out);
         } catch (MapGeneratorException e) {
-            log.error("Error while processing the relief map, " + e.print()
-                    + "\nFalling back to a simple planar relief.", e);
-            res.failure("the intended relief map could not be generated");
-            PlanarRelief.write(out);
+            reliefFallback(out, res, e);
         } catch (RuntimeException e) {
+            reliefFallback(out, res, e);
+        }
+
+        // step 3/4: texture (reused from the previous map or the section cache, if possible)
+        start = position(out);
+        key = textureKey();
+        try {
+            if (canReuse(MapManifest.texture, key)) {
+                reuse(out, MapManifest.texture);
+            } else {
+                if (!tm.writeCached(out)) {
+                    tm.writeTo(out);
+                }
+                key = textureKey();
+            }
+            record(MapManifest.texture, key, start, out);
+        } catch (MapGeneratorException e) {
+            textureFallback(out, res, e);
+        } catch (RuntimeException e) {
+            textureFallback(out, res, e);
+        }
+
+        // step 4/4: game objects
+        writeGameObjects(out);
+
+    }
+
+    /**
+     * Writes the 4 parts of a map like {@link #writeMapToStream(OutputStream, Result)},
+     * but generates relief and texture concurrently. Both are submitted to
+     * the executor before the header is written, the resulting grids are
+     * written in the correct order as soon as they are available. A relief
+     * or texture that is available in the section cache is not generated at
+     * all, but copied into the stream.
+     * The fallbacks in case of errors are the same as in sequential mode.
+     * @param out the stream to write the results to
+     * @param res the Results-object where error-messages may be stored
+     * @throws IOException when the map can't be written or the current
+     * thread was interrupted while waiting for relief or texture
+     * @throws MapGeneratorException if anything goes wrong while generating
+     * the map's contents
+     */
+    protected void writeMapToStreamParallel(OutputStream out, Result res)
+            throws IOException, MapGeneratorException {
+
+        ExecutorService exec = executor != null ? executor : newWorkerPool(2);
+        Future<FloatGrid> relief = null;
+        Future<IntGrid> texture = null;
+        String reliefKey = reliefKey();
+        String textureKey = textureKey();
+        boolean reuseRelief = canReuse(MapManifest.relief, reliefKey);
+        boolean reuseTexture = canReuse(MapManifest.texture, textureKey);
+        try {
+            // start the time-consuming parts (unless they are reused)
+            if (!reuseRelief) {
+                relief = exec.submit(new Callable<FloatGrid>() {
+                    @Override
+                    public FloatGrid call() throws Exception {
+                        // a cached relief is written without generating it
+                        return rm.isCached() ? null : rm.generateRelief();
+                    }
+                });
+            }
+            if (!reuseTexture) {
+                texture = exec.submit(new Callable<IntGrid>() {
+                    @Override
+                    public IntGrid call() throws Exception {
+                        // a cached texture is written without generating it
+                        return tm.isCached() ? null : tm.generateTexture();
+                    }
+                });
+            }
+
+            // step 1/4: header
+            writeHeader(out);
+
+            // step 2/4: relief
+            long start = position(out);
+            try {
+                if (reuseRelief) {
+                    reuse(out, MapManifest.relief);
+                } else {
+                    FloatGrid grid = await(relief);
+                    if (grid != null) {
+                        rm.writeTo(out, grid);
+                    } else if (!rm.writeCached(out)) {
+                        rm.writeTo(out);
+                    }
+                    reliefKey = reliefKey();
+                }
+                record(MapManifest.relief, reliefKey, start, out);
+            } catch (MapGeneratorException e) {
+                reliefFallback(out, res, e);
+            } catch (RuntimeException e) {
+                reliefFallback(out, res, e);
+            }
+
+            // step 3/4: texture
+            start = position(out);
+            try {
+                if (reuseTexture) {
+                    reuse(out, MapManifest.texture);
+                } else {
+                    IntGrid grid = await(texture);
+                    if (grid != null) {
+                        tm.writeTo(out, grid);
+                    } else if (!tm.writeCached(out)) {
+                        tm.writeTo(out);
+                    }
+                    textureKey = textureKey();
+                }
+                record(MapManifest.texture, textureKey, start, out);
+            } catch (MapGeneratorException e) {
+                textureFallback(out, res, e);
+            } catch (RuntimeException e) {
+                textureFallback(out, res, e);
+            }
+
+            // step 4/4: game objects
+            writeGameObjects(out);
+        } finally {
+            // no-op if already done, stops the workers if anything went wrong
+            if (relief != null) {
+                relief.cancel(true);
+            }
+            if (texture != null) {
+                texture.cancel(true);
+            }
+            if (exec != executor) {
+                exec.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * @return the key of the relief section, or null if the relief can't be
+     * reused (or the map is not generated in incremental mode)
+     */
+    protected String reliefKey() {
+        return manifest != null ? rm.sectionKey() : null;
+    }
+
+    /**
+     * @return the key of the texture section, or null if the texture can't
+     * be reused (or the map is not generated in incremental mode)
+     */
+    protected String textureKey() {
+        if (manifest == null) {
+            return null;
+        }
+        try {
+            return tm.sectionKey();
+        } catch (MapGeneratorException e) {
+            log.warn("The texture can't be reused, the key of the section is unknown", e);
+            return null;
+        }
+    }
+
+    /**
+     * @param type the type of the section
+     * @param key the key of the section in the current map
+     * @return true, iff the section is stored unchanged in the previous
+     * version of the map
+     */
+    protected boolean canReuse(String type, String key) {
+        return previous != null && previous.has(type, key);
+    }
+
+    /**
+     * Copies an unchanged section from the previous version of the map and
+     * records the time it takes
+     * @param out the stream to write the section to
+     * @param type the type of the section
+     * @throws IOException if the section can't be copied
+     */
+    protected void reuse(OutputStream out, String type) throws IOException {
+        Metrics.Timer timer = metrics.start(Stage.REUSE);
+        previous.transfer(type, out);
+        timer.stop();
+        log.info("The {} has not changed and was copied from the previous version of the map", type);
+    }
+
+    /**
+     * Records a section that has been written in the manifest of the
+     * current map (incremental mode only)
+     * @param type the type of the section
+     * @param key the key of the section, null if it can't be reused
+     * @param start the position of the first byte of the section
+     * @param out the stream the section has been written to
+     * @throws IOException if the position in the stream can't be determined
+     */
+    protected void record(String type, String key, long start, OutputStream out) throws IOException {
+        long end = position(out);
+        if (manifest != null && key != null && start >= 0 && end >= 0) {
+            manifest.put(type, key, start, end - start);
+        }
+    }
+
+    /**
+     * @param out the stream the map is written to
+     * @return the number of bytes written so far, or -1 if it is not known
+     * (only the position of file output streams is known)
+     * @throws IOException if the position can't be determined
+     */
+    protected static long position(OutputStream out) throws IOException {
+        if (out instanceof FileOutputStream) {
+            return ((FileOutputStream) out).getChannel().position();
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the manifest of the map that has just been generated in
+     * incremental mode, or deletes the manifest of a previous version of the
+     * map, which is invalid now. Errors are logged, but otherwise ignored.
+     * @param output the map that has been generated
+     */
+    protected void writeManifest(File output) {
+        if (manifest == null) {
+            MapManifest.delete(output);
+            return;
+        }
+        try {
+            manifest.write(output);
+        } catch (IOException e) {
+            log.warn("The manifest of the map could not be written", e);
+            MapManifest.delete(output);
+        }
+    }
+
+    /**
+     * Writes the header and records the time it takes
+     * @param out the stream to write the header to
+     * @throws IOException if the header can't be written
+     */
+    protected void writeHeader(OutputStream out) throws IOException {
+        Metrics.Timer timer = metrics.start(Stage.HEADER);
+        he.writeTo(out);
+        timer.stop();
+    }
+
+    /**
+     * Writes the game objects and records the time it takes
+     * @param out the stream to write the game objects to
+     * @throws IOException if the game objects can't be written
+     */
+    protected void writeGameObjects(OutputStream out) throws IOException {
+        Metrics.Timer timer = metrics.start(Stage.GAME_OBJECTS);
+        go.writeTo(out);
+        timer.stop();
+    }
+
+    /**
+     * Waits for the result of a relief or texture generation task and
+     * rethrows any exception that occurred in the task in it's original form
+     * (MapGeneratorExceptions and RuntimeExceptions are unwrapped).
+     * @param future the task to wait for
+     * @return the result of the task
+     * @throws MapGeneratorException if the task has thrown a checked exception
+     * @throws InterruptedIOException if the current thread was interrupted
+     */
+    protected static <T> T await(Future<T> future)
+            throws MapGeneratorException, InterruptedIOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the map contents");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof MapGeneratorException) {
+                throw (MapGeneratorException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new MapGeneratorException(cause);
+            }
+        }
+    }
+
+    /**
+     * Logs the error that prevented the relief from being generated and
+     * writes a simple planar relief instead.
+     * @param out the stream to write the fallback relief to
+     * @param res the Results-object where the failure is stored
+     * @param e the error that occurred
+     * @throws IOException if the fallback relief can't be written
+     * @throws MapGeneratorException if the fallback relief can't be generated
+     */
+    protected void reliefFallback(OutputStream out, Result res, Exception e)
+            throws IOException, MapGeneratorException {
+        if (e instanceof MapGeneratorException) {
+            log.error("Error while processing the relief map, "
+                    + ((MapGeneratorException) e).print()
+                    + "\nFalling back to a simple planar relief.", e);
+        } else {
             log.error("Unexpected Exception while processing the relief map, "
                     + MapGeneratorException.getRootCause(e).toString()
                     + "\nFalling back to a simple planar relief.", e);
-            res.failure("the intended relief map could not be generated");
-            PlanarRelief.write(out);
         }
+        res.failure("the intended relief map could not be generated");
+        PlanarRelief.write(out);
+    }
 
-        // step 3/4: texture
-        try {
-            tm.writeTo(out);
-        } catch (MapGeneratorException e) {
-            log.error("Error while processing the texture map, " + e.print()
+    /**
+     * Logs the error that prevented the texture from being generated and
+     * writes a simple grass texture instead.
+     * @param out the stream to write the fallback texture to
+     * @param res the Results-object where the failure is stored
+     * @param e the error that occurred
+     * @throws IOException if the fallback texture can't be written
+     * @throws MapGeneratorException if the fallback texture can't be generated
+     */
+    protected void textureFallback(OutputStream out, Result res, Exception e)
+            throws IOException, MapGeneratorException {
+        if (e instanceof MapGeneratorException) {
+            log.error("Error while processing the texture map, "
+                    + ((MapGeneratorException) e).print()
                     + "\nFalling back to a simple grass texture.", e);
-            res.failure("the intended texture map could not be generated");
-            SingleTexture.write(out);
-        } catch (RuntimeException e) {
+        } else {
             log.error("Unexpected Exception while processing the texture map, "
                     + MapGeneratorException.getRootCause(e).toString()
                     + "\nFalling back to a simple grass texture.", e);
-            res.failure("the intended texture map could not be generated");
-            SingleTexture.write(out);
         }
+        res.failure("the intended texture map could not be generated");
+        SingleTexture.write(out);
+    }
 
-        // step 4/4: game objects
-        go.writeTo(out);
+    /**
+     * Enables or disables the concurrent generation of relief and texture.
+     * Parallel mode is enabled by default; the resulting map is the same
+     * in both modes.
+     * @param parallel true to generate relief and texture concurrently,
+     * false to generate them one after another
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * @return true, iff relief and texture are generated concurrently
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Enables or disables the incremental mode (disabled by default).
+     * In incremental mode, a manifest of the sections is written next to
+     * each map (see {@link MapManifest}). When the map is generated again,
+     * relief and texture are copied from the previous version of the map,
+     * if their configuration and source data did not change, only the other
+     * sections are generated again.
+     * @param incremental true to reuse unchanged sections of the previous
+     * version of the map
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * @return true, iff unchanged sections of the previous version of the
+     * map are reused
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Sets the executor that is used to generate relief and texture in
+     * parallel mode. The executor is not shut down by the map generator.
+     * If no executor is set, a private one is created for each map.
+     * @param executor the executor to use (null to use a private one)
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Defines, if the temporary directory shall be cleared after the map has
+     * been generated (true by default). This must be disabled, if other maps
+     * are generated concurrently, because they might still need their
+     * temporary files.
+     * @param clearTemp true to delete all temporary files after the map has
+     * been generated
+     */
+    public void setClearTemp(boolean clearTemp) {
+        this.clearTemp = clearTemp;
+    }
 
+    /**
+     * Adds a listener that is notified about the stages of each map that is
+     * generated by this map generator (see {@link Metrics}). The metrics
+     * are also available in the result of {@link #generateMap(File)}.
+     * @param listener the listener to add
+     */
+    public void addMetricsListener(MetricsListener listener) {
+        metricsListeners.add(listener);
+    }
+
+    /**
+     * @param listener the listener to remove
+     */
+    public void removeMetricsListener(MetricsListener listener) {
+        metricsListeners.remove(listener);
+    }
+
+    /**
+     * Creates a thread pool with the specified number of daemon threads
+     * @param threads the number of worker threads
+     * @return a new fixed size thread pool
+     */
+    protected static ExecutorService newWorkerPool(int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat("maps4cim-worker-%d").setDaemon(true).build());
     }
 
     private void preprocessConfig(File output) throws ConfigValidationException {
@@ -271,10 +740,55 @@ public class MapGenerator {
      * @return true, iff the map was generated without errors
      */
     public static boolean execute(Config conf, File dest) {
+        return execute(conf, dest, null);
+    }
+
+    /**
+     * Launches the map generator using the specified configuration
+     * and writes the resulting map to the specified file. The listener is
+     * notified about the timing and memory metrics of each stage.
+     *
+     * Returns true, iff the map was generated without errors.
+     *
+     * @param conf the map is generated based on the information provided in
+     *             this config
+     * @param dest the file where the resulting map is written to
+     * @param listener is notified about the stages of the map generation
+     *                 (may be null)
+     * @return true, iff the map was generated without errors
+     */
+    public static boolean execute(Config conf, File dest, MetricsListener listener) {
+        return execute(conf, dest, listener, false);
+    }
+
+    /**
+     * Launches the map generator using the specified configuration
+     * and writes the resulting map to the specified file. The listener is
+     * notified about the timing and memory metrics of each stage.
+     * In incremental mode, unchanged sections of a previous version of the
+     * map are reused (see {@link #setIncremental(boolean)}).
+     *
+     * Returns true, iff the map was generated without errors.
+     *
+     * @param conf the map is generated based on the information provided in
+     *             this config
+     * @param dest the file where the resulting map is written to
+     * @param listener is notified about the stages of the map generation
+     *                 (may be null)
+     * @param incremental true to reuse unchanged sections of the previous
+     *                 version of the map
+     * @return true, iff the map was generated without errors
+     */
+    public static boolean execute(Config conf, File dest, MetricsListener listener,
+            boolean incremental) {
         try {
             final Stopwatch stopwatch = Stopwatch.createStarted();
             log.info("Map Generator has been started.");
             MapGenerator mg = new MapGenerator(conf);
+            mg.setIncremental(incremental);
+            if (listener != null) {
+                mg.addMetricsListener(listener);
+            }
 
             try {
                 log.debug("Ressources initialized. The map will now be written...");
@@ -372,6 +886,17 @@ public class MapGenerator {
      * @return a {@link TextureMap}-Implementation
      */
     protected static TextureMap getTextureMap(Config conf) {
+        return getTextureMap(conf, new MapResources());
+    }
+
+    /**
+     * Retrieves the correct {@link TextureMap}-Implementation for the specified
+     * configuration, using the specified resources
+     * @param conf the configuration object
+     * @param resources the resources to retrieve source data from
+     * @return a {@link TextureMap}-Implementation
+     */
+    protected static TextureMap getTextureMap(Config conf, MapResources resources) {
         TextureDef def = conf.getTextureTrans();
 
         if (def == null || !(def instanceof TextureDef)) {
@@ -380,7 +905,7 @@ public class MapGenerator {
             return new SingleTexture();
         } else if (def instanceof OsmDef) {
             // this includes OsmFileDef (subclass)
-            return new OsmTexture(conf);
+            return new OsmTexture(conf, resources);
         } else if (def instanceof ImageDef) {
             try {
                 return new ImageTexture(conf);
@@ -408,6 +933,17 @@ public class MapGenerator {
      * @return a {@link ReliefMap}-Implementation
      */
     protected static ReliefMap getReliefMap(Config conf) {
+        return getReliefMap(conf, new MapResources());
+    }
+
+    /**
+     * Retrieves the correct {@link ReliefMap}-Implementation for the specified
+     * configuration, using the specified resources
+     * @param conf the configuration object
+     * @param resources the resources to retrieve source data from
+     * @return a {@link ReliefMap}-Implementation
+     */
+    protected static ReliefMap getReliefMap(Config conf, MapResources resources) {
         ReliefDef def = conf.getReliefTrans();
 
         if (def == null || !(def instanceof ReliefDef)) {
@@ -415,7 +951,7 @@ public class MapGenerator {
                     + "simple planar relief.");
             return new PlanarRelief();
         } else if (def instanceof SrtmDef) {
-            return new SRTM(conf);
+            return new SRTM(conf, resources);
         } else if (def instanceof HeightmapDef) {
             try {
                 return new ImageRelief(conf);
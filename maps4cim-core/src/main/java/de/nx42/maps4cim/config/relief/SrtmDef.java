@@ -29,6 +29,8 @@ public class SrtmDef extends ReliefDef {
 
     /** this regex decides, if the height value is valid (none, auto, or a decimal) */
     protected static final String complexTypeRegex = "^\\s*(auto|none|\\-?\\d+(\\.\\d+)?)\\s*$";
+    /** this regex decides, if the resolution is valid (auto, 1 or 3) */
+    protected static final String resolutionRegex = "^\\s*(auto|1|3)\\s*$";
     
     /**
      * The height offset defines the virtual zero point of the map. Important
@@ -65,6 +67,18 @@ public class SrtmDef extends ReliefDef {
     @MatchPattern(pattern = { complexTypeRegex }, message = "Invalid value for height scale")
     public String heightScale;      // default: auto
 
+    /**
+     * The resolution of the elevation data in arc-seconds: SRTM1 (1) has
+     * a sample every ~30m, SRTM3 (3) every ~90m, but the tiles are 9 times
+     * as large.
+     *
+     * This String contains either "auto", "1" or "3". defaults to "auto"
+     * (which uses SRTM1 only for maps that are too small for SRTM3)
+     */
+    @XmlAttribute(name = "resolution")
+    @MatchPattern(pattern = { resolutionRegex }, message = "Invalid value for resolution")
+    public String resolution;       // default: auto
+
     // Getters
 
     /**
@@ -94,6 +108,22 @@ public class SrtmDef extends ReliefDef {
         return getNoneAutoDecimalAsDouble(heightScale, 1.0);
     }
 
+    /**
+     * @return true, iff the resolution is set to auto (or not set at all)
+     */
+    public boolean isResolutionAuto() {
+        return Strings.isNullOrEmpty(resolution)
+                || getNoneAutoDecimalType(resolution) == NoneAutoDecimal.AUTO;
+    }
+
+    /**
+     * @return the user defined resolution in arc-seconds, or 0 if the
+     *         resolution is set to auto
+     */
+    public int getResolution() {
+        return isResolutionAuto() ? 0 : (int) getNoneAutoDecimalAsDouble(resolution.trim(), 0);
+    }
+
     // static helpers
 
     protected static NoneAutoDecimal getNoneAutoDecimalType(String field) {
@@ -19,18 +19,50 @@ package de.nx42.maps4cim.config.texture;
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlRootElement;
 
+import com.google.common.base.Strings;
+
+import net.sf.oval.constraint.MatchPattern;
 import net.sf.oval.constraint.NotBlank;
 import net.sf.oval.constraint.NotNull;
 
 @XmlRootElement(name = "osm-file")
 public class OsmFileDef extends OsmDef {
 
+    /** this regex decides, if the index mode is valid (auto, true or false) */
+    protected static final String indexRegex = "^\\s*(auto|true|false)\\s*$";
+    /** in auto mode, files larger than this are imported into an index */
+    public static final long autoIndexSize = 16 * 1024 * 1024;
+
     /**
-     * Path to the OSM XML file to load
+     * Path to the OSM file to load: OSM XML (plain or compressed with gzip
+     * or bzip2) or OSM PBF (file extension .pbf)
      */
     @XmlAttribute(name = "file")
     @NotNull(message="The path to the OSM XML file must be defined")
     @NotBlank(message="The path to the OSM XML file must not be empty")
     public String osmXmlFilePath;
 
+    /**
+     * Large extracts (e.g. of a whole country) can be imported once into a
+     * spatial index in the cache, so each map reads only the data within
+     * it's bounds, instead of parsing the whole file again.
+     *
+     * This String contains either "auto", "true" or "false". defaults to
+     * "auto" (which uses the index for files larger than 16 MiB)
+     */
+    @XmlAttribute(name = "index")
+    @MatchPattern(pattern = { indexRegex }, message = "Invalid value for index")
+    public String index;        // default: auto
+
+    /**
+     * @param fileSize the size of the OSM file in bytes
+     * @return true, iff the OSM file shall be read through the spatial index
+     */
+    public boolean useIndex(long fileSize) {
+        if(Strings.isNullOrEmpty(index) || index.trim().equals("auto")) {
+            return fileSize > autoIndexSize;
+        }
+        return Boolean.parseBoolean(index.trim());
+    }
+
 }
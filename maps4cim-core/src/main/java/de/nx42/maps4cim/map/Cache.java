@@ -18,6 +18,10 @@ package de.nx42.maps4cim.map;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
@@ -40,7 +44,20 @@ public class Cache {
 
     protected static final Pattern osmXmlPattern = Pattern.compile("osm.+xml\\.zip$");
     protected static final Pattern srtmPattern = Pattern.compile("(N|S).+hgt\\.zip$");
+    protected static final Pattern srtmRawPattern = Pattern.compile("(N|S).+\\.hgt$");
     protected static final File osmTileDir = new File(cacheDir, "tile.openstreetmap.org");
+    /** spatial indexes of local OSM extracts, one directory per extract */
+    public static final File osmExtractDir = new File(cacheDir, "osm-extracts");
+    /** the file in each extract directory that is touched whenever it is used */
+    public static final String osmExtractManifest = "extract.properties";
+    /** generated map sections, see {@link SectionCache} */
+    public static final File sectionDir = new File(cacheDir, "sections");
+    protected static final Pattern textureSectionPattern = Pattern.compile(
+            SectionCache.texture + "-.+\\" + SectionCache.sectionExt + "$");
+    protected static final Pattern reliefSectionPattern = Pattern.compile(
+            SectionCache.relief + "-.+\\" + SectionCache.sectionExt + "$");
+    protected static final Pattern sectionPattern = Pattern.compile(
+            ".+\\" + SectionCache.sectionExt + "$");
 
     public Cache() {
         if(!cacheDir.exists()) {
@@ -141,6 +158,21 @@ public class Cache {
         return new File(tempDir, entry);
     }
 
+    /**
+     * Creates a new, empty file with a unique name in the temp directory,
+     * so concurrent tasks never write into the same temporary file
+     * @param prefix the beginning of the file name (at least 3 characters)
+     * @param suffix the end of the file name (e.g. the file extension)
+     * @return the new temporary file
+     * @throws IOException if the file can't be created
+     */
+    public static File createTemporary(String prefix, String suffix) throws IOException {
+        if(!tempDir.exists()) {
+            tempDir.mkdirs();
+        }
+        return File.createTempFile(prefix, suffix, tempDir);
+    }
+
     public static void clearTemp() {
         deleteFolder(tempDir);
     }
@@ -188,12 +220,19 @@ public class Cache {
         if(srtm) {
             log.debug("Removing cached SRTM-tiles");
             clearFilesMatchingPattern(cacheDir, srtmPattern);
+            clearFilesMatchingPattern(cacheDir, srtmRawPattern);
+            log.debug("Removing cached reliefs");
+            clearFilesMatchingPattern(sectionDir, reliefSectionPattern);
         }
 
         // delete cached OSM XML files
         if(osmXml) {
             log.debug("Removing cached OpenStreetMap XML files");
             clearFilesMatchingPattern(cacheDir, osmXmlPattern);
+            log.debug("Removing imported OpenStreetMap extracts");
+            deleteFolder(osmExtractDir);
+            log.debug("Removing cached textures");
+            clearFilesMatchingPattern(sectionDir, textureSectionPattern);
         }
     }
 
@@ -207,6 +246,9 @@ public class Cache {
     protected static List<File> getFilesMatchingPattern(File folder, Pattern p) {
         File[] files = folder.listFiles();
         List<File> matches = new LinkedList<File>();
+        if (files == null) {
+            return matches;
+        }
         for (File f : files) {
             if(f.isFile() && p.matcher(f.getName()).matches()) {
                 matches.add(f);
@@ -226,6 +268,17 @@ public class Cache {
         protected double keepOsmXml = 30;
         /** number of days to keep SRTM-tiles */
         protected double keepSRTM = 365;
+        /** number of days to keep unused uncompressed SRTM-tiles (memory mapped
+         *  tiles, about 3 times the size of the zipped ones, can be restored) */
+        protected double keepSRTMRaw = 30;
+        /** number of days to keep unused spatial indexes of local OSM extracts
+         *  (can be restored from the extract) */
+        protected double keepOsmExtracts = 90;
+        /** number of days to keep unused map sections (can be generated again) */
+        protected double keepSections = 30;
+        /** maximum disk space of the map sections, in MB (the least recently
+         *  used sections are removed first) */
+        protected long maxSectionsMB = 1024;
 
         /** number of milliseconds to pause between file operations (reduces load)
          *  set to 0 to run at full speed (might cause high disk load! */
@@ -240,6 +293,21 @@ public class Cache {
             this.fileAccessPause = fileAccessPause;
         }
 
+        public Janitor(double keepMapTiles, double keepOsmXml, double keepSRTM,
+                double keepSRTMRaw, long fileAccessPause) {
+            this(keepMapTiles, keepOsmXml, keepSRTM, fileAccessPause);
+            this.keepSRTMRaw = keepSRTMRaw;
+        }
+
+        public Janitor(double keepMapTiles, double keepOsmXml, double keepSRTM,
+                double keepSRTMRaw, double keepOsmExtracts, double keepSections,
+                long maxSectionsMB, long fileAccessPause) {
+            this(keepMapTiles, keepOsmXml, keepSRTM, keepSRTMRaw, fileAccessPause);
+            this.keepOsmExtracts = keepOsmExtracts;
+            this.keepSections = keepSections;
+            this.maxSectionsMB = maxSectionsMB;
+        }
+
         /**
          * Main task of the Janitor: Searches for deprecated files in the cache
          * and deletes them, in accordance with the specified settings.
@@ -253,8 +321,92 @@ public class Cache {
             List<File> srtmFiles = getFilesMatchingPattern(cacheDir, srtmPattern);
             deleteFilesOlderThan(srtmFiles, DateUtils.getDaysBeforeToday(keepSRTM), fileAccessPause);
 
+            // uncompressed SRTM data (last modified = last used), and all
+            // raw tiles whose archive has been deleted
+            List<File> srtmRawFiles = getFilesMatchingPattern(cacheDir, srtmRawPattern);
+            deleteFilesOlderThan(srtmRawFiles, DateUtils.getDaysBeforeToday(keepSRTMRaw), fileAccessPause);
+            deleteOrphanedRawTiles(srtmRawFiles);
+
             // OSM Tiles
             deleteFilesOlderThanRecursively(osmTileDir, DateUtils.getDaysBeforeToday(keepMapTiles), fileAccessPause);
+
+            // imported OSM extracts
+            deleteUnusedExtracts(DateUtils.getDaysBeforeToday(keepOsmExtracts));
+
+            // generated map sections (last modified = last used)
+            File[] sections = sectionDir.listFiles();
+            if (sections != null) {
+                deleteFilesOlderThan(Arrays.asList(sections), DateUtils.getDaysBeforeToday(keepSections), fileAccessPause);
+            }
+            deleteLeastRecentlyUsed(getFilesMatchingPattern(sectionDir, sectionPattern),
+                    maxSectionsMB * 1024 * 1024, fileAccessPause);
+        }
+
+        /**
+         * Deletes the least recently used files (by last modification), until
+         * the remaining files fit into the specified disk space
+         * @param files the files to check
+         * @param maxBytes the maximum size of all remaining files
+         * @param pause number of milliseconds to pause between each deletion
+         */
+        protected void deleteLeastRecentlyUsed(List<File> files, long maxBytes, long pause) {
+            List<File> sorted = new ArrayList<File>(files);
+            Collections.sort(sorted, new Comparator<File>() {
+                @Override
+                public int compare(File a, File b) {
+                    // most recently used first
+                    return Long.compare(b.lastModified(), a.lastModified());
+                }
+            });
+            long size = 0;
+            for (File f : sorted) {
+                size += f.length();
+                if(size > maxBytes) {
+                    f.delete();
+                    log.debug("File {} deleted by cache janitor (disk space)", f.getName());
+                    if(pause > 0) {
+                        try {
+                            Thread.sleep(pause);
+                        } catch (InterruptedException e) {
+                            log.warn("error while running cache janitor", e);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Deletes the spatial indexes of local OSM extracts that were not used
+         * since the specified date (the manifest is touched on each use;
+         * incomplete imports have no manifest yet)
+         * @param before only indexes that were last used before this date are affected
+         */
+        protected void deleteUnusedExtracts(Date before) {
+            File[] dirs = osmExtractDir.listFiles();
+            if (dirs != null) {
+                for (File dir : dirs) {
+                    File manifest = new File(dir, osmExtractManifest);
+                    long used = manifest.exists() ? manifest.lastModified() : dir.lastModified();
+                    if(dir.isDirectory() && used < before.getTime()) {
+                        deleteFolder(dir);
+                        log.debug("OSM extract index {} deleted by cache janitor", dir.getName());
+                    }
+                }
+            }
+        }
+
+        /**
+         * Deletes uncompressed SRTM tiles, if the zip archive they were
+         * unpacked from does no longer exist
+         * @param rawFiles the uncompressed SRTM tiles
+         */
+        protected void deleteOrphanedRawTiles(List<File> rawFiles) {
+            for (File f : rawFiles) {
+                File zip = new File(f.getParentFile(), f.getName() + ".zip");
+                if(f.exists() && !zip.exists()) {
+                    f.delete();
+                }
+            }
         }
 
         protected void deleteFilesOlderThan(List<File> files, Date before, long pause) {
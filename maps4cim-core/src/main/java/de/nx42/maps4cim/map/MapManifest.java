@@ -0,0 +1,234 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import de.nx42.maps4cim.util.IntChannelWriter;
+
+/**
+ * Sidecar file of a generated map, which describes the sections of the map:
+ * where they are stored in the file and everything they depend on (the key
+ * of the section, see {@link ReliefMap#sectionKey()} and
+ * {@link TextureMap#sectionKey()}).
+ *
+ * When a map is generated again in incremental mode, all sections whose key
+ * did not change are copied byte by byte from the previous version of the
+ * map, through channel transfer, instead of being generated again.
+ *
+ * The manifest is only valid as long as the map file has not been changed,
+ * so the size and last modification of the map are recorded as well.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class MapManifest {
+
+    private static final Logger log = LoggerFactory.getLogger(MapManifest.class);
+
+    /** type of the relief section */
+    public static final String relief = "relief";
+    /** type of the texture section */
+    public static final String texture = "texture";
+
+    /** file extension of the manifest (appended to the name of the map) */
+    public static final String manifestExt = ".manifest";
+    /** increment whenever the format of the manifest changes */
+    protected static final int version = 1;
+    protected static final HashFunction hf = Hashing.murmur3_128();
+
+    protected final Properties p;
+    /** the map that is described by this manifest (null for a new map) */
+    protected final File map;
+
+    /**
+     * Creates an empty manifest for a new map
+     */
+    public MapManifest() {
+        this(new Properties(), null);
+        p.setProperty("version", String.valueOf(version));
+    }
+
+    protected MapManifest(Properties p, File map) {
+        this.p = p;
+        this.map = map;
+    }
+
+    /**
+     * @param map the map file
+     * @return the manifest file of the map (may not exist)
+     */
+    public static File getFile(File map) {
+        return new File(map.getPath() + manifestExt);
+    }
+
+    /**
+     * Reads the manifest of a map
+     * @param map the map file
+     * @return the manifest of the map, or null if there is no valid manifest
+     * or the map has been changed since the manifest was written
+     */
+    public static MapManifest read(File map) {
+        File file = getFile(map);
+        if(!file.isFile() || !map.isFile()) {
+            return null;
+        }
+        try {
+            Properties p = new Properties();
+            InputStream in = new FileInputStream(file);
+            try {
+                p.load(in);
+            } finally {
+                in.close();
+            }
+            if(String.valueOf(version).equals(p.getProperty("version"))
+                    && String.valueOf(map.length()).equals(p.getProperty("length"))
+                    && String.valueOf(map.lastModified()).equals(p.getProperty("modified"))) {
+                return new MapManifest(p, map);
+            }
+            log.debug("The manifest {} is outdated", file.getName());
+        } catch (IOException e) {
+            log.warn("The manifest " + file.getName() + " can't be read", e);
+        }
+        return null;
+    }
+
+    /**
+     * Writes this manifest next to the map, which must have been written
+     * completely.
+     * @param map the map file that is described by this manifest
+     * @throws IOException if the manifest can't be written
+     */
+    public void write(File map) throws IOException {
+        p.setProperty("length", String.valueOf(map.length()));
+        p.setProperty("modified", String.valueOf(map.lastModified()));
+        OutputStream out = new FileOutputStream(getFile(map));
+        try {
+            p.store(out, "maps4cim sections of " + map.getName());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Deletes the manifest of a map, if it exists
+     * @param map the map file
+     */
+    public static void delete(File map) {
+        File file = getFile(map);
+        if(file.exists()) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Records a section of the map
+     * @param type the type of the section
+     * @param key describes everything the section depends on
+     * @param offset the position of the first byte of the section in the map
+     * @param length the number of bytes of the section
+     */
+    public void put(String type, String key, long offset, long length) {
+        p.setProperty(type + ".key", hash(key));
+        p.setProperty(type + ".offset", String.valueOf(offset));
+        p.setProperty(type + ".length", String.valueOf(length));
+    }
+
+    /**
+     * @param type the type of the section
+     * @param key describes everything the section depends on (may be null)
+     * @return true, iff the section has been recorded with the same key
+     */
+    public boolean has(String type, String key) {
+        return key != null && hash(key).equals(p.getProperty(type + ".key"));
+    }
+
+    /**
+     * @param type the type of the section
+     * @return the position of the first byte of the section in the map, or
+     * -1 if the section has not been recorded
+     */
+    public long getOffset(String type) {
+        return Long.parseLong(p.getProperty(type + ".offset", "-1"));
+    }
+
+    /**
+     * @param type the type of the section
+     * @return the number of bytes of the section, or -1 if the section has
+     * not been recorded
+     */
+    public long getLength(String type) {
+        return Long.parseLong(p.getProperty(type + ".length", "-1"));
+    }
+
+    /**
+     * Copies a recorded section of the map that has been read with this
+     * manifest into the output stream. If the output stream is a
+     * {@link FileOutputStream}, the bytes are transferred between the file
+     * channels, without copying them to the java heap.
+     * @param type the type of the section
+     * @param out the stream to write the section into
+     * @throws IOException if the section can't be copied
+     */
+    public void transfer(String type, OutputStream out) throws IOException {
+        long offset = getOffset(type);
+        long length = getLength(type);
+        if(map == null || offset < 0 || length < 0) {
+            throw new IOException("The section " + type + " has not been recorded");
+        }
+        WritableByteChannel target = IntChannelWriter.toChannel(out);
+        FileInputStream in = new FileInputStream(map);
+        try {
+            FileChannel source = in.getChannel();
+            long done = 0;
+            while (done < length) {
+                long count = source.transferTo(offset + done, length - done, target);
+                if(count <= 0) {
+                    throw new EOFException("The section " + type + " of " + map.getName()
+                            + " ends after " + done + " of " + length + " bytes");
+                }
+                done += count;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @param key the key of a section
+     * @return a short hash of the key (keys may be of any length)
+     */
+    protected static String hash(String key) {
+        return hf.hashString(key, Charsets.UTF_8).toString();
+    }
+
+}
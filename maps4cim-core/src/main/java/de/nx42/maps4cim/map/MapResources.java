@@ -0,0 +1,239 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import de.nx42.maps4cim.map.relief.srtm.RawTileStore;
+import de.nx42.maps4cim.map.relief.srtm.SrtmResolution;
+import de.nx42.maps4cim.map.relief.srtm.TileCache;
+import de.nx42.maps4cim.map.relief.srtm.TileDownload;
+import de.nx42.maps4cim.map.relief.srtm.TileDownload.CoordinateInt;
+import de.nx42.maps4cim.map.relief.srtm.TileDownloadUSGS;
+import de.nx42.maps4cim.map.texture.osm.SimpleOsmDump;
+import de.nx42.maps4cim.util.arr2d.ShortGrid;
+
+/**
+ * Resources that are expensive to create and can be shared by all maps that
+ * are generated in the same process: the SRTM tile downloaders (one for each
+ * resolution), decoded SRTM tiles, parsed OSM datasets and the persistent
+ * cache of generated map sections.
+ * By default, decoded SRTM tiles are held in the process-wide
+ * {@link TileCache}, so they are shared even between different instances.
+ *
+ * A single map generator creates it's own instance, but when many maps are
+ * generated in a row (e.g. by the {@link de.nx42.maps4cim.BatchMapGenerator}),
+ * all of them should use the same resources, so the source data for
+ * neighbouring regions is downloaded, unpacked and parsed only once.
+ *
+ * All methods are thread safe. If the same entry is requested concurrently,
+ * it is loaded only once and all callers receive the same object, so
+ * entries returned by this class must be treated as read-only!
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class MapResources {
+
+    /** default number of parsed OSM datasets to keep in memory */
+    public static final int defaultOsmDumps = 2;
+
+    /** the srtm tile downloaders, one for each resolution (created on demand) */
+    protected final Map<SrtmResolution, TileDownload> tileDownloads =
+            new EnumMap<SrtmResolution, TileDownload>(SrtmResolution.class);
+    /** decoded srtm tiles */
+    protected final TileCache srtmTiles;
+    /** uncompressed srtm tiles on disk (null to decode the zip archives) */
+    protected RawTileStore rawTiles = new RawTileStore();
+    /** parsed osm datasets (may be collected when memory gets low) */
+    protected final Cache<String, SimpleOsmDump> osmDumps;
+    /** generated map sections on disk (null to generate them each time) */
+    protected SectionCache sections = new SectionCache();
+
+    /**
+     * Creates a new set of resources that uses the process-wide SRTM tile
+     * cache and the default number of OSM datasets
+     */
+    public MapResources() {
+        this(TileCache.shared(), defaultOsmDumps);
+    }
+
+    /**
+     * Creates a new set of resources
+     * @param srtmTiles the cache for decoded SRTM tiles
+     * @param osmDumps the maximum number of parsed OSM datasets to keep
+     */
+    public MapResources(TileCache srtmTiles, int osmDumps) {
+        this.srtmTiles = srtmTiles;
+        this.osmDumps = CacheBuilder.newBuilder()
+                .maximumSize(osmDumps)
+                .softValues()
+                .build();
+    }
+
+    /**
+     * @return the shared SRTM3 tile downloader
+     */
+    public TileDownload getTileDownload() {
+        return getTileDownload(SrtmResolution.SRTM3);
+    }
+
+    /**
+     * Returns the shared tile downloader for the specified resolution. By
+     * default, tiles are downloaded from the USGS servers.
+     * @param res the resolution of the tiles
+     * @return the shared tile downloader for this resolution
+     */
+    public synchronized TileDownload getTileDownload(SrtmResolution res) {
+        TileDownload td = tileDownloads.get(res);
+        if (td == null) {
+            td = new TileDownloadUSGS(res);
+            tileDownloads.put(res, td);
+        }
+        return td;
+    }
+
+    /**
+     * Replaces the tile downloader for the resolution of the specified
+     * downloader, e.g. by a {@link de.nx42.maps4cim.map.relief.srtm.TileDirectory}
+     * for offline use. Tiles of this resolution that are already in memory
+     * are not affected.
+     * @param tileDownload the tile downloader to use
+     */
+    public synchronized void setTileDownload(TileDownload tileDownload) {
+        tileDownloads.put(tileDownload.getResolution(), tileDownload);
+    }
+
+    /**
+     * Returns the decoded SRTM tile for the specified coordinate. If the tile
+     * is not in memory, it is retrieved using the specified loader.
+     * If the loader fails, nothing is stored, so the next request will try
+     * to load the tile again.
+     * @param res the resolution of the tile
+     * @param coord the coordinate of the tile (southwest corner)
+     * @param loader loads the tile, if it is not in memory
+     * @return the decoded tile (read-only!)
+     * @throws IOException if the loader fails
+     */
+    public ShortGrid getSrtmTile(SrtmResolution res, CoordinateInt coord,
+            Callable<ShortGrid> loader) throws IOException {
+        return srtmTiles.get(res, coord, loader);
+    }
+
+    /**
+     * Returns the parsed OSM dataset with the specified key. If the dataset
+     * is not in memory, it is retrieved using the specified loader.
+     * @param key a unique identifier of the dataset (e.g. the query hash)
+     * @param loader loads the dataset, if it is not in memory
+     * @return the parsed dataset (read-only!)
+     * @throws IOException if the loader fails
+     */
+    public SimpleOsmDump getOsmDump(String key, Callable<SimpleOsmDump> loader)
+            throws IOException {
+        return get(osmDumps, key, loader);
+    }
+
+    /**
+     * Enables or disables the uncompressed, memory mapped disk cache for
+     * SRTM tiles (enabled by default). If disabled, each tile is unzipped
+     * and decoded on the java heap.
+     * @param mapped true to use memory mapped SRTM tiles
+     * @see RawTileStore
+     */
+    public void setMappedTiles(boolean mapped) {
+        this.rawTiles = mapped ? new RawTileStore() : null;
+    }
+
+    /**
+     * @return the store for uncompressed SRTM tiles, or null if memory mapped
+     * tiles are disabled
+     */
+    public RawTileStore getRawTileStore() {
+        return rawTiles;
+    }
+
+    /**
+     * Sets the persistent cache for generated map sections (by default, the
+     * sections are stored in {@link de.nx42.maps4cim.map.Cache#sectionDir})
+     * @param sections the cache to use, or null to generate all sections
+     * each time
+     */
+    public void setSectionCache(SectionCache sections) {
+        this.sections = sections;
+    }
+
+    /**
+     * @return the persistent cache for generated map sections, or null if
+     * sections are not cached
+     */
+    public SectionCache getSectionCache() {
+        return sections;
+    }
+
+    /**
+     * @return the cache for decoded SRTM tiles
+     */
+    public TileCache getSrtmTiles() {
+        return srtmTiles;
+    }
+
+    /**
+     * Discards all entries that are currently held in memory (this includes
+     * the SRTM tiles, even if the tile cache is shared)
+     */
+    public void invalidateAll() {
+        srtmTiles.invalidateAll();
+        osmDumps.invalidateAll();
+    }
+
+    /**
+     * Retrieves an entry from the specified cache and unwraps any exception
+     * that was thrown by the loader
+     * @param cache the cache to read from
+     * @param key the key of the entry
+     * @param loader loads the entry, if it is not in the cache
+     * @return the cached or loaded entry
+     * @throws IOException if the loader has thrown an IOException or any
+     * other checked exception (wrapped)
+     */
+    protected static <K,V> V get(Cache<K,V> cache, K key, Callable<V> loader)
+            throws IOException {
+        try {
+            return cache.get(key, loader);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } catch (UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+}
@@ -16,17 +16,19 @@
  */
 package de.nx42.maps4cim.map;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-
-import com.google.common.io.LittleEndianDataOutputStream;
+import java.nio.channels.WritableByteChannel;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.nx42.maps4cim.map.ex.MapGeneratorException;
 import de.nx42.maps4cim.map.ex.ReliefProcessingException;
+import de.nx42.maps4cim.util.IntChannelWriter;
+import de.nx42.maps4cim.util.arr2d.FloatGrid;
+import de.nx42.maps4cim.util.metrics.Metrics;
+import de.nx42.maps4cim.util.metrics.Stage;
 
 /**
  * The ReliefMap describes the elevations of the resulting map.
@@ -69,28 +71,34 @@ public abstract class ReliefMap {
     /** maximum allowed value (meters) */
     protected static final float maxValF =  1048.576f;
 
+    /** number of rows that are buffered before they are written to the output */
+    protected static final int blockRows = 64;
+
+    /** records the stages of the relief generation */
+    protected Metrics metrics = new Metrics();
+
     /*
      * Factsheet:
-     * - 2049x2049 float array
+     * - 2049x2049 float grid
      * - allowed values: [- 1048.575; + 1048.576]
      * - left to right // west to east // x achsis
      * - bottom to top // south to north // y achsis
-     * - float[y][x]
-     * - float[0][0] = bottom left = southwest
-     * - float[2048][2048] = top right = northeast
+     * - grid.get(x, y)
+     * - grid.get(0, 0) = bottom left = southwest
+     * - grid.get(2048, 2048) = top right = northeast
      */
 
     /**
-     * Generates the full relief map as 2d-array, each data point representing
+     * Generates the full relief map as flat grid, each data point representing
      * a control point of the map, in meters.
      *
      * Only this function must be overriden by implementations.
      *
-     * @return the relief map, as 2d float array
+     * @return the relief map, as float grid of 2049x2049 data points
      * @throws ReliefProcessingException if anything goes wrong (please wrap
      * other exceptions in this one)
      */
-    public abstract float[][] generateRelief() throws ReliefProcessingException;
+    public abstract FloatGrid generateRelief() throws ReliefProcessingException;
 
     /**
      * Generates the relief map by calling {@link ReliefMap#generateRelief()},
@@ -101,43 +109,189 @@ public abstract class ReliefMap {
      * @throws IOException when the resulting map can't be written
      */
     public void writeTo(OutputStream out) throws MapGeneratorException, IOException {
-        float[][] reliefMap = generateRelief();
+        writeTo(out, generateRelief());
+    }
 
+    /**
+     * Converts a relief map that has already been generated to the CiM 2 map
+     * format and writes it to the specified output stream. This allows to
+     * generate the relief independently from the point in time it is written.
+     *
+     * If the relief can be cached, the encoded relief is stored in the
+     * section cache while it is written, see {@link #sectionKey()}.
+     * @param out the output stream to write the relief map into
+     * @param reliefMap the relief map to write, as returned by
+     * {@link ReliefMap#generateRelief()}
+     * @throws MapGeneratorException when the size of the relief map is invalid
+     * @throws IOException when the resulting map can't be written
+     */
+    public void writeTo(OutputStream out, FloatGrid reliefMap) throws MapGeneratorException, IOException {
         log.info("Storing relief in native CiM2-Map format");
-        storeByteStream(out, reliefMap);
-        log.debug("Relief was written to file");
+        Metrics.Timer timer = metrics.start(Stage.RELIEF_ENCODE).grid(reliefMap);
+        SectionCache.Entry section = createCached();
+        try {
+            WritableByteChannel channel = IntChannelWriter.toChannel(out);
+            storeByteStream(section != null ? section.tee(channel) : channel, reliefMap);
+            timer.stop();
+            log.debug("Relief was written to file");
+            if(section != null) {
+                commitCached(section);
+            }
+        } finally {
+            if(section != null) {
+                section.abort();
+            }
+        }
+    }
+
+    /**
+     * Describes everything the relief depends on (source data and settings),
+     * so the encoded relief can be reused by other maps (see
+     * {@link SectionCache} and {@link MapManifest}). By default, reliefs
+     * are not reused.
+     * @return the key of the relief section, or null if the relief can't
+     * be reused
+     */
+    public String sectionKey() {
+        return null;
+    }
+
+    /**
+     * @return the persistent cache for the encoded relief, or null if the
+     * relief is not cached
+     */
+    protected SectionCache getSectionCache() {
+        return null;
+    }
+
+    /**
+     * @return true, iff the encoded relief is available in the section cache,
+     * so it does not need to be generated
+     */
+    public boolean isCached() {
+        SectionCache sections = getSectionCache();
+        String key = sectionKey();
+        return sections != null && key != null && sections.has(SectionCache.relief, key);
+    }
+
+    /**
+     * Copies the encoded relief from the section cache into the output
+     * stream, without generating it. The cached relief is verified before
+     * anything is written, a broken relief is removed from the cache and
+     * nothing is written, so the relief can still be generated as usual.
+     * @param out the output stream to write the relief map into
+     * @return true, iff the relief was written, false if it is not cached
+     * (or broken)
+     * @throws IOException when the resulting map can't be written
+     */
+    public boolean writeCached(OutputStream out) throws IOException {
+        SectionCache sections = getSectionCache();
+        String key = sectionKey();
+        if(sections == null || key == null || !sections.has(SectionCache.relief, key)) {
+            return false;
+        }
+        Metrics.Timer timer = metrics.start(Stage.RELIEF_CACHE);
+        if(!sections.transfer(SectionCache.relief, key, byteAmount, out)) {
+            return false;
+        }
+        timer.stop();
+        log.info("Using the cached relief of a previous map with the same "
+                + "source data and settings");
+        return true;
+    }
+
+    /**
+     * Starts to store the encoded relief in the section cache, if it can be
+     * cached. Errors are logged, but otherwise ignored.
+     * @return the new section, or null if the relief is not cached
+     */
+    protected SectionCache.Entry createCached() {
+        SectionCache sections = getSectionCache();
+        String key = sectionKey();
+        if(sections == null || key == null) {
+            return null;
+        }
+        try {
+            return sections.create(SectionCache.relief, key);
+        } catch (IOException e) {
+            log.warn("The relief could not be stored in the cache", e);
+            return null;
+        }
+    }
+
+    /**
+     * Completes the encoded relief in the section cache. Errors are logged,
+     * but otherwise ignored.
+     * @param section the section that has been written
+     */
+    protected void commitCached(SectionCache.Entry section) {
+        Metrics.Timer timer = metrics.start(Stage.RELIEF_CACHE);
+        try {
+            section.commit();
+            timer.stop();
+        } catch (IOException e) {
+            log.warn("The relief could not be stored in the cache", e);
+        }
+    }
+
+    /**
+     * Sets the metrics that record the stages of the relief generation
+     * (by default, stages are recorded in a private instance)
+     * @param metrics the metrics to record the stages in
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the metrics that record the stages of the relief generation
+     */
+    public Metrics getMetrics() {
+        return metrics;
     }
 
     /**
      * Stores the relief map in the specified output stream, transforming
      * the floats to little endian 32 bit integers.
+     *
+     * The relief is encoded block by block into a reusable buffer, which
+     * is passed directly to the output stream's channel, so no copy of the
+     * whole encoded relief is held in memory.
      * @param out the output stream to write the relief map into
      * @param reliefMap the relief map to write
      * @throws MapGeneratorException when the size of the relief map is invalid
      * @throws IOException when the resulting map can't be written
      */
-    protected void storeByteStream(OutputStream out, float[][] reliefMap)
+    protected void storeByteStream(OutputStream out, FloatGrid reliefMap)
+            throws MapGeneratorException, IOException {
+        storeByteStream(IntChannelWriter.toChannel(out), reliefMap);
+    }
+
+    /**
+     * Stores the relief map in the specified channel, see
+     * {@link #storeByteStream(OutputStream, FloatGrid)}
+     * @param channel the channel to write the relief map into
+     * @param reliefMap the relief map to write
+     * @throws MapGeneratorException when the size of the relief map is invalid
+     * @throws IOException when the resulting map can't be written
+     */
+    protected void storeByteStream(WritableByteChannel channel, FloatGrid reliefMap)
             throws MapGeneratorException, IOException {
 
         if (isValidSize(reliefMap)) {
-            // byte outputput stream, wrapped by a little endian integer processor
-            ByteArrayOutputStream bos = new ByteArrayOutputStream(byteAmount);
-            LittleEndianDataOutputStream dos = new LittleEndianDataOutputStream(bos);
+            IntChannelWriter writer = new IntChannelWriter(channel, edgeLength * blockRows);
+            float[] line = new float[edgeLength];
+            int[] row = new int[edgeLength];
 
-            // pass the resulting integers to the little endian byte output stream
             for (int y = 0; y < edgeLength; y++) {
+                reliefMap.getRow(y, line);
                 for (int x = 0; x < edgeLength; x++) {
                     // convert the floats (meter) to integers (millimeter)
-                    dos.writeInt((int) (reliefMap[y][x] * 1000));
+                    row[x] = (int) (line[x] * 1000);
                 }
+                writer.write(row);
             }
-
-            // write to the user defined output stream
-            bos.writeTo(out);
-
-            // close streams
-            dos.close();
-            bos.close();
+            writer.flush();
         } else {
             throw new MapGeneratorException("The size of the relief map is invalid. "
                     + "Only Maps with 2049 * 2049 control points are allowed");
@@ -146,24 +300,13 @@ public abstract class ReliefMap {
     }
 
     /**
-     * Checks, if all arrays in the relief map have the correct size
+     * Checks, if the relief map has the correct size
      * @param reliefMap the relief map to check
-     * @return true, iff the wrapping array's and all contained array's length
-     * equals the predefined edge length
+     * @return true, iff width and height of the grid equal the predefined
+     * edge length
      */
-    protected static boolean isValidSize(float[][] reliefMap) {
-        int lenY = reliefMap.length;
-        int lenX = reliefMap[0].length;
-        if (lenX == edgeLength && lenY == edgeLength) {
-            for (float[] fs : reliefMap) {
-                if (fs.length != edgeLength) {
-                    return false;
-                }
-            }
-            return true;
-        } else {
-            return false;
-        }
+    protected static boolean isValidSize(FloatGrid reliefMap) {
+        return reliefMap.getWidth() == edgeLength && reliefMap.getHeight() == edgeLength;
     }
 
 }
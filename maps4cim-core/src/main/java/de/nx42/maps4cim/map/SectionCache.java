@@ -0,0 +1,367 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+
+/**
+ * Persistent cache of generated map sections (e.g. the texture), which are
+ * expensive to generate but often stay the same, e.g. when only the relief
+ * or the texture of a map is tuned.
+ *
+ * Sections are stored compressed, in the encoding of the map file. Each
+ * section is identified by it's type and a key, which must describe
+ * everything the section depends on (source data and settings). The key is
+ * hashed into the file name, so it may be of any length.
+ *
+ * Each access marks the section as recently used. Sections that haven't
+ * been used for a while, or the least recently used ones if the sections
+ * exceed their share of the disk, are removed by the {@link Cache.Janitor}.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class SectionCache {
+
+    private static final Logger log = LoggerFactory.getLogger(SectionCache.class);
+
+    /** type of cached texture sections */
+    public static final String texture = "texture";
+    /** type of cached relief sections */
+    public static final String relief = "relief";
+
+    /** file extension of cached sections */
+    public static final String sectionExt = ".section";
+    /** file extension of partially written sections */
+    protected static final String partExt = ".part";
+    /** size of the buffers for compression and decoding, in bytes */
+    protected static final int bufferSize = 1 << 16;
+    protected static final HashFunction hf = Hashing.murmur3_128();
+
+    /** the directory that holds the sections */
+    protected final File dir;
+
+    /**
+     * Creates a cache that stores the sections in the default directory
+     * ({@link Cache#sectionDir})
+     */
+    public SectionCache() {
+        this(Cache.sectionDir);
+    }
+
+    /**
+     * @param dir the directory to store the sections in (is created on demand)
+     */
+    public SectionCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @param type the type of the section
+     * @param key describes everything the section depends on
+     * @return the file that stores the section (may not exist)
+     */
+    public File getFile(String type, String key) {
+        String hash = hf.hashString(key, Charsets.UTF_8).toString();
+        return new File(dir, type + "-" + hash + sectionExt);
+    }
+
+    /**
+     * @param type the type of the section
+     * @param key describes everything the section depends on
+     * @return true, iff the section is cached
+     */
+    public boolean has(String type, String key) {
+        return getFile(type, key).isFile();
+    }
+
+    /**
+     * Opens a cached section for reading and marks it as recently used
+     * @param type the type of the section
+     * @param key describes everything the section depends on
+     * @return a stream of the uncompressed section (must be closed by the
+     * caller), or null if the section is not cached
+     * @throws IOException if the section can't be opened
+     */
+    public InputStream open(String type, String key) throws IOException {
+        File file = getFile(type, key);
+        if(!file.isFile()) {
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return new InflaterInputStream(new BufferedInputStream(new FileInputStream(file), bufferSize));
+    }
+
+    /**
+     * Stores a section in the cache, replacing any previous version. The
+     * section is written under a temporary name first, so other maps will
+     * never see an incomplete section.
+     * @param type the type of the section
+     * @param key describes everything the section depends on
+     * @param writer writes the uncompressed section
+     * @throws IOException if the section can't be written
+     */
+    public void store(String type, String key, Writer writer) throws IOException {
+        Entry entry = create(type, key);
+        try {
+            writer.write(entry.getStream());
+            entry.commit();
+        } finally {
+            entry.abort();
+        }
+    }
+
+    /**
+     * Starts to store a section in the cache, replacing any previous version
+     * as soon as the new section is committed. This allows to store a section
+     * while it is written to the map (see {@link Entry#tee(WritableByteChannel)}).
+     * @param type the type of the section
+     * @param key describes everything the section depends on
+     * @return the new entry, which must be committed or aborted by the caller
+     * @throws IOException if the entry can't be created
+     */
+    public Entry create(String type, String key) throws IOException {
+        if(!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("The section cache " + dir + " could not be created");
+        }
+        File file = getFile(type, key);
+        return new Entry(file, File.createTempFile(file.getName(), partExt, dir));
+    }
+
+    /**
+     * Copies a cached section into the output stream. The section is
+     * uncompressed and verified before anything is written, so a broken
+     * section (e.g. truncated or of the wrong size) is removed from the cache
+     * without leaving parts of it in the output.
+     * @param type the type of the section
+     * @param key describes everything the section depends on
+     * @param size the expected size of the uncompressed section, in bytes
+     * @param out the stream to write the section into
+     * @return true, iff the section was written, false if it is not cached
+     * (or broken)
+     * @throws IOException if the section can't be written to the output stream
+     */
+    public boolean transfer(String type, String key, int size, OutputStream out) throws IOException {
+        byte[] data = readBytes(type, key, size);
+        if(data == null) {
+            return false;
+        }
+        out.write(data);
+        return true;
+    }
+
+    /**
+     * Reads a cached section of the expected size. Sections that can't be
+     * read or don't have the expected size are removed from the cache.
+     * @param type the type of the section
+     * @param key describes everything the section depends on
+     * @param size the expected size of the uncompressed section, in bytes
+     * @return the uncompressed section, or null if the section is not cached
+     * (or broken)
+     */
+    protected byte[] readBytes(String type, String key, int size) {
+        try {
+            InputStream in = open(type, key);
+            if(in == null) {
+                return null;
+            }
+            try {
+                byte[] data = new byte[size];
+                ByteStreams.readFully(in, data);
+                if(in.read() >= 0) {
+                    throw new IOException("The section is larger than expected");
+                }
+                return data;
+            } finally {
+                in.close();
+            }
+        } catch(IOException e) {
+            discard(type, key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Removes a broken section from the cache
+     * @param type the type of the section
+     * @param key describes everything the section depends on
+     * @param e the reason why the section is broken
+     */
+    protected void discard(String type, String key, IOException e) {
+        File file = getFile(type, key);
+        log.warn("The cached section " + file.getName() + " can't be read and is discarded", e);
+        file.delete();
+    }
+
+    /**
+     * @return the directory that holds the sections
+     */
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * A section that is being stored in the cache. The section is written
+     * compressed under a temporary name and replaces the previous version
+     * of the section when it is committed.
+     */
+    public static class Entry {
+
+        /** the file that stores the section */
+        protected final File file;
+        /** the temporary file the section is written into */
+        protected final File part;
+        protected final Deflater deflater;
+        /** the compressed stream into the temporary file */
+        protected final OutputStream out;
+        /** the first error while writing through a tee, if any */
+        protected IOException error;
+        protected boolean closed = false;
+
+        /**
+         * @param file the file that stores the section
+         * @param part the temporary file to write the section into
+         * @throws IOException if the temporary file can't be opened
+         */
+        protected Entry(File file, File part) throws IOException {
+            this.file = file;
+            this.part = part;
+            this.deflater = new Deflater(Deflater.BEST_SPEED);
+            this.out = new DeflaterOutputStream(new FileOutputStream(part), deflater, bufferSize);
+        }
+
+        /**
+         * @return the stream to write the uncompressed section into
+         */
+        public OutputStream getStream() {
+            return out;
+        }
+
+        /**
+         * Creates a channel that writes everything to the target channel and
+         * stores a copy in this section, so the section does not need to be
+         * encoded twice. Errors of the target are thrown as usual, while
+         * errors of the section are recorded and thrown when the section is
+         * committed.
+         * @param target the channel to write into (e.g. the map)
+         * @return a channel that writes into the target and this section
+         */
+        public WritableByteChannel tee(final WritableByteChannel target) {
+            final WritableByteChannel section = Channels.newChannel(out);
+            return new WritableByteChannel() {
+                @Override
+                public int write(ByteBuffer src) throws IOException {
+                    ByteBuffer copy = src.duplicate();
+                    int written = target.write(src);
+                    if(error == null) {
+                        copy.limit(copy.position() + written);
+                        try {
+                            while (copy.hasRemaining()) {
+                                section.write(copy);
+                            }
+                        } catch(IOException e) {
+                            error = e;
+                        }
+                    }
+                    return written;
+                }
+                @Override
+                public boolean isOpen() {
+                    return target.isOpen();
+                }
+                @Override
+                public void close() throws IOException {
+                    target.close();
+                }
+            };
+        }
+
+        /**
+         * Completes the section and replaces any previous version of it
+         * @throws IOException if the section could not be written completely
+         */
+        public void commit() throws IOException {
+            if(error != null) {
+                throw error;
+            }
+            close();
+            if(file.exists()) {
+                file.delete();
+            }
+            Files.move(part, file);
+        }
+
+        /**
+         * Discards the section, unless it has already been committed
+         */
+        public void abort() {
+            try {
+                close();
+            } catch (IOException e) {
+                log.debug("The incomplete section " + part.getName() + " could not be closed", e);
+            }
+            part.delete();
+        }
+
+        protected void close() throws IOException {
+            if(!closed) {
+                closed = true;
+                try {
+                    out.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Writes the uncompressed data of a section
+     */
+    public interface Writer {
+
+        /**
+         * @param out the stream to write the section into (must not be closed)
+         * @throws IOException if the section can't be written
+         */
+        void write(OutputStream out) throws IOException;
+
+    }
+
+}
@@ -16,11 +16,9 @@
  */
 package de.nx42.maps4cim.map;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-
-import com.google.common.io.LittleEndianDataOutputStream;
+import java.nio.channels.WritableByteChannel;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +26,10 @@ import org.slf4j.LoggerFactory;
 import de.nx42.maps4cim.map.ex.MapGeneratorException;
 import de.nx42.maps4cim.map.ex.TextureProcessingException;
 import de.nx42.maps4cim.map.texture.OsmTexture;
+import de.nx42.maps4cim.util.IntChannelWriter;
+import de.nx42.maps4cim.util.arr2d.IntGrid;
+import de.nx42.maps4cim.util.metrics.Metrics;
+import de.nx42.maps4cim.util.metrics.Stage;
 
 /**
  * The TextureMap describes the ground textures of the resulting maps
@@ -41,6 +43,11 @@ import de.nx42.maps4cim.map.texture.OsmTexture;
  * black, grass and pavement. Also, different textures can be mixed. For more
  * details, see {@link OsmTexture}.
  *
+ * The texture map is stored in the same orientation as the
+ * {@link ReliefMap}: x from west to east, y from south to north, so
+ * grid.get(0, 0) is the south-west corner of the map. This is also the order
+ * in which the data points are stored in the map file.
+ *
  * @author Sebastian Straub <sebastian-straub@gmx.net>
  */
 public abstract class TextureMap {
@@ -50,18 +57,24 @@ public abstract class TextureMap {
     protected static final int edgeLength = 2048;
     protected static final int byteAmount = 2048 * 2048 * 4;
 
+    /** number of rows that are buffered before they are written to the output */
+    protected static final int blockRows = 64;
+
+    /** records the stages of the texture generation */
+    protected Metrics metrics = new Metrics();
+
     /**
-     * Generates the fill texture map as 2d-array, with each data point
+     * Generates the fill texture map as flat grid, with each data point
      * representing the color of a 4x4 m square.
      *
      * Only this function must be overriden by implementations.
      *
-     * @return the texture map, as 2d integer array (each integer representing
-     * a texture definition)
+     * @return the texture map, as integer grid of 2048x2048 data points (each
+     * integer representing a texture definition)
      * @throws TextureProcessingException if anything goes wrong (please wrap
      * other exceptions in this one)
      */
-    public abstract int[][] generateTexture() throws TextureProcessingException;
+    public abstract IntGrid generateTexture() throws TextureProcessingException;
 
     /**
      * Generates the texture map by calling {@link TextureMap#generateTexture()},
@@ -72,42 +85,202 @@ public abstract class TextureMap {
      * @throws IOException when the resulting map can't be written
      */
     public void writeTo(OutputStream out) throws MapGeneratorException, IOException {
-        int[][] textureMap = generateTexture();
+        writeTo(out, generateTexture());
+    }
 
+    /**
+     * Converts a texture map that has already been generated to the CiM 2 map
+     * format and writes it to the specified output stream. This allows to
+     * generate the texture independently from the point in time it is written.
+     *
+     * If the texture can be cached, the encoded texture is stored in the
+     * section cache while it is written, see {@link #sectionKey()}.
+     * @param out the output stream to write the texture map into
+     * @param textureMap the texture map to write, as returned by
+     * {@link TextureMap#generateTexture()}
+     * @throws MapGeneratorException when the size of the texture map is invalid
+     * @throws IOException when the resulting map can't be written
+     */
+    public void writeTo(OutputStream out, IntGrid textureMap) throws MapGeneratorException, IOException {
         log.info("Storing texture map in native CiM2-Map format");
-        storeByteStream(out, textureMap);
-        log.debug("Texture map was written to file");
+        Metrics.Timer timer = metrics.start(Stage.TEXTURE_ENCODE).grid(textureMap);
+        SectionCache.Entry section = createCached();
+        try {
+            WritableByteChannel channel = IntChannelWriter.toChannel(out);
+            storeByteStream(section != null ? section.tee(channel) : channel, textureMap);
+            timer.stop();
+            log.debug("Texture map was written to file");
+            if(section != null) {
+                commitCached(section);
+            }
+        } finally {
+            if(section != null) {
+                section.abort();
+            }
+        }
+    }
+
+    /**
+     * Describes everything the texture depends on (source data and settings),
+     * so the encoded texture can be reused by other maps (see
+     * {@link SectionCache} and {@link MapManifest}). By default, textures
+     * are not reused.
+     * @return the key of the texture section, or null if the texture can't
+     * be reused
+     * @throws TextureProcessingException if the key can't be created
+     */
+    public String sectionKey() throws TextureProcessingException {
+        return null;
+    }
+
+    /**
+     * @return the persistent cache for the encoded texture, or null if the
+     * texture is not cached
+     */
+    protected SectionCache getSectionCache() {
+        return null;
+    }
+
+    /**
+     * @return the key of the texture in the section cache, or null if the
+     * texture is not cached (errors are logged, but otherwise ignored)
+     */
+    protected String cacheKey() {
+        if(getSectionCache() == null) {
+            return null;
+        }
+        try {
+            return sectionKey();
+        } catch (TextureProcessingException e) {
+            log.warn("The texture can't be cached, the key of the section is unknown", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return true, iff the encoded texture is available in the section
+     * cache, so it does not need to be generated
+     */
+    public boolean isCached() {
+        String key = cacheKey();
+        return key != null && getSectionCache().has(SectionCache.texture, key);
+    }
+
+    /**
+     * Copies the encoded texture from the section cache into the output
+     * stream, without generating it. The cached texture is verified before
+     * anything is written, a broken texture is removed from the cache and
+     * nothing is written, so the texture can still be generated as usual.
+     * @param out the output stream to write the texture map into
+     * @return true, iff the texture was written, false if it is not cached
+     * (or broken)
+     * @throws IOException when the resulting map can't be written
+     */
+    public boolean writeCached(OutputStream out) throws IOException {
+        String key = cacheKey();
+        SectionCache sections = getSectionCache();
+        if(key == null || !sections.has(SectionCache.texture, key)) {
+            return false;
+        }
+        Metrics.Timer timer = metrics.start(Stage.TEXTURE_CACHE);
+        if(!sections.transfer(SectionCache.texture, key, byteAmount, out)) {
+            return false;
+        }
+        timer.stop();
+        log.info("Using the cached texture of a previous map with the same "
+                + "source data and settings");
+        return true;
+    }
+
+    /**
+     * Starts to store the encoded texture in the section cache, if it can be
+     * cached. Errors are logged, but otherwise ignored.
+     * @return the new section, or null if the texture is not cached
+     */
+    protected SectionCache.Entry createCached() {
+        String key = cacheKey();
+        if(key == null) {
+            return null;
+        }
+        try {
+            return getSectionCache().create(SectionCache.texture, key);
+        } catch (IOException e) {
+            log.warn("The texture could not be stored in the cache", e);
+            return null;
+        }
+    }
+
+    /**
+     * Completes the encoded texture in the section cache. Errors are logged,
+     * but otherwise ignored.
+     * @param section the section that has been written
+     */
+    protected void commitCached(SectionCache.Entry section) {
+        Metrics.Timer timer = metrics.start(Stage.TEXTURE_CACHE);
+        try {
+            section.commit();
+            timer.stop();
+        } catch (IOException e) {
+            log.warn("The texture could not be stored in the cache", e);
+        }
+    }
+
+    /**
+     * Sets the metrics that record the stages of the texture generation
+     * (by default, stages are recorded in a private instance)
+     * @param metrics the metrics to record the stages in
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the metrics that record the stages of the texture generation
+     */
+    public Metrics getMetrics() {
+        return metrics;
     }
 
     /**
      * Stores the texture map in the specified output stream, storing the integers
-     * in little endian byte order
+     * in little endian byte order.
+     *
+     * The grid is already in the order of the map file, so it is passed
+     * block by block through a reusable buffer directly to the output
+     * stream's channel.
      * @param out the output stream to write the texture map into
      * @param textureMap the texture map to write
      * @throws MapGeneratorException when the size of the texture map is invalid
      * @throws IOException when the resulting map can't be written
      */
-    protected void storeByteStream(OutputStream out, int[][] textureMap)
+    protected void storeByteStream(OutputStream out, IntGrid textureMap)
+            throws MapGeneratorException, IOException {
+        storeByteStream(IntChannelWriter.toChannel(out), textureMap);
+    }
+
+    /**
+     * Stores the texture map in the specified channel, see
+     * {@link #storeByteStream(OutputStream, IntGrid)}
+     * @param channel the channel to write the texture map into
+     * @param textureMap the texture map to write
+     * @throws MapGeneratorException when the size of the texture map is invalid
+     * @throws IOException when the resulting map can't be written
+     */
+    protected void storeByteStream(WritableByteChannel channel, IntGrid textureMap)
             throws MapGeneratorException, IOException {
 
         if (isValidSize(textureMap)) {
-            // byte outputput stream, wrapped by a little endian integer processor
-            ByteArrayOutputStream bos = new ByteArrayOutputStream(byteAmount);
-            LittleEndianDataOutputStream dos = new LittleEndianDataOutputStream(bos);
-
-            // pass the resulting integers to the little endian byte output stream
-            for (int y = 0; y < edgeLength; y++) {
-                for (int x = 0; x < edgeLength; x++) {
-                    dos.writeInt(textureMap[x][y]);
+            IntChannelWriter writer = new IntChannelWriter(channel, edgeLength * blockRows);
+            if (textureMap.hasArray()) {
+                writer.write(textureMap.array());
+            } else {
+                int[] row = new int[edgeLength];
+                for (int y = 0; y < edgeLength; y++) {
+                    textureMap.getRow(y, row);
+                    writer.write(row);
                 }
             }
-
-            // writeTo to the user defined output streame
-            bos.writeTo(out);
-
-            // close streams
-            dos.close();
-            bos.close();
+            writer.flush();
         } else {
             throw new MapGeneratorException("The size of the texture map is invalid. "
                     + "Only Maps with 2048 * 2048 blocks are allowed");
@@ -116,24 +289,13 @@ public abstract class TextureMap {
     }
 
     /**
-     * Checks, if all arrays in the texture map have the correct size
+     * Checks, if the texture map has the correct size
      * @param textureMap the texture map to check
-     * @return true, iff the wrapping array's and all contained array's length
-     * equals the predefined edge length
+     * @return true, iff width and height of the grid equal the predefined
+     * edge length
      */
-    protected static boolean isValidSize(int[][] textureMap) {
-        int lenY = textureMap.length;
-        int lenX = textureMap[0].length;
-        if (lenX == edgeLength && lenY == edgeLength) {
-            for (int[] fs : textureMap) {
-                if (fs.length != edgeLength) {
-                    return false;
-                }
-            }
-            return true;
-        } else {
-            return false;
-        }
+    protected static boolean isValidSize(IntGrid textureMap) {
+        return textureMap.getWidth() == edgeLength && textureMap.getHeight() == edgeLength;
     }
 
 }
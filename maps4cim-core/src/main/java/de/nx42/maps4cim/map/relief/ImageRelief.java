@@ -32,6 +32,7 @@ import de.nx42.maps4cim.config.relief.HeightmapDef;
 import de.nx42.maps4cim.map.ReliefMap;
 import de.nx42.maps4cim.map.ex.ReliefProcessingException;
 import de.nx42.maps4cim.util.ImageJUtils;
+import de.nx42.maps4cim.util.arr2d.FloatGrid;
 import de.nx42.maps4cim.util.math.Statistics;
 
 
@@ -93,7 +94,7 @@ public class ImageRelief extends ReliefMap {
      */
 
     @Override
-    public float[][] generateRelief() throws ReliefProcessingException {
+    public FloatGrid generateRelief() throws ReliefProcessingException {
         ImageProcessor ip = img.getProcessor();
 
         // convert colored images to grayscale
@@ -132,19 +133,17 @@ public class ImageRelief extends ReliefMap {
             log.warn(report);
         }
 
-        // transform to 2d float-array
-        float[][] relief = ip.getFloatArray();
-
-        // scale and rotate
+        // scale and flip (image rows are stored top to bottom)
         int maxIdx = edgeLength - 1;
         float srcOffset = (float) stats.getMin();
         float destOffset = (float) minHeight;
         float scale = (float) ((maxHeight - minHeight) / stats.getRange());
 
-        float[][] adjusted = new float[edgeLength][edgeLength];
-        for (int y = 0; y < relief.length; y++) {
-            for (int x = 0; x < relief[y].length; x++) {
-                adjusted[y][x] = ((relief[x][maxIdx - y] - srcOffset) * scale) + destOffset;
+        FloatGrid adjusted = FloatGrid.allocate(edgeLength, edgeLength);
+        for (int y = 0; y < edgeLength; y++) {
+            int row = maxIdx - y;
+            for (int x = 0; x < edgeLength; x++) {
+                adjusted.set(x, y, ((ip.getPixelValue(x, row) - srcOffset) * scale) + destOffset);
             }
         }
 
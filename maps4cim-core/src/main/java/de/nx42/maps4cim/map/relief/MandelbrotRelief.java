@@ -17,6 +17,7 @@
 package de.nx42.maps4cim.map.relief;
 
 import de.nx42.maps4cim.map.ReliefMap;
+import de.nx42.maps4cim.util.arr2d.FloatGrid;
 
 /**
  * Just for fun and testing: Mandelbrot-Relief
@@ -40,16 +41,16 @@ public class MandelbrotRelief extends ReliefMap{
 
 
     @Override
-    public float[][] generateRelief() {
+    public FloatGrid generateRelief() {
         return mandelArray();
     }
 
 
-    protected float[][] mandelArray() {
-        float[][] mandel = new float[edgeLength][edgeLength];
+    protected FloatGrid mandelArray() {
+        FloatGrid mandel = FloatGrid.allocate(edgeLength, edgeLength);
+        float[] line = new float[edgeLength];
 
         for (int y = 0; y < edgeLength; y++) {
-            float[] line = mandel[y];
             for (int x = 0; x < edgeLength; x++) {
                 // squeeze (x, y) to the proper interval
                 double dx = 2.5 * x / edgeLength - 2.0;
@@ -65,6 +66,7 @@ public class MandelbrotRelief extends ReliefMap{
                     line[x] = (scale * value) / iterations;
                 }
             }
+            mandel.setRow(y, line);
         }
 
         return mandel;
@@ -23,6 +23,7 @@ import de.nx42.maps4cim.config.Config;
 import de.nx42.maps4cim.config.relief.PlanarReliefDef;
 import de.nx42.maps4cim.map.ReliefMap;
 import de.nx42.maps4cim.map.ex.MapGeneratorException;
+import de.nx42.maps4cim.util.arr2d.FloatGrid;
 
 /**
  *
@@ -46,14 +47,9 @@ public class PlanarRelief extends ReliefMap {
     }
 
     @Override
-    public float[][] generateRelief() {
-        float[][] plain = new float[edgeLength][edgeLength];
-        for (int y = 0; y < edgeLength; y++) {
-            float[] line = plain[y];
-            for (int x = 0; x < edgeLength; x++) {
-                line[x] = height;
-            }
-        }
+    public FloatGrid generateRelief() {
+        FloatGrid plain = FloatGrid.allocate(edgeLength, edgeLength);
+        plain.fill(height);
         return plain;
     }
 
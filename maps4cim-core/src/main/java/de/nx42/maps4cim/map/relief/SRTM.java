@@ -22,24 +22,34 @@ import java.io.File;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.slf4j.LoggerFactory;
 
-import com.google.common.io.ByteArrayDataInput;
-import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 
 import de.nx42.maps4cim.config.Config;
 import de.nx42.maps4cim.config.relief.SrtmDef;
+import de.nx42.maps4cim.map.MapResources;
 import de.nx42.maps4cim.map.ReliefMap;
+import de.nx42.maps4cim.map.SectionCache;
 import de.nx42.maps4cim.map.ex.ReliefProcessingException;
-import de.nx42.maps4cim.map.relief.srtm.TileDownloadUSGS;
+import de.nx42.maps4cim.map.relief.srtm.RawTileStore;
+import de.nx42.maps4cim.map.relief.srtm.SrtmResolution;
+import de.nx42.maps4cim.map.relief.srtm.TileDownload;
+import de.nx42.maps4cim.map.relief.srtm.TileDownload.CoordinateInt;
 import de.nx42.maps4cim.util.Compression;
-import de.nx42.maps4cim.util.arr2d.Arrays2D;
+import de.nx42.maps4cim.util.arr2d.BicubicResampler;
+import de.nx42.maps4cim.util.arr2d.FloatGrid;
 import de.nx42.maps4cim.util.arr2d.GapInterpolator;
-import de.nx42.maps4cim.util.arr2d.ImageJInterpolation;
+import de.nx42.maps4cim.util.arr2d.ShortGrid;
 import de.nx42.maps4cim.util.gis.Area;
 import de.nx42.maps4cim.util.math.MathExt;
+import de.nx42.maps4cim.util.metrics.Metrics;
+import de.nx42.maps4cim.util.metrics.Stage;
 
 /**
  *
@@ -83,26 +93,42 @@ public class SRTM extends ReliefMap {
     public static short gap = Short.MIN_VALUE;
 
     protected static final GapInterpolator gip = new GapInterpolator(gap);
+    /** increment whenever the generated reliefs change, so they are not
+     *  taken from the section cache anymore */
+    protected static final int reliefVersion = 1;
 
     protected Area bounds;
+    protected MapResources resources;
     protected boolean heightOffsetAuto = true;
     protected float heightOffset = 0;
     protected boolean heightScaleAuto = true;
     protected float heightScale = 1.0f;
-    // currently only srtm3 accepted
+    protected SrtmResolution resolution = SrtmResolution.SRTM3;
     protected int srtmLength = srtm3length;
     protected int srtmMaxIndex = srtm3maxIndex;
+    /** number of tiles that were replaced by water, because they were not
+     *  available (reliefs with missing tiles are not cached) */
+    protected int missingTiles = 0;
 
 
     public SRTM(Config conf) {
-        this((SrtmDef) conf.getReliefTrans(), Area.of(conf.getBoundsTrans()));
+        this(conf, new MapResources());
+    }
+
+    public SRTM(Config conf, MapResources resources) {
+        this((SrtmDef) conf.getReliefTrans(), Area.of(conf.getBoundsTrans()), resources);
     }
 
     public SRTM(SrtmDef def, Area bounds) {
+        this(def, bounds, new MapResources());
+    }
+
+    public SRTM(SrtmDef def, Area bounds, MapResources resources) {
         log.debug("Using SRTM as source for the map's relief");
 
         // read configuration settings
         this.bounds = bounds;
+        this.resources = resources;
 
         // height offset
         this.heightOffsetAuto = def.isHeightOffsetAuto();
@@ -120,10 +146,19 @@ public class SRTM extends ReliefMap {
             this.heightScale = (float) def.getHeightScale();
         }
 
+        // resolution of the source data
+        if(def.isResolutionAuto()) {
+            this.resolution = SrtmResolution.select(bounds, edgeLength);
+        } else {
+            this.resolution = SrtmResolution.of(def.getResolution());
+        }
+        this.srtmLength = resolution.getTileLength();
+        this.srtmMaxIndex = resolution.getMaxIndex();
+        log.debug("Using {} tiles ({} arc-seconds)", resolution, resolution.getArcSeconds());
     }
 
     @Override
-    public float[][] generateRelief() throws ReliefProcessingException {
+    public FloatGrid generateRelief() throws ReliefProcessingException {
         try {
             return fromBounds();
         } catch (SocketTimeoutException e) {
@@ -138,7 +173,33 @@ public class SRTM extends ReliefMap {
         }
     }
 
-    protected float[][] fromBounds() throws IOException, SocketTimeoutException, UnknownHostException {
+    /**
+     * Describes everything the relief depends on: the source of the tiles
+     * (including their resolution, see {@link TileDownload#getSource(Area)}),
+     * the exact bounds of the map and the
+     * height offset and scale (or the fact that they are chosen
+     * automatically, which only depends on the other parameters).
+     * Reliefs with tiles that were not available are not cached.
+     */
+    @Override
+    public String sectionKey() {
+        if(missingTiles > 0) {
+            return null;
+        }
+        return String.format("srtm:%s:%s:%s,%s,%s,%s:%s:%s", reliefVersion,
+                resources.getTileDownload(resolution).getSource(bounds),
+                bounds.getMinLat(), bounds.getMinLon(), bounds.getMaxLat(), bounds.getMaxLon(),
+                heightOffsetAuto ? "auto" : heightOffset,
+                heightScaleAuto ? "auto" : heightScale);
+    }
+
+    @Override
+    protected SectionCache getSectionCache() {
+        return resources.getSectionCache();
+    }
+
+    protected FloatGrid fromBounds() throws IOException, SocketTimeoutException, UnknownHostException {
+        missingTiles = 0;
 
         // get some basic metadata and log a note
         double worldWidthKM = bounds.getWidthKm();
@@ -166,27 +227,10 @@ public class SRTM extends ReliefMap {
         int minY = (edgeLength - validMapHeight) / 2;
         int maxY = validMapHeight + minY;
 
-        // get source data (cache or download)
-        log.debug("Retrieving SRTM data.");
-        short[][] srtm = retrieveSRTMdata(bounds);
-        int srtmHeight = srtm.length;
-        int srtmWidth = srtm[0].length;
-
-        // rotate, fill gaps and convert to basic 2d-float-array
-        float[][] srtmClean = new float[srtmHeight][srtmWidth];
-        for (int y = 0; y < srtm.length; y++) {
-            for (int x = 0; x < srtm[y].length; x++) {
-                float val = srtm[srtm.length-1-y][x];
-                if(val == gap) {
-                    val = gip.star(srtm, x, srtm.length-1-y);
-                }
-                if(val == 0) {
-                    // drown the water ;)
-                    val = -40;
-                }
-                srtmClean[y][x] = val;
-            }
-        }
+        // extent of the stitched srtm tiles (tiles overlap by one sample)
+        CoordinateInt[][] coords = TileDownload.getCoordinates(bounds);
+        int srtmHeight = coords.length * srtmMaxIndex + 1;
+        int srtmWidth = coords[0].length * srtmMaxIndex + 1;
 
         // calcualte bounds
         int srtmLatMin = (int) Math.floor(bounds.getMinLat());
@@ -201,21 +245,63 @@ public class SRTM extends ReliefMap {
         float minLon = (float) ((Math.abs(bounds.getMinLon() - srtmLonMin) / srtmLonSize) * srtmWidth);
         float maxLon = (float) ((Math.abs(bounds.getMaxLon() - srtmLonMin) / srtmLonSize) * srtmWidth);
 
-        // interpolate with ImageJ
-        log.debug("SRTM data will be cropped and scaled to correct size using bicubic interpolation");
-        float[][] scaled = ImageJInterpolation.cropAndResize(srtmClean, validMapWidth, validMapHeight,
-                minLon, minLat, maxLon, maxLat);
+        // the crop region (south to north), intersected with the stitched tiles
+        int cropMinX = Math.max((int) minLon, 0);
+        int cropMinY = Math.max((int) minLat, 0);
+        int cropMaxX = Math.min((int) minLon + (int) Math.ceil(maxLon - minLon), srtmWidth);
+        int cropMaxY = Math.min((int) minLat + (int) Math.ceil(maxLat - minLat), srtmHeight);
+        int cropWidth = Math.max(cropMaxX - cropMinX, 1);
+        int cropHeight = Math.max(cropMaxY - cropMinY, 1);
+
+        // the window to read (north to south), with a margin for gap filling
+        int margin = gip.getReach();
+        int winMinX = Math.max(cropMinX - margin, 0);
+        int winMaxX = Math.min(cropMinX + cropWidth + margin, srtmWidth);
+        int winMinY = Math.max(srtmHeight - cropMinY - cropHeight - margin, 0);
+        int winMaxY = Math.min(srtmHeight - cropMinY + margin, srtmHeight);
+
+        // get source data (cache or download)
+        log.debug("Retrieving SRTM data.");
+        ShortGrid srtm = retrieveSRTMdata(coords, winMinX, winMinY,
+                winMaxX - winMinX, winMaxY - winMinY);
+
+        // fill gaps and convert to float grid (crop region only)
+        int cropTop = srtmHeight - cropMinY - cropHeight - winMinY;
+        Metrics.Timer interpolate = metrics.start(Stage.RELIEF_INTERPOLATE);
+        FloatGrid srtmClean = gip.fill(srtm, cropMinX - winMinX, cropTop, cropWidth, cropHeight);
+
+        // rotate (south to north) and drown the water ;)
+        float[] top = new float[cropWidth];
+        float[] bottom = new float[cropWidth];
+        for (int y = 0; y < (cropHeight + 1) / 2; y++) {
+            int mirror = cropHeight - 1 - y;
+            srtmClean.getRow(y, top);
+            srtmClean.getRow(mirror, bottom);
+            drown(top);
+            drown(bottom);
+            srtmClean.setRow(y, bottom);
+            srtmClean.setRow(mirror, top);
+        }
+
+        interpolate.grid(srtm).grid(srtmClean).stop();
+
+        // bicubic interpolation (the grid is already cropped)
+        Metrics.Timer scale = metrics.start(Stage.RELIEF_SCALE);
+        log.debug("SRTM data will be scaled to correct size using bicubic interpolation");
+        FloatGrid scaled = BicubicResampler.cropAndResize(srtmClean, validMapWidth, validMapHeight,
+                0, 0, cropWidth, cropHeight);
 
         log.debug("Final conversion and filtering of scaled SRTM data");
-        float[][] heightmap = new float[edgeLength][edgeLength];
-        for (int y = 0; y < scaled.length; y++) {
-            for (int x = 0; x < scaled.length; x++) {
+        FloatGrid heightmap = FloatGrid.allocate(edgeLength, edgeLength);
+        int scaledLength = scaled.getHeight();
+        for (int y = 0; y < scaledLength; y++) {
+            for (int x = 0; x < scaledLength; x++) {
                 if(x >= minX && x < maxX && y >= minY && y < maxY) {
-                    float val = scaled[y-minY][x-minX];
+                    float val = scaled.get(x-minX, y-minY);
                     if(heightOffsetAuto && val>=0 && val < this.heightOffset) {
                         this.heightOffset = val;
                     }
-                    heightmap[y][x] = val;
+                    heightmap.set(x, y, val);
                 }
             }
         }
@@ -229,14 +315,14 @@ public class SRTM extends ReliefMap {
         }
 
         if(heightOffset != 0.0f || heightScale != 1.0f) {
-        	for (int y = 0; y < heightmap.length; y++) {
-                for (int x = 0; x < heightmap.length; x++) {
-                    if(heightmap[y][x] > 0) {
-                        heightmap[y][x] = (heightmap[y][x] - heightOffset) * heightScale;
-                    }
+            float[] heights = heightmap.array();
+            for (int i = 0; i < heights.length; i++) {
+                if(heights[i] > 0) {
+                    heights[i] = (heights[i] - heightOffset) * heightScale;
                 }
             }
         }
+        scale.grid(srtmClean).grid(scaled).grid(heightmap).stop();
 
         return heightmap;
     }
@@ -244,68 +330,207 @@ public class SRTM extends ReliefMap {
 
     // helpers
 
-    protected float getValue(short[][] srtm, int x, int y) {
-        if(srtm[srtmMaxIndex-y][x] < -50)
+    /**
+     * Sets all samples at sea level (0) to -40, so they are displayed as
+     * water in the game
+     * @param row the samples to process (in-place)
+     */
+    protected static void drown(float[] row) {
+        for (int i = 0; i < row.length; i++) {
+            if(row[i] == 0) {
+                row[i] = -40;
+            }
+        }
+    }
+
+    protected float getValue(ShortGrid srtm, int x, int y) {
+        short val = srtm.get(x, srtmMaxIndex-y);
+        if(val < -50)
             return 0;
-        return (srtm[srtmMaxIndex-y][x] - heightOffset) * heightScale;
+        return (val - heightOffset) * heightScale;
     }
 
 
-	protected short[][] retrieveSRTMdata(Area ar) throws SocketTimeoutException, IOException, UnknownHostException {
-		// get source
-	    TileDownloadUSGS td = new TileDownloadUSGS();
-		File[][] files = td.getTiles(ar);
+	/**
+	 * Reads a window of the SRTM tiles for the specified coordinates, as if
+	 * all tiles were stitched together (north to south, with the overlapping
+	 * edges removed). Only the rows and columns within the window are copied,
+	 * and only tiles that intersect the window are retrieved, so the effort
+	 * depends on the size of the window, not on the number of tiles.
+	 * @param coords the coordinates of the tiles, see
+	 * {@link TileDownload#getCoordinates(Area)}
+	 * @param x the first column of the window in the stitched tiles
+	 * @param y the first row of the window in the stitched tiles (north)
+	 * @param width the number of columns in the window
+	 * @param height the number of rows in the window
+	 * @return the samples within the window
+	 * @throws IOException if a tile can't be retrieved
+	 */
+	protected ShortGrid retrieveSRTMdata(CoordinateInt[][] coords, int x, int y,
+			int width, int height) throws IOException {
+
+		int tilesY = coords.length;
+		ShortGrid[][] tiles = new ShortGrid[tilesY][coords[0].length];
+
+		// download the required tiles concurrently, before they are read
+		List<CoordinateInt> required = new ArrayList<CoordinateInt>();
+		for (int ty = getTileIndex(y); ty <= getTileIndex(y + height - 1); ty++) {
+			for (int tx = getTileIndex(x); tx <= getTileIndex(x + width - 1); tx++) {
+				required.add(coords[tilesY - 1 - ty][tx]);
+			}
+		}
+		Metrics.Timer fetch = metrics.start(Stage.RELIEF_FETCH);
+		prefetchSRTMTiles(required);
+		fetch.stop();
+
+		Metrics.Timer decode = metrics.start(Stage.RELIEF_DECODE);
+		ShortGrid window = ShortGrid.allocate(width, height);
+		short[] row = new short[width];
+		int used = 0;
+
+		for (int wy = 0; wy < height; wy++) {
+			int ty = getTileIndex(y + wy);
+			int tileY = y + wy - ty * srtmMaxIndex;
+			int wx = 0;
+			while(wx < width) {
+				// copy the part of the row that is stored in the current tile
+				int tx = getTileIndex(x + wx);
+				int tileX = x + wx - tx * srtmMaxIndex;
+				int len = Math.min(width - wx, srtmLength - tileX);
+				if(tiles[ty][tx] == null) {
+					tiles[ty][tx] = getSRTMTile(coords[tilesY - 1 - ty][tx]);
+					used++;
+				}
+				tiles[ty][tx].getRow(tileY, tileX, row, wx, len);
+				wx += len;
+			}
+			window.setRow(wy, 0, row, 0, width);
+		}
+
+		decode.grid(window).stop();
+
+		log.debug("Read a window of {}x{} samples from {} SRTM tiles", width, height, used);
+		if(used > 1) {
+			log.debug(resources.getSrtmTiles().toString());
+		}
+		return window;
+	}
 
-		// transform to single short array
-		if(files.length == 1 && files[0].length == 1) {
-			// just one tile -> return
-			byte[] rawTile = readArchiveSRTM(files[0][0]);
-			return getNativeSRTM(rawTile);
-		} else {
-			// multiple tiles, need to be combined
-		    log.debug("combining {} tiles.", files.length * files[0].length);
-			short[][][][] source = unpackSRTMTiles(files);
-			return Arrays2D.combine(source, 1, false);
+	/**
+	 * Makes sure that the specified tiles are available locally, so they can
+	 * be read one after another without waiting for each download. Tiles
+	 * that are already in memory are skipped, all others are retrieved
+	 * concurrently.
+	 * @param coords the coordinates of the required tiles
+	 * @throws IOException if the download was interrupted
+	 */
+	protected void prefetchSRTMTiles(List<CoordinateInt> coords) throws IOException {
+		List<CoordinateInt> missing = new ArrayList<CoordinateInt>(coords.size());
+		for (CoordinateInt coord : coords) {
+			if(resources.getSrtmTiles().getIfPresent(resolution, coord) == null) {
+				missing.add(coord);
+			}
+		}
+		if(missing.size() > 1) {
+			resources.getTileDownload(resolution).getTiles(
+					missing.toArray(new CoordinateInt[missing.size()]));
 		}
 	}
 
-	protected short[][][][] unpackSRTMTiles(File[][] files) throws IOException {
+	/**
+	 * Calculates the index of the tile that a row (or column) of the stitched
+	 * tiles is read from. Rows at the edges, which are stored in two tiles,
+	 * are read from the first one (north / west).
+	 * @param idx the row (or column) in the stitched tiles
+	 * @return the index of the tile (north to south / west to east)
+	 */
+	protected int getTileIndex(int idx) {
+		return idx == 0 ? 0 : (idx - 1) / srtmMaxIndex;
+	}
 
-		short[][][][] unpacked = new short[files.length][files[0].length][srtmLength][srtmLength];
+	/**
+	 * Returns the decoded SRTM tile for the specified coordinate. Tiles are
+	 * shared with all other maps that use the same {@link MapResources}, so
+	 * the result must not be modified!
+	 * Tiles that are not available (e.g. in the oceans) are replaced by water.
+	 * @param coord the coordinate of the tile
+	 * @return the decoded tile (read-only)
+	 * @throws IOException if the tile can't be retrieved
+	 */
+	protected ShortGrid getSRTMTile(final CoordinateInt coord) throws IOException {
+		try {
+			return resources.getSrtmTile(resolution, coord, new Callable<ShortGrid>() {
+				@Override
+				public ShortGrid call() throws IOException {
+					File zip = resources.getTileDownload(resolution).getTile(coord);
+					if(zip == null || !zip.exists()) {
+						// don't cache, the next map may be able to download it
+						throw new MissingTileException(coord);
+					}
+					return readSRTMTile(zip);
+				}
+			});
+		} catch (MissingTileException e) {
+			missingTiles++;
+			return getWaterSRTMTile();
+		}
+	}
 
-		for (int y = 0; y < files.length; y++) {
-			for (int x = 0; x < files[y].length; x++) {
-				byte[] rawTile = readArchiveSRTM(files[files.length - 1 - y][x]);
-				short[][] srtm = getNativeSRTM(rawTile);
-				unpacked[y][x] = srtm;
+	/**
+	 * Reads a SRTM tile, either as memory mapped raw file (if enabled in the
+	 * resources) or by decoding it on the heap. Usually, tiles are zipped,
+	 * but uncompressed .hgt files (e.g. from a local tile directory) are
+	 * supported as well.
+	 * @param file the zipped SRTM tile (or a raw .hgt file)
+	 * @return the decoded tile
+	 * @throws IOException if the tile can't be read
+	 */
+	protected ShortGrid readSRTMTile(File file) throws IOException {
+		RawTileStore store = resources.getRawTileStore();
+		boolean zipped = file.getName().endsWith(RawTileStore.zipExt);
+		if(store != null) {
+			ShortGrid tile = store.get(file);
+			if(tile.getWidth() != srtmLength) {
+				throw new IOException(String.format("Unexpected resolution of SRTM "
+						+ "tile %s: %s samples per row", file.getName(), tile.getWidth()));
 			}
+			return tile;
+		} else if(zipped) {
+			return getNativeSRTM(readArchiveSRTM(file));
+		} else {
+			return getNativeSRTM(file);
 		}
-
-		return unpacked;
 	}
 
+	/**
+	 * Signals that a SRTM tile is not available
+	 */
+	protected static class MissingTileException extends IOException {
+		private static final long serialVersionUID = 7514853380632018532L;
+		public MissingTileException(CoordinateInt coord) {
+			super("SRTM tile not available: " + coord);
+		}
+	}
 
-    protected short[][] getNativeSRTM(File input) throws IOException {
+    protected ShortGrid getNativeSRTM(File input) throws IOException {
         byte[] raw = Files.toByteArray(input);
         return getNativeSRTM(raw);
     }
 
-    protected short[][] getNativeSRTM(byte[] input) throws IOException {
+    protected ShortGrid getNativeSRTM(byte[] input) throws IOException {
         if(input == null || input.length == 0) {
             return getWaterSRTMTile();
         }
 
-        ByteArrayDataInput badi = ByteStreams.newDataInput(input);
-
-        // write native srtm values in 16bit signed integer array
-        short[][] srtm = new short[srtmLength][srtmLength];
-        for (int y = 0; y < srtmLength; y++) {
-            for (int x = 0; x < srtmLength; x++) {
-                // convert the floats (meter) to integers (millimeter)
-                srtm[y][x] = badi.readShort();
-            }
+        if(input.length != srtmLength * srtmLength * 2) {
+            throw new IOException(String.format("Unexpected size of SRTM tile: "
+                    + "%s bytes, expected %s", input.length, srtmLength * srtmLength * 2));
         }
 
+        // read native srtm values (16bit signed big endian integers) in bulk
+        ShortGrid srtm = ShortGrid.allocate(srtmLength, srtmLength);
+        ByteBuffer.wrap(input).asShortBuffer().get(srtm.array());
+
         return srtm;
     }
 
@@ -316,21 +541,17 @@ public class SRTM extends ReliefMap {
         return Compression.readFirstZipEntry(zipFile);
     }
     
-    protected short[][] getFlatSRTMTile() {
+    protected ShortGrid getFlatSRTMTile() {
         return getEmptySRTMTile((short) 1);
     }
     
-    protected short[][] getWaterSRTMTile() {
+    protected ShortGrid getWaterSRTMTile() {
         return getEmptySRTMTile((short) -40);
     }
 
-    protected short[][] getEmptySRTMTile(short value) {
-        short[][] srtm = new short[srtmLength][srtmLength];
-        for (int y = 0; y < srtmLength; y++) {
-            for (int x = 0; x < srtmLength; x++) {
-                srtm[y][x] = value;
-            }
-        }
+    protected ShortGrid getEmptySRTMTile(short value) {
+        ShortGrid srtm = ShortGrid.allocate(srtmLength, srtmLength);
+        srtm.fill(value);
         return srtm;
     }
 
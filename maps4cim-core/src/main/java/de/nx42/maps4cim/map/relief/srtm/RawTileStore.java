@@ -0,0 +1,175 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map.relief.srtm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.Files;
+
+import de.nx42.maps4cim.map.Cache;
+import de.nx42.maps4cim.util.Compression;
+import de.nx42.maps4cim.util.arr2d.ShortGrid;
+
+/**
+ * Stores SRTM tiles in the cache as uncompressed .hgt files and provides
+ * them as memory mapped grids.
+ *
+ * SRTM tiles are downloaded as zip archives. Instead of inflating and
+ * decoding a whole archive each time a tile is used, the archive is unpacked
+ * once into a raw .hgt file next to it. The raw file contains the elevations
+ * as 16 bit big endian integers, exactly like the SRTM format, so it can be
+ * mapped into memory and read through a ShortBuffer view without any
+ * conversion. The operating system loads only the pages that are actually
+ * accessed, no copy of the tile is held on the java heap.
+ *
+ * Raw files take about three times the disk space of the archives. They are
+ * removed by the {@link Cache.Janitor} if they haven't been used for a while
+ * and can be restored from the archive at any time.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class RawTileStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RawTileStore.class);
+
+    /** file extension of the zipped tiles */
+    public static final String zipExt = ".zip";
+    /** file extension of partially written raw tiles */
+    protected static final String partExt = ".part";
+    /** only one tile is unpacked at a time */
+    protected static final Object lock = new Object();
+
+    protected final Cache cache = new Cache();
+
+    /**
+     * Returns the tile stored in the specified zip archive as grid that is
+     * backed by a read-only memory mapped file. If the raw file does not
+     * exist yet (or is older than the archive), it is unpacked from the
+     * archive. Files that are not zipped are mapped in place.
+     * @param zip the zipped SRTM tile (or an uncompressed .hgt file)
+     * @return the tile, backed by a memory mapped file (read-only!)
+     * @throws IOException if the tile can't be unpacked or mapped
+     */
+    public ShortGrid get(File zip) throws IOException {
+        if (!zip.getName().endsWith(zipExt)) {
+            if (getEdgeLength(zip.length()) < 0) {
+                throw new IOException(String.format("The SRTM tile %s has an "
+                        + "invalid size of %s bytes", zip.getName(), zip.length()));
+            }
+            return map(zip);
+        }
+        String entry = getRawFileName(zip);
+        File raw = cache.getUnchecked(entry);
+        if (!raw.isFile() || getEdgeLength(raw.length()) < 0
+                || raw.lastModified() < zip.lastModified()) {
+            raw = unpack(zip, entry);
+        } else {
+            // mark as recently used (for the cache janitor)
+            raw.setLastModified(System.currentTimeMillis());
+        }
+        return map(raw);
+    }
+
+    /**
+     * Unpacks a zipped tile into a raw file in the cache. The file is
+     * written under a temporary name first, so other processes will never
+     * see an incomplete file.
+     * @param zip the zipped SRTM tile
+     * @param entry the name of the raw file in the cache
+     * @return the raw file
+     * @throws IOException if the archive can't be read, is not a valid SRTM
+     * tile or the raw file can't be written
+     */
+    protected File unpack(File zip, String entry) throws IOException {
+        synchronized (lock) {
+            File raw = cache.getUnchecked(entry);
+            File part = cache.getUnchecked(entry + partExt);
+            log.debug("Unpacking SRTM tile {} for memory mapped access", zip.getName());
+            try {
+                Compression.readFirstZipEntry(zip, part);
+                if (getEdgeLength(part.length()) < 0) {
+                    throw new IOException(String.format("The SRTM tile %s has an "
+                            + "invalid size of %s bytes", zip.getName(), part.length()));
+                }
+                if (raw.exists()) {
+                    raw.delete();
+                }
+                Files.move(part, raw);
+            } finally {
+                part.delete();
+            }
+            return raw;
+        }
+    }
+
+    /**
+     * Maps a raw SRTM file into memory
+     * @param raw the raw SRTM file (16 bit big endian integers)
+     * @return a grid backed by the mapped file
+     * @throws IOException if the file can't be mapped
+     */
+    protected static ShortGrid map(File raw) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(raw, "r");
+        try {
+            // the mapping stays valid after the file has been closed
+            MappedByteBuffer mapped = raf.getChannel().map(MapMode.READ_ONLY, 0, raf.length());
+            mapped.order(ByteOrder.BIG_ENDIAN);
+            int edge = getEdgeLength(raf.length());
+            return ShortGrid.wrap(mapped.asShortBuffer(), edge, edge);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Derives the name of the raw file from the name of the zip archive
+     * (e.g. N47E011.SRTMGL3.hgt.zip -> N47E011.SRTMGL3.hgt)
+     * @param zip the zip archive
+     * @return the name of the raw file
+     */
+    public static String getRawFileName(File zip) {
+        String name = zip.getName();
+        if (name.endsWith(zipExt)) {
+            return name.substring(0, name.length() - zipExt.length());
+        }
+        return name + ".hgt";
+    }
+
+    /**
+     * Calculates the edge length of a quadratic SRTM tile from it's file size
+     * @param bytes the size of the raw tile in bytes
+     * @return the number of rows (and columns) of the tile, or -1 if the
+     * size does not match a quadratic tile of 16 bit values
+     */
+    protected static int getEdgeLength(long bytes) {
+        if (bytes <= 0 || bytes % 2 != 0) {
+            return -1;
+        }
+        long values = bytes / 2;
+        int edge = (int) Math.round(Math.sqrt(values));
+        return (long) edge * edge == values ? edge : -1;
+    }
+
+}
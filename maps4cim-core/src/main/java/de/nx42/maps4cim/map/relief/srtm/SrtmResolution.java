@@ -0,0 +1,113 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map.relief.srtm;
+
+import de.nx42.maps4cim.util.gis.Area;
+
+/**
+ * The resolutions of the SRTM dataset. Tiles of both resolutions cover one
+ * degree of latitude and longitude, but SRTM1 has 9 times as many samples.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public enum SrtmResolution {
+
+    /** 1 arc-second (~30m), 3601 samples per row and column */
+    SRTM1(1, 3601, "SRTMGL1"),
+    /** 3 arc-seconds (~90m), 1201 samples per row and column */
+    SRTM3(3, 1201, "SRTMGL3");
+
+    /**
+     * SRTM3 is preferred, as long as it provides at least this fraction of
+     * the map's samples, so the tiles stay small (a decoded SRTM1 tile
+     * takes 26MB, the download is 9 times larger as well)
+     */
+    protected static final double minSampleRatio = 0.5;
+
+    protected final int arcSeconds;
+    protected final int tileLength;
+    protected final String dataset;
+
+    private SrtmResolution(int arcSeconds, int tileLength, String dataset) {
+        this.arcSeconds = arcSeconds;
+        this.tileLength = tileLength;
+        this.dataset = dataset;
+    }
+
+    /**
+     * @return the distance between samples in arc-seconds
+     */
+    public int getArcSeconds() {
+        return arcSeconds;
+    }
+
+    /**
+     * @return the number of samples per row (and column) of a tile,
+     * including the row (column) that overlaps with the next tile
+     */
+    public int getTileLength() {
+        return tileLength;
+    }
+
+    /**
+     * @return the highest index in a tile, which is also the number of
+     * samples per degree
+     */
+    public int getMaxIndex() {
+        return tileLength - 1;
+    }
+
+    /**
+     * @return the name of the dataset, as used in the tile's file names
+     * (e.g. N47E011.SRTMGL3.hgt.zip)
+     */
+    public String getDataset() {
+        return dataset;
+    }
+
+    /**
+     * Selects the resolution for a map of the specified area. SRTM3 is used,
+     * unless the map would be based on fewer than half as many samples as
+     * it has (i.e. most of the map's details would be interpolated), in this
+     * case SRTM1 is used.
+     * @param bounds the bounds of the map
+     * @param edgeLength the number of samples along the longer edge of the map
+     * @return the resolution to use for this map
+     */
+    public static SrtmResolution select(Area bounds, int edgeLength) {
+        double extentDeg = bounds.getWidthKm() >= bounds.getHeightKm() ?
+                bounds.getWidthDeg() : bounds.getHeightDeg();
+        double samples = Math.abs(extentDeg) * SRTM3.getMaxIndex();
+        return samples < edgeLength * minSampleRatio ? SRTM1 : SRTM3;
+    }
+
+    /**
+     * @param arcSeconds the distance between samples in arc-seconds (1 or 3)
+     * @return the resolution with the specified sample distance
+     * @throws IllegalArgumentException if there is no such resolution
+     */
+    public static SrtmResolution of(int arcSeconds) {
+        for (SrtmResolution res : values()) {
+            if (res.arcSeconds == arcSeconds) {
+                return res;
+            }
+        }
+        throw new IllegalArgumentException("There is no SRTM dataset with a "
+                + "resolution of " + arcSeconds + " arc-seconds");
+    }
+
+}
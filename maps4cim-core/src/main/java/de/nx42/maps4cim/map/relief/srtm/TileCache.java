@@ -0,0 +1,258 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map.relief.srtm;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import de.nx42.maps4cim.map.relief.srtm.TileDownload.CoordinateInt;
+import de.nx42.maps4cim.util.arr2d.ShortGrid;
+
+/**
+ * An in-memory cache of decoded SRTM tiles, so tiles that are used by more
+ * than one map don't have to be unzipped and decoded again.
+ *
+ * The cache is bounded by a memory budget (in bytes) instead of a number of
+ * tiles, as tiles of different resolutions differ a lot in size (~3MB for
+ * SRTM3, ~26MB for SRTM1). When the budget is exceeded, the least recently
+ * used tiles are evicted. Hits, misses and evictions are counted and can be
+ * retrieved via {@link #getStats()}.
+ *
+ * There is one process-wide instance ({@link #shared()}), which is used by
+ * default, so all maps generated in the same process (batch runs, GUI
+ * sessions) share the decoded tiles. Tiles returned by this cache must be
+ * treated as read-only!
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class TileCache {
+
+    private static final Logger log = LoggerFactory.getLogger(TileCache.class);
+
+    /** default memory budget: 1/8 of the max heap size, but at most 256MB */
+    public static final long defaultBudget = Math.min(256L << 20, Runtime.getRuntime().maxMemory() / 8);
+
+    /** the process-wide instance */
+    protected static final TileCache shared = new TileCache(defaultBudget);
+
+    /** the decoded tiles */
+    protected volatile Cache<TileKey, ShortGrid> tiles;
+    /** the memory budget in bytes */
+    protected volatile long budget;
+    /** statistics of all caches that were replaced when the budget changed */
+    protected CacheStats previousStats = new CacheStats(0, 0, 0, 0, 0, 0);
+
+    /**
+     * Creates a new tile cache with the specified memory budget
+     * @param budget the maximum amount of memory used by decoded tiles, in
+     * bytes
+     */
+    public TileCache(long budget) {
+        this.budget = budget;
+        this.tiles = build(budget);
+    }
+
+    /**
+     * @return the process-wide tile cache
+     */
+    public static TileCache shared() {
+        return shared;
+    }
+
+    /**
+     * Returns the decoded tile for the specified coordinate. If the tile is
+     * not in memory, it is retrieved using the specified loader. If the
+     * loader fails, nothing is stored, so the next request will try to load
+     * the tile again.
+     * @param res the resolution of the tile
+     * @param coord the coordinate of the tile (southwest corner)
+     * @param loader loads the tile, if it is not in memory
+     * @return the decoded tile (read-only!)
+     * @throws IOException if the loader fails
+     */
+    public ShortGrid get(SrtmResolution res, CoordinateInt coord, Callable<ShortGrid> loader)
+            throws IOException {
+        try {
+            return tiles.get(new TileKey(res, coord), loader);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } catch (UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param res the resolution of the tile
+     * @param coord the coordinate of the tile
+     * @return the decoded tile, or null if it is not in memory
+     */
+    public ShortGrid getIfPresent(SrtmResolution res, CoordinateInt coord) {
+        return tiles.getIfPresent(new TileKey(res, coord));
+    }
+
+    /**
+     * Changes the memory budget. Tiles are kept, as long as they fit into
+     * the new budget.
+     * @param budget the maximum amount of memory used by decoded tiles, in
+     * bytes
+     */
+    public synchronized void setMemoryBudget(long budget) {
+        log.debug("Memory budget of the SRTM tile cache changed to {} MB", budget >> 20);
+        Cache<TileKey, ShortGrid> old = tiles;
+        Cache<TileKey, ShortGrid> replacement = build(budget);
+        replacement.putAll(old.asMap());
+        previousStats = previousStats.plus(old.stats());
+        this.tiles = replacement;
+        this.budget = budget;
+        old.invalidateAll();
+    }
+
+    /**
+     * @return the maximum amount of memory used by decoded tiles, in bytes
+     */
+    public long getMemoryBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the amount of memory currently used by decoded tiles, in bytes
+     * (memory mapped tiles are weighted, see {@link #weigh(ShortGrid)})
+     */
+    public long getMemoryUsage() {
+        long sum = 0;
+        for (ShortGrid tile : tiles.asMap().values()) {
+            sum += weigh(tile);
+        }
+        return sum;
+    }
+
+    /**
+     * @return the number of tiles currently in memory
+     */
+    public long size() {
+        return tiles.size();
+    }
+
+    /**
+     * Returns the statistics of this cache, including hits, misses (loads)
+     * and evictions since this cache was created.
+     * @return the statistics of this cache
+     */
+    public synchronized CacheStats getStats() {
+        return previousStats.plus(tiles.stats());
+    }
+
+    /**
+     * Discards all tiles that are currently held in memory
+     */
+    public void invalidateAll() {
+        tiles.invalidateAll();
+    }
+
+    @Override
+    public String toString() {
+        CacheStats stats = getStats();
+        return String.format("SRTM tile cache: %s tiles, %s of %s MB used, "
+                + "%s hits, %s misses, %s evictions", size(), getMemoryUsage() >> 20,
+                budget >> 20, stats.hitCount(), stats.missCount(), stats.evictionCount());
+    }
+
+    /**
+     * Creates the actual cache. There is only a single segment, so the budget
+     * applies to all tiles (and not just a fraction of it to each segment)
+     * and the least recently used tile is evicted first.
+     * @param budget the memory budget in bytes
+     * @return a new cache
+     */
+    protected static Cache<TileKey, ShortGrid> build(long budget) {
+        return CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(budget)
+                .weigher(new Weigher<TileKey, ShortGrid>() {
+                    @Override
+                    public int weigh(TileKey key, ShortGrid tile) {
+                        return TileCache.weigh(tile);
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Calculates the weight of a tile. Tiles outside of the heap (memory
+     * mapped) are weighted with 1/16 of their size: they don't occupy the
+     * heap, but the budget still limits the number of open mappings.
+     * @param tile a decoded tile
+     * @return the approximate memory consumption of the tile, in bytes
+     */
+    protected static int weigh(ShortGrid tile) {
+        int bytes = tile.size() * 2;
+        return tile.hasArray() ? bytes : bytes / 16;
+    }
+
+    /**
+     * Identifies a tile in the cache: tiles of different resolutions are
+     * stored independently
+     */
+    protected static final class TileKey {
+
+        protected final SrtmResolution res;
+        protected final CoordinateInt coord;
+
+        public TileKey(SrtmResolution res, CoordinateInt coord) {
+            this.res = res;
+            this.coord = coord;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * res.hashCode() + coord.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof TileKey)) {
+                return false;
+            }
+            TileKey other = (TileKey) obj;
+            return res == other.res && coord.equals(other.coord);
+        }
+
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map.relief.srtm;
+
+import java.io.File;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.nx42.maps4cim.util.gis.Area;
+
+/**
+ * Provides SRTM tiles from a local directory, without any downloads
+ * (e.g. for offline use or tests).
+ *
+ * The tiles may be stored as zip archives or as raw .hgt files and are
+ * searched in this order:
+ * <ul>
+ * <li>N47E011.SRTMGL3.hgt.zip (the name of the USGS downloads)</li>
+ * <li>N47E011.hgt.zip</li>
+ * <li>N47E011.hgt</li>
+ * </ul>
+ * All tiles in the directory must have the same resolution.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class TileDirectory extends TileDownload {
+
+    private static final Logger log = LoggerFactory.getLogger(TileDirectory.class);
+
+    /** the directory that contains the tiles */
+    protected final File dir;
+
+    /**
+     * Creates a new tile provider for the specified directory
+     * @param dir the directory that contains the tiles
+     * @param resolution the resolution of the tiles in the directory
+     */
+    public TileDirectory(File dir, SrtmResolution resolution) {
+        super(resolution);
+        this.dir = dir;
+    }
+
+    @Override
+    public boolean exists(int lat, int lon) {
+        return findTile(lat, lon) != null;
+    }
+
+    @Override
+    public File getTile(int lat, int lon) {
+        File tile = findTile(lat, lon);
+        if(tile == null) {
+            log.warn("Tile ({},{}) was not found in {}", lat, lon, dir);
+        }
+        return tile;
+    }
+
+    /**
+     * Includes the name, size and last modification of each tile, so any
+     * change of the tiles in the directory is noticed
+     */
+    @Override
+    public String getSource(Area ar) {
+        StringBuilder sb = new StringBuilder(super.getSource(ar));
+        sb.append(':').append(dir.getAbsolutePath());
+        for (CoordinateInt[] row : getCoordinates(ar)) {
+            for (CoordinateInt c : row) {
+                File tile = findTile(c.lat, c.lon);
+                sb.append(':').append(tile == null ? "-" : String.format("%s/%s/%s",
+                        tile.getName(), tile.length(), tile.lastModified()));
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    protected boolean isCached(int lat, int lon) {
+        return true;
+    }
+
+    /**
+     * @return the directory that contains the tiles
+     */
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Searches the directory for the specified tile
+     * @param lat the latitude of the tile
+     * @param lon the longitude of the tile
+     * @return the tile or null, if it does not exist
+     */
+    protected File findTile(int lat, int lon) {
+        String name = getNonationNSEW(lat, lon);
+        String[] candidates = {
+            name + "." + resolution.getDataset() + ".hgt.zip",
+            name + ".hgt.zip",
+            name + ".hgt"
+        };
+        for (String candidate : candidates) {
+            File f = new File(dir, candidate);
+            if(f.isFile()) {
+                return f;
+            }
+        }
+        return null;
+    }
+
+}
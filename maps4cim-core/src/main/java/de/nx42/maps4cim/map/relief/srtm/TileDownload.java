@@ -18,41 +18,158 @@ package de.nx42.maps4cim.map.relief.srtm;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.text.ParseException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import de.nx42.maps4cim.map.Cache;
 import de.nx42.maps4cim.util.gis.Area;
 
 /**
  * Download and cache required SRTM tiles
+ *
+ * Tiles that are requested through {@link #getTile(CoordinateInt)} or
+ * {@link #getTiles(CoordinateInt...)} are retrieved only once, even if they
+ * are requested by several threads at the same time: all of them wait for
+ * the same retrieval. Tiles that are already cached are returned
+ * immediately, missing tiles are downloaded concurrently, with at most
+ * {@link #getParallelism()} downloads at a time. If all threads that wait
+ * for a download are interrupted, the download is cancelled.
  */
 public abstract class TileDownload {
     
     private static final Logger log = LoggerFactory.getLogger(TileDownload.class);
 
+    /** default number of concurrent downloads */
+    public static final int defaultParallelism = 4;
+
     protected final Cache cache = new Cache();
 
+    /** the resolution of the tiles */
+    protected final SrtmResolution resolution;
+    /** tiles that are currently retrieved */
+    protected final ConcurrentMap<CoordinateInt, Retrieval> pending =
+            new ConcurrentHashMap<CoordinateInt, Retrieval>();
+    /** the maximum number of concurrent downloads */
+    protected int parallelism = defaultParallelism;
+    /** executes the downloads (created on demand) */
+    protected ThreadPoolExecutor downloads;
+
+    /**
+     * Creates a new tile download for SRTM3 tiles
+     */
+    public TileDownload() {
+        this(SrtmResolution.SRTM3);
+    }
+
+    /**
+     * Creates a new tile download for tiles of the specified resolution
+     * @param resolution the resolution of the tiles
+     */
+    public TileDownload(SrtmResolution resolution) {
+        this.resolution = resolution;
+    }
+
+    /**
+     * @return the resolution of the tiles
+     */
+    public SrtmResolution getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Describes where the tiles that cover the specified area come from, so
+     * data that was generated from them can be told apart from data of other
+     * sources (e.g. in the {@link de.nx42.maps4cim.map.SectionCache}).
+     * No tiles are downloaded.
+     * @param ar the area that is covered by the tiles
+     * @return a description of the source of the tiles
+     */
+    public String getSource(Area ar) {
+        return getClass().getSimpleName() + ":" + resolution;
+    }
+
     public boolean exists(double lat, double lon) {
         return exists(floor(lat), floor(lon));
     }
 
     public abstract boolean exists(int lat, int lon);
 
+    /**
+     * Retrieves all tiles that are required to cover the specified area,
+     * see {@link #getTiles(CoordinateInt...)}
+     * @param ar the area to cover
+     * @return the tiles, addressed like {@link #getCoordinates(Area)}
+     * @throws IOException if a tile can't be retrieved
+     */
     public File[][] getTiles(Area ar) throws IOException {
         CoordinateInt[][] coords = getCoordinates(ar);
-        File[][] tiles = new File[coords.length][coords[0].length];
+        int lenX = coords[0].length;
+        CoordinateInt[] flat = new CoordinateInt[coords.length * lenX];
         for (int i = 0; i < coords.length; i++) {
-            for (int j = 0; j < coords[i].length; j++) {
-                tiles[i][j] = getTile(coords[i][j]);
-            }
+            System.arraycopy(coords[i], 0, flat, i * lenX, lenX);
+        }
+
+        File[] files = getTiles(flat);
+        File[][] tiles = new File[coords.length][lenX];
+        for (int i = 0; i < coords.length; i++) {
+            System.arraycopy(files, i * lenX, tiles[i], 0, lenX);
         }
         return tiles;
     }
+
+    /**
+     * Retrieves the specified tiles. Cached tiles are returned immediately,
+     * all others are downloaded concurrently. Blocks until all tiles are
+     * available. If the current thread is interrupted, the downloads that
+     * are not required by any other thread are cancelled.
+     * @param coords the coordinates of the tiles
+     * @return the tiles, in the same order as the coordinates (tiles that
+     * are not available may be null, depending on the implementation)
+     * @throws IOException if a tile can't be retrieved
+     * @throws InterruptedIOException if the current thread was interrupted
+     */
+    public File[] getTiles(CoordinateInt... coords) throws IOException {
+        Retrieval[] retrievals = new Retrieval[coords.length];
+        try {
+            for (int i = 0; i < coords.length; i++) {
+                retrievals[i] = retrieve(coords[i]);
+            }
+            File[] tiles = new File[coords.length];
+            for (int i = 0; i < coords.length; i++) {
+                tiles[i] = retrievals[i].await();
+            }
+            return tiles;
+        } finally {
+            for (Retrieval retrieval : retrievals) {
+                if (retrieval != null) {
+                    retrieval.release();
+                }
+            }
+        }
+    }
     
-    static CoordinateInt[][] getCoordinates(Area ar) {
+    /**
+     * Calculates the coordinates of all tiles that are required to cover
+     * the specified area. The first index of the result is the latitude
+     * (south to north), the second the longitude (west to east).
+     * @param ar the area to cover
+     * @return the coordinates of the required tiles
+     */
+    public static CoordinateInt[][] getCoordinates(Area ar) {
         int minLat = floor(ar.getMinLat());
         int maxLat = (int) Math.ceil(ar.getMaxLat());
         int minLon = floor(ar.getMinLon());
@@ -71,16 +188,123 @@ public abstract class TileDownload {
         return coords;
     }
     
+    /**
+     * Retrieves a single tile. If the same tile is already retrieved by
+     * another thread, this thread waits for the result.
+     * @param c the coordinate of the tile
+     * @return the tile (may be null if it is not available, depending on the
+     * implementation)
+     * @throws IOException if the tile can't be retrieved
+     * @throws InterruptedIOException if the current thread was interrupted
+     */
     public File getTile(CoordinateInt c) throws IOException {
-        return getTile(c.lat, c.lon);
+        Retrieval retrieval = retrieve(c);
+        try {
+            return retrieval.await();
+        } finally {
+            retrieval.release();
+        }
     }
 
     public File getTile(double lat, double lon) throws IOException {
-        return getTile(floor(lat), floor(lon));
+        return getTile(new CoordinateInt(floor(lat), floor(lon)));
     }
 
+    /**
+     * Retrieves a single tile, either from the cache or by downloading it.
+     * Does not check whether the same tile is already retrieved by another
+     * thread, use {@link #getTile(CoordinateInt)} instead.
+     * @param lat the latitude of the tile
+     * @param lon the longitude of the tile
+     * @return the tile (may be null if it is not available, depending on the
+     * implementation)
+     * @throws IOException if the tile can't be retrieved
+     */
     public abstract File getTile(int lat, int lon) throws IOException;
 
+    /**
+     * Checks whether the specified tile can be retrieved without a download.
+     * Such tiles are retrieved in the calling thread.
+     * @param lat the latitude of the tile
+     * @param lon the longitude of the tile
+     * @return true, if the tile is cached (false by default)
+     */
+    protected boolean isCached(int lat, int lon) {
+        return false;
+    }
+
+    /**
+     * Sets the maximum number of tiles that are downloaded at the same time
+     * @param parallelism the maximum number of concurrent downloads (>= 1)
+     */
+    public synchronized void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("at least one download is required");
+        }
+        this.parallelism = parallelism;
+        if (downloads != null) {
+            if (parallelism > downloads.getMaximumPoolSize()) {
+                downloads.setMaximumPoolSize(parallelism);
+                downloads.setCorePoolSize(parallelism);
+            } else {
+                downloads.setCorePoolSize(parallelism);
+                downloads.setMaximumPoolSize(parallelism);
+            }
+        }
+    }
+
+    /**
+     * @return the maximum number of tiles that are downloaded at the same time
+     */
+    public synchronized int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns the running retrieval of the specified tile or starts a new one.
+     * The caller is registered as waiting for the result and must call
+     * {@link Retrieval#release()} when it no longer needs it.
+     * @param c the coordinate of the tile
+     * @return the retrieval of the tile
+     */
+    protected Retrieval retrieve(CoordinateInt c) {
+        while (true) {
+            Retrieval running = pending.get(c);
+            if (running == null) {
+                Retrieval created = new Retrieval(c);
+                running = pending.putIfAbsent(c, created);
+                if (running == null) {
+                    created.acquire();
+                    if (isCached(c.lat, c.lon)) {
+                        created.run();
+                    } else {
+                        getExecutor().execute(created);
+                    }
+                    return created;
+                }
+            }
+            if (running.acquire()) {
+                return running;
+            }
+            // cancelled just now, start over
+            pending.remove(c, running);
+        }
+    }
+
+    /**
+     * @return the executor for downloads; idle threads are terminated
+     */
+    protected synchronized ThreadPoolExecutor getExecutor() {
+        if (downloads == null) {
+            downloads = new ThreadPoolExecutor(parallelism, parallelism, 10,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactoryBuilder().setNameFormat("maps4cim-download-%d")
+                            .setDaemon(true).build());
+            downloads.allowCoreThreadTimeOut(true);
+        }
+        return downloads;
+    }
+
     protected static CoordinateInt parseCoordinate(String hgtFileName) throws ParseException {
 
         /*
@@ -168,7 +392,90 @@ public abstract class TileDownload {
         return sb.toString();
     }
 
-    protected static class CoordinateInt {
+    /**
+     * The retrieval of a single tile, which may be shared by several threads.
+     * It is cancelled when the last thread that waits for it is released
+     * before it has finished.
+     */
+    protected class Retrieval extends FutureTask<File> {
+
+        protected final CoordinateInt coord;
+        /** the number of threads that wait for the result */
+        protected int waiting = 0;
+
+        public Retrieval(final CoordinateInt coord) {
+            super(new Callable<File>() {
+                @Override
+                public File call() throws IOException {
+                    return getTile(coord.lat, coord.lon);
+                }
+            });
+            this.coord = coord;
+        }
+
+        /**
+         * Registers another thread that waits for the result
+         * @return false, if this retrieval has been cancelled already
+         */
+        protected synchronized boolean acquire() {
+            if (isCancelled()) {
+                return false;
+            }
+            waiting++;
+            return true;
+        }
+
+        /**
+         * Unregisters a thread that waited for the result. Cancels the
+         * retrieval, if no other thread waits for it.
+         */
+        protected synchronized void release() {
+            waiting--;
+            if (waiting == 0 && !isDone()) {
+                log.debug("Download of SRTM tile ({},{}) has been cancelled", coord.lat, coord.lon);
+                cancel(true);
+            }
+        }
+
+        /**
+         * Waits for the tile and unwraps any exception
+         * @return the tile
+         * @throws IOException if the tile could not be retrieved
+         * @throws InterruptedIOException if the current thread was
+         * interrupted or the retrieval was cancelled
+         */
+        protected File await() throws IOException {
+            try {
+                return get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for SRTM tile " + coord);
+            } catch (CancellationException e) {
+                throw new InterruptedIOException("Retrieval of SRTM tile " + coord + " has been cancelled");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+
+        @Override
+        protected void done() {
+            pending.remove(coord, this);
+        }
+
+    }
+
+    /**
+     * The integer coordinate of a tile (it's southwest corner)
+     */
+    public static class CoordinateInt {
         public final int lat;
         public final int lon;
         public CoordinateInt(int lat, int lon) {
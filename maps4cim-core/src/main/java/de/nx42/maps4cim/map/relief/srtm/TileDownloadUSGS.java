@@ -20,7 +20,9 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URISyntaxException;
 import java.net.URL;
 
@@ -33,6 +35,7 @@ import com.google.common.io.Resources;
 import de.nx42.maps4cim.ResourceLoader;
 import de.nx42.maps4cim.map.Cache;
 import de.nx42.maps4cim.util.Network;
+import de.nx42.maps4cim.util.gis.Area;
 
 /**
  * Download and cache required SRTM tiles
@@ -45,8 +48,53 @@ public class TileDownloadUSGS extends TileDownload {
      * Base-URL: https://opendap.cr.usgs.gov/opendap/hyrax/DP109/SRTM/SRTMGL3.003/contents.html
      */
 
+    /** connection timeout for downloads, in seconds */
+    protected static final double connTimeout = 30;
+    /** read timeout for downloads, in seconds (also limits how long a
+     *  cancelled download may block a thread) */
+    protected static final double readTimeout = 60;
+
     protected final Cache cache = new Cache();
 
+    /** the location of the tiles */
+    protected final URL baseUrl;
+
+    /**
+     * Creates a new tile downloader for SRTM3 tiles from the USGS servers
+     */
+    public TileDownloadUSGS() {
+        this(SrtmResolution.SRTM3);
+    }
+
+    /**
+     * Creates a new tile downloader for the USGS servers
+     * @param resolution the resolution of the tiles
+     */
+    public TileDownloadUSGS(SrtmResolution resolution) {
+        this(getDefaultBaseUrl(resolution), resolution);
+    }
+
+    /**
+     * Creates a new tile downloader for SRTM3 tiles from a mirror of the
+     * USGS servers
+     * @param baseUrl the location of the tiles (the directory that contains
+     * the zipped tiles, ending with a slash)
+     */
+    public TileDownloadUSGS(URL baseUrl) {
+        this(baseUrl, SrtmResolution.SRTM3);
+    }
+
+    /**
+     * Creates a new tile downloader for a mirror of the USGS servers
+     * @param baseUrl the location of the tiles (the directory that contains
+     * the zipped tiles, ending with a slash)
+     * @param resolution the resolution of the tiles
+     */
+    public TileDownloadUSGS(URL baseUrl, SrtmResolution resolution) {
+        super(resolution);
+        this.baseUrl = baseUrl;
+    }
+
     protected static Table<Integer,Integer,DownloadURL> loadMapping() {
     	try(InputStream serialized = ResourceLoader.getMappingSRTM();) {
     	    Table<Integer,Integer,DownloadURL> mapping = ResourceLoader.deserializeObject(serialized);
@@ -61,6 +109,11 @@ public class TileDownloadUSGS extends TileDownload {
     	throw new RuntimeException("Could not load SRTM Download-URL mapping!");
     }
 
+    @Override
+    public String getSource(Area ar) {
+        return super.getSource(ar) + ":" + baseUrl;
+    }
+
     @Override
     public boolean exists(int lat, int lon) {
         throw new RuntimeException("website does not support HEAD requests...");
@@ -75,7 +128,7 @@ public class TileDownloadUSGS extends TileDownload {
         }
 
         // search cache first, then download file if necessary
-    	String entry = DownloadURL.getFileName(lat, lon);
+    	String entry = DownloadURL.getFileName(lat, lon, resolution);
     	if(cache.has(entry)) {
     		log.debug("SRTM Tile ({},{}) has been loaded from cache.", lat, lon);
     		return cache.get(entry);
@@ -83,6 +136,12 @@ public class TileDownloadUSGS extends TileDownload {
             try {
                 log.debug("Downloading SRTM Tile for ({},{}). It will be stored in cache for later use.", lat, lon);
                 return downloadTile(lat, lon);
+            } catch (SocketTimeoutException e) {
+                log.warn("Tile ({},{}) was not found. {}", lat, lon, e.getMessage());
+                return null;
+            } catch (InterruptedIOException e) {
+                // cancelled, don't treat the tile as missing
+                throw e;
             } catch (IOException e) {
                 log.warn("Tile ({},{}) was not found. {}", lat, lon, e.getMessage());
                 return null;
@@ -90,17 +149,26 @@ public class TileDownloadUSGS extends TileDownload {
     	}
     }
 
+    @Override
+    protected boolean isCached(int lat, int lon) {
+        return cache.has(DownloadURL.getFileName(lat, lon, resolution));
+    }
+
     protected File downloadTile(int lat, int lon) throws IOException {
         URL src = getDownloadURL(lat, lon);
-        File temp = cache.allocate(DownloadURL.getFileName(lat, lon));
-        Network.downloadToFile(src, temp);
-        File dest = cache.moveToCache(temp, true);
-        return dest;
+        File temp = cache.allocate(DownloadURL.getFileName(lat, lon, resolution));
+        try {
+            Network.downloadToFile(src, temp, connTimeout, readTimeout);
+            return cache.moveToCache(temp, true);
+        } finally {
+            // remove incomplete downloads
+            temp.delete();
+        }
     }
 
     protected URL getDownloadURL(int lat, int lon) {
     	try {
-			return DownloadURL.getUrl(lat, lon);
+			return new URL(baseUrl, DownloadURL.getFileName(lat, lon, resolution));
 		} catch (MalformedURLException e) {
 			log.error(String.format("Could not create a valid SRTM download URL " +
 					"for (%s,%s).", lat, lon), e);
@@ -108,23 +176,47 @@ public class TileDownloadUSGS extends TileDownload {
 		}
     }
 
+    protected static URL getDefaultBaseUrl(SrtmResolution resolution) {
+        try {
+            return DownloadURL.getIndexURL(resolution);
+        } catch (MalformedURLException e) {
+            throw new RuntimeException("Invalid SRTM download URL", e);
+        }
+    }
+
     protected static class DownloadURL {
 
         protected static final String protocol = "https";
         protected static final String host = "opendap.cr.usgs.gov";
-        protected static final String fileStart = "/opendap/hyrax/DP109/SRTM/SRTMGL3.003/2000.02.11/";
-        protected static final String ext = ".SRTMGL3.hgt.zip";
+        protected static final String fileStart = "/opendap/hyrax/DP109/SRTM/%s.003/2000.02.11/";
+        protected static final String ext = ".%s.hgt.zip";
 
         public static URL getUrl(int lat, int lon) throws MalformedURLException {
-            return new URL(protocol, host, fileStart + getNonationNSEW(lat, lon) + ext);
+            return getUrl(lat, lon, SrtmResolution.SRTM3);
+        }
+
+        public static URL getUrl(int lat, int lon, SrtmResolution res) throws MalformedURLException {
+            return new URL(protocol, host, getPath(res) + getFileName(lat, lon, res));
         }
 
         public static URL getIndexURL() throws MalformedURLException {
-            return new URL(protocol, host, fileStart);
+            return getIndexURL(SrtmResolution.SRTM3);
+        }
+
+        public static URL getIndexURL(SrtmResolution res) throws MalformedURLException {
+            return new URL(protocol, host, getPath(res));
         }
 
         public static String getFileName(int lat, int lon) {
-        	return getNonationNSEW(lat, lon) + ext;
+        	return getFileName(lat, lon, SrtmResolution.SRTM3);
+        }
+
+        public static String getFileName(int lat, int lon, SrtmResolution res) {
+            return getNonationNSEW(lat, lon) + String.format(ext, res.getDataset());
+        }
+
+        protected static String getPath(SrtmResolution res) {
+            return String.format(fileStart, res.getDataset());
         }
     }
 
@@ -32,6 +32,7 @@ import de.nx42.maps4cim.map.TextureMap;
 import de.nx42.maps4cim.map.ex.TextureProcessingException;
 import de.nx42.maps4cim.map.texture.data.Texture;
 import de.nx42.maps4cim.util.ImageJUtils;
+import de.nx42.maps4cim.util.arr2d.IntGrid;
 
 public class ImageTexture extends TextureMap {
 
@@ -95,7 +96,7 @@ public class ImageTexture extends TextureMap {
 
 
 	@Override
-	public int[][] generateTexture() throws TextureProcessingException {
+	public IntGrid generateTexture() throws TextureProcessingException {
         log.debug("Generating texture map from a {} image with {}×{} pixels.",
                 ImageJUtils.hasColorChannels(img) ? "colored" : "grayscale",
                 img.getWidth(), img.getHeight());
@@ -110,29 +111,27 @@ public class ImageTexture extends TextureMap {
             }
         }
 
-        // transform to 2d float-array
-        int[][] imgArr2D = ip.getIntArray();
-
-        // transform colors and rotate
-        int[][] texture = null;
+        // transform colors and flip
+        IntGrid texture = null;
         if(ImageJUtils.hasColorChannels(img)) {
-            texture = transformColorTexture(imgArr2D);
+            texture = transformColorTexture(ip);
         } else {
-            texture = transformGrayscaleTexture(imgArr2D);
+            texture = transformGrayscaleTexture(ip);
         }
 
         return texture;
 	}
 
-	protected int[][] transformColorTexture(int[][] image) {
+	protected IntGrid transformColorTexture(ImageProcessor image) {
         int maxIdx = edgeLength - 1;
-	    int[][] adjusted = new int[edgeLength][edgeLength];
+	    IntGrid adjusted = IntGrid.allocate(edgeLength, edgeLength);
 
-        for (int y = 0; y < image.length; y++) {
-            for (int x = 0; x < image[y].length; x++) {
+        for (int y = 0; y < edgeLength; y++) {
+            int row = maxIdx - y;
+            for (int x = 0; x < edgeLength; x++) {
 
-                // retrieve RGB components
-                int argb = image[y][maxIdx- x];
+                // retrieve RGB components (image rows are stored top to bottom)
+                int argb = image.getPixel(x, row);
 
                 int r = (argb) & 0xFF;
                 int g = (argb>>8) & 0xFF;
@@ -179,23 +178,24 @@ public class ImageTexture extends TextureMap {
 
                 // combine and save
                 int texColor = Texture.mixAddBase(texRed, texGreen, texBlue);
-                adjusted[y][x] = Texture.mixAddBase(texBlack, texWhite, texColor);
+                adjusted.set(x, y, Texture.mixAddBase(texBlack, texWhite, texColor));
             }
         }
 
 	    return adjusted;
 	}
 
-	protected int[][] transformGrayscaleTexture(int[][] image) {
+	protected IntGrid transformGrayscaleTexture(ImageProcessor image) {
 	    int maxIdx = edgeLength - 1;
 	    float maxValue = (float) Math.pow(2, img.getBitDepth());
-        int[][] adjusted = new int[edgeLength][edgeLength];
+        IntGrid adjusted = IntGrid.allocate(edgeLength, edgeLength);
 
-        for (int y = 0; y < image.length; y++) {
-            for (int x = 0; x < image[y].length; x++) {
+        for (int y = 0; y < edgeLength; y++) {
+            int row = maxIdx - y;
+            for (int x = 0; x < edgeLength; x++) {
 
-                // retrieve grayscale value
-                int value = image[y][maxIdx- x];
+                // retrieve grayscale value (image rows are stored top to bottom)
+                int value = image.getPixel(x, row);
                 float relValue = value / maxValue;
 
                 // generate the actual colors
@@ -203,7 +203,7 @@ public class ImageTexture extends TextureMap {
                 int texWhite = Texture.draw(white, relValue);
 
                 // combine and save
-                adjusted[y][x] = Texture.mixAddBase(texBlack, texWhite);
+                adjusted.set(x, y, Texture.mixAddBase(texBlack, texWhite));
             }
         }
 
@@ -18,43 +18,65 @@ package de.nx42.maps4cim.map.texture;
 
 import static de.nx42.maps4cim.util.math.MathExt.rounds;
 
-import java.awt.image.DataBufferInt;
-import java.awt.image.Raster;
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.nx42.maps4cim.config.Config;
+import de.nx42.maps4cim.config.texture.ColorDef;
 import de.nx42.maps4cim.config.texture.OsmDef;
 import de.nx42.maps4cim.config.texture.OsmFileDef;
+import de.nx42.maps4cim.config.texture.osm.EntityDef;
+import de.nx42.maps4cim.config.texture.osm.NodeDef;
+import de.nx42.maps4cim.config.texture.osm.WayDef;
+import de.nx42.maps4cim.map.MapResources;
+import de.nx42.maps4cim.map.SectionCache;
 import de.nx42.maps4cim.map.TextureMap;
 import de.nx42.maps4cim.map.ex.TextureProcessingException;
-import de.nx42.maps4cim.map.texture.data.Texture;
 import de.nx42.maps4cim.map.texture.osm.EntityConverter;
+import de.nx42.maps4cim.map.texture.osm.OsmHash;
 import de.nx42.maps4cim.map.texture.osm.OverpassBridge;
 import de.nx42.maps4cim.map.texture.osm.RenderContainer;
 import de.nx42.maps4cim.map.texture.osm.SimpleOsmDump;
-import de.nx42.maps4cim.map.texture.osm.TileRenderer;
+import de.nx42.maps4cim.map.texture.osm.TagFilter;
+import de.nx42.maps4cim.map.texture.osm.TextureRenderer;
+import de.nx42.maps4cim.map.texture.osm.extract.ExtractStore;
+import de.nx42.maps4cim.map.texture.osm.pbf.PbfReader;
+import de.nx42.maps4cim.util.arr2d.IntGrid;
 import de.nx42.maps4cim.util.gis.Area;
+import de.nx42.maps4cim.util.metrics.Metrics;
+import de.nx42.maps4cim.util.metrics.Stage;
 
 
 public class OsmTexture extends TextureMap {
 
     private static final Logger log = LoggerFactory.getLogger(TextureMap.class);
 
+    /** increment whenever the rendered textures change, so they are not
+     *  taken from the section cache anymore */
+    protected static final int renderVersion = 1;
+
     protected OsmDef osm;
     protected Area bounds;
+    protected MapResources resources;
 
     protected boolean sourceOsmFile;
     protected OsmFileDef osmFile;
 
 
     public OsmTexture(Config config) {
+        this(config, new MapResources());
+    }
+
+    public OsmTexture(Config config, MapResources resources) {
         log.debug("Using OpenStreetMap as source for the map's texture");
         this.bounds = Area.of(config.getBoundsTrans());
+        this.resources = resources;
 
         if(config.getTextureTrans() instanceof OsmDef) {
             this.osm = (OsmDef) config.getTextureTrans();
@@ -69,7 +91,7 @@ public class OsmTexture extends TextureMap {
 
 
     @Override
-    public int[][] generateTexture() throws TextureProcessingException {
+    public IntGrid generateTexture() throws TextureProcessingException {
 
         // just draw some grass, if no texture is defined
         try {
@@ -102,94 +124,239 @@ public class OsmTexture extends TextureMap {
     	    osmDump = retrieveOsmData();
     	}
 
-    	Raster ras = drawImage(osmDump);
-
-    	log.debug("Converting rendered image to native CiM2-Texture data");
-        return convertImage(ras);
+    	return renderTexture(osmDump);
     }
 
-    protected int[][] fallBackToGrass() {
+    protected IntGrid fallBackToGrass() {
         log.info("No data has been defined for the ground texture, I'll just draw some grass...");
         SingleTexture st = new SingleTexture();
         return st.generateTexture();
     }
 
+    /**
+     * Describes everything the rendered texture depends on: the source data
+     * (the OSM file or the cached response of the Overpass API), the exact
+     * bounds of the map, the colors and the entity definitions (in order,
+     * with their stroke widths and radii).
+     * @return the key of the texture in the section cache, or null if the
+     * texture can't be cached (yet)
+     * @throws TextureProcessingException if the query hash can't be created
+     */
+    @Override
+    public String sectionKey() throws TextureProcessingException {
+        if(osm.entities == null || osm.entities.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder("osm:").append(renderVersion);
+        if(sourceOsmFile) {
+            File osmXml = new File(osmFile.osmXmlFilePath);
+            if(!osmXml.isFile()) {
+                return null;
+            }
+            sb.append(String.format(":file:%s:%s:%s", osmXml.getAbsolutePath(),
+                    osmXml.lastModified(), osmXml.length()));
+        } else {
+            // the texture is only valid as long as the downloaded data
+            OsmHash hash = new OverpassBridge(bounds, osm).getHash();
+            if(!hash.isCached()) {
+                return null;
+            }
+            sb.append(":overpass:").append(hash.getQueryHash())
+              .append(':').append(hash.getCachedTime());
+        }
+        sb.append(':').append(bounds.getStringOverpassBounds());
+
+        if(osm.colors != null) {
+            for (ColorDef c : osm.colors) {
+                sb.append(String.format(":%s=%s/%s/%s/%s/%s/%s", c.name, c.grass,
+                        c.roughGrass, c.mud, c.dirt, c.pavement, c.black));
+            }
+        }
+        for (EntityDef e : osm.entities) {
+            sb.append(String.format(":%s[%s=%s~%s]=%s", e.getClass().getSimpleName(),
+                    e.key, e.value, e.rvalue, e.color));
+            if(e instanceof WayDef) {
+                sb.append('/').append(((WayDef) e).getStrokeWidth());
+            } else if(e instanceof NodeDef) {
+                sb.append('/').append(((NodeDef) e).getRadius());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the section cache of the shared resources
+     */
+    @Override
+    protected SectionCache getSectionCache() {
+        return resources.getSectionCache();
+    }
+
     /**
      * Downloads the OSM data for the current configuration from the Overpass
-     * servers and creates an object representation of the retrieved data
+     * servers and creates an object representation of the retrieved data.
+     * Parsed datasets are shared with all maps that use the same
+     * {@link MapResources}.
      * @return an object representation of the retrieved data
      * @throws TextureProcessingException if something goes wrong while getting
      * the data (either from cache or the overpass servers)
      */
     protected SimpleOsmDump retrieveOsmData() throws TextureProcessingException {
     	// osm.xml: download / get from cache
-        OverpassBridge ob = new OverpassBridge(bounds, osm);
-        File osmXml = ob.getResult();
-        return retrieveOsmData(osmXml);
+        final OverpassBridge ob = new OverpassBridge(bounds, osm);
+        String key = "overpass:" + ob.getHash().getQueryHash() + ":" + filterKey();
+        return retrieveShared(key, new Callable<SimpleOsmDump>() {
+            @Override
+            public SimpleOsmDump call() throws TextureProcessingException {
+                Metrics.Timer timer = metrics.start(Stage.OSM_FETCH);
+                File osmXml = ob.getResult();
+                timer.stop();
+                return parseOsmData(osmXml);
+            }
+        });
     }
 
     /**
-     * Creates an object representation of the specified OSM XML File
+     * Creates an object representation of the specified OSM XML File.
+     * Parsed datasets are shared with all maps that use the same
+     * {@link MapResources}, as long as the file is not modified.
      * @param osmXml the OSM XML file to read from
      * @return an object representation of the specified file
      * @throws TextureProcessingException if parsing of OSM XML fails
      */
-    protected SimpleOsmDump retrieveOsmData(File osmXml) throws TextureProcessingException {
-        log.debug("Parsing OSM XML with a little help from Osmosis API");
+    protected SimpleOsmDump retrieveOsmData(final File osmXml) throws TextureProcessingException {
+        if(osmFile.useIndex(osmXml.length())) {
+            return retrieveIndexed(osmXml);
+        }
+        String key = String.format("file:%s:%s:%s:%s", osmXml.getAbsolutePath(),
+                osmXml.lastModified(), osmXml.length(), filterKey());
+        if(PbfReader.isPbf(osmXml)) {
+            // only the data within the bounds is read from PBF files
+            key += ":" + bounds.getStringOverpassBounds();
+        }
+        return retrieveShared(key, new Callable<SimpleOsmDump>() {
+            @Override
+            public SimpleOsmDump call() throws TextureProcessingException {
+                return parseOsmData(osmXml);
+            }
+        });
+    }
+
+    /**
+     * Reads the data within the bounds of the map from the spatial index of
+     * the specified OSM extract. The extract is imported into the index
+     * first, if this has not been done yet (or if it has been modified).
+     * @param extract the OSM XML or PBF file to read from
+     * @return an object representation of the data within the bounds
+     * @throws TextureProcessingException if the extract or the index can't be read
+     */
+    protected SimpleOsmDump retrieveIndexed(final File extract) throws TextureProcessingException {
+        String key = String.format("extract:%s:%s:%s", ExtractStore.getKey(extract),
+                bounds.getStringOverpassBounds(), filterKey());
+        return retrieveShared(key, new Callable<SimpleOsmDump>() {
+            @Override
+            public SimpleOsmDump call() throws TextureProcessingException {
+                try {
+                    ExtractStore store = new ExtractStore(extract);
+                    Metrics.Timer timer = metrics.start(Stage.OSM_FETCH);
+                    store.ensureImported();
+                    timer.stop();
+                    log.debug("Reading OSM data within the bounds of the map from the spatial index");
+                    timer = metrics.start(Stage.OSM_PARSE);
+                    SimpleOsmDump dump = store.query(bounds, osm);
+                    timer.stop();
+                    return dump;
+                } catch(IOException e) {
+                    throw new TextureProcessingException("The OSM extract "
+                            + extract.getName() + " could not be indexed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * The parsed datasets contain only the entities that match the entity
+     * definitions, so they may only be shared with maps that use the same
+     * definitions (colors and stroke widths don't matter).
+     * @return a key that identifies the entity filters of this texture
+     */
+    protected String filterKey() {
+        return TagFilter.of(osm.entities).getKey();
+    }
 
+    /**
+     * Parses the specified OSM XML (or PBF) File. Only the entities that are
+     * defined in the texture configuration are kept, PBF files are also
+     * limited to the bounds of the map.
+     * @param osmXml the OSM XML or PBF file to read from
+     * @return an object representation of the specified file
+     * @throws TextureProcessingException if parsing of OSM XML fails
+     */
+    protected SimpleOsmDump parseOsmData(File osmXml) throws TextureProcessingException {
         try {
-            return SimpleOsmDump.readOsmXml(osmXml);
+            Metrics.Timer timer = metrics.start(Stage.OSM_PARSE);
+            SimpleOsmDump dump;
+            if(PbfReader.isPbf(osmXml)) {
+                log.debug("Parsing OSM PBF within the bounds of the map");
+                dump = SimpleOsmDump.readOsmPbf(osmXml, bounds, osm);
+            } else {
+                log.debug("Parsing OSM XML with a little help from Osmosis API");
+                dump = SimpleOsmDump.readOsmXml(osmXml, osm);
+            }
+            timer.stop();
+            return dump;
         } catch(OsmosisRuntimeException e) {
             throw new TextureProcessingException(e);
+        } catch(IOException e) {
+            throw new TextureProcessingException("The OSM PBF file "
+                    + osmXml.getName() + " could not be read", e);
         }
     }
 
-    protected Raster drawImage(SimpleOsmDump sink) throws TextureProcessingException {
+    /**
+     * Retrieves a parsed OSM dataset from the shared resources, or loads it
+     * @param key the unique identifier of the dataset
+     * @param loader loads the dataset, if it is not available
+     * @return the parsed dataset (read-only)
+     * @throws TextureProcessingException if the dataset can't be loaded
+     */
+    protected SimpleOsmDump retrieveShared(String key, Callable<SimpleOsmDump> loader)
+            throws TextureProcessingException {
+        try {
+            return resources.getOsmDump(key, loader);
+        } catch (IOException e) {
+            if(e.getCause() instanceof TextureProcessingException) {
+                throw (TextureProcessingException) e.getCause();
+            }
+            throw new TextureProcessingException(e);
+        }
+    }
+
+    /**
+     * Renders the OSM data directly into the native texture format
+     * @param sink the OSM data to render
+     * @return the texture map
+     * @throws TextureProcessingException if the data can't be rendered
+     */
+    protected IntGrid renderTexture(SimpleOsmDump sink) throws TextureProcessingException {
 
         // prepare for rendering
         log.debug("Preparing OSM data for rendering");
-        EntityConverter ec = new EntityConverter(osm, sink);
+        TextureRenderer tr = new TextureRenderer(bounds);
+        Metrics.Timer match = metrics.start(Stage.OSM_MATCH);
+        EntityConverter ec = new EntityConverter(osm, sink, tr.getProjection());
         List<RenderContainer> rcs = ec.buildRenderContainers();
+        match.stop();
 
-        // render image
+        // render texture
         log.debug("Rendering {} layers of OSM data", rcs.size());
-        TileRenderer ir = new TileRenderer(bounds);
+        Metrics.Timer render = metrics.start(Stage.OSM_RENDER);
         for (RenderContainer rc : rcs) {
-            ir.draw(rc);
-        }
-
-        // print resulting image (debugging)
-        //ir.printResult();
-
-        // return image raster
-        return ir.getRaster();
-    }
-
-    protected static int[][] convertImage(Raster ras) {
-
-        final int[] pixels = ((DataBufferInt) ras.getDataBuffer()).getData();
-        final int width = ras.getWidth();
-        final int height = ras.getHeight();
-
-        int[][] result = new int[height][width];
-        for (int y = 0; y < edgeLength; y++) {
-            for (int x = 0; x < edgeLength; x++) {
-
-                int argb = pixels[(edgeLength - 1 - x)*edgeLength + y];
-
-                int r = (argb) & 0xFF;
-                int g = (argb>>8) & 0xFF;
-                int b = (argb>>16) & 0xFF;
-                int a = (argb>>24) & 0xFF;
-
-                float alpha = a / 255f;
-                int texture = Texture.draw((int) (r*alpha), (int) (g*alpha), (int) (b*alpha));
-
-                result[y][x] = texture;
-            }
+            tr.draw(rc);
         }
-
-        return result;
+        IntGrid texture = tr.getTexture();
+        render.grid(texture).stop();
+        return texture;
     }
 
 }
@@ -23,6 +23,7 @@ import de.nx42.maps4cim.config.texture.ColorDef;
 import de.nx42.maps4cim.map.TextureMap;
 import de.nx42.maps4cim.map.ex.MapGeneratorException;
 import de.nx42.maps4cim.map.texture.data.Texture;
+import de.nx42.maps4cim.util.arr2d.IntGrid;
 
 /**
  *
@@ -41,14 +42,9 @@ public class SingleTexture extends TextureMap {
     }
 
     @Override
-    public int[][] generateTexture() {
-        int[][] map = new int[edgeLength][edgeLength];
-        for (int y = 0; y < edgeLength; y++) {
-            int[] line = map[y];
-            for (int x = 0; x < edgeLength; x++) {
-                line[x] = groundTexture;
-            }
-        }
+    public IntGrid generateTexture() {
+        IntGrid map = IntGrid.allocate(edgeLength, edgeLength);
+        map.fill(groundTexture);
         return map;
     }
 
@@ -18,6 +18,7 @@ package de.nx42.maps4cim.map.texture;
 
 import de.nx42.maps4cim.map.TextureMap;
 import de.nx42.maps4cim.map.texture.data.Texture;
+import de.nx42.maps4cim.util.arr2d.IntGrid;
 
 /**
  * just some ground texture for test purposes
@@ -28,8 +29,16 @@ public class TestTexture extends TextureMap {
 
 
     @Override
-    public int[][] generateTexture() {
-        return allColorCombinations();
+    public IntGrid generateTexture() {
+        // the test patterns are drawn as map[x][y]
+        int[][] map = allColorCombinations();
+        IntGrid grid = IntGrid.allocate(edgeLength, edgeLength);
+        for (int x = 0; x < edgeLength; x++) {
+            for (int y = 0; y < edgeLength; y++) {
+                grid.set(x, y, map[x][y]);
+            }
+        }
+        return grid;
     }
 
     public int[][] allColorCombinations() {
@@ -0,0 +1,256 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map.texture.osm;
+
+import java.util.Arrays;
+
+import de.nx42.maps4cim.util.gis.Coordinate;
+
+/**
+ * Maps the IDs of OSM nodes to their coordinates, without any objects per
+ * node: IDs, latitudes and longitudes are stored in three primitive arrays,
+ * which form an open addressing hash table with linear probing.
+ *
+ * A node takes 24 bytes in the arrays (32-48 bytes including the free
+ * slots of the table), compared to several hundred bytes for an Osmosis
+ * Node object with it's tags and metadata, which is stored in a HashMap
+ * with boxed Long keys.
+ *
+ * This map is not thread safe while it is modified. Long.MIN_VALUE is not
+ * allowed as ID. The map can hold up to 0.6 * 2^30 nodes, larger sets of
+ * nodes (e.g. of a whole country) must be stored on disk, see
+ * {@link de.nx42.maps4cim.map.texture.osm.extract.NodeStore}.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class CoordinateMap {
+
+    /** marks a free slot in the table */
+    protected static final long free = Long.MIN_VALUE;
+    /** the table is resized, when it is filled above this ratio */
+    protected static final double maxLoad = 0.6;
+    /** the minimum capacity of the table */
+    protected static final int minCapacity = 16;
+    /** the maximum capacity of the table (the largest power of two of an array) */
+    protected static final int maxCapacity = 1 << 30;
+
+    protected long[] ids;
+    protected double[] lats;
+    protected double[] lons;
+    /** capacity - 1, capacity is always a power of two */
+    protected int mask;
+    /** the number of nodes in the map */
+    protected int size;
+    /** the number of nodes that can be stored before the table is resized */
+    protected int threshold;
+
+    /**
+     * Creates a new, empty map
+     */
+    public CoordinateMap() {
+        this(minCapacity);
+    }
+
+    /**
+     * Creates a new, empty map for the expected number of nodes
+     * @param expected the number of nodes that will be stored in the map
+     */
+    public CoordinateMap(int expected) {
+        allocate(tableSize(expected));
+    }
+
+    /**
+     * Stores the coordinate of a node. The previous coordinate is replaced,
+     * if the node is already in the map
+     * @param id the ID of the node
+     * @param lat the latitude of the node
+     * @param lon the longitude of the node
+     * @throws IllegalStateException if the map is full
+     */
+    public void put(long id, double lat, double lon) {
+        if(id == free) {
+            throw new IllegalArgumentException("invalid node ID " + id);
+        }
+        int slot = slot(id);
+        if(ids[slot] == free) {
+            if(size == threshold && ids.length == maxCapacity) {
+                throw new IllegalStateException(String.format("The coordinate map "
+                        + "is full, it can't hold more than %d nodes", size));
+            }
+            ids[slot] = id;
+            if(++size > threshold) {
+                lats[slot] = lat;
+                lons[slot] = lon;
+                rehash(ids.length * 2);
+                return;
+            }
+        }
+        lats[slot] = lat;
+        lons[slot] = lon;
+    }
+
+    /**
+     * @param id the ID of a node
+     * @return true, iff the coordinate of the node is stored in this map
+     */
+    public boolean contains(long id) {
+        return id != free && ids[slot(id)] == id;
+    }
+
+    /**
+     * @param id the ID of a node
+     * @return the coordinate of the node, or null if the node is unknown
+     */
+    public Coordinate get(long id) {
+        if(id == free) {
+            return null;
+        }
+        int slot = slot(id);
+        return ids[slot] == id ? new Coordinate(lats[slot], lons[slot]) : null;
+    }
+
+    /**
+     * Finds the position of a node in this map, to read the coordinates
+     * without creating intermediate objects
+     * @param id the ID of a node
+     * @return the index of the node, or -1 if the node is unknown
+     * @see #getLatitude(int)
+     * @see #getLongitude(int)
+     */
+    public int indexOf(long id) {
+        if(id == free) {
+            return -1;
+        }
+        int slot = slot(id);
+        return ids[slot] == id ? slot : -1;
+    }
+
+    /**
+     * @param index the index of a node, see {@link #indexOf(long)}
+     * @return the latitude of the node
+     */
+    public double getLatitude(int index) {
+        return lats[index];
+    }
+
+    /**
+     * @param index the index of a node, see {@link #indexOf(long)}
+     * @return the longitude of the node
+     */
+    public double getLongitude(int index) {
+        return lons[index];
+    }
+
+    /**
+     * @return the number of nodes in this map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Creates a new map that contains only the specified nodes (as far as
+     * they are known in this map).
+     * @param retain the IDs of the nodes to retain, may contain duplicates
+     * @param count the number of IDs in the array
+     * @return a new map with a subset of the nodes of this map
+     */
+    public CoordinateMap retain(long[] retain, int count) {
+        CoordinateMap result = new CoordinateMap(Math.min(count, size));
+        for (int i = 0; i < count; i++) {
+            long id = retain[i];
+            if(id != free) {
+                int slot = slot(id);
+                if(ids[slot] == id) {
+                    result.put(id, lats[slot], lons[slot]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the slot of the node with the specified ID, or the free slot
+     * where it would be stored
+     * @param id the ID of the node
+     * @return the index of the slot in the table
+     */
+    protected int slot(long id) {
+        int slot = hash(id) & mask;
+        while(ids[slot] != free && ids[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    protected void rehash(int capacity) {
+        long[] oldIds = ids;
+        double[] oldLats = lats;
+        double[] oldLons = lons;
+        allocate(capacity);
+        for (int i = 0; i < oldIds.length; i++) {
+            long id = oldIds[i];
+            if(id != free) {
+                int slot = slot(id);
+                ids[slot] = id;
+                lats[slot] = oldLats[i];
+                lons[slot] = oldLons[i];
+            }
+        }
+    }
+
+    protected void allocate(int capacity) {
+        this.ids = new long[capacity];
+        this.lats = new double[capacity];
+        this.lons = new double[capacity];
+        Arrays.fill(ids, free);
+        this.mask = capacity - 1;
+        this.threshold = (int) (capacity * maxLoad);
+    }
+
+    /**
+     * @param expected the number of nodes to store
+     * @return the smallest power of two that can store the nodes without
+     * exceeding the max load
+     * @throws IllegalArgumentException if the nodes exceed the max capacity
+     */
+    protected static int tableSize(int expected) {
+        long required = (long) Math.ceil(expected / maxLoad) + 1;
+        if(required > maxCapacity) {
+            throw new IllegalArgumentException(String.format("The coordinate map "
+                    + "can't hold %d nodes, the limit is %d", expected,
+                    (int) (maxCapacity * maxLoad)));
+        }
+        int capacity = minCapacity;
+        while(capacity < required) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Spreads the bits of the ID, as consecutive IDs are very common
+     * (Fibonacci hashing)
+     * @param id the ID of a node
+     * @return the hash of the ID
+     */
+    protected static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
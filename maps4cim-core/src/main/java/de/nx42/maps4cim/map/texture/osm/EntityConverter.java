@@ -16,14 +16,11 @@
  */
 package de.nx42.maps4cim.map.texture.osm;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
 
 import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
 import org.openstreetmap.osmosis.core.domain.v0_6.Node;
@@ -40,11 +37,16 @@ import de.nx42.maps4cim.map.texture.osm.primitives.Point;
 import de.nx42.maps4cim.map.texture.osm.primitives.Polygon;
 import de.nx42.maps4cim.map.texture.osm.primitives.Polyline;
 import de.nx42.maps4cim.map.texture.osm.primitives.RenderPrimitive;
-import de.nx42.maps4cim.util.gis.Coordinate;
+import de.nx42.maps4cim.util.gis.Projection;
 
 /**
  * Filter and sort OSM Entities, convert them to Render Instructions using
  * the definitions in the program configuration.
+ *
+ * If the entities were already matched against the same definitions while
+ * the OSM data was parsed (see {@link SimpleOsmDump#getMatches(int)}), these
+ * matches are used directly. Otherwise all entities are matched once against
+ * the compiled {@link TagFilter}.
  */
 public class EntityConverter {
 
@@ -53,27 +55,27 @@ public class EntityConverter {
     protected List<EntityDef> defs;
     protected Collection<ColorDef> colors;
     protected SimpleOsmDump sink;
+    protected Projection projection;
 
     // derived
-    List<OverpassTagMatcher> filters = new LinkedList<OverpassTagMatcher>();
-    protected Map<OverpassTagMatcher, EntityDef> filterMap = new HashMap<OverpassTagMatcher, EntityDef>();
-    protected Multimap<EntityDef,Entity> defToEntities;
+    protected TagFilter filter;
+    /** the matching entities for each definition (same index) */
+    protected List<List<Entity>> matches;
 
 
-    public EntityConverter(OsmDef config, SimpleOsmDump sink) {
+    /**
+     * @param config the definition of the entities to render
+     * @param sink the OSM data
+     * @param projection projects the entities into the rendered texture
+     * (see {@link TiledRenderer#getProjection()})
+     */
+    public EntityConverter(OsmDef config, SimpleOsmDump sink, Projection projection) {
         this.osm = config;
         this.defs = osm.entities;
         this.colors = osm.colors;
         this.sink = sink;
-        createFilters();
-    }
-
-    protected void createFilters() {
-        for (EntityDef def : defs) {
-        	OverpassTagMatcher matcher = new OverpassTagMatcher(def);
-            filters.add(matcher);
-            filterMap.put(matcher, def);
-        }
+        this.projection = projection;
+        this.filter = TagFilter.of(defs);
     }
 
 
@@ -90,9 +92,8 @@ public class EntityConverter {
         // create render containers from definitions
         // convert to renderable objects, keep original order (of definitions)
         List<RenderContainer> rc = new LinkedList<RenderContainer>();
-        for (EntityDef def : defs) {
-            Collection<Entity> osmEntities = defToEntities.get(def);
-            Collection<RenderPrimitive> primitives = getRenderPrimitives(def, osmEntities);
+        for (int i = 0; i < defs.size(); i++) {
+            Collection<RenderPrimitive> primitives = getRenderPrimitives(defs.get(i), matches.get(i));
             if(primitives.size() > 0) {
                 rc.add(new RenderContainer(primitives));
             }
@@ -101,20 +102,28 @@ public class EntityConverter {
     }
 
     protected void matchAll() {
-        List<Node> nodes = sink.getNodes();
-        List<Way> ways = sink.getWays();
-
-        this.defToEntities = HashMultimap.create(filters.size(), (nodes.size() + ways.size()) / filters.size());
-
-        matchAll(nodes);
-        matchAll(ways);
+        if(sink.isFiltered() && sink.getFilter().getKey().equals(filter.getKey())) {
+            // already matched while parsing
+            this.matches = new ArrayList<List<Entity>>(defs.size());
+            for (int i = 0; i < defs.size(); i++) {
+                matches.add(sink.getMatches(i));
+            }
+        } else {
+            this.matches = new ArrayList<List<Entity>>(defs.size());
+            for (int i = 0; i < defs.size(); i++) {
+                matches.add(new ArrayList<Entity>());
+            }
+            BitSet matched = new BitSet(defs.size());
+            matchAll(sink.getNodes(), matched);
+            matchAll(sink.getWays(), matched);
+        }
     }
 
-    protected void matchAll(List<? extends Entity> entities) {
+    protected void matchAll(List<? extends Entity> entities, BitSet matched) {
         for (Entity entity : entities) {
-            for (OverpassTagMatcher filter : filters) {
-                if(filter.matches(entity)) {
-                    defToEntities.put(filterMap.get(filter), entity);
+            if(filter.match(entity, matched)) {
+                for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+                    matches.get(i).add(entity);
                 }
             }
         }
@@ -123,7 +132,7 @@ public class EntityConverter {
     protected Collection<RenderPrimitive> getRenderPrimitives(EntityDef def,
             Collection<Entity> osmEntities) throws OsmXmlFormatException {
 
-        List<RenderPrimitive> primitives = new LinkedList<RenderPrimitive>();
+        List<RenderPrimitive> primitives = new ArrayList<RenderPrimitive>(osmEntities.size());
         for (Entity entitiy : osmEntities) {
             primitives.add(getRenderPrimitive(def, entitiy));
         }
@@ -135,22 +144,27 @@ public class EntityConverter {
             // all type conversion errors in this method are unexpected
             if (def instanceof WayDef) {
                 if (osmEntity instanceof Way) {
-                    List<Node> wayNodes = sink.getNodesById((Way) osmEntity);
-                    return new Polyline(Coordinate.convert(wayNodes), colors, (WayDef) def);
+                    Way way = (Way) osmEntity;
+                    float[] xs = new float[way.getWayNodes().size()];
+                    float[] ys = new float[xs.length];
+                    sink.project(way, projection, xs, ys);
+                    return new Polyline(xs, ys, colors, (WayDef) def);
                 } else {
                     throw new OsmXmlFormatException("Unexpected OSM Entity Type.");
                 }
             } else if (def instanceof PolygonDef) {
                 if (osmEntity instanceof Way) {
-                    List<Node> wayNodes = sink.getNodesById((Way) osmEntity);
-                    return new Polygon(Coordinate.convert(wayNodes), colors,
-                            (PolygonDef) def);
+                    Way way = (Way) osmEntity;
+                    float[] xs = new float[way.getWayNodes().size()];
+                    float[] ys = new float[xs.length];
+                    sink.project(way, projection, xs, ys);
+                    return new Polygon(xs, ys, colors, (PolygonDef) def);
                 } else {
                     throw new OsmXmlFormatException("Unexpected OSM Entity Type.");
                 }
             } else if (def instanceof NodeDef) {
                 if (osmEntity instanceof Node) {
-                    return new Point((NodeDef) def, (Node) osmEntity, colors);
+                    return new Point((NodeDef) def, (Node) osmEntity, projection, colors);
                 } else {
                     throw new OsmXmlFormatException("Unexpected OSM Entity Type.");
                 }
@@ -176,6 +176,14 @@ public class OsmHash {
         return cache.has(getCacheFileName(queryHash));
     }
 
+    /**
+     * @return the time the OSM XML was stored in the cache (milliseconds
+     * since the epoch), or 0 if it is not cached
+     */
+    public long getCachedTime() {
+        return cache.getUnchecked(getCacheFileName(queryHash)).lastModified();
+    }
+
     protected File getCached() throws IOException {
         File zipped = cache.get(getCacheFileName(queryHash));
         File unzipped = Cache.temporaray(getXmlFileName(queryHash));
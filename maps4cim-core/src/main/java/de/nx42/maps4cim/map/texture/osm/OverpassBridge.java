@@ -131,7 +131,7 @@ public class OverpassBridge {
 	 * downloading or retrieving data from cache
 	 */
 	public File getResult() throws TextureProcessingException {
-	    OsmHash hash = new OsmHash(bounds, entities, exceedsQueryLimit());
+	    OsmHash hash = getHash();
 
 		if(hash.isCached()) {
 			log.debug("Retrieving Overpass query result from cache.");
@@ -148,6 +148,17 @@ public class OverpassBridge {
 	}
 
 
+	/**
+	 * Calculates the hash that identifies the result of the query for the
+	 * settings of this instance (in the cache and elsewhere)
+	 * @return the hash of the query result
+	 * @throws TextureProcessingException if the hash can't be calculated
+	 */
+	public OsmHash getHash() throws TextureProcessingException {
+	    return new OsmHash(bounds, entities, exceedsQueryLimit());
+	}
+
+
 	// internal
 
 	/**
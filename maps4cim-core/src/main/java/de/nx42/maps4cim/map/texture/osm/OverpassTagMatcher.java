@@ -79,6 +79,15 @@ public class OverpassTagMatcher {
         return false;
     }
 
+    /**
+     * @return a description of this matcher in the style of an overpass
+     * query, e.g. {@code Way[highway~^(primary|secondary)$]}
+     */
+    @Override
+    public String toString() {
+        return type + "[" + key + value + "]";
+    }
+
     protected EntityType inferType(EntityDef def) {
         if(def instanceof NodeDef) {
             return EntityType.Node;
@@ -142,6 +151,10 @@ public class OverpassTagMatcher {
                 return true;
             }
             @Override
+            public String toString() {
+                return "";
+            }
+            @Override
             public String getValue() {
                 return null;
             }
@@ -165,6 +178,11 @@ public class OverpassTagMatcher {
                 return exactMatch;
             }
 
+            @Override
+            public String toString() {
+                return "=" + exactMatch;
+            }
+
             /* (non-Javadoc)
              * @see java.lang.Object#hashCode()
              */
@@ -213,6 +231,11 @@ public class OverpassTagMatcher {
                 return regexMatch.pattern().pattern();
             }
 
+            @Override
+            public String toString() {
+                return "~" + getValue();
+            }
+
             /* (non-Javadoc)
              * @see java.lang.Object#hashCode()
              */
@@ -17,9 +17,12 @@
 package de.nx42.maps4cim.map.texture.osm;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -36,24 +39,91 @@ import org.openstreetmap.osmosis.core.task.v0_6.Sink;
 import org.openstreetmap.osmosis.xml.common.CompressionMethod;
 import org.openstreetmap.osmosis.xml.v0_6.XmlReader;
 
+import de.nx42.maps4cim.config.texture.OsmDef;
 import de.nx42.maps4cim.map.ex.OsmXmlFormatException;
+import de.nx42.maps4cim.map.texture.osm.pbf.PbfReader;
+import de.nx42.maps4cim.util.gis.Area;
+import de.nx42.maps4cim.util.gis.Coordinate;
+import de.nx42.maps4cim.util.gis.Projection;
 
 /**
- * Stores the contents of a OSM XML file in a well accessible object structure.
- * No magic happens here, but all contents are available for further processing
+ * Stores the contents of a OSM XML (or PBF) file in a well accessible object
+ * structure.
+ *
+ * The coordinates of all nodes are kept in a compact {@link CoordinateMap},
+ * so ways can be resolved without storing a Node object for each of their
+ * waypoints. If filters are defined, only the nodes and ways that match at
+ * least one of the filters are kept, everything else is discarded while
+ * the data is streamed into this sink. The retained entities are grouped by
+ * the filters they match (see {@link #getMatches(int)}), so they don't have
+ * to be matched again before rendering. When the input is complete, only
+ * the coordinates of the waypoints of the retained ways are kept.
+ * Relations are only stored, if no filter is defined.
+ *
  * @author Sebastian Straub <sebastian-straub@gmx.net>
  */
 public class SimpleOsmDump implements Sink {
 
-	/** All nodes in this OSM XML */
+    /** The filters that decide which entities to keep (empty: keep all) */
+    protected final TagFilter filter;
+    /** The retained entities, grouped by the index of the matching filter */
+    protected final List<List<Entity>> matches;
+    /** the indices of the filters that match the current entity */
+    protected final BitSet matched = new BitSet();
+
+    /** All (matching) nodes in this OSM XML */
     protected final List<Node> nodes = new LinkedList<Node>();
-    /** All ways in this OSM XML */
+    /** All (matching) ways in this OSM XML */
     protected final List<Way> ways = new LinkedList<Way>();
-    /** All relations in this OSM XML */
+    /** All relations in this OSM XML (only if there are no filters) */
     protected final List<Relation> relations = new LinkedList<Relation>();
 
-    /** Mapping: Node ID -> Node object. Useful to resolve Way -> Node dependencies */
-    protected Map<Long,Node> nodeById  = new HashMap<Long, Node>();
+    /** Mapping: Node ID -> Coordinate. Resolves Way -> Node dependencies */
+    protected CoordinateMap coordinates = new CoordinateMap(1 << 12);
+
+    /** the IDs of all waypoints of the retained ways (with duplicates) */
+    protected long[] wayNodeIds = new long[1 << 12];
+    /** the number of IDs in wayNodeIds */
+    protected int wayNodeCount = 0;
+
+
+    /**
+     * Creates a new sink that stores all entities
+     */
+    public SimpleOsmDump() {
+        this(new TagFilter(Collections.<OverpassTagMatcher>emptyList()));
+    }
+
+    /**
+     * Creates a new sink that stores only the nodes and ways that match at
+     * least one of the specified filters
+     * @param filters the filters to apply (if empty, all entities are stored)
+     */
+    public SimpleOsmDump(Collection<OverpassTagMatcher> filters) {
+        this(new TagFilter(filters));
+    }
+
+    /**
+     * Creates a new sink that stores only the nodes and ways that match at
+     * least one of the matchers of the specified filter
+     * @param filter the filter to apply (if empty, all entities are stored)
+     */
+    public SimpleOsmDump(TagFilter filter) {
+        this.filter = filter;
+        this.matches = new ArrayList<List<Entity>>(filter.size());
+        for (int i = 0; i < filter.size(); i++) {
+            matches.add(new ArrayList<Entity>());
+        }
+    }
+
+    /**
+     * Creates a new sink that stores only the nodes and ways that are
+     * rendered with the specified OSM definition
+     * @param osm the OSM definition with the entities to keep
+     */
+    public SimpleOsmDump(OsmDef osm) {
+        this(TagFilter.of(osm.entities));
+    }
 
     // getters
 
@@ -69,27 +139,94 @@ public class SimpleOsmDump implements Sink {
         return relations;
     }
 
-    public Node getNodeById(long id) {
-        return nodeById.get(id);
+    /**
+     * @return true, iff this sink discards entities that don't match the filters
+     */
+    public boolean isFiltered() {
+        return !filter.isEmpty();
+    }
+
+    /**
+     * @return the filter that was applied to the input
+     */
+    public TagFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * @param index the index of a matcher in the filter of this sink
+     * @return all retained entities that match the specified matcher,
+     * in the order of the input
+     */
+    public List<Entity> getMatches(int index) {
+        return matches.get(index);
+    }
+
+    /**
+     * @param id the ID of a node
+     * @return the coordinate of the node or null, if the node is unknown
+     */
+    public Coordinate getCoordinate(long id) {
+        return coordinates.get(id);
     }
 
-    public Node getNodeById(WayNode wayNode) {
-        return nodeById.get(wayNode.getNodeId());
+    /**
+     * Resolves the coordinates of all waypoints of the specified way
+     * @param way the way to resolve
+     * @return the coordinates of the way's waypoints (in order)
+     * @throws OsmXmlFormatException if a waypoint is not declared
+     */
+    public List<Coordinate> getCoordinates(Way way) throws OsmXmlFormatException {
+        List<Coordinate> coords = new ArrayList<Coordinate>(way.getWayNodes().size());
+        for (WayNode wn : way.getWayNodes()) {
+            Coordinate c = coordinates.get(wn.getNodeId());
+            if(c == null) {
+                throw new OsmXmlFormatException(String.format(
+                        "Error while parsing OSM XML: Node %s in Way %s " +
+                        "(length: %s) is not declared in the document!",
+                        wn.getNodeId(), way.getId(), way.getWayNodes().size()));
+            }
+            coords.add(c);
+        }
+        return coords;
     }
 
-    public List<Node> getNodesById(Way way) throws OsmXmlFormatException {
-        List<Node> wayNodes = new ArrayList<Node>(way.getWayNodes().size());
+    /**
+     * Projects the waypoints of the specified way into the pixel space of
+     * an image, directly from the compact coordinate storage
+     * @param way the way to project
+     * @param projection the projection into the image
+     * @param xs receives the x-coordinates of the waypoints (in order)
+     * @param ys receives the y-coordinates of the waypoints (in order)
+     * @throws OsmXmlFormatException if a waypoint is not declared
+     */
+    public void project(Way way, Projection projection, float[] xs, float[] ys)
+            throws OsmXmlFormatException {
+        int i = 0;
         for (WayNode wn : way.getWayNodes()) {
-            Node n = getNodeById(wn);
-            if(n == null) {
+            int index = coordinates.indexOf(wn.getNodeId());
+            if(index < 0) {
                 throw new OsmXmlFormatException(String.format(
                         "Error while parsing OSM XML: Node %s in Way %s " +
                         "(length: %s) is not declared in the document!",
                         wn.getNodeId(), way.getId(), way.getWayNodes().size()));
             }
-            wayNodes.add(n);
+            xs[i] = (float) projection.x(coordinates.getLongitude(index));
+            ys[i] = (float) projection.y(coordinates.getLatitude(index));
+            i++;
         }
-        return wayNodes;
+    }
+
+    /**
+     * Stores the coordinates of a node without passing the node itself,
+     * for sources that provide the geometry of ways inline (the node is
+     * only used as waypoint)
+     * @param id the ID of the node
+     * @param lat the latitude of the node
+     * @param lon the longitude of the node
+     */
+    public void addCoordinate(long id, double lat, double lon) {
+        coordinates.put(id, lat, lon);
     }
 
     // Sink implementation
@@ -99,17 +236,51 @@ public class SimpleOsmDump implements Sink {
         Entity entity = entityContainer.getEntity();
         if (entity instanceof Node) {
             Node node = (Node) entity;
-            this.nodes.add(node);
-            this.nodeById.put(node.getId(), node);
+            coordinates.put(node.getId(), node.getLatitude(), node.getLongitude());
+            if(accept(node)) {
+                nodes.add(node);
+            }
         } else if (entity instanceof Way) {
             Way way = (Way) entity;
-            ways.add(way);
+            if(accept(way)) {
+                ways.add(way);
+                for (WayNode wn : way.getWayNodes()) {
+                    addWayNode(wn.getNodeId());
+                }
+            }
         } else if (entity instanceof Relation) {
-            Relation rel = (Relation) entity;
-            relations.add(rel);
+            if(!isFiltered()) {
+                relations.add((Relation) entity);
+            }
         }
     }
 
+    /**
+     * Matches the entity against the filter and stores it in the groups
+     * of the matching filters
+     * @param entity the entity to test
+     * @return true, iff there are no filters or any of the filters matches
+     */
+    protected boolean accept(Entity entity) {
+        if(filter.isEmpty()) {
+            return true;
+        }
+        if(!filter.match(entity, matched)) {
+            return false;
+        }
+        for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+            matches.get(i).add(entity);
+        }
+        return true;
+    }
+
+    protected void addWayNode(long id) {
+        if(wayNodeCount == wayNodeIds.length) {
+            wayNodeIds = Arrays.copyOf(wayNodeIds, wayNodeIds.length * 2);
+        }
+        wayNodeIds[wayNodeCount++] = id;
+    }
+
     protected void processRelations() {
         // TODO add relation support or find a lib that handles this
         for (Relation rel : relations) {
@@ -120,17 +291,58 @@ public class SimpleOsmDump implements Sink {
 
     @Override
     public void initialize(Map<String, Object> metaData) { /* unused */ }
+
+    /**
+     * Drops the coordinates of all nodes that are not part of a retained way
+     * (if filters are defined). Nodes and ways arrive in arbitrary order, so
+     * this can't be decided before the input is complete.
+     */
     @Override
-    public void complete() { /* unused */ }
+    public void complete() {
+        if(isFiltered()) {
+            coordinates = coordinates.retain(wayNodeIds, wayNodeCount);
+        }
+        wayNodeIds = new long[0];
+        wayNodeCount = 0;
+    }
+
     @Override
     public void release() { /* unused */ }
 
     // Instantiation
 
     public static SimpleOsmDump readOsmXml(File osmxml) {
+        return readOsmXml(osmxml, new SimpleOsmDump());
+    }
+
+    /**
+     * Reads the specified OSM XML file and keeps only the nodes and ways
+     * that are rendered with the specified OSM definition
+     * @param osmxml the OSM XML file to read (may be compressed with gz or bz2)
+     * @param osm the OSM definition with the entities to keep
+     * @return the filtered contents of the OSM XML file
+     */
+    public static SimpleOsmDump readOsmXml(File osmxml, OsmDef osm) {
+        return readOsmXml(osmxml, new SimpleOsmDump(osm));
+    }
+
+    /**
+     * Reads the contents of the specified OSM PBF file within the bounds
+     * (see {@link PbfReader}) and keeps only the nodes and ways that are
+     * rendered with the specified OSM definition
+     * @param pbf the OSM PBF file to read
+     * @param bounds the bounds of the map
+     * @param osm the OSM definition with the entities to keep
+     * @return the filtered contents of the OSM PBF file
+     * @throws IOException if the file can't be read or is not a valid PBF file
+     */
+    public static SimpleOsmDump readOsmPbf(File pbf, Area bounds, OsmDef osm) throws IOException {
+        SimpleOsmDump sink = new SimpleOsmDump(osm);
+        new PbfReader(pbf, bounds).read(sink);
+        return sink;
+    }
 
-        // Defines the interface for tasks consuming OSM data types.
-        SimpleOsmDump sink = new SimpleOsmDump();
+    protected static SimpleOsmDump readOsmXml(File osmxml, SimpleOsmDump sink) {
 
         // compression (if any)
         CompressionMethod compression = CompressionMethod.None;
@@ -0,0 +1,271 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map.texture.osm;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Ints;
+
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+
+import de.nx42.maps4cim.config.texture.osm.EntityDef;
+
+/**
+ * A set of {@link OverpassTagMatcher}s, compiled into a dispatch table:
+ * for each entity type and tag key, the table stores which matchers accept
+ * any value, a hash map of the exact values and the regular expressions,
+ * which are only evaluated as a fallback.
+ *
+ * So instead of testing each entity against each matcher, only the tags of
+ * the entity are looked up in the table, which makes matching independent
+ * of the number of filters for most entities (and tags).
+ *
+ * The filter is immutable and can be used by multiple threads.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class TagFilter {
+
+    /** the matchers, the index in this list identifies each matcher */
+    protected final List<OverpassTagMatcher> matchers;
+    /** dispatch table: entity type -> tag key -> candidate matchers */
+    protected final Map<EntityType, Map<String, KeyEntry>> table =
+            new EnumMap<EntityType, Map<String, KeyEntry>>(EntityType.class);
+
+    /**
+     * Compiles the specified matchers
+     * @param matchers the matchers to compile, the order is preserved
+     */
+    public TagFilter(Collection<OverpassTagMatcher> matchers) {
+        this.matchers = Collections.unmodifiableList(
+                new ArrayList<OverpassTagMatcher>(matchers));
+        compile();
+    }
+
+    /**
+     * Creates a filter with one matcher for each entity definition
+     * @param defs the entity definitions, the order is preserved
+     * @return the compiled filter
+     */
+    public static TagFilter of(Collection<EntityDef> defs) {
+        List<OverpassTagMatcher> matchers = new ArrayList<OverpassTagMatcher>(defs.size());
+        for (EntityDef def : defs) {
+            matchers.add(new OverpassTagMatcher(def));
+        }
+        return new TagFilter(matchers);
+    }
+
+    protected void compile() {
+        Map<EntityType, Map<String, KeyBuilder>> builders =
+                new EnumMap<EntityType, Map<String, KeyBuilder>>(EntityType.class);
+        for (int i = 0; i < matchers.size(); i++) {
+            OverpassTagMatcher m = matchers.get(i);
+            Map<String, KeyBuilder> keys = builders.get(m.type);
+            if(keys == null) {
+                keys = new HashMap<String, KeyBuilder>();
+                builders.put(m.type, keys);
+            }
+            KeyBuilder kb = keys.get(m.key);
+            if(kb == null) {
+                kb = new KeyBuilder();
+                keys.put(m.key, kb);
+            }
+            kb.add(i, m.value);
+        }
+        for (Map.Entry<EntityType, Map<String, KeyBuilder>> type : builders.entrySet()) {
+            Map<String, KeyEntry> keys = new HashMap<String, KeyEntry>(type.getValue().size() * 2);
+            for (Map.Entry<String, KeyBuilder> key : type.getValue().entrySet()) {
+                keys.put(key.getKey(), key.getValue().build());
+            }
+            table.put(type.getKey(), keys);
+        }
+    }
+
+    /**
+     * @return the number of matchers in this filter
+     */
+    public int size() {
+        return matchers.size();
+    }
+
+    /**
+     * @return the matchers of this filter, in order (read-only)
+     */
+    public List<OverpassTagMatcher> getMatchers() {
+        return matchers;
+    }
+
+    /**
+     * @return true, iff there are no matchers in this filter
+     */
+    public boolean isEmpty() {
+        return matchers.isEmpty();
+    }
+
+    /**
+     * Finds all matchers that accept the specified entity
+     * @param entity the entity to test
+     * @param result receives the indices of the matching matchers (the
+     * bitset is cleared before)
+     * @return true, iff at least one matcher accepts the entity
+     */
+    public boolean match(Entity entity, BitSet result) {
+        result.clear();
+        Map<String, KeyEntry> keys = table.get(entity.getType());
+        if(keys == null) {
+            return false;
+        }
+        for (Tag tag : entity.getTags()) {
+            KeyEntry entry = keys.get(tag.getKey());
+            if(entry != null) {
+                entry.match(tag.getValue(), result);
+            }
+        }
+        return !result.isEmpty();
+    }
+
+    /**
+     * @param entity the entity to test
+     * @return true, iff at least one matcher accepts the entity
+     */
+    public boolean matchesAny(Entity entity) {
+        Map<String, KeyEntry> keys = table.get(entity.getType());
+        if(keys == null) {
+            return false;
+        }
+        for (Tag tag : entity.getTags()) {
+            KeyEntry entry = keys.get(tag.getKey());
+            if(entry != null && entry.matchesAny(tag.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The key identifies the matchers and their order: two filters with the
+     * same key produce the same matches for each entity.
+     * @return a key that identifies this filter
+     */
+    public String getKey() {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (OverpassTagMatcher m : matchers) {
+            hasher.putString(m.toString(), Charsets.UTF_8).putChar('\n');
+        }
+        return hasher.hash().toString();
+    }
+
+
+    /**
+     * The candidate matchers for a single tag key of an entity type
+     */
+    protected static class KeyEntry {
+
+        protected final int[] any;
+        protected final Map<String, int[]> exact;
+        protected final int[] regexIds;
+        protected final Pattern[] regex;
+
+        protected KeyEntry(int[] any, Map<String, int[]> exact, int[] regexIds, Pattern[] regex) {
+            this.any = any;
+            this.exact = exact;
+            this.regexIds = regexIds;
+            this.regex = regex;
+        }
+
+        protected void match(String value, BitSet result) {
+            for (int id : any) {
+                result.set(id);
+            }
+            int[] ids = exact.get(value);
+            if(ids != null) {
+                for (int id : ids) {
+                    result.set(id);
+                }
+            }
+            for (int i = 0; i < regex.length; i++) {
+                if(!result.get(regexIds[i]) && regex[i].matcher(value).find()) {
+                    result.set(regexIds[i]);
+                }
+            }
+        }
+
+        protected boolean matchesAny(String value) {
+            if(any.length > 0 || exact.containsKey(value)) {
+                return true;
+            }
+            for (Pattern p : regex) {
+                if(p.matcher(value).find()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+    /**
+     * Collects the matchers for a single tag key
+     */
+    protected static class KeyBuilder {
+
+        protected final List<Integer> any = new ArrayList<Integer>(1);
+        protected final Map<String, List<Integer>> exact = new HashMap<String, List<Integer>>();
+        protected final List<Integer> regexIds = new ArrayList<Integer>(1);
+        protected final List<Pattern> regex = new ArrayList<Pattern>(1);
+
+        protected void add(int id, OverpassTagMatcher.Value value) {
+            if(value instanceof OverpassTagMatcher.Value.Any) {
+                any.add(id);
+            } else if(value instanceof OverpassTagMatcher.Value.Exact) {
+                List<Integer> ids = exact.get(value.getValue());
+                if(ids == null) {
+                    ids = new ArrayList<Integer>(1);
+                    exact.put(value.getValue(), ids);
+                }
+                ids.add(id);
+            } else {
+                regexIds.add(id);
+                regex.add(Pattern.compile(value.getValue()));
+            }
+        }
+
+        protected KeyEntry build() {
+            Map<String, int[]> exactIds = new HashMap<String, int[]>(exact.size() * 2);
+            for (Map.Entry<String, List<Integer>> e : exact.entrySet()) {
+                exactIds.put(e.getKey(), Ints.toArray(e.getValue()));
+            }
+            return new KeyEntry(Ints.toArray(any), exactIds, Ints.toArray(regexIds),
+                    regex.toArray(new Pattern[regex.size()]));
+        }
+
+    }
+
+}
@@ -0,0 +1,407 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map.texture.osm;
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+import de.nx42.maps4cim.map.texture.data.Texture;
+import de.nx42.maps4cim.map.texture.osm.primitives.Point;
+import de.nx42.maps4cim.map.texture.osm.primitives.Polygon;
+import de.nx42.maps4cim.map.texture.osm.primitives.Polyline;
+import de.nx42.maps4cim.util.arr2d.IntGrid;
+import de.nx42.maps4cim.util.gis.Area;
+
+/**
+ * Renders OSM primitives directly into the native texture format of CiM 2.
+ *
+ * Each pixel of the result holds the four channels of a texture (base,
+ * rough grass, mud and dirt, see {@link Texture}). The texture of each
+ * primitive is blended into all four channels, weighted by the share of the
+ * pixel that is covered by the primitive (antialiasing). The result does
+ * not need to be converted and the base channel is preserved, so pavement
+ * and black are rendered as well.
+ *
+ * The coverage of the pixels is calculated exactly, from the signed area
+ * that each edge of an outline adds to the pixels it crosses, accumulated
+ * along the rows. Java2D is only used to create the outlines of strokes and
+ * circles. The map is divided into tiles that are rendered concurrently
+ * (see {@link TiledRenderer}). Since the coverage does not depend on the
+ * tile, the tiles are exactly the same as if everything was rendered at once.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class TextureRenderer extends TiledRenderer<TextureRenderer.Job> {
+
+    /** the texture of pixels that are not covered by any primitive */
+    public static final int background = Texture.GRASS.draw();
+    /** maximum distance between curves and the lines that replace them, in pixels */
+    protected static final double flatness = 0.1;
+
+    /** the texture, rows are stored bottom to top */
+    protected final int[] texture;
+
+    public TextureRenderer(Area area) {
+        this(CiM2MapSize, CiM2MapSize, area);
+    }
+
+    public TextureRenderer(int width, int height, Area area) {
+        this(width, height, area, defaultTiles());
+    }
+
+    /**
+     * @param width the width of the texture in pixels
+     * @param height the height of the texture in pixels
+     * @param area the area that is covered by the texture
+     * @param tiles the number of tiles along each axis, that are rendered
+     * concurrently (1 to render the whole texture at once)
+     */
+    public TextureRenderer(int width, int height, Area area, int tiles) {
+        super(width, height, area, tiles);
+        this.texture = new int[width * height];
+        Arrays.fill(texture, background);
+    }
+
+
+    @Override
+    public void draw(Polyline way) {
+        if(way.size() < 2)
+            return;
+
+        stroke = new BasicStroke((float) way.getStrokeWidth());
+        Path2D path = toPath(way.getXs(), way.getYs(), Path2D.WIND_NON_ZERO, false);
+        add(new Job(stroke.createStrokedShape(path), way.getColor(), false));
+    }
+
+    @Override
+    public void draw(Polygon polygon) {
+        if(polygon.size() < 2)
+            return;
+
+        Path2D poly = toPath(polygon.getXs(), polygon.getYs(), Path2D.WIND_EVEN_ODD, true);
+        add(new Job(poly, polygon.getColor(), true));
+        add(new Job(stroke.createStrokedShape(poly), polygon.getColor(), false));
+    }
+
+    @Override
+    public void draw(Point point) {
+        double centerX = point.getX();
+        double centerY = point.getY();
+        double cornerX = centerX - point.getRadius();
+        double cornerY = centerY - point.getRadius();
+
+        Ellipse2D circle = new Ellipse2D.Double();
+        circle.setFrameFromCenter(centerX, centerY, cornerX, cornerY);
+
+        add(new Job(circle, point.getColor(), false));
+    }
+
+    /**
+     * Adds an outline to the render queue of all tiles it intersects
+     * @param job the outline to render
+     */
+    protected void add(Job job) {
+        if(job.size > 0) {
+            add(job, job.getPixelBounds());
+        }
+    }
+
+    @Override
+    protected void renderTile(int x, int y, int w, int h, int[] ids, int count) {
+        // two additional columns, which receive the area right of the tile
+        int stride = w + 2;
+        float[] cover = new float[stride * h];
+        for (int i = 0; i < count; i++) {
+            Job job = jobs.get(ids[i]);
+            int colFrom = Math.max(0, (int) Math.floor(job.minX) - x);
+            int colTo = Math.min(stride, (int) Math.ceil(job.maxX) - x + 2);
+            int rowFrom = Math.max(0, (int) Math.floor(job.minY) - y);
+            int rowTo = Math.min(h, (int) Math.ceil(job.maxY) - y + 1);
+            if(colFrom >= w || colFrom >= colTo || rowFrom >= rowTo) {
+                continue;
+            }
+
+            float[] edges = job.edges;
+            for (int e = 0; e < job.size; e += 4) {
+                line(cover, stride, w, h, edges[e] - x, edges[e + 1] - y,
+                        edges[e + 2] - x, edges[e + 3] - y);
+            }
+            for (int row = rowFrom; row < rowTo; row++) {
+                int dest = (height - 1 - y - row) * width + x;
+                blendRow(cover, row * stride, colFrom, colTo, w,
+                        texture, dest, job.texture, job.evenOdd);
+            }
+        }
+    }
+
+    /**
+     * Adds the area that is enclosed by a line and the right border of the
+     * tile to the pixels the line crosses: each pixel receives the part of
+     * the area that is within the pixel, minus the part that is within the
+     * pixel on the left. The coverage of a pixel is the sum of all pixels
+     * left of it in the same row. The area is negative for lines that go
+     * upwards, so it cancels out right of a closed outline.
+     *
+     * Lines are clipped to the tile. Parts of a line left of the tile are
+     * moved onto the left border, as they still cover the row, parts right
+     * of the tile are ignored.
+     *
+     * @param cover the area of each pixel in the tile
+     * @param stride the number of elements per row in cover
+     * @param w the width of the tile
+     * @param h the height of the tile
+     * @param x0 x-coordinate of the start of the line, relative to the tile
+     * @param y0 y-coordinate of the start of the line, relative to the tile
+     * @param x1 x-coordinate of the end of the line, relative to the tile
+     * @param y1 y-coordinate of the end of the line, relative to the tile
+     */
+    protected static void line(float[] cover, int stride, int w, int h,
+            double x0, double y0, double x1, double y1) {
+        if(y0 == y1 || (x0 >= w && x1 >= w)) {
+            return;
+        }
+        // clip at the left and right border of the tile
+        if((x0 < 0 && x1 > 0) || (x0 > 0 && x1 < 0)) {
+            double yc = y0 - x0 * (y1 - y0) / (x1 - x0);
+            line(cover, stride, w, h, x0, y0, 0, yc);
+            line(cover, stride, w, h, 0, yc, x1, y1);
+            return;
+        }
+        if((x0 < w && x1 > w) || (x0 > w && x1 < w)) {
+            double yc = y0 + (w - x0) * (y1 - y0) / (x1 - x0);
+            line(cover, stride, w, h, x0, y0, w, yc);
+            line(cover, stride, w, h, w, yc, x1, y1);
+            return;
+        }
+        if(x0 < 0 || x1 < 0) {
+            x0 = 0;
+            x1 = 0;
+        }
+
+        // always from top to bottom, remember the direction
+        double dir = 1;
+        if(y0 > y1) {
+            double t = x0; x0 = x1; x1 = t;
+            t = y0; y0 = y1; y1 = t;
+            dir = -1;
+        }
+        if(y1 <= 0 || y0 >= h) {
+            return;
+        }
+        double dxdy = (x1 - x0) / (y1 - y0);
+        double x = y0 < 0 ? clamp(x0 - y0 * dxdy, w) : x0;
+        int rowTo = Math.min(h, (int) Math.ceil(y1));
+        for (int row = Math.max(0, (int) Math.floor(y0)); row < rowTo; row++) {
+            int offset = row * stride;
+            double dy = Math.min(row + 1, y1) - Math.max(row, y0);
+            double next = clamp(x + dxdy * dy, w);
+            double d = dy * dir;
+            double left = Math.min(x, next);
+            double right = Math.max(x, next);
+            double leftFloor = Math.floor(left);
+            double rightCeil = Math.ceil(right);
+            int l = (int) leftFloor;
+            int r = (int) rightCeil;
+            if(r <= l + 1) {
+                // within a single pixel
+                double mid = 0.5 * (x + next) - leftFloor;
+                cover[offset + l] += d - d * mid;
+                cover[offset + l + 1] += d * mid;
+            } else {
+                // across several pixels
+                double s = 1 / (right - left);
+                double lf = left - leftFloor;
+                double a0 = 0.5 * s * (1 - lf) * (1 - lf);
+                double rf = right - rightCeil + 1;
+                double am = 0.5 * s * rf * rf;
+                cover[offset + l] += d * a0;
+                if(r == l + 2) {
+                    cover[offset + l + 1] += d * (1 - a0 - am);
+                } else {
+                    double a1 = s * (1.5 - lf);
+                    cover[offset + l + 1] += d * (a1 - a0);
+                    for (int i = l + 2; i < r - 1; i++) {
+                        cover[offset + i] += d * s;
+                    }
+                    double a2 = a1 + (r - l - 3) * s;
+                    cover[offset + r - 1] += d * (1 - a2 - am);
+                }
+                cover[offset + r] += d * am;
+            }
+            x = next;
+        }
+    }
+
+    /**
+     * Limits x to the width of the tile (avoids rounding errors)
+     */
+    private static double clamp(double x, int w) {
+        return x < 0 ? 0 : x > w ? w : x;
+    }
+
+    /**
+     * Accumulates the area of the pixels in a row of the tile and blends the
+     * texture into each pixel, weighted by the coverage of the pixel. The
+     * area is reset to zero.
+     * @param cover the area of each pixel in the tile
+     * @param offset the index of the row in cover
+     * @param from the first column that may have been touched
+     * @param to the column after the last one that may have been touched
+     * @param w the width of the tile (columns from here on are not blended)
+     * @param dest the texture to blend into
+     * @param destOffset the index of the row's first pixel in dest
+     * @param texture the texture to blend
+     * @param evenOdd true for the even-odd rule, false for the non-zero rule
+     */
+    protected static void blendRow(float[] cover, int offset, int from, int to, int w,
+            int[] dest, int destOffset, int texture, boolean evenOdd) {
+        float area = 0;
+        for (int col = from; col < to; col++) {
+            area += cover[offset + col];
+            cover[offset + col] = 0;
+            if(col < w) {
+                float coverage = Math.abs(area);
+                if(evenOdd) {
+                    coverage %= 2;
+                    if(coverage > 1) {
+                        coverage = 2 - coverage;
+                    }
+                } else if(coverage > 1) {
+                    coverage = 1;
+                }
+                int alpha = (int) (coverage * 255 + 0.5f);
+                if(alpha > 0) {
+                    int i = destOffset + col;
+                    dest[i] = blend(dest[i], texture, alpha);
+                }
+            }
+        }
+    }
+
+    /**
+     * Blends each channel of two textures
+     * @param dest the texture below
+     * @param src the texture above
+     * @param alpha the weight of the texture above (0 to 255)
+     * @return the blended texture
+     */
+    protected static int blend(int dest, int src, int alpha) {
+        if(alpha >= 255) {
+            return src;
+        }
+        int beta = 255 - alpha;
+        return  ((((dest       ) & 0xFF) * beta + ((src       ) & 0xFF) * alpha + 127) / 255)
+             |  ((((dest >>>  8) & 0xFF) * beta + ((src >>>  8) & 0xFF) * alpha + 127) / 255) <<  8
+             |  ((((dest >>> 16) & 0xFF) * beta + ((src >>> 16) & 0xFF) * alpha + 127) / 255) << 16
+             |  ((((dest >>> 24) & 0xFF) * beta + ((src >>> 24) & 0xFF) * alpha + 127) / 255) << 24;
+    }
+
+    /**
+     * Renders everything that has been drawn so far
+     * @return the texture (the grid is backed by the renderer, further
+     * drawing will modify it)
+     */
+    public IntGrid getTexture() {
+        render();
+        return IntGrid.wrap(texture, width, height);
+    }
+
+    /**
+     * The outline of a shape as a list of edges, with the texture to render
+     */
+    protected static class Job {
+
+        /** the edges of the outline, as (x0, y0, x1, y1) */
+        protected float[] edges;
+        /** number of elements in edges */
+        protected int size;
+        protected final int texture;
+        /** even-odd or non-zero rule */
+        protected final boolean evenOdd;
+
+        protected float minX = Float.MAX_VALUE;
+        protected float minY = Float.MAX_VALUE;
+        protected float maxX = -Float.MAX_VALUE;
+        protected float maxY = -Float.MAX_VALUE;
+
+        /**
+         * @param shape the shape to render (curves are flattened, open
+         * subpaths are closed)
+         * @param texture the texture to render
+         * @param evenOdd true for the even-odd rule, false for the non-zero rule
+         */
+        public Job(Shape shape, int texture, boolean evenOdd) {
+            this.texture = texture;
+            this.evenOdd = evenOdd;
+            this.edges = new float[64];
+
+            float[] coords = new float[6];
+            float startX = 0, startY = 0, lastX = 0, lastY = 0;
+            for (PathIterator it = shape.getPathIterator(null, flatness); !it.isDone(); it.next()) {
+                switch (it.currentSegment(coords)) {
+                    case PathIterator.SEG_MOVETO:
+                        addEdge(lastX, lastY, startX, startY);
+                        startX = lastX = coords[0];
+                        startY = lastY = coords[1];
+                        break;
+                    case PathIterator.SEG_LINETO:
+                        addEdge(lastX, lastY, coords[0], coords[1]);
+                        lastX = coords[0];
+                        lastY = coords[1];
+                        break;
+                    case PathIterator.SEG_CLOSE:
+                        addEdge(lastX, lastY, startX, startY);
+                        lastX = startX;
+                        lastY = startY;
+                        break;
+                }
+            }
+            addEdge(lastX, lastY, startX, startY);
+        }
+
+        protected void addEdge(float x0, float y0, float x1, float y1) {
+            if(y0 == y1) {
+                return;     // horizontal edges don't cover anything
+            }
+            if(size == edges.length) {
+                edges = Arrays.copyOf(edges, size * 2);
+            }
+            edges[size++] = x0;
+            edges[size++] = y0;
+            edges[size++] = x1;
+            edges[size++] = y1;
+            minX = Math.min(minX, Math.min(x0, x1));
+            maxX = Math.max(maxX, Math.max(x0, x1));
+            minY = Math.min(minY, Math.min(y0, y1));
+            maxY = Math.max(maxY, Math.max(y0, y1));
+        }
+
+        /**
+         * @return the bounds of all pixels that may be touched by the outline
+         */
+        public Rectangle2D getPixelBounds() {
+            return new Rectangle2D.Float(minX - 1, minY - 1, maxX - minX + 2, maxY - minY + 2);
+        }
+
+    }
+
+}
@@ -0,0 +1,236 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map.texture.osm;
+
+import java.awt.BasicStroke;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import de.nx42.maps4cim.map.texture.osm.primitives.Point;
+import de.nx42.maps4cim.map.texture.osm.primitives.Polygon;
+import de.nx42.maps4cim.map.texture.osm.primitives.Polyline;
+import de.nx42.maps4cim.util.Parallel;
+import de.nx42.maps4cim.util.gis.Area;
+import de.nx42.maps4cim.util.gis.Projection;
+
+/**
+ * Base class for renderers of OSM primitives into a map of the size of a
+ * CiM 2 texture, which is divided into tiles that are rendered concurrently.
+ *
+ * The primitives (which are already projected, see {@link #getProjection()})
+ * are converted into jobs and sorted into the tiles they intersect when they
+ * are drawn, but not rendered until the result is requested. Within each
+ * tile, the jobs are rendered in the order they were drawn, so the result is
+ * the same as if everything was rendered at once.
+ *
+ * @param <J> the type of the render jobs
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public abstract class TiledRenderer<J> {
+
+    public static final int CiM2MapSize = 2048;
+    /** default number of tiles along each axis */
+    public static final int defaultTiles = 8;
+
+    /** the default stroke of a Graphics2D */
+    protected static final BasicStroke defaultStroke = new BasicStroke();
+
+    protected final int width;
+    protected final int height;
+    protected Area area;
+
+    protected Projection projection;
+
+    /** number of tiles along each axis */
+    protected final int tiles;
+    protected final int tileWidth;
+    protected final int tileHeight;
+
+    /** the jobs to render, in the order they were drawn */
+    protected final List<J> jobs = new ArrayList<J>();
+    /** for each tile: indices of the jobs that intersect the tile (ascending) */
+    protected final int[][] tileJobs;
+    /** for each tile: number of jobs in tileJobs */
+    protected final int[] tileJobCount;
+    /** the stroke of the last polyline, which is also used for the outline of polygons */
+    protected BasicStroke stroke = defaultStroke;
+
+    /**
+     * @param width the width of the map in pixels
+     * @param height the height of the map in pixels
+     * @param area the area that is covered by the map
+     * @param tiles the number of tiles along each axis, that are rendered
+     * concurrently (1 to render the whole map at once)
+     */
+    protected TiledRenderer(int width, int height, Area area, int tiles) {
+        if(tiles < 1) {
+            throw new IllegalArgumentException("At least one tile is required, not " + tiles);
+        }
+        this.width = width;
+        this.height = height;
+        this.area = area;
+        this.projection = new Projection(area, width, height);
+
+        this.tiles = tiles;
+        this.tileWidth = (width + tiles - 1) / tiles;
+        this.tileHeight = (height + tiles - 1) / tiles;
+        this.tileJobs = new int[tiles * tiles][];
+        this.tileJobCount = new int[tiles * tiles];
+    }
+
+    /**
+     * @return the default number of tiles along each axis: only multi-core
+     * systems benefit from more than one tile
+     */
+    protected static int defaultTiles() {
+        return Parallel.getParallelism() > 1 ? defaultTiles : 1;
+    }
+
+
+    public abstract void draw(Polyline way);
+
+    public abstract void draw(Polygon polygon);
+
+    public abstract void draw(Point point);
+
+    @SuppressWarnings("unchecked")
+	public void draw(RenderContainer rc) {
+        switch (rc.type) {
+            case POINT:
+            	Collection<Point> points = (Collection<Point>) rc.getPrimitives();
+                for (Point p : points) {
+                    draw(p);
+                }
+                break;
+            case POLYGON:
+                Collection<Polygon> polys = (Collection<Polygon>) rc.getPrimitives();
+                for (Polygon poly : polys) {
+                    draw(poly);
+                }
+                break;
+            case POLYLINE:
+                Collection<Polyline> ways = (Collection<Polyline>) rc.getPrimitives();
+                for (Polyline way : ways) {
+                    draw(way);
+                }
+                break;
+            default:
+                throw new RuntimeException(String.format("Type %s not recognized", rc.type));
+        }
+    }
+
+    /**
+     * Creates a path through the specified vertices
+     * @param xs the x-coordinates of the vertices
+     * @param ys the y-coordinates of the vertices
+     * @param windingRule the winding rule of the path
+     * @param close true to connect the last to the first vertex
+     * @return the new path
+     */
+    protected static Path2D toPath(float[] xs, float[] ys, int windingRule, boolean close) {
+        Path2D path = new Path2D.Float(windingRule, xs.length + 1);
+        path.moveTo(xs[0], ys[0]);
+        for (int i = 1; i < xs.length; i++) {
+            path.lineTo(xs[i], ys[i]);
+        }
+        if(close) {
+            path.closePath();
+        }
+        return path;
+    }
+
+    /**
+     * Adds a job to the render queue of all tiles it intersects
+     * @param job the job to render
+     * @param b the bounds of all pixels that may be touched by the job
+     */
+    protected void add(J job, Rectangle2D b) {
+        int minX = Math.max(0, (int) Math.floor(b.getMinX() / tileWidth));
+        int maxX = Math.min(tiles - 1, (int) Math.floor(b.getMaxX() / tileWidth));
+        int minY = Math.max(0, (int) Math.floor(b.getMinY() / tileHeight));
+        int maxY = Math.min(tiles - 1, (int) Math.floor(b.getMaxY() / tileHeight));
+        if(minX > maxX || minY > maxY) {
+            return;     // not within the map
+        }
+
+        int index = jobs.size();
+        jobs.add(job);
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                int tile = y * tiles + x;
+                int[] ids = tileJobs[tile];
+                if(ids == null) {
+                    ids = tileJobs[tile] = new int[64];
+                } else if(tileJobCount[tile] == ids.length) {
+                    ids = tileJobs[tile] = Arrays.copyOf(ids, ids.length * 2);
+                }
+                ids[tileJobCount[tile]++] = index;
+            }
+        }
+    }
+
+    /**
+     * Renders all jobs that have been added since the last call, one tile
+     * per task.
+     */
+    protected void render() {
+        if(jobs.isEmpty()) {
+            return;
+        }
+        Parallel.forEachBand(tiles * tiles, 1, new Parallel.Band() {
+            @Override
+            public void process(int from, int to) {
+                for (int tile = from; tile < to; tile++) {
+                    int count = tileJobCount[tile];
+                    if(count > 0) {
+                        int x = (tile % tiles) * tileWidth;
+                        int y = (tile / tiles) * tileHeight;
+                        renderTile(x, y, Math.min(tileWidth, width - x),
+                                Math.min(tileHeight, height - y), tileJobs[tile], count);
+                    }
+                }
+            }
+        });
+        jobs.clear();
+        Arrays.fill(tileJobs, null);
+        Arrays.fill(tileJobCount, 0);
+    }
+
+    /**
+     * Renders the jobs that intersect the specified tile, clipped to the tile
+     * @param x the left border of the tile
+     * @param y the upper border of the tile
+     * @param w the width of the tile
+     * @param h the height of the tile
+     * @param ids the indices of the jobs to render (ascending)
+     * @param count the number of jobs in ids
+     */
+    protected abstract void renderTile(int x, int y, int w, int h, int[] ids, int count);
+
+    /**
+     * @return projects geographic coordinates into the rendered map, to
+     * be used for all primitives that are drawn by this renderer
+     */
+    public Projection getProjection() {
+        return projection;
+    }
+
+}
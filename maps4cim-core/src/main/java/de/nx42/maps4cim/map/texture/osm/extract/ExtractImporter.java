@@ -0,0 +1,263 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map.texture.osm.extract;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+import org.openstreetmap.osmosis.core.task.v0_6.Sink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Writes the entities of an OSM extract into the tiles of an
+ * {@link ExtractStore}.
+ *
+ * The coordinates of all nodes are kept in a {@link NodeStore} until the
+ * import is complete, so the geometry of each way can be written inline.
+ * Small extracts are kept in memory, larger ones are written to a temporary
+ * file in the directory of the store, so the required heap does not grow
+ * with the size of the extract. This requires that nodes are read before
+ * the ways that reference them, which is the case for all regular extracts
+ * (XML and PBF). Ways with unknown nodes are skipped.
+ *
+ * The records are buffered per tile and appended to the tile files when
+ * the buffers exceed {@value #maxBuffered} bytes, to avoid keeping
+ * thousands of files open.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ExtractImporter implements Sink {
+
+    private static final Logger log = LoggerFactory.getLogger(ExtractImporter.class);
+
+    /** the maximum number of bytes to buffer, before the tiles are written */
+    protected static final long maxBuffered = 32 * 1024 * 1024;
+    /** the temporary file of the node store */
+    protected static final String nodeFileName = "nodes.tmp";
+
+    protected final File dir;
+    protected final NodeStore nodes;
+    protected final Map<Integer, ByteArrayOutputStream> buffers =
+            new HashMap<Integer, ByteArrayOutputStream>();
+    protected long buffered = 0;
+
+    // reused for each record
+    protected final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+    protected final DataOutputStream out = new DataOutputStream(record);
+    protected int[] wayTiles = new int[16];
+
+    protected long nodeCount = 0;
+    protected long wayCount = 0;
+    protected long skippedWays = 0;
+
+    /**
+     * @param dir the directory to write the tiles to
+     */
+    public ExtractImporter(File dir) {
+        this.dir = dir;
+        this.nodes = new NodeStore(new File(dir, nodeFileName));
+    }
+
+    @Override
+    public void initialize(Map<String, Object> metaData) { /* unused */ }
+
+    @Override
+    public void process(EntityContainer entityContainer) {
+        Entity entity = entityContainer.getEntity();
+        try {
+            if (entity instanceof Node) {
+                process((Node) entity);
+            } else if (entity instanceof Way) {
+                process((Way) entity);
+            }
+            // relations are not supported by the renderer
+        } catch(IOException e) {
+            throw new OsmosisRuntimeException(e);
+        }
+    }
+
+    protected void process(Node node) throws IOException {
+        int lat = ExtractStore.encode(node.getLatitude());
+        int lon = ExtractStore.encode(node.getLongitude());
+        nodes.put(node.getId(), lat, lon);
+        if(!node.getTags().isEmpty()) {
+            record.reset();
+            out.writeByte(ExtractStore.recordNode);
+            out.writeLong(node.getId());
+            out.writeInt(lat);
+            out.writeInt(lon);
+            writeTags(node.getTags());
+            append(ExtractStore.tileKey(node.getLatitude(), node.getLongitude()));
+            nodeCount++;
+        }
+    }
+
+    protected void process(Way way) throws IOException {
+        List<WayNode> wayNodes = way.getWayNodes();
+        record.reset();
+        out.writeByte(ExtractStore.recordWay);
+        out.writeLong(way.getId());
+        writeTags(way.getTags());
+        out.writeInt(wayNodes.size());
+
+        int tileCount = 0;
+        for (WayNode wn : wayNodes) {
+            long c = nodes.get(wn.getNodeId());
+            if(c == NodeStore.unknown) {
+                if(skippedWays++ == 0) {
+                    log.warn("Way {} references the unknown node {} and is skipped. "
+                            + "Nodes must be declared before the ways that use them.",
+                            way.getId(), wn.getNodeId());
+                }
+                return;
+            }
+            int lat = NodeStore.latitude(c);
+            int lon = NodeStore.longitude(c);
+            out.writeLong(wn.getNodeId());
+            out.writeInt(lat);
+            out.writeInt(lon);
+            tileCount = addTile(ExtractStore.tileKey(
+                    ExtractStore.decode(lat), ExtractStore.decode(lon)), tileCount);
+        }
+        for (int i = 0; i < tileCount; i++) {
+            append(wayTiles[i]);
+        }
+        wayCount++;
+    }
+
+    /**
+     * Adds a tile to the tiles of the current way, if it is not yet part of it
+     * @return the new number of tiles of the current way
+     */
+    protected int addTile(int key, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            if(wayTiles[i] == key) {
+                return count;
+            }
+        }
+        if(count == wayTiles.length) {
+            int[] grown = new int[count * 2];
+            System.arraycopy(wayTiles, 0, grown, 0, count);
+            wayTiles = grown;
+        }
+        wayTiles[count] = key;
+        return count + 1;
+    }
+
+    protected void writeTags(Collection<Tag> tags) throws IOException {
+        out.writeShort(tags.size());
+        for (Tag tag : tags) {
+            out.writeUTF(tag.getKey());
+            out.writeUTF(tag.getValue());
+        }
+    }
+
+    /**
+     * Appends the current record to the buffer of the specified tile
+     * @param key the key of the tile
+     */
+    protected void append(int key) throws IOException {
+        ByteArrayOutputStream buffer = buffers.get(key);
+        if(buffer == null) {
+            buffer = new ByteArrayOutputStream(1024);
+            buffers.put(key, buffer);
+        }
+        record.writeTo(buffer);
+        buffered += record.size();
+        if(buffered > maxBuffered) {
+            flush();
+        }
+    }
+
+    /**
+     * Appends all buffered records to the tile files
+     * @throws IOException if a tile can't be written
+     */
+    public void flush() throws IOException {
+        for (Entry<Integer, ByteArrayOutputStream> entry : buffers.entrySet()) {
+            OutputStream os = new FileOutputStream(ExtractStore.getTileFile(dir, entry.getKey()), true);
+            try {
+                entry.getValue().writeTo(os);
+            } finally {
+                os.close();
+            }
+        }
+        buffers.clear();
+        buffered = 0;
+    }
+
+    /**
+     * Writes the remaining buffered records and deletes the node store
+     */
+    @Override
+    public void complete() {
+        try {
+            flush();
+            nodes.close();
+        } catch (IOException e) {
+            throw new OsmosisRuntimeException(e);
+        }
+        if(skippedWays > 0) {
+            log.warn("{} ways with unknown nodes have been skipped", skippedWays);
+        }
+    }
+
+    /**
+     * Deletes the node store, if the import has not been completed
+     */
+    @Override
+    public void release() {
+        try {
+            nodes.close();
+        } catch (IOException e) {
+            log.warn("The temporary node store could not be closed", e);
+        }
+    }
+
+    /**
+     * @return the number of tagged nodes that have been imported
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return the number of ways that have been imported
+     */
+    public long getWayCount() {
+        return wayCount;
+    }
+
+}
@@ -0,0 +1,443 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map.texture.osm.extract;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.container.v0_6.NodeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.WayContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.CommonEntityData;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+import org.openstreetmap.osmosis.xml.common.CompressionMethod;
+import org.openstreetmap.osmosis.xml.v0_6.XmlReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+import de.nx42.maps4cim.config.texture.OsmDef;
+import de.nx42.maps4cim.map.Cache;
+import de.nx42.maps4cim.map.texture.osm.SimpleOsmDump;
+import de.nx42.maps4cim.map.texture.osm.TagFilter;
+import de.nx42.maps4cim.map.texture.osm.pbf.PbfReader;
+import de.nx42.maps4cim.util.gis.Area;
+
+/**
+ * A spatial index of a local OSM extract (XML or PBF) in the cache.
+ *
+ * The extract is imported once into a directory of tiles, which divide the
+ * world in a regular quadtree of level {@value #zoom} (tiles of about
+ * 0.088 x 0.044 degrees). Each tile file contains the tagged nodes within
+ * the tile and all ways that have at least one node in the tile, with the
+ * coordinates of all of their nodes. So a query for the bounds of a map
+ * only reads the few tiles that intersect the bounds and never has to
+ * resolve nodes from other tiles.
+ *
+ * Like a bounding box query of the Overpass API (or {@link PbfReader}), a
+ * query returns all tagged nodes within the bounds and all ways that have
+ * at least one node within the bounds, including the coordinates of their
+ * nodes outside of the bounds.
+ *
+ * The store is identified by the path, size and modification date of the
+ * extract, so it is imported again when the extract changes. Stores that
+ * have not been used for a while are removed by the {@link Cache.Janitor}.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ExtractStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ExtractStore.class);
+
+    /** version of the storage format; stores of other versions are imported again */
+    protected static final int version = 1;
+    /** quadtree level of the tiles */
+    public static final int zoom = 12;
+    /** number of tiles along each axis */
+    protected static final int tiles = 1 << zoom;
+
+    /** the manifest is written after the import has been completed */
+    public static final String manifestName = Cache.osmExtractManifest;
+    /** file extension of the tiles */
+    protected static final String tileExt = ".tile";
+    /** file extension of incomplete stores */
+    protected static final String partExt = ".part";
+    /** only one extract is imported at a time */
+    protected static final Object lock = new Object();
+
+    // record types in the tile files
+    protected static final byte recordNode = 1;
+    protected static final byte recordWay = 2;
+
+    protected final File source;
+    protected final File dir;
+
+
+    /**
+     * Creates a store for the specified extract in the default directory
+     * in the cache ({@link Cache#osmExtractDir})
+     * @param source the OSM extract (XML or PBF)
+     */
+    public ExtractStore(File source) {
+        this(source, Cache.osmExtractDir);
+    }
+
+    /**
+     * Creates a store for the specified extract
+     * @param source the OSM extract (XML or PBF)
+     * @param root the directory of all stores
+     */
+    public ExtractStore(File source, File root) {
+        this.source = source;
+        this.dir = new File(root, getKey(source));
+    }
+
+    /**
+     * @param source an OSM extract
+     * @return the key that identifies the store of the extract (changes,
+     * when the extract is modified)
+     */
+    public static String getKey(File source) {
+        String id = String.format("%s:%s:%s", source.getAbsolutePath(),
+                source.lastModified(), source.length());
+        return Hashing.murmur3_128().hashString(id, Charsets.UTF_8).toString();
+    }
+
+    /**
+     * @return the directory of this store
+     */
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * @return true, iff the extract has been imported completely into the
+     * current storage format
+     */
+    public boolean isImported() {
+        File manifest = new File(dir, manifestName);
+        if(!manifest.isFile()) {
+            return false;
+        }
+        try {
+            Properties p = readManifest(manifest);
+            return String.valueOf(version).equals(p.getProperty("version"))
+                    && String.valueOf(source.length()).equals(p.getProperty("length"));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Imports the extract, if this has not been done yet
+     * @throws IOException if the extract can't be read or the store can't
+     * be written
+     */
+    public void ensureImported() throws IOException {
+        synchronized (lock) {
+            if(!isImported()) {
+                importExtract();
+            }
+        }
+    }
+
+    /**
+     * Imports the extract into a new directory, which replaces the current
+     * store when the import has been completed.
+     * @throws IOException if the extract can't be read or the store can't
+     * be written
+     */
+    protected void importExtract() throws IOException {
+        log.info("Importing the OSM extract {} into a spatial index. This is "
+                + "done only once and may take a while.", source.getName());
+        long start = System.currentTimeMillis();
+        File part = new File(dir.getParentFile(), dir.getName() + partExt);
+        Cache.deleteFolder(part);
+        if(!part.mkdirs()) {
+            throw new IOException("Can't create the directory " + part);
+        }
+
+        ExtractImporter importer = new ExtractImporter(part);
+        try {
+            try {
+                if(PbfReader.isPbf(source)) {
+                    new PbfReader(source, null).readAll(importer);
+                } else {
+                    XmlReader reader = new XmlReader(source, false, getCompression(source));
+                    reader.setSink(importer);
+                    reader.run();
+                }
+            } catch(OsmosisRuntimeException e) {
+                if(e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("The OSM extract " + source.getName()
+                        + " could not be read", e);
+            }
+
+            Properties p = new Properties();
+            p.setProperty("version", String.valueOf(version));
+            p.setProperty("source", source.getAbsolutePath());
+            p.setProperty("length", String.valueOf(source.length()));
+            p.setProperty("nodes", String.valueOf(importer.getNodeCount()));
+            p.setProperty("ways", String.valueOf(importer.getWayCount()));
+            writeManifest(p, new File(part, manifestName));
+
+            Cache.deleteFolder(dir);
+            if(!part.renameTo(dir)) {
+                throw new IOException("Can't move the imported extract to " + dir);
+            }
+            log.info("The OSM extract {} has been imported in {}s ({} tagged nodes, {} ways)",
+                    source.getName(), (System.currentTimeMillis() - start) / 1000,
+                    importer.getNodeCount(), importer.getWayCount());
+        } finally {
+            importer.release();
+            Cache.deleteFolder(part);
+        }
+    }
+
+    /**
+     * Reads the data within the specified bounds and keeps only the nodes
+     * and ways that are rendered with the specified OSM definition. The
+     * extract is imported first, if necessary.
+     * @param bounds the bounds of the map
+     * @param osm the OSM definition with the entities to keep
+     * @return the filtered contents of the extract within the bounds
+     * @throws IOException if the store can't be read
+     */
+    public SimpleOsmDump query(Area bounds, OsmDef osm) throws IOException {
+        SimpleOsmDump sink = new SimpleOsmDump(osm);
+        query(bounds, sink);
+        return sink;
+    }
+
+    /**
+     * Reads the data within the specified bounds into the sink. The extract
+     * is imported first, if necessary.
+     * @param bounds the bounds of the map
+     * @param sink receives the data (filtered by the sink's filter)
+     * @throws IOException if the store can't be read
+     */
+    public void query(Area bounds, SimpleOsmDump sink) throws IOException {
+        ensureImported();
+        // mark as recently used (for the cache janitor)
+        new File(dir, manifestName).setLastModified(System.currentTimeMillis());
+
+        sink.initialize(Collections.<String, Object>emptyMap());
+        TagFilter filter = sink.getFilter();
+        Set<Long> ways = new HashSet<Long>();
+        for (File tile : getTiles(bounds)) {
+            if(!tile.isFile()) {
+                continue;   // nothing there
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(tile), 1 << 16));
+            try {
+                readTile(in, bounds, filter, ways, sink);
+            } finally {
+                in.close();
+            }
+        }
+        sink.complete();
+        sink.release();
+    }
+
+    protected void readTile(DataInputStream in, Area bounds, TagFilter filter,
+            Set<Long> ways, SimpleOsmDump sink) throws IOException {
+        while(true) {
+            int type = in.read();
+            if(type < 0) {
+                return;
+            }
+            long id = in.readLong();
+            if(type == recordNode) {
+                double lat = decode(in.readInt());
+                double lon = decode(in.readInt());
+                List<Tag> tags = readTags(in);
+                if(bounds.contains(lat, lon)) {
+                    sink.process(new NodeContainer(new Node(data(id, tags), lat, lon)));
+                }
+            } else if(type == recordWay) {
+                List<Tag> tags = readTags(in);
+                int n = in.readInt();
+                long[] refs = new long[n];
+                double[] lats = new double[n];
+                double[] lons = new double[n];
+                boolean inside = false;
+                for (int i = 0; i < n; i++) {
+                    refs[i] = in.readLong();
+                    lats[i] = decode(in.readInt());
+                    lons[i] = decode(in.readInt());
+                    inside |= bounds.contains(lats[i], lons[i]);
+                }
+                if(inside && !ways.contains(id)) {
+                    List<WayNode> wayNodes = new ArrayList<WayNode>(n);
+                    for (int i = 0; i < n; i++) {
+                        wayNodes.add(new WayNode(refs[i]));
+                    }
+                    Way way = new Way(data(id, tags), wayNodes);
+                    if(filter.isEmpty() || filter.matchesAny(way)) {
+                        ways.add(id);
+                        for (int i = 0; i < n; i++) {
+                            sink.addCoordinate(refs[i], lats[i], lons[i]);
+                        }
+                        sink.process(new WayContainer(way));
+                    }
+                }
+            } else {
+                throw new IOException("The spatial index of " + source.getName()
+                        + " is corrupt (unknown record type " + type + ")");
+            }
+        }
+    }
+
+    protected static List<Tag> readTags(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        List<Tag> tags = new ArrayList<Tag>(count);
+        for (int i = 0; i < count; i++) {
+            tags.add(new Tag(in.readUTF(), in.readUTF()));
+        }
+        return tags;
+    }
+
+    protected static CommonEntityData data(long id, List<Tag> tags) {
+        return new CommonEntityData(id, 0, new Date(0), OsmUser.NONE, 0, tags);
+    }
+
+    /**
+     * @param bounds an area
+     * @return the tile files that intersect the area (some of them may
+     * not exist, if there is no data)
+     */
+    protected List<File> getTiles(Area bounds) {
+        int minX = tileX(bounds.getMinLon());
+        int maxX = tileX(bounds.getMaxLon());
+        int minY = tileY(bounds.getMaxLat());
+        int maxY = tileY(bounds.getMinLat());
+        List<File> files = new ArrayList<File>((maxX - minX + 1) * (maxY - minY + 1));
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                files.add(getTileFile(dir, tileKey(x, y)));
+            }
+        }
+        return files;
+    }
+
+    // tile math
+
+    /**
+     * @param lon a longitude
+     * @return the column of the tile that contains the longitude
+     */
+    protected static int tileX(double lon) {
+        return clamp((int) Math.floor((lon + 180) / 360 * tiles));
+    }
+
+    /**
+     * @param lat a latitude
+     * @return the row of the tile that contains the latitude
+     */
+    protected static int tileY(double lat) {
+        return clamp((int) Math.floor((90 - lat) / 180 * tiles));
+    }
+
+    protected static int clamp(int tile) {
+        return Math.max(0, Math.min(tiles - 1, tile));
+    }
+
+    /**
+     * @return the key of a tile: row * tiles + column
+     */
+    protected static int tileKey(int x, int y) {
+        return y * tiles + x;
+    }
+
+    /**
+     * @return the key of the tile that contains the specified point
+     */
+    protected static int tileKey(double lat, double lon) {
+        return tileKey(tileX(lon), tileY(lat));
+    }
+
+    protected static File getTileFile(File dir, int key) {
+        return new File(dir, String.format("%d_%d%s", key % tiles, key / tiles, tileExt));
+    }
+
+    /**
+     * Coordinates are stored as integers in units of 10^-7 degrees, the
+     * precision of the OSM database
+     */
+    protected static int encode(double deg) {
+        return (int) Math.round(deg * 1e7);
+    }
+
+    protected static double decode(int fixed) {
+        return fixed / 1e7;
+    }
+
+    // helpers
+
+    protected static CompressionMethod getCompression(File osmxml) {
+        if (osmxml.getName().endsWith(".gz")) {
+            return CompressionMethod.GZip;
+        } else if (osmxml.getName().endsWith(".bz2")) {
+            return CompressionMethod.BZip2;
+        }
+        return CompressionMethod.None;
+    }
+
+    protected static Properties readManifest(File file) throws IOException {
+        Properties p = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            p.load(in);
+        } finally {
+            in.close();
+        }
+        return p;
+    }
+
+    protected static void writeManifest(Properties p, File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            p.store(out, "maps4cim spatial index of an OSM extract");
+        } finally {
+            out.close();
+        }
+    }
+
+}
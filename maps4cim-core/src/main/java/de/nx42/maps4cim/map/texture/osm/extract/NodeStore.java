@@ -0,0 +1,397 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map.texture.osm.extract;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.nx42.maps4cim.map.texture.osm.CoordinateMap;
+
+/**
+ * Maps the IDs of OSM nodes to their coordinates during the import of an
+ * extract. Unlike the {@link CoordinateMap}, the heap usage does not grow
+ * with the number of nodes, so extracts of whole countries can be imported.
+ *
+ * The nodes are collected in a buffer of {@value #defaultChunkSize} nodes.
+ * As long as all nodes fit into this buffer, it is sorted and searched in
+ * memory. Larger sets of nodes are written to a file as sorted runs of
+ * {@value #recordSize} bytes per node (ID, latitude and longitude in the
+ * integer format of the tiles), which are memory mapped and searched with
+ * a binary search. Every {@value #indexInterval}th ID of a run is kept in
+ * memory, so a lookup only touches one block of the file.
+ *
+ * Regular extracts (XML and PBF) are sorted by ID and are written as a
+ * single run. Unsorted extracts result in one run per buffer, which makes
+ * lookups slower, but still works. If a node is stored more than once, any
+ * of its coordinates may be returned.
+ *
+ * This class is not thread safe.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class NodeStore implements Closeable {
+
+    /** returned by {@link #get(long)} for unknown nodes */
+    public static final long unknown = Long.MIN_VALUE;
+
+    /** the number of nodes that are buffered in memory (16 MiB) */
+    protected static final int defaultChunkSize = 1 << 20;
+    /** the size of a node in the file: ID, latitude, longitude */
+    protected static final int recordSize = 16;
+    /** the distance of the IDs in the sparse index of each run */
+    protected static final int indexInterval = 256;
+    /** the number of nodes per memory mapped segment (1 GiB) */
+    protected static final int segmentSize = 1 << 26;
+
+    protected final File file;
+    protected final long[] ids;
+    protected final int[] lats;
+    protected final int[] lons;
+    /** the number of nodes in the buffer */
+    protected int buffered = 0;
+    /** true, iff the IDs in the buffer are in ascending order */
+    protected boolean sorted = true;
+
+    protected final List<Run> runs = new ArrayList<Run>();
+    protected RandomAccessFile raf;
+    protected ByteBuffer writeBuffer;
+    /** the number of nodes in the file */
+    protected long written = 0;
+    /** the number of nodes in the store */
+    protected long size = 0;
+
+    /**
+     * Creates a new, empty store
+     * @param file the file to write the nodes to, when they don't fit into
+     * memory (will be deleted when this store is closed)
+     */
+    public NodeStore(File file) {
+        this(file, defaultChunkSize);
+    }
+
+    /**
+     * Creates a new, empty store
+     * @param file the file to write the nodes to, when they don't fit into
+     * memory (will be deleted when this store is closed)
+     * @param chunkSize the number of nodes that are buffered in memory
+     */
+    protected NodeStore(File file, int chunkSize) {
+        this.file = file;
+        this.ids = new long[chunkSize];
+        this.lats = new int[chunkSize];
+        this.lons = new int[chunkSize];
+    }
+
+    /**
+     * Stores the coordinate of a node
+     * @param id the ID of the node
+     * @param lat the latitude of the node, see {@link ExtractStore#encode(double)}
+     * @param lon the longitude of the node, see {@link ExtractStore#encode(double)}
+     * @throws IOException if the nodes can't be written to the file
+     */
+    public void put(long id, int lat, int lon) throws IOException {
+        if(buffered == ids.length) {
+            spill();
+        }
+        if(buffered > 0 && id <= ids[buffered - 1]) {
+            sorted = false;
+        }
+        ids[buffered] = id;
+        lats[buffered] = lat;
+        lons[buffered] = lon;
+        buffered++;
+        size++;
+    }
+
+    /**
+     * @param id the ID of a node
+     * @return the coordinate of the node (read it with {@link #latitude(long)}
+     * and {@link #longitude(long)}), or {@link #unknown} if the node is unknown
+     * @throws IOException if the file can't be read
+     */
+    public long get(long id) throws IOException {
+        if(runs.isEmpty()) {
+            // everything fits into memory
+            if(!sorted) {
+                sort(0, buffered - 1);
+                sorted = true;
+            }
+            int i = Arrays.binarySearch(ids, 0, buffered, id);
+            return i < 0 ? unknown : pack(lats[i], lons[i]);
+        }
+        if(buffered > 0) {
+            spill();
+        }
+        for (int i = runs.size() - 1; i >= 0; i--) {
+            long coordinate = find(runs.get(i), id);
+            if(coordinate != unknown) {
+                return coordinate;
+            }
+        }
+        return unknown;
+    }
+
+    /**
+     * @param coordinate a coordinate returned by {@link #get(long)}
+     * @return the latitude in the integer format of the tiles
+     */
+    public static int latitude(long coordinate) {
+        return (int) (coordinate >> 32);
+    }
+
+    /**
+     * @param coordinate a coordinate returned by {@link #get(long)}
+     * @return the longitude in the integer format of the tiles
+     */
+    public static int longitude(long coordinate) {
+        return (int) coordinate;
+    }
+
+    protected static long pack(int lat, int lon) {
+        return ((long) lat << 32) | (lon & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return the number of nodes in this store
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return true, iff the nodes did not fit into memory and have been
+     * written to the file
+     */
+    public boolean isSpilled() {
+        return !runs.isEmpty();
+    }
+
+    /**
+     * Closes and deletes the file. The store must not be used afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        runs.clear();
+        if(raf != null) {
+            try {
+                raf.close();
+            } finally {
+                raf = null;
+                // mapped segments may prevent this until they are collected
+                if(!file.delete() && file.exists()) {
+                    file.deleteOnExit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorts the buffer and appends it to the file, either to the last run
+     * (if the IDs continue the run) or as a new run.
+     * @throws IOException if the file can't be written
+     */
+    protected void spill() throws IOException {
+        if(!sorted) {
+            sort(0, buffered - 1);
+            sorted = true;
+        }
+        if(raf == null) {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(0);
+            writeBuffer = ByteBuffer.allocate(indexInterval * recordSize * 16);
+        }
+        Run run = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+        if(run == null || ids[0] <= run.last) {
+            run = new Run(written, ids[0]);
+            runs.add(run);
+        }
+
+        FileChannel channel = raf.getChannel();
+        for (int i = 0; i < buffered; i++) {
+            if(run.count % indexInterval == 0) {
+                run.addIndex(ids[i]);
+            }
+            writeBuffer.putLong(ids[i]);
+            writeBuffer.putInt(lats[i]);
+            writeBuffer.putInt(lons[i]);
+            if(!writeBuffer.hasRemaining()) {
+                write(channel);
+            }
+            run.count++;
+        }
+        write(channel);
+        run.last = ids[buffered - 1];
+        run.segments = null;
+        written += buffered;
+        buffered = 0;
+    }
+
+    protected void write(FileChannel channel) throws IOException {
+        writeBuffer.flip();
+        while(writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    /**
+     * Binary search in a run of the file
+     * @param run the run to search
+     * @param id the ID of a node
+     * @return the coordinate of the node or {@link #unknown}
+     * @throws IOException if the run can't be mapped
+     */
+    protected long find(Run run, long id) throws IOException {
+        if(id < run.first || id > run.last) {
+            return unknown;
+        }
+        int block = Arrays.binarySearch(run.index, 0, run.indexSize, id);
+        if(block < 0) {
+            // the block before the insertion point
+            block = -block - 2;
+        }
+        if(run.segments == null) {
+            map(run);
+        }
+        long lo = (long) block * indexInterval;
+        long hi = Math.min(lo + indexInterval, run.count) - 1;
+        while(lo <= hi) {
+            long mid = (lo + hi) >>> 1;
+            ByteBuffer segment = run.segments[(int) (mid / segmentSize)];
+            int pos = (int) (mid % segmentSize) * recordSize;
+            long midId = segment.getLong(pos);
+            if(midId < id) {
+                lo = mid + 1;
+            } else if(midId > id) {
+                hi = mid - 1;
+            } else {
+                return pack(segment.getInt(pos + 8), segment.getInt(pos + 12));
+            }
+        }
+        return unknown;
+    }
+
+    /**
+     * Maps the nodes of a run into memory, in segments of at most
+     * {@value #segmentSize} nodes
+     * @param run the run to map
+     * @throws IOException if the file can't be mapped
+     */
+    protected void map(Run run) throws IOException {
+        int count = (int) ((run.count + segmentSize - 1) / segmentSize);
+        run.segments = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long first = (long) i * segmentSize;
+            long length = Math.min(segmentSize, run.count - first) * recordSize;
+            run.segments[i] = raf.getChannel().map(MapMode.READ_ONLY,
+                    (run.start + first) * recordSize, length);
+        }
+    }
+
+    /**
+     * Sorts the buffer by ID (quicksort, which moves the coordinates
+     * along with the IDs)
+     * @param from the index of the first node to sort
+     * @param to the index of the last node to sort (inclusive)
+     */
+    protected void sort(int from, int to) {
+        while(to - from > 16) {
+            long a = ids[from], b = ids[(from + to) >>> 1], c = ids[to];
+            long pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+            int i = from, j = to;
+            while(i <= j) {
+                while(ids[i] < pivot) {
+                    i++;
+                }
+                while(ids[j] > pivot) {
+                    j--;
+                }
+                if(i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            // recurse into the smaller part, to limit the depth of the stack
+            if(j - from < to - i) {
+                sort(from, j);
+                from = i;
+            } else {
+                sort(i, to);
+                to = j;
+            }
+        }
+        for (int i = from + 1; i <= to; i++) {
+            for (int j = i; j > from && ids[j - 1] > ids[j]; j--) {
+                swap(j - 1, j);
+            }
+        }
+    }
+
+    protected void swap(int i, int j) {
+        long id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        int lat = lats[i];
+        lats[i] = lats[j];
+        lats[j] = lat;
+        int lon = lons[i];
+        lons[i] = lons[j];
+        lons[j] = lon;
+    }
+
+    /**
+     * A sequence of nodes in the file that is sorted by ID
+     */
+    protected static class Run {
+
+        /** the position of the first node in the file (in nodes) */
+        protected final long start;
+        /** the first ID of the run */
+        protected final long first;
+        /** the last ID of the run */
+        protected long last;
+        /** the number of nodes in the run */
+        protected long count = 0;
+        /** every {@value NodeStore#indexInterval}th ID of the run */
+        protected long[] index = new long[16];
+        protected int indexSize = 0;
+        /** the memory mapped nodes, null if not mapped yet */
+        protected MappedByteBuffer[] segments;
+
+        protected Run(long start, long first) {
+            this.start = start;
+            this.first = first;
+        }
+
+        protected void addIndex(long id) {
+            if(indexSize == index.length) {
+                index = Arrays.copyOf(index, indexSize * 2);
+            }
+            index[indexSize++] = id;
+        }
+
+    }
+
+}
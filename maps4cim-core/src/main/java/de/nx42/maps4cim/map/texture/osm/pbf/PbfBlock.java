@@ -0,0 +1,369 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map.texture.osm.pbf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.openstreetmap.osmosis.core.domain.v0_6.CommonEntityData;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+
+/**
+ * The decoded contents of a single PrimitiveBlock of an OSM PBF file.
+ * Only the nodes and ways that are accepted by a {@link Selection} are
+ * decoded into Osmosis entities, relations and changesets are skipped.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class PbfBlock {
+
+    /** the selected nodes, in the order of the block */
+    protected final List<Node> nodes = new ArrayList<Node>();
+    /** the selected ways, in the order of the block */
+    protected final List<Way> ways = new ArrayList<Way>();
+    /** true, iff the block contains any ways (selected or not) */
+    protected boolean containsWays = false;
+
+    // block properties
+    protected String[] strings = new String[0];
+    protected long granularity = 100;
+    protected long latOffset = 0;
+    protected long lonOffset = 0;
+    protected long dateGranularity = 1000;
+
+    /**
+     * Decides which entities of a block are decoded
+     */
+    public interface Selection {
+
+        /**
+         * @return true, if the tags and metadata of nodes and ways are
+         * required (if false, entities are created without them)
+         */
+        boolean withTags();
+
+        /**
+         * @param id the ID of the node
+         * @param lat the latitude of the node
+         * @param lon the longitude of the node
+         * @return true, if the node is selected
+         */
+        boolean acceptNode(long id, double lat, double lon);
+
+        /**
+         * @return true, if ways are decoded at all
+         */
+        boolean acceptWays();
+
+        /**
+         * @param way a way of the block
+         * @return true, if the way is selected
+         */
+        boolean acceptWay(Way way);
+
+    }
+
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    public List<Way> getWays() {
+        return ways;
+    }
+
+    public boolean containsWays() {
+        return containsWays;
+    }
+
+    /**
+     * Decodes a PrimitiveBlock
+     * @param data the uncompressed block
+     * @param selection decides which entities to decode
+     * @return the decoded block
+     * @throws IOException if the block is malformed
+     */
+    public static PbfBlock decode(byte[] data, Selection selection) throws IOException {
+        PbfBlock block = new PbfBlock();
+        block.read(new ProtoReader(data), selection);
+        return block;
+    }
+
+    protected void read(ProtoReader block, Selection sel) throws IOException {
+        // the groups may come before the block properties they depend on
+        List<ProtoReader> groups = new ArrayList<ProtoReader>();
+        while(block.hasNext()) {
+            switch (block.readField()) {
+                case 1: readStringTable(block.readMessage()); break;
+                case 2: groups.add(block.readMessage()); break;
+                case 17: granularity = block.readVarint(); break;
+                case 18: dateGranularity = block.readVarint(); break;
+                case 19: latOffset = block.readVarint(); break;
+                case 20: lonOffset = block.readVarint(); break;
+                default: block.skip();
+            }
+        }
+        for (ProtoReader group : groups) {
+            readGroup(group, sel);
+        }
+    }
+
+    protected void readStringTable(ProtoReader table) throws IOException {
+        List<String> list = new ArrayList<String>();
+        while(table.hasNext()) {
+            if(table.readField() == 1) {
+                list.add(table.readString());
+            } else {
+                table.skip();
+            }
+        }
+        strings = list.toArray(new String[list.size()]);
+    }
+
+    protected void readGroup(ProtoReader group, Selection sel) throws IOException {
+        while(group.hasNext()) {
+            switch (group.readField()) {
+                case 1: readNode(group.readMessage(), sel); break;
+                case 2: readDenseNodes(group.readMessage(), sel); break;
+                case 3:
+                    containsWays = true;
+                    if(sel.acceptWays()) {
+                        readWay(group.readMessage(), sel);
+                    } else {
+                        group.skip();
+                    }
+                    break;
+                default: group.skip();  // relations, changesets
+            }
+        }
+    }
+
+    protected void readNode(ProtoReader msg, Selection sel) throws IOException {
+        long id = 0, lat = 0, lon = 0;
+        ProtoReader keys = null, vals = null, info = null;
+        while(msg.hasNext()) {
+            switch (msg.readField()) {
+                case 1: id = msg.readSInt(); break;
+                case 2: keys = msg.readMessage(); break;
+                case 3: vals = msg.readMessage(); break;
+                case 4: info = msg.readMessage(); break;
+                case 8: lat = msg.readSInt(); break;
+                case 9: lon = msg.readSInt(); break;
+                default: msg.skip();
+            }
+        }
+        double dlat = lat(lat);
+        double dlon = lon(lon);
+        if(sel.acceptNode(id, dlat, dlon)) {
+            nodes.add(new Node(sel.withTags() ? readData(id, keys, vals, info)
+                    : emptyData(id), dlat, dlon));
+        }
+    }
+
+    protected void readDenseNodes(ProtoReader msg, Selection sel) throws IOException {
+        ProtoReader ids = null, lats = null, lons = null, keysVals = null;
+        ProtoReader info = null;
+        while(msg.hasNext()) {
+            switch (msg.readField()) {
+                case 1: ids = msg.readMessage(); break;
+                case 5: info = msg.readMessage(); break;
+                case 8: lats = msg.readMessage(); break;
+                case 9: lons = msg.readMessage(); break;
+                case 10: keysVals = msg.readMessage(); break;
+                default: msg.skip();
+            }
+        }
+        if(ids == null) {
+            return;
+        }
+        if(lats == null || lons == null) {
+            throw new IOException("invalid PBF: dense nodes without coordinates");
+        }
+        DenseInfo denseInfo = info != null && sel.withTags() ? new DenseInfo(info) : null;
+        long id = 0, lat = 0, lon = 0;
+        while(ids.hasNext()) {
+            id += ids.readSInt();
+            lat += lats.readSInt();
+            lon += lons.readSInt();
+            double dlat = lat(lat);
+            double dlon = lon(lon);
+            boolean accept = sel.acceptNode(id, dlat, dlon);
+
+            // tags are stored as key/value string ids, the tags of each node
+            // end with 0. They must be read to find the next node's tags
+            List<Tag> tags = null;
+            if(keysVals != null) {
+                while(keysVals.hasNext()) {
+                    int key = keysVals.readVarint32();
+                    if(key == 0) {
+                        break;
+                    }
+                    int val = keysVals.readVarint32();
+                    if(accept && sel.withTags()) {
+                        if(tags == null) {
+                            tags = new ArrayList<Tag>(4);
+                        }
+                        tags.add(new Tag(string(key), string(val)));
+                    }
+                }
+            }
+            if(denseInfo != null) {
+                denseInfo.next();
+            }
+            if(accept) {
+                CommonEntityData data = !sel.withTags() ? emptyData(id)
+                        : denseInfo != null ? denseInfo.data(id, tags)
+                        : data(id, 0, 0, OsmUser.NONE, 0, tags);
+                nodes.add(new Node(data, dlat, dlon));
+            }
+        }
+    }
+
+    protected void readWay(ProtoReader msg, Selection sel) throws IOException {
+        long id = 0;
+        ProtoReader keys = null, vals = null, info = null, refs = null;
+        while(msg.hasNext()) {
+            switch (msg.readField()) {
+                case 1: id = msg.readVarint(); break;
+                case 2: keys = msg.readMessage(); break;
+                case 3: vals = msg.readMessage(); break;
+                case 4: info = msg.readMessage(); break;
+                case 8: refs = msg.readMessage(); break;
+                default: msg.skip();
+            }
+        }
+        List<WayNode> wayNodes = new ArrayList<WayNode>();
+        if(refs != null) {
+            long ref = 0;
+            while(refs.hasNext()) {
+                ref += refs.readSInt();
+                wayNodes.add(new WayNode(ref));
+            }
+        }
+        Way way = new Way(readData(id, keys, vals, info), wayNodes);
+        if(sel.acceptWay(way)) {
+            ways.add(way);
+        }
+    }
+
+    /**
+     * Reads the tags and metadata of a node or way
+     */
+    protected CommonEntityData readData(long id, ProtoReader keys, ProtoReader vals,
+            ProtoReader info) throws IOException {
+        List<Tag> tags = null;
+        if(keys != null && vals != null) {
+            tags = new ArrayList<Tag>(4);
+            while(keys.hasNext() && vals.hasNext()) {
+                tags.add(new Tag(string(keys.readVarint32()), string(vals.readVarint32())));
+            }
+        }
+        int version = 0, uid = -1, userSid = 0;
+        long timestamp = 0, changeset = 0;
+        if(info != null) {
+            while(info.hasNext()) {
+                switch (info.readField()) {
+                    case 1: version = info.readVarint32(); break;
+                    case 2: timestamp = info.readVarint(); break;
+                    case 3: changeset = info.readVarint(); break;
+                    case 4: uid = info.readVarint32(); break;
+                    case 5: userSid = info.readVarint32(); break;
+                    default: info.skip();
+                }
+            }
+        }
+        return data(id, version, timestamp, user(uid, userSid), changeset, tags);
+    }
+
+    protected CommonEntityData data(long id, int version, long timestamp, OsmUser user,
+            long changeset, List<Tag> tags) {
+        return new CommonEntityData(id, version, new Date(timestamp * dateGranularity),
+                user, changeset, tags != null ? tags : Collections.<Tag>emptyList());
+    }
+
+    protected CommonEntityData emptyData(long id) {
+        return data(id, 0, 0, OsmUser.NONE, 0, null);
+    }
+
+    protected OsmUser user(int uid, int userSid) throws IOException {
+        if(uid < 0) {
+            return OsmUser.NONE;
+        }
+        return new OsmUser(uid, string(userSid));
+    }
+
+    protected String string(int index) throws IOException {
+        if(index < 0 || index >= strings.length) {
+            throw new IOException("invalid PBF: string index " + index + " out of bounds");
+        }
+        return strings[index];
+    }
+
+    // division instead of multiplication with 1e-9, for the nearest double
+
+    protected double lat(long raw) {
+        return (latOffset + granularity * raw) / 1e9;
+    }
+
+    protected double lon(long raw) {
+        return (lonOffset + granularity * raw) / 1e9;
+    }
+
+    /**
+     * Delta-decodes the metadata of dense nodes, node by node
+     */
+    protected class DenseInfo {
+
+        protected ProtoReader versions, timestamps, changesets, uids, userSids;
+        protected int version, uid, userSid;
+        protected long timestamp, changeset;
+
+        protected DenseInfo(ProtoReader info) throws IOException {
+            while(info.hasNext()) {
+                switch (info.readField()) {
+                    case 1: versions = info.readMessage(); break;
+                    case 2: timestamps = info.readMessage(); break;
+                    case 3: changesets = info.readMessage(); break;
+                    case 4: uids = info.readMessage(); break;
+                    case 5: userSids = info.readMessage(); break;
+                    default: info.skip();
+                }
+            }
+        }
+
+        protected void next() throws IOException {
+            version = versions != null && versions.hasNext() ? versions.readVarint32() : 0;
+            timestamp += timestamps != null && timestamps.hasNext() ? timestamps.readSInt() : 0;
+            changeset += changesets != null && changesets.hasNext() ? changesets.readSInt() : 0;
+            uid += uids != null && uids.hasNext() ? (int) uids.readSInt() : 0;
+            userSid += userSids != null && userSids.hasNext() ? (int) userSids.readSInt() : 0;
+        }
+
+        protected CommonEntityData data(long id, List<Tag> tags) throws IOException {
+            OsmUser user = uids != null ? user(uid, userSid) : OsmUser.NONE;
+            return PbfBlock.this.data(id, version, timestamp, user, changeset, tags);
+        }
+
+    }
+
+}
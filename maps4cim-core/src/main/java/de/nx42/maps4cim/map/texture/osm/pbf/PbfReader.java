@@ -0,0 +1,479 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map.texture.osm.pbf;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.openstreetmap.osmosis.core.container.v0_6.NodeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.WayContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+import org.openstreetmap.osmosis.core.task.v0_6.Sink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.nx42.maps4cim.map.texture.osm.CoordinateMap;
+import de.nx42.maps4cim.map.texture.osm.SimpleOsmDump;
+import de.nx42.maps4cim.map.texture.osm.TagFilter;
+import de.nx42.maps4cim.util.Parallel;
+import de.nx42.maps4cim.util.gis.Area;
+
+/**
+ * Reads the contents of an OSM PBF file within the bounds of a map into a
+ * {@link SimpleOsmDump}.
+ *
+ * The file is read sequentially, but the blocks are decompressed and
+ * decoded concurrently in the shared pool of {@link Parallel}. The blocks
+ * are passed to the sink in the order of the file, so the result is the
+ * same as if the file was read by a single thread.
+ *
+ * Like a bounding box query of the Overpass API, the result contains all
+ * nodes within the bounds and all ways that have at least one node within
+ * the bounds, including the nodes of these ways outside of the bounds.
+ * Therefore the file is read twice: in the first pass, the nodes within
+ * the bounds and the ways that reference them are selected (and matched
+ * against the filter of the sink). The second pass only looks for the
+ * missing nodes of the selected ways, which is skipped, if there are none.
+ *
+ * As in all common PBF files (e.g. the extracts of Geofabrik), nodes must
+ * be stored before the ways that reference them. Relations are not read.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class PbfReader {
+
+    private static final Logger log = LoggerFactory.getLogger(PbfReader.class);
+
+    /** the maximum size of a BlobHeader (by specification) */
+    protected static final int maxHeaderSize = 64 * 1024;
+    /** the maximum size of a Blob (by specification) */
+    protected static final int maxBlobSize = 32 * 1024 * 1024;
+    /** the features of PBF files that are supported by this reader */
+    protected static final String[] supportedFeatures = { "OsmSchema-V0.6", "DenseNodes" };
+
+    protected final File file;
+    protected final Area bounds;
+    /** the size of the blob that follows the last BlobHeader */
+    protected int blobSize;
+
+    /**
+     * Creates a reader for the specified file
+     * @param file the PBF file to read
+     * @param bounds only the data within these bounds is read
+     */
+    public PbfReader(File file, Area bounds) {
+        this.file = file;
+        this.bounds = bounds;
+    }
+
+    /**
+     * Checks, if the specified file is in the PBF format (by file extension)
+     * @param file the file to check
+     * @return true, iff the file name ends with .pbf
+     */
+    public static boolean isPbf(File file) {
+        return file.getName().toLowerCase().endsWith(".pbf");
+    }
+
+    /**
+     * Reads the data within the bounds into the specified sink
+     * @param sink receives the entities
+     * @throws IOException if the file can't be read or is not a valid PBF file
+     */
+    public void read(final SimpleOsmDump sink) throws IOException {
+        sink.initialize(Collections.<String, Object>emptyMap());
+
+        // first pass: nodes within the bounds and the ways that reference them
+        final TagFilter filter = sink.getFilter();
+        final CoordinateMap inside = new CoordinateMap(1 << 12);
+        final WayNodeIds missing = new WayNodeIds();
+        readBlocks(new PbfBlock.Selection() {
+            @Override
+            public boolean withTags() {
+                return true;
+            }
+            @Override
+            public boolean acceptNode(long id, double lat, double lon) {
+                return bounds.contains(lat, lon);
+            }
+            @Override
+            public boolean acceptWays() {
+                return true;
+            }
+            @Override
+            public boolean acceptWay(Way way) {
+                return filter.isEmpty() || filter.matchesAny(way);
+            }
+        }, new BlockConsumer() {
+            boolean ways = false;
+            boolean warned = false;
+            @Override
+            public void accept(PbfBlock block) {
+                if(ways && !warned && !block.getNodes().isEmpty()) {
+                    log.warn("The nodes in {} are not stored before the ways. "
+                            + "Some ways may be missing.", file.getName());
+                    warned = true;
+                }
+                for (Node node : block.getNodes()) {
+                    inside.put(node.getId(), node.getLatitude(), node.getLongitude());
+                    sink.process(new NodeContainer(node));
+                }
+                for (Way way : block.getWays()) {
+                    if(isInside(way, inside)) {
+                        for (WayNode wn : way.getWayNodes()) {
+                            if(!inside.contains(wn.getNodeId())) {
+                                missing.add(wn.getNodeId());
+                            }
+                        }
+                        sink.process(new WayContainer(way));
+                    }
+                }
+                ways |= block.containsWays();
+            }
+        });
+
+        // second pass: the nodes of these ways outside of the bounds
+        final long[] ids = missing.toSortedArray();
+        if(ids.length > 0) {
+            log.debug("Reading {} nodes outside of the bounds from {}", ids.length, file.getName());
+            readBlocks(new PbfBlock.Selection() {
+                @Override
+                public boolean withTags() {
+                    return false;
+                }
+                @Override
+                public boolean acceptNode(long id, double lat, double lon) {
+                    return Arrays.binarySearch(ids, id) >= 0;
+                }
+                @Override
+                public boolean acceptWays() {
+                    return false;
+                }
+                @Override
+                public boolean acceptWay(Way way) {
+                    return false;
+                }
+            }, new BlockConsumer() {
+                @Override
+                public void accept(PbfBlock block) {
+                    for (Node node : block.getNodes()) {
+                        sink.process(new NodeContainer(node));
+                    }
+                }
+            });
+        }
+
+        sink.complete();
+        sink.release();
+    }
+
+    /**
+     * Reads all nodes and ways of the file into the specified sink (not
+     * limited to the bounds). Nodes are passed to the sink before the ways
+     * that reference them.
+     * @param sink receives the entities
+     * @throws IOException if the file can't be read or is not a valid PBF file
+     */
+    public void readAll(final Sink sink) throws IOException {
+        sink.initialize(Collections.<String, Object>emptyMap());
+        readBlocks(new PbfBlock.Selection() {
+            @Override
+            public boolean withTags() {
+                return true;
+            }
+            @Override
+            public boolean acceptNode(long id, double lat, double lon) {
+                return true;
+            }
+            @Override
+            public boolean acceptWays() {
+                return true;
+            }
+            @Override
+            public boolean acceptWay(Way way) {
+                return true;
+            }
+        }, new BlockConsumer() {
+            @Override
+            public void accept(PbfBlock block) {
+                for (Node node : block.getNodes()) {
+                    sink.process(new NodeContainer(node));
+                }
+                for (Way way : block.getWays()) {
+                    sink.process(new WayContainer(way));
+                }
+            }
+        });
+        sink.complete();
+        sink.release();
+    }
+
+    protected static boolean isInside(Way way, CoordinateMap inside) {
+        for (WayNode wn : way.getWayNodes()) {
+            if(inside.contains(wn.getNodeId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Receives the decoded blocks, in the order of the file
+     */
+    protected interface BlockConsumer {
+        void accept(PbfBlock block);
+    }
+
+    /**
+     * Reads all blobs of the file, decodes the data blocks concurrently and
+     * passes them in order to the consumer (in the calling thread).
+     * @param selection decides which entities are decoded
+     * @param consumer receives the decoded blocks
+     * @throws IOException if the file can't be read or is not a valid PBF file
+     */
+    protected void readBlocks(PbfBlock.Selection selection, BlockConsumer consumer)
+            throws IOException {
+        int window = 2 * Parallel.getParallelism();
+        Deque<Future<PbfBlock>> queue = new ArrayDeque<Future<PbfBlock>>(window);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file), 1 << 16));
+        try {
+            while(true) {
+                String type = readBlobType(in);
+                if(type == null) {
+                    break;
+                }
+                byte[] blob = readBlob(in);
+                if("OSMHeader".equals(type)) {
+                    checkHeader(inflate(blob));
+                } else if("OSMData".equals(type)) {
+                    queue.add(Parallel.submit(new DecodeTask(blob, selection)));
+                    if(queue.size() >= window) {
+                        consumer.accept(take(queue.poll()));
+                    }
+                }
+                // unknown blobs are skipped (by specification)
+            }
+            while(!queue.isEmpty()) {
+                consumer.accept(take(queue.poll()));
+            }
+        } finally {
+            for (Future<PbfBlock> f : queue) {
+                f.cancel(false);
+            }
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the next BlobHeader
+     * @param in the input stream
+     * @return the type of the blob or null, if the end of the file has
+     * been reached
+     * @throws IOException if the file can't be read or is not a valid PBF file
+     */
+    protected String readBlobType(DataInputStream in) throws IOException {
+        int headerSize;
+        try {
+            headerSize = in.readInt();
+        } catch(EOFException e) {
+            return null;
+        }
+        if(headerSize < 0 || headerSize > maxHeaderSize) {
+            throw new IOException("invalid PBF: blob header size " + headerSize);
+        }
+        byte[] header = new byte[headerSize];
+        in.readFully(header);
+
+        String type = null;
+        blobSize = -1;
+        ProtoReader pr = new ProtoReader(header);
+        while(pr.hasNext()) {
+            switch (pr.readField()) {
+                case 1: type = pr.readString(); break;
+                case 3: blobSize = pr.readVarint32(); break;
+                default: pr.skip();
+            }
+        }
+        if(type == null || blobSize < 0 || blobSize > maxBlobSize) {
+            throw new IOException("invalid PBF: malformed blob header");
+        }
+        return type;
+    }
+
+    protected byte[] readBlob(DataInputStream in) throws IOException {
+        byte[] blob = new byte[blobSize];
+        in.readFully(blob);
+        return blob;
+    }
+
+    /**
+     * Makes sure that this reader understands the contents of the file
+     * @param header the HeaderBlock
+     * @throws IOException if a required feature is not supported
+     */
+    protected void checkHeader(byte[] header) throws IOException {
+        ProtoReader pr = new ProtoReader(header);
+        while(pr.hasNext()) {
+            if(pr.readField() == 4) {
+                String feature = pr.readString();
+                if(!Arrays.asList(supportedFeatures).contains(feature)) {
+                    throw new IOException("The PBF file " + file.getName()
+                            + " requires the unsupported feature " + feature);
+                }
+            } else {
+                pr.skip();
+            }
+        }
+    }
+
+    /**
+     * Extracts the contents of a blob
+     * @param blob the encoded blob
+     * @return the uncompressed data
+     * @throws IOException if the blob is malformed or the compression is
+     * not supported
+     */
+    protected static byte[] inflate(byte[] blob) throws IOException {
+        ProtoReader pr = new ProtoReader(blob);
+        int rawSize = -1;
+        byte[] zlib = null;
+        while(pr.hasNext()) {
+            switch (pr.readField()) {
+                case 1: return pr.readBytes();
+                case 2: rawSize = pr.readVarint32(); break;
+                case 3: zlib = pr.readBytes(); break;
+                case 4: case 5: case 6: case 7:
+                    throw new IOException("unsupported compression of PBF blob "
+                            + "(only zlib is supported)");
+                default: pr.skip();
+            }
+        }
+        if(zlib == null || rawSize < 0 || rawSize > maxBlobSize) {
+            throw new IOException("invalid PBF: malformed blob");
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(zlib);
+            byte[] raw = new byte[rawSize];
+            int length = 0;
+            while(length < rawSize && !inflater.finished()) {
+                int n = inflater.inflate(raw, length, rawSize - length);
+                if(n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if(length != rawSize) {
+                throw new IOException("invalid PBF: blob size does not match");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("invalid PBF: corrupt zlib data", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    protected static PbfBlock take(Future<PbfBlock> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while reading PBF");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Decompresses and decodes a data block
+     */
+    protected static class DecodeTask implements Callable<PbfBlock> {
+
+        protected final byte[] blob;
+        protected final PbfBlock.Selection selection;
+
+        public DecodeTask(byte[] blob, PbfBlock.Selection selection) {
+            this.blob = blob;
+            this.selection = selection;
+        }
+
+        @Override
+        public PbfBlock call() throws IOException {
+            return PbfBlock.decode(inflate(blob), selection);
+        }
+
+    }
+
+    /**
+     * Collects node IDs in a growing primitive array
+     */
+    protected static class WayNodeIds {
+
+        protected long[] ids = new long[1024];
+        protected int size = 0;
+
+        public void add(long id) {
+            if(size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        /**
+         * @return the collected IDs, sorted and without duplicates
+         */
+        public long[] toSortedArray() {
+            Arrays.sort(ids, 0, size);
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                if(unique == 0 || ids[i] != ids[unique - 1]) {
+                    ids[unique++] = ids[i];
+                }
+            }
+            return Arrays.copyOf(ids, unique);
+        }
+
+    }
+
+}
@@ -0,0 +1,188 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.map.texture.osm.pbf;
+
+import java.io.IOException;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A minimal decoder for the wire format of protocol buffers, which reads
+ * the fields of a single message from a byte array. Nested messages and
+ * packed repeated fields are read with a new reader on the same array
+ * (see {@link #readMessage()}), so no data is copied.
+ *
+ * Only the wire types that are used by the OSM PBF format are supported
+ * (varint, 64 bit, length-delimited and 32 bit).
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ProtoReader {
+
+    public static final int VARINT = 0;
+    public static final int FIXED64 = 1;
+    public static final int LENGTH_DELIMITED = 2;
+    public static final int FIXED32 = 5;
+
+    protected final byte[] buf;
+    protected final int limit;
+    protected int pos;
+    /** the last tag that was read */
+    protected int tag;
+
+    /**
+     * Creates a reader for a message that fills the whole array
+     * @param buf the encoded message
+     */
+    public ProtoReader(byte[] buf) {
+        this(buf, 0, buf.length);
+    }
+
+    /**
+     * Creates a reader for a message within the specified range of an array
+     * @param buf the array that contains the message
+     * @param offset the start of the message
+     * @param length the length of the message in bytes
+     */
+    public ProtoReader(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * @return true, iff there are more bytes to read in this message
+     */
+    public boolean hasNext() {
+        return pos < limit;
+    }
+
+    /**
+     * Reads the key of the next field
+     * @return the field number of the next field
+     * @throws IOException if the message is malformed
+     */
+    public int readField() throws IOException {
+        tag = readVarint32();
+        if(tag >>> 3 == 0) {
+            throw new IOException("invalid protobuf field number 0");
+        }
+        return tag >>> 3;
+    }
+
+    /**
+     * @return the wire type of the current field
+     */
+    public int getWireType() {
+        return tag & 7;
+    }
+
+    /**
+     * Skips the value of the current field
+     * @throws IOException if the wire type is not supported
+     */
+    public void skip() throws IOException {
+        switch (getWireType()) {
+            case VARINT: readVarint(); break;
+            case FIXED64: advance(8); break;
+            case LENGTH_DELIMITED: advance(readVarint32()); break;
+            case FIXED32: advance(4); break;
+            default: throw new IOException("unsupported protobuf wire type " + getWireType());
+        }
+    }
+
+    public long readVarint() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if(pos >= limit) {
+                throw new IOException("truncated protobuf message");
+            }
+            byte b = buf[pos++];
+            result |= (long) (b & 0x7F) << shift;
+            if(b >= 0) {
+                return result;
+            }
+        }
+        throw new IOException("malformed protobuf varint");
+    }
+
+    public int readVarint32() throws IOException {
+        return (int) readVarint();
+    }
+
+    /**
+     * @return a zigzag encoded signed integer (sint32 / sint64)
+     * @throws IOException if the message is malformed
+     */
+    public long readSInt() throws IOException {
+        long n = readVarint();
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    public boolean readBool() throws IOException {
+        return readVarint() != 0;
+    }
+
+    /**
+     * @return the value of a length-delimited field as new array
+     * @throws IOException if the message is malformed
+     */
+    public byte[] readBytes() throws IOException {
+        int length = readVarint32();
+        int start = advance(length);
+        byte[] result = new byte[length];
+        System.arraycopy(buf, start, result, 0, length);
+        return result;
+    }
+
+    /**
+     * @return the value of a length-delimited field as UTF-8 string
+     * @throws IOException if the message is malformed
+     */
+    public String readString() throws IOException {
+        int length = readVarint32();
+        int start = advance(length);
+        return new String(buf, start, length, Charsets.UTF_8);
+    }
+
+    /**
+     * Reads a nested message or the values of a packed repeated field
+     * @return a reader for the contents of a length-delimited field
+     * @throws IOException if the message is malformed
+     */
+    public ProtoReader readMessage() throws IOException {
+        int length = readVarint32();
+        int start = advance(length);
+        return new ProtoReader(buf, start, length);
+    }
+
+    /**
+     * Moves the position forward
+     * @param length the number of bytes to skip
+     * @return the previous position
+     * @throws IOException if the message ends before
+     */
+    protected int advance(int length) throws IOException {
+        if(length < 0 || length > limit - pos) {
+            throw new IOException("truncated protobuf message");
+        }
+        int start = pos;
+        pos += length;
+        return start;
+    }
+
+}
@@ -0,0 +1,24 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * Reads OpenStreetMap data in the protocolbuffer binary format (.osm.pbf),
+ * without any dependencies on protobuf libraries.
+ *
+ * @see <a href="http://wiki.openstreetmap.org/wiki/PBF_Format">PBF Format</a>
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+package de.nx42.maps4cim.map.texture.osm.pbf;
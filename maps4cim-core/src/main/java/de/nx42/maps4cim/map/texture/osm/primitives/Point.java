@@ -16,80 +16,111 @@
  */
 package de.nx42.maps4cim.map.texture.osm.primitives;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.openstreetmap.osmosis.core.domain.v0_6.Node;
 
 import de.nx42.maps4cim.config.texture.ColorDef;
 import de.nx42.maps4cim.config.texture.osm.NodeDef;
-import de.nx42.maps4cim.util.gis.Coordinate;
+import de.nx42.maps4cim.util.gis.Projection;
 
 
 public class Point extends RenderPrimitive {
 
-    protected final Coordinate coord;
+    /** projected x-coordinate of the center (pixels) */
+    protected final float x;
+    /** projected y-coordinate of the center (pixels) */
+    protected final float y;
 
     protected double radius;
 
     // basic constructors
 
-    public Point(Coordinate coord) {
+    public Point(float x, float y) {
         super();
-        this.coord = coord;
+        this.x = x;
+        this.y = y;
         this.radius = 1.0;
+        calculateBounds();
     }
 
-    public Point(NodeDef def, Node node) {
+    public Point(NodeDef def, Node node, Projection projection) {
         super();
-        this.coord = new Coordinate(node);
+        this.x = (float) projection.x(node.getLongitude());
+        this.y = (float) projection.y(node.getLatitude());
         this.radius = def.getRadius();
+        calculateBounds();
     }
 
     // Constructors with color
 
-    public Point(NodeDef def, Node node, ColorDef color) {
+    public Point(NodeDef def, Node node, Projection projection, ColorDef color) {
         super(color);
-        this.coord = new Coordinate(node);
+        this.x = (float) projection.x(node.getLongitude());
+        this.y = (float) projection.y(node.getLatitude());
         this.radius = def.getRadius();
+        calculateBounds();
     }
 
-    public Point(NodeDef def, Node node, Collection<ColorDef> colors) {
+    public Point(NodeDef def, Node node, Projection projection, Collection<ColorDef> colors) {
         super(colors, def);
-        this.coord = new Coordinate(node);
+        this.x = (float) projection.x(node.getLongitude());
+        this.y = (float) projection.y(node.getLatitude());
         this.radius = def.getRadius();
+        calculateBounds();
     }
 
-    public Point(Coordinate coord, int color, double radius) {
+    public Point(float x, float y, int color, double radius) {
         super(color);
-        this.coord = coord;
+        this.x = x;
+        this.y = y;
         this.radius = radius;
+        calculateBounds();
     }
 
-    public Point(Coordinate coord, int color) {
-        this(coord, color, 1.0);
+    public Point(float x, float y, int color) {
+        this(x, y, color, 1.0);
     }
 
-    public Point(Coordinate coord, ColorDef color) {
+    public Point(float x, float y, ColorDef color) {
         super(color);
-        this.coord = coord;
+        this.x = x;
+        this.y = y;
         this.radius = 1.0;
+        calculateBounds();
     }
 
-    public Point(Coordinate coord, Collection<ColorDef> colors, NodeDef def) {
+    public Point(float x, float y, Collection<ColorDef> colors, NodeDef def) {
         super(colors, def);
-        this.coord = coord;
+        this.x = x;
+        this.y = y;
         this.radius = def.getRadius();
+        calculateBounds();
+    }
+
+    protected void calculateBounds() {
+        minX = (float) (x - radius);
+        maxX = (float) (x + radius);
+        minY = (float) (y - radius);
+        maxY = (float) (y + radius);
     }
 
     // getters
 
     /**
-     * @return the coord
+     * @return the projected x-coordinate of the center (pixels)
+     */
+    public float getX() {
+        return x;
+    }
+
+    /**
+     * @return the projected y-coordinate of the center (pixels)
      */
-    public Coordinate getCoord() {
-        return coord;
+    public float getY() {
+        return y;
     }
 
     /**
@@ -101,10 +132,10 @@ public class Point extends RenderPrimitive {
 
     // helpers
 
-    public static List<Point> getPoints(NodeDef def, Collection<Node> xmlNodes) {
-        List<Point> points = new LinkedList<Point>();
+    public static List<Point> getPoints(NodeDef def, Collection<Node> xmlNodes, Projection projection) {
+        List<Point> points = new ArrayList<Point>(xmlNodes.size());
         for (Node node : xmlNodes) {
-            points.add(new Point(def, node));
+            points.add(new Point(def, node, projection));
         }
         return points;
     }
@@ -17,47 +17,91 @@
 package de.nx42.maps4cim.map.texture.osm.primitives;
 
 import java.util.Collection;
-import java.util.List;
 
 import de.nx42.maps4cim.config.texture.ColorDef;
 import de.nx42.maps4cim.config.texture.osm.PolygonDef;
-import de.nx42.maps4cim.util.gis.Coordinate;
 
+/**
+ * A filled polygon. The vertices are stored as projected coordinates in the
+ * pixel space of the rendered image (see {@link de.nx42.maps4cim.util.gis.Projection}).
+ */
 public class Polygon extends RenderPrimitive {
 
-    protected List<Coordinate> nodes;
+    /** x-coordinates of the vertices (pixels) */
+    protected final float[] xs;
+    /** y-coordinates of the vertices (pixels) */
+    protected final float[] ys;
 
     // basic constructors
 
-    public Polygon(List<Coordinate> nodes) {
+    public Polygon(float[] xs, float[] ys) {
         super();
-        this.nodes = nodes;
+        this.xs = xs;
+        this.ys = ys;
+        calculateBounds();
     }
 
     // Constructors with color
 
-    public Polygon(List<Coordinate> nodes, int color) {
+    public Polygon(float[] xs, float[] ys, int color) {
         super(color);
-        this.nodes = nodes;
+        this.xs = xs;
+        this.ys = ys;
+        calculateBounds();
     }
 
-    public Polygon(List<Coordinate> nodes, ColorDef color) {
+    public Polygon(float[] xs, float[] ys, ColorDef color) {
         super(color);
-        this.nodes = nodes;
+        this.xs = xs;
+        this.ys = ys;
+        calculateBounds();
     }
 
-    public Polygon(List<Coordinate> nodes, Collection<ColorDef> colors, PolygonDef def) {
+    public Polygon(float[] xs, float[] ys, Collection<ColorDef> colors, PolygonDef def) {
         super(colors, def);
-        this.nodes = nodes;
+        this.xs = xs;
+        this.ys = ys;
+        calculateBounds();
+    }
+
+    protected void calculateBounds() {
+        if(xs.length != ys.length) {
+            throw new IllegalArgumentException(String.format(
+                    "got %s x- but %s y-coordinates", xs.length, ys.length));
+        }
+        if(xs.length > 0) {
+            minX = maxX = xs[0];
+            minY = maxY = ys[0];
+            for (int i = 1; i < xs.length; i++) {
+                minX = Math.min(minX, xs[i]);
+                maxX = Math.max(maxX, xs[i]);
+                minY = Math.min(minY, ys[i]);
+                maxY = Math.max(maxY, ys[i]);
+            }
+        }
     }
 
     // Getters
 
     /**
-     * @return the nodes
+     * @return the x-coordinates of the vertices (pixels)
+     */
+    public float[] getXs() {
+        return xs;
+    }
+
+    /**
+     * @return the y-coordinates of the vertices (pixels)
+     */
+    public float[] getYs() {
+        return ys;
+    }
+
+    /**
+     * @return the number of vertices
      */
-    public List<Coordinate> getNodes() {
-        return nodes;
+    public int size() {
+        return xs.length;
     }
 
 }
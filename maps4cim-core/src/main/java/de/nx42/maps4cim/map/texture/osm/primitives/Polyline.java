@@ -17,11 +17,9 @@
 package de.nx42.maps4cim.map.texture.osm.primitives;
 
 import java.util.Collection;
-import java.util.List;
 
 import de.nx42.maps4cim.config.texture.ColorDef;
 import de.nx42.maps4cim.config.texture.osm.WayDef;
-import de.nx42.maps4cim.util.gis.Coordinate;
 
 
 public class Polyline extends Polygon {
@@ -31,34 +29,34 @@ public class Polyline extends Polygon {
 
     // basic constructors
 
-    public Polyline(List<Coordinate> nodes) {
-        super(nodes);
+    public Polyline(float[] xs, float[] ys) {
+        super(xs, ys);
         this.strokeWidth = 1.0;
     }
 
-    public Polyline(List<Coordinate> nodes, WayDef def) {
-        super(nodes);
+    public Polyline(float[] xs, float[] ys, WayDef def) {
+        super(xs, ys);
         this.strokeWidth = def.getStrokeWidth();
     }
 
     // Constructors with color
 
-    public Polyline(List<Coordinate> nodes, int color, double strokeWidth) {
-        super(nodes, color);
+    public Polyline(float[] xs, float[] ys, int color, double strokeWidth) {
+        super(xs, ys, color);
         this.strokeWidth = strokeWidth;
     }
 
-    public Polyline(List<Coordinate> nodes, int color) {
-        this(nodes, color, 1.0);
+    public Polyline(float[] xs, float[] ys, int color) {
+        this(xs, ys, color, 1.0);
     }
 
-    public Polyline(List<Coordinate> nodes, ColorDef color) {
-        super(nodes, color);
+    public Polyline(float[] xs, float[] ys, ColorDef color) {
+        super(xs, ys, color);
         this.strokeWidth = 1.0;
     }
 
-    public Polyline(List<Coordinate> nodes, Collection<ColorDef> colors, WayDef def) {
-        super(nodes, colors, def);
+    public Polyline(float[] xs, float[] ys, Collection<ColorDef> colors, WayDef def) {
+        super(xs, ys, colors, def);
         this.strokeWidth = def.getStrokeWidth();
     }
 
@@ -16,6 +16,7 @@
  */
 package de.nx42.maps4cim.map.texture.osm.primitives;
 
+import java.awt.geom.Rectangle2D;
 import java.util.Collection;
 
 import org.slf4j.Logger;
@@ -32,6 +33,12 @@ public abstract class RenderPrimitive {
 
     public final int color;
 
+    // bounding box of the projected primitive (pixels)
+    protected float minX;
+    protected float minY;
+    protected float maxX;
+    protected float maxY;
+
 
     public RenderPrimitive() {
         this.color = Texture.GRASS.draw();
@@ -62,4 +69,12 @@ public abstract class RenderPrimitive {
         return color;
     }
 
+    /**
+     * @return the bounding box of the projected primitive in pixels
+     * (without the width of outlines)
+     */
+    public Rectangle2D getBounds() {
+        return new Rectangle2D.Float(minX, minY, maxX - minX, maxY - minY);
+    }
+
 }
@@ -0,0 +1,129 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.util;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes blocks of 32 bit integers in little endian byte order to an output
+ * stream, without the need to keep a full copy of the encoded data in memory.
+ *
+ * Integers are collected in a reusable direct byte buffer of fixed size,
+ * which is written to the underlying channel whenever it is full (or when
+ * {@link #flush()} is called). If the output stream is a
+ * {@link FileOutputStream}, it's file channel is used directly, so the
+ * encoded bytes are never copied to the java heap.
+ *
+ * Note that this writer does not close the underlying stream, this remains
+ * the responsibility of the caller.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class IntChannelWriter {
+
+    /** the channel to write into */
+    protected final WritableByteChannel channel;
+    /** reusable little endian buffer (the actual storage) */
+    protected final ByteBuffer bytes;
+    /** integer view of the byte buffer, used for bulk transfers */
+    protected final IntBuffer ints;
+
+    /**
+     * Creates a new writer for the specified output stream
+     * @param out the output stream to write into
+     * @param capacity the capacity of the internal buffer, in integers
+     */
+    public IntChannelWriter(OutputStream out, int capacity) {
+        this(toChannel(out), capacity);
+    }
+
+    /**
+     * Creates a new writer for the specified channel
+     * @param channel the channel to write into
+     * @param capacity the capacity of the internal buffer, in integers
+     */
+    public IntChannelWriter(WritableByteChannel channel, int capacity) {
+        this.channel = channel;
+        this.bytes = ByteBuffer.allocateDirect(capacity * 4).order(ByteOrder.LITTLE_ENDIAN);
+        this.ints = bytes.asIntBuffer();
+    }
+
+    /**
+     * Writes the specified range of integers. The data is buffered and
+     * written to the channel as soon as the buffer is full.
+     * @param src the array to read from
+     * @param off the first index in the array to write
+     * @param len the number of integers to write
+     * @throws IOException if the data can't be written to the channel
+     */
+    public void write(int[] src, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!ints.hasRemaining()) {
+                flush();
+            }
+            int chunk = Math.min(len, ints.remaining());
+            ints.put(src, off, chunk);
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    /**
+     * Writes all integers of the specified array.
+     * @param src the array to write
+     * @throws IOException if the data can't be written to the channel
+     */
+    public void write(int[] src) throws IOException {
+        write(src, 0, src.length);
+    }
+
+    /**
+     * Writes all buffered integers to the underlying channel
+     * @throws IOException if the data can't be written to the channel
+     */
+    public void flush() throws IOException {
+        bytes.clear();
+        bytes.limit(ints.position() * 4);
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        ints.clear();
+    }
+
+    /**
+     * Returns a channel that writes to the specified output stream. File
+     * output streams provide their own channel, which shares the position
+     * with the stream, all other streams get wrapped.
+     * @param out the output stream to write into
+     * @return a channel that writes to the output stream
+     */
+    public static WritableByteChannel toChannel(OutputStream out) {
+        if (out instanceof FileOutputStream) {
+            return ((FileOutputStream) out).getChannel();
+        } else {
+            return Channels.newChannel(out);
+        }
+    }
+
+}
@@ -20,6 +20,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.SocketTimeoutException;
@@ -27,8 +28,6 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.util.zip.GZIPInputStream;
 
-import com.google.common.io.ByteStreams;
-
 /**
  * Collection of networking functions
  *
@@ -85,20 +84,37 @@ public class Network {
         return conn;
 	}
 
+	/**
+	 * Writes the answer of the connection to the destination file. The
+	 * download is aborted with an {@link InterruptedIOException}, if the
+	 * current thread is interrupted.
+	 */
 	private static void storeConnectionAnswer(URLConnection conn, File dest) throws IOException {
 	    // create input stream and upgrade to gzip, if required
 	    InputStream in = conn.getInputStream();
-        if ("gzip".equals(conn.getContentEncoding())) {
-            in = new GZIPInputStream(in);
-        }
-        
-        // create output stream to file and copy data
-        OutputStream out = new FileOutputStream(dest);
-        ByteStreams.copy(in, out);
+	    OutputStream out = null;
+	    try {
+	        if ("gzip".equals(conn.getContentEncoding())) {
+	            in = new GZIPInputStream(in);
+	        }
 
-        // close all streams
-        in.close();
-        out.close();
+	        // create output stream to file and copy data
+	        out = new FileOutputStream(dest);
+	        byte[] buffer = new byte[8192];
+	        int read;
+	        while ((read = in.read(buffer)) != -1) {
+	            if (Thread.currentThread().isInterrupted()) {
+	                throw new InterruptedIOException("Download of " + conn.getURL() + " was interrupted");
+	            }
+	            out.write(buffer, 0, read);
+	        }
+	    } finally {
+	        // close all streams
+	        in.close();
+	        if (out != null) {
+	            out.close();
+	        }
+	    }
 	}
 
 }
@@ -0,0 +1,159 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits work on the rows (or columns) of a grid into bands, which are
+ * processed concurrently.
+ *
+ * All bands are executed in one process-wide work-stealing pool with one
+ * thread per processor. Bands may be split again while they are processed
+ * (e.g. a map generated in a band of a batch run), this does not block any
+ * threads of the pool.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class Parallel {
+
+    /** by default, bands are not split below this number of rows */
+    public static final int defaultMinBand = 32;
+    /** each thread gets this many bands (on average), to balance the load */
+    protected static final int bandsPerThread = 4;
+
+    /** the shared pool for all bands */
+    protected static final ForkJoinPool pool =
+            new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Work on a band of rows (or columns)
+     */
+    public interface Band {
+
+        /**
+         * Processes the rows (or columns) within the specified range.
+         * Usually called concurrently for different ranges!
+         * @param from the first row of the band (inclusive)
+         * @param to the end of the band (exclusive)
+         */
+        void process(int from, int to);
+
+    }
+
+    /**
+     * Processes the specified number of rows in concurrent bands of at
+     * least {@link #defaultMinBand} rows.
+     * @param rows the number of rows to process
+     * @param band the work to do for each band
+     * @see #forEachBand(int, int, Band)
+     */
+    public static void forEachBand(int rows, Band band) {
+        forEachBand(rows, defaultMinBand, band);
+    }
+
+    /**
+     * Processes the specified number of rows in concurrent bands. If there
+     * are not enough rows for more than one band (or only one processor),
+     * the whole range is processed in the calling thread. This method
+     * returns after all bands have been processed. Runtime exceptions that
+     * are thrown by a band are rethrown here.
+     * @param rows the number of rows to process
+     * @param minBand the minimum number of rows per band
+     * @param band the work to do for each band
+     */
+    public static void forEachBand(int rows, int minBand, Band band) {
+        if(rows <= 0) {
+            return;
+        }
+        int threads = pool.getParallelism();
+        int bandRows = Math.max(minBand, divideCeil(rows, threads * bandsPerThread));
+        if(threads == 1 || rows <= bandRows) {
+            band.process(0, rows);
+            return;
+        }
+
+        BandTask task = new BandTask(band, 0, rows, bandRows);
+        if(ForkJoinTask.inForkJoinPool()) {
+            // already working on a band, split the current task
+            task.invoke();
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    /**
+     * Executes a single task in the shared pool. Waiting for the result
+     * from within the pool (e.g. while generating a map in a band of a
+     * batch run) does not block the pool, the waiting thread helps to
+     * process the queued tasks instead.
+     * @param task the task to execute
+     * @return the future result of the task
+     */
+    public static <T> ForkJoinTask<T> submit(Callable<T> task) {
+        return pool.submit(task);
+    }
+
+    /**
+     * @return the number of threads that process bands
+     */
+    public static int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    protected static int divideCeil(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    /**
+     * Splits a range of rows in halves, until the bands are small enough
+     */
+    protected static class BandTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 5405254924536104318L;
+
+        protected final Band band;
+        protected final int from;
+        protected final int to;
+        protected final int bandRows;
+
+        public BandTask(Band band, int from, int to, int bandRows) {
+            this.band = band;
+            this.from = from;
+            this.to = to;
+            this.bandRows = bandRows;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = to - from;
+            if(rows <= bandRows) {
+                band.process(from, to);
+            } else {
+                // split at a multiple of the band size
+                int mid = from + divideCeil(rows / 2, bandRows) * bandRows;
+                invokeAll(new BandTask(band, from, mid, bandRows),
+                        new BandTask(band, mid, to, bandRows));
+            }
+        }
+
+    }
+
+}
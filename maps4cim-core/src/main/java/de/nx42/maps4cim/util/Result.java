@@ -21,6 +21,8 @@ import static java.lang.String.format;
 import java.util.LinkedList;
 import java.util.List;
 
+import de.nx42.maps4cim.util.metrics.Metrics;
+
 /**
  * Stores the result of an arbitrary operation.
  * The result is a simple distinction of success and failure, but in case
@@ -40,6 +42,8 @@ public class Result {
     /** the state of this result
         (null = undecided, false = failure, true = success) */
     protected Boolean success;
+    /** timing and memory metrics of the task (optional) */
+    protected Metrics metrics;
 
     /**
      * Initializes a new Result for a task with the specified name in an
@@ -95,6 +99,21 @@ public class Result {
         return success == null || !success;
     }
 
+    /**
+     * @return the timing and memory metrics of the task, or null if the
+     * task was not measured
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics the timing and memory metrics of the task
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Generates a detailed report containing the name of the task, the state
      * of this Result and any error messages, if applicable
@@ -202,6 +202,69 @@ public class Arrays2D {
     	return combined;
     }
 
+    /**
+     * Combines the grids that are arranged in a 2d-array into a single large
+     * grid, just like {@link Arrays2D#combine(short[][][][], int, int, int, boolean)}
+     * does for 2d-arrays. All grids must have the same size.
+     * @param wrapper the grids to combine. Addressed as {@code wrapper[wrapperY][wrapperX]}
+     * @param overlap # of rows and columns at the borders that overlap with
+     *                neighboring grids
+     * @param validate throws an exception, if the overlapping parts of the grids
+     *                 do not match exactly. Otherwise, the value from the first
+     *                 grid (LTR, top to bottom) is chosen.
+     * @return the single combined grid of all input grids
+     * @throws InputMismatchException if the overlapping tiles do not match
+     */
+    public static ShortGrid combine(ShortGrid[][] wrapper, int overlap, boolean validate)
+            throws InputMismatchException {
+
+        int lenY = wrapper.length;
+        int lenX = wrapper[0].length;
+        int width = wrapper[0][0].getWidth();
+        int height = wrapper[0][0].getHeight();
+        int combHeight = lenY * (height - overlap) + overlap;
+        int combWidth  = lenX * (width  - overlap) + overlap;
+
+        ShortGrid combined = ShortGrid.allocate(combWidth, combHeight);
+        short[] row = new short[width];
+
+        for (int wY = 0; wY < lenY; wY++) {
+            for (int wX = 0; wX < lenX; wX++) {
+                // get the current grid from the wrapper
+                ShortGrid sub = wrapper[wY][wX];
+                if(sub.getWidth() != width || sub.getHeight() != height) {
+                    throw new InputMismatchException("All grids must have the same size!");
+                }
+
+                // calculate coordinates in source and destination grid
+                int top = calculateOffset(height, overlap, wY);
+                int left = calculateOffset(width, overlap, wX);
+                int startY = wY == 0 ? 0 : overlap;
+                int startX = wX == 0 ? 0 : overlap;
+                int extY = height - startY;
+                int extX = width - startX;
+
+                // validate overlap
+                if(validate && overlap > 0) {
+                    if(wY > 0) {
+                        validateAbove(sub, wrapper[wY-1][wX], overlap);
+                    }
+                    if(wX > 0) {
+                        validateLeft(sub, wrapper[wY][wX-1], overlap);
+                    }
+                }
+
+                // actual copy, row by row
+                for (int y = 0; y < extY; y++) {
+                    sub.getRow(startY+y, startX, row, 0, extX);
+                    combined.setRow(top+y, left, row, 0, extX);
+                }
+            }
+        }
+
+        return combined;
+    }
+
     /**
      * Calculates the offset of a sub-array within the new large combined
      * array.
@@ -264,4 +327,44 @@ public class Arrays2D {
 		}
     }
 
+    /**
+     * Validates the overlapping parts of two grids.
+     * @see Arrays2D#validateAbove(short[][], short[][], int)
+     * @param current the current grid (to validate)
+     * @param above the grid above the current grid (y-index -1)
+     * @param overlap the number of overlapping data rows
+     */
+    private static void validateAbove(ShortGrid current, ShortGrid above, int overlap)
+            throws InputMismatchException {
+        for (int i = 0; i < overlap; i++) {
+            int yAbove = above.getHeight()-1-i;
+            for (int x = 0; x < current.getWidth(); x++) {
+                if(above.get(x, yAbove) != current.get(x, i)) {
+                    throw new InputMismatchException("The overlapping parts of "
+                            + "the current grid and the one above do not match!");
+                }
+            }
+        }
+    }
+
+    /**
+     * Validates the overlapping parts of two grids.
+     * @see Arrays2D#validateLeft(short[][], short[][], int)
+     * @param current the current grid (to validate)
+     * @param left the grid to the left of the current grid (x-index -1)
+     * @param overlap the number of overlapping data columns
+     */
+    private static void validateLeft(ShortGrid current, ShortGrid left, int overlap)
+            throws InputMismatchException {
+        for (int x = 0; x < overlap; x++) {
+            int xLeft = left.getWidth()-1-x;
+            for (int y = 0; y < current.getHeight(); y++) {
+                if(current.get(x, y) != left.get(xLeft, y)) {
+                    throw new InputMismatchException("The overlapping parts of "
+                            + "the current grid and the one to the left do not match!");
+                }
+            }
+        }
+    }
+
 }
@@ -0,0 +1,313 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.util.arr2d;
+
+import de.nx42.maps4cim.util.Parallel;
+import de.nx42.maps4cim.util.Parallel.Band;
+
+/**
+ * Crops and resizes grids using bicubic interpolation, without converting
+ * them to ImageJ images and back.
+ *
+ * The results are the same as those of ImageJ's bicubic resize (see
+ * {@link ImageJInterpolation#cropAndResize(FloatGrid, int, int, float, float, float, float)}):
+ * the same sample positions, the same cubic convolution kernel (a = 0.5)
+ * and the same bilinear interpolation close to the borders of the image.
+ * The kernel is separable, so each row of the source is interpolated
+ * horizontally only once (instead of once per target row that uses it)
+ * and the target rows are calculated in concurrent bands. The weights of
+ * all sample positions are calculated in advance, the inner loops work on
+ * primitive arrays only.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class BicubicResampler {
+
+    /**
+     * Crops and resizes the input grid into a new output grid. The crop
+     * region is rounded like in ImageJ: the indices are truncated, the
+     * width and height are rounded up. The region is clipped to the bounds
+     * of the input grid.
+     * @param input the grid to work on
+     * @param lenX the desired length in x-direction (with, horizontal length)
+     * @param lenY the desired length in y-direction (height, vertical length)
+     * @param minX the lower index in x-direction
+     * @param minY the lower index in y-direction
+     * @param maxX the higher index in x-direction
+     * @param maxY the higher index in y-direction
+     * @return a new cropped and resized version of the input grid
+     */
+    public static FloatGrid cropAndResize(FloatGrid input, int lenX, int lenY,
+            float minX, float minY, float maxX, float maxY) {
+
+        // crop region, clipped to the input grid
+        int x = (int) minX;
+        int y = (int) minY;
+        int x2 = Math.min(x + (int) Math.ceil(maxX - minX), input.getWidth());
+        int y2 = Math.min(y + (int) Math.ceil(maxY - minY), input.getHeight());
+        x = Math.max(x, 0);
+        y = Math.max(y, 0);
+
+        FloatGrid output = FloatGrid.allocate(lenX, lenY);
+        resize(input, x, y, x2 - x, y2 - y, output);
+        return output;
+    }
+
+    /**
+     * Resizes the input grid into a new output grid
+     * @param input the grid to resize
+     * @param lenX the desired length in x-direction (with, horizontal length)
+     * @param lenY the desired length in y-direction (height, vertical length)
+     * @return a new grid with the specified dimensions, and values
+     * interpolated from the input grid.
+     */
+    public static FloatGrid resize(FloatGrid input, int lenX, int lenY) {
+        FloatGrid output = FloatGrid.allocate(lenX, lenY);
+        resize(input, 0, 0, input.getWidth(), input.getHeight(), output);
+        return output;
+    }
+
+    /**
+     * Resizes a region of the input grid, so it fills the output grid. The
+     * output grid may be reused for several calls.
+     * @param input the grid to read from
+     * @param x the first column of the region
+     * @param y the first row of the region
+     * @param width the number of columns in the region
+     * @param height the number of rows in the region
+     * @param output the grid to write the resized region into
+     */
+    public static void resize(FloatGrid input, int x, int y, int width, int height,
+            FloatGrid output) {
+        if(width <= 0 || height <= 0 || x < 0 || y < 0
+                || x + width > input.getWidth() || y + height > input.getHeight()) {
+            throw new IllegalArgumentException(String.format("The region (%s,%s,%s,%s) "
+                    + "is not within the bounds of the grid (%sx%s)", x, y, width, height,
+                    input.getWidth(), input.getHeight()));
+        }
+        new Resize(input, x, y, width, height, output).run();
+    }
+
+    /**
+     * The cubic convolution kernel, as used by ImageJ (a = 0.5)
+     * @param x the distance from the sample
+     * @return the weight of the sample
+     */
+    protected static double cubic(double x) {
+        if(x < 0.0) {
+            x = -x;
+        }
+        if(x < 1.0) {
+            return x * x * (x * 1.5 + -2.5) + 1.0;
+        } else if(x < 2.0) {
+            return -0.5 * x * x * x + 2.5 * x * x - 4.0 * x + 2.0;
+        }
+        return 0.0;
+    }
+
+    /**
+     * A single resize operation: the sample positions and weights, which
+     * are shared by all bands
+     */
+    protected static class Resize implements Band {
+
+        protected final FloatGrid src;
+        protected final int srcX, srcY, srcWidth, srcHeight;
+        protected final FloatGrid dst;
+        protected final int dstWidth, dstHeight;
+
+        /** sample positions in the source region, for each column / row */
+        protected final double[] posX, posY;
+        /** index of the sample left of / above each position */
+        protected final int[] baseX, baseY;
+        /** 4 weights for each column / row (bicubic only) */
+        protected final double[] weightsX, weightsY;
+        /** true, if the column / row is too close to the border for bicubic interpolation */
+        protected final boolean[] borderX, borderY;
+
+        public Resize(FloatGrid src, int x, int y, int width, int height, FloatGrid dst) {
+            this.src = src;
+            this.srcX = x;
+            this.srcY = y;
+            this.srcWidth = width;
+            this.srcHeight = height;
+            this.dst = dst;
+            this.dstWidth = dst.getWidth();
+            this.dstHeight = dst.getHeight();
+
+            this.posX = new double[dstWidth];
+            this.baseX = new int[dstWidth];
+            this.weightsX = new double[dstWidth * 4];
+            this.borderX = new boolean[dstWidth];
+            positions(srcWidth, dstWidth, posX, baseX, weightsX, borderX);
+
+            this.posY = new double[dstHeight];
+            this.baseY = new int[dstHeight];
+            this.weightsY = new double[dstHeight * 4];
+            this.borderY = new boolean[dstHeight];
+            positions(srcHeight, dstHeight, posY, baseY, weightsY, borderY);
+        }
+
+        /**
+         * Calculates the sample positions along one axis, exactly like
+         * ImageJ (the centers of source and target are aligned, shifted by
+         * half a target pixel)
+         */
+        protected static void positions(int srcLength, int dstLength, double[] pos,
+                int[] base, double[] weights, boolean[] border) {
+            double srcCenter = srcLength / 2.0;
+            double scale = (double) dstLength / srcLength;
+            double dstCenter = dstLength / 2.0 + scale / 2.0;
+            for (int i = 0; i < dstLength; i++) {
+                double p = (i - dstCenter) / scale + srcCenter;
+                int b = (int) Math.floor(p);
+                pos[i] = p;
+                base[i] = b;
+                border[i] = b <= 0 || b >= srcLength - 2;
+                for (int k = 0; k < 4; k++) {
+                    weights[i * 4 + k] = cubic(p - (b - 1 + k));
+                }
+            }
+        }
+
+        public void run() {
+            Parallel.forEachBand(dstHeight, this);
+        }
+
+        @Override
+        public void process(int from, int to) {
+            // horizontally interpolated source rows, up to 4 at a time
+            double[][] rows = new double[4][dstWidth];
+            int[] rowIndex = { -1, -1, -1, -1 };
+            float[] line = new float[srcWidth];
+            float[] out = new float[dstWidth];
+
+            for (int y = from; y < to; y++) {
+                if(borderY[y]) {
+                    for (int x = 0; x < dstWidth; x++) {
+                        out[x] = (float) bilinear(posX[x], posY[y]);
+                    }
+                } else {
+                    // interpolate the required source rows horizontally
+                    int first = baseY[y] - 1;
+                    for (int k = 0; k < 4; k++) {
+                        int row = first + k;
+                        int slot = row & 3;
+                        if(rowIndex[slot] != row) {
+                            src.getRow(srcY + row, srcX, line, 0, srcWidth);
+                            interpolateRow(line, rows[slot]);
+                            rowIndex[slot] = row;
+                        }
+                    }
+                    // combine the rows vertically
+                    double[] r0 = rows[first & 3];
+                    double[] r1 = rows[(first + 1) & 3];
+                    double[] r2 = rows[(first + 2) & 3];
+                    double[] r3 = rows[(first + 3) & 3];
+                    int w = y * 4;
+                    double w0 = weightsY[w], w1 = weightsY[w+1], w2 = weightsY[w+2], w3 = weightsY[w+3];
+                    for (int x = 0; x < dstWidth; x++) {
+                        if(borderX[x]) {
+                            out[x] = (float) bilinear(posX[x], posY[y]);
+                        } else {
+                            double q = 0;
+                            q += r0[x] * w0;
+                            q += r1[x] * w1;
+                            q += r2[x] * w2;
+                            q += r3[x] * w3;
+                            out[x] = (float) q;
+                        }
+                    }
+                }
+                dst.setRow(y, out);
+            }
+        }
+
+        /**
+         * Horizontal pass of the bicubic interpolation for one source row
+         * (columns at the border are skipped)
+         * @param line the values of the source row
+         * @param result the interpolated values for each target column
+         */
+        protected void interpolateRow(float[] line, double[] result) {
+            for (int x = 0; x < dstWidth; x++) {
+                if(!borderX[x]) {
+                    int u = baseX[x] - 1;
+                    int w = x * 4;
+                    double p = 0;
+                    p += line[u] * weightsX[w];
+                    p += line[u+1] * weightsX[w+1];
+                    p += line[u+2] * weightsX[w+2];
+                    p += line[u+3] * weightsX[w+3];
+                    result[x] = p;
+                }
+            }
+        }
+
+        /**
+         * Bilinear interpolation close to the borders of the region, exactly
+         * like ImageJ: positions outside of the region are clamped to the
+         * border, samples that are NaN are skipped, if possible.
+         * @param x the x-position in the source region
+         * @param y the y-position in the source region
+         * @return the interpolated value
+         */
+        protected double bilinear(double x, double y) {
+            if(x < -1 || x >= srcWidth || y < -1 || y >= srcHeight) {
+                return 0;   // the background
+            }
+            if(x < 0.0) {
+                x = 0.0;
+            }
+            if(x >= srcWidth - 1.0) {
+                x = srcWidth - 1.001;
+            }
+            if(y < 0.0) {
+                y = 0.0;
+            }
+            if(y >= srcHeight - 1.0) {
+                y = srcHeight - 1.001;
+            }
+            int xbase = Math.max((int) x, 0);
+            int ybase = Math.max((int) y, 0);
+            double xFraction = x - xbase;
+            double yFraction = y - ybase;
+            int xnext = Math.min(xbase + 1, srcWidth - 1);
+            int ynext = Math.min(ybase + 1, srcHeight - 1);
+
+            double lowerLeft = src.get(srcX + xbase, srcY + ybase);
+            double lowerRight = src.get(srcX + xnext, srcY + ybase);
+            double upperRight = src.get(srcX + xnext, srcY + ynext);
+            double upperLeft = src.get(srcX + xbase, srcY + ynext);
+
+            double upperAverage = average(upperLeft, upperRight, xFraction);
+            double lowerAverage = average(lowerLeft, lowerRight, xFraction);
+            return average(lowerAverage, upperAverage, yFraction);
+        }
+
+        protected static double average(double a, double b, double fraction) {
+            if(Double.isNaN(a) && fraction >= 0.5) {
+                return b;
+            } else if(Double.isNaN(b) && fraction < 0.5) {
+                return a;
+            }
+            return a + fraction * (b - a);
+        }
+
+    }
+
+}
@@ -16,6 +16,11 @@
  */
 package de.nx42.maps4cim.util.arr2d;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.nx42.maps4cim.util.Parallel;
+import de.nx42.maps4cim.util.Parallel.Band;
+
 /**
  * The gap interpolator shall provide functions to fill gaps within arbitrary
  * two-dimensional data sets.
@@ -61,6 +66,20 @@ public class GapInterpolator {
         GapInterpolator.gap = gap;
     }
 
+    /**
+     * Returns the maximum distance (on each axis) between a missing data
+     * point and the samples that may be used to fill it: the next valid
+     * samples are searched within the limit, the outer samples are up to
+     * twice as far away and are again searched within the limit.
+     * If only a window of a larger data set is used, the gaps inside the
+     * window are filled exactly like in the full data set, as long as the
+     * window is surrounded by a margin of this size (or the data set ends).
+     * @return the maximum distance of samples used to fill a gap
+     */
+    public int getReach() {
+        return 4 * limit;
+    }
+
     /**
      * Area-Algorithm to derive the value of a missing data point from
      * surrounding data.
@@ -77,7 +96,7 @@ public class GapInterpolator {
      * @return interpolated value for the missing data point
      */
     @Deprecated
-    public float area(short[][] arr, int x, int y) {
+    public float area(ShortGrid arr, int x, int y) {
 
         /*
          * Goal: get a 4x4 grid to apply bicubic interpolation
@@ -101,8 +120,8 @@ public class GapInterpolator {
         // shortest distance between valid values
         int xWidth = xHigh - xLow;
         int yWidth = yHigh - yLow;
-        int maxX = arr[0].length - 1;
-        int maxY = arr.length - 1;
+        int maxX = arr.getWidth() - 1;
+        int maxY = arr.getHeight() - 1;
 
         // find sample values
         for (int iy = 0; iy < samples.length; iy++) {
@@ -142,7 +161,7 @@ public class GapInterpolator {
      * @param y y-index of the missing data point (first/outer array)
      * @return interpolated value for the missing data point
      */
-    public float star(short[][] arr, int x, int y) {
+    public float star(ShortGrid arr, int x, int y) {
 
         /*
          * for each x and y:
@@ -180,14 +199,14 @@ public class GapInterpolator {
             int xWidth = x2 - x1;
 
             // outer samples
-            int maxX = arr[0].length - 1;
+            int maxX = arr.getWidth() - 1;
             int x0 = x1 - xWidth < 0 ? 0 : x1 - xWidth;
             int x3 = x2 + xWidth > maxX ? maxX : x2 + xWidth;
 
             // fill samples (get inner and calculate outer values)
             samplesX[0] = findNearestValidValue(arr, x0, y, limit);
-            samplesX[1] = arr[y][x1];
-            samplesX[2] = arr[y][x2];
+            samplesX[1] = arr.get(x1, y);
+            samplesX[2] = arr.get(x2, y);
             samplesX[3] = findNearestValidValue(arr, x3, y, limit);
 
             // interpolate
@@ -201,14 +220,14 @@ public class GapInterpolator {
             int yWidth = y2 - y1;
 
             // outer samples
-            int maxY = arr.length - 1;
+            int maxY = arr.getHeight() - 1;
             int y0 = y1 - yWidth < 0 ? 0 : y1 - yWidth;
             int y3 = y2 + yWidth > maxY ? maxY : y2 + yWidth;
 
             // fill samples (get inner and calculate outer values)
             samplesY[0] = findNearestValidValue(arr, x, y0, limit);
-            samplesY[1] = arr[y1][x];
-            samplesY[2] = arr[y2][x];
+            samplesY[1] = arr.get(x, y1);
+            samplesY[2] = arr.get(x, y2);
             samplesY[3] = findNearestValidValue(arr, x, y3, limit);
 
             // interpolate
@@ -229,6 +248,96 @@ public class GapInterpolator {
         }
     }
 
+    /**
+     * Fills all gaps within a region of the grid and returns the region as
+     * floats. The gaps get exactly the same values as
+     * {@link GapInterpolator#star(ShortGrid, int, int)} would return for
+     * each of them, but without searching the surrounding samples again and
+     * again for each gap: the distances to the next valid sample in each
+     * direction are calculated once for the whole grid (a forward and a
+     * backward pass per axis), so the effort grows linear with the size of
+     * the grid, no matter how large the gaps are.
+     * All passes are processed concurrently in bands of rows (or columns).
+     *
+     * @param arr the full array where missing data can be interpoalted from
+     * @param x the first column of the region
+     * @param y the first row of the region
+     * @param width the number of columns in the region
+     * @param height the number of rows in the region
+     * @return the values of the region, with all gaps filled
+     */
+    public FloatGrid fill(final ShortGrid arr, final int x, final int y,
+            final int width, final int height) {
+
+        // copy valid values, count gaps
+        final FloatGrid result = FloatGrid.allocate(width, height);
+        final AtomicInteger gaps = new AtomicInteger();
+        final boolean[] gapRows = new boolean[height];
+        Parallel.forEachBand(height, new Band() {
+            @Override
+            public void process(int from, int to) {
+                short[] src = new short[width];
+                float[] dst = new float[width];
+                int count = 0;
+                for (int iy = from; iy < to; iy++) {
+                    arr.getRow(y + iy, x, src, 0, width);
+                    for (int ix = 0; ix < width; ix++) {
+                        if(src[ix] == gap) {
+                            gapRows[iy] = true;
+                            count++;
+                        }
+                        dst[ix] = src[ix];
+                    }
+                    result.setRow(iy, dst);
+                }
+                gaps.addAndGet(count);
+            }
+        });
+        if(gaps.get() == 0) {
+            return result;
+        }
+
+        // fill the gaps
+        final Distances dist = limit <= Distances.maxDistance ? new Distances(arr) : null;
+        Parallel.forEachBand(height, new Band() {
+            @Override
+            public void process(int from, int to) {
+                float[] samplesX = new float[4];
+                float[] samplesY = new float[4];
+                for (int iy = from; iy < to; iy++) {
+                    if(!gapRows[iy]) {
+                        continue;
+                    }
+                    for (int ix = 0; ix < width; ix++) {
+                        if(arr.get(x + ix, y + iy) == gap) {
+                            float val = dist != null
+                                    ? dist.star(x + ix, y + iy, samplesX, samplesY)
+                                    : star(arr, x + ix, y + iy);
+                            result.set(ix, iy, val);
+                        }
+                    }
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Star-Algorithm for 2d-arrays, addressed as arr[y][x].
+     * Note that the array is copied for each call, so for anything more than
+     * a few data points {@link GapInterpolator#star(ShortGrid, int, int)}
+     * should be used.
+     *
+     * @param arr the full array where missing data can be interpoalted from
+     * @param x x-index of the missing data point (second/inner array)
+     * @param y y-index of the missing data point (first/outer array)
+     * @return interpolated value for the missing data point
+     * @see GapInterpolator#star(ShortGrid, int, int)
+     */
+    public float star(short[][] arr, int x, int y) {
+        return star(ShortGrid.of(arr), x, y);
+    }
+
     /**
      * Finds the next index in the specified direction that holds a valid
      * value (which must not be a {@link GapInterpolator#gap})
@@ -242,7 +351,7 @@ public class GapInterpolator {
      * @return the next valid index in the specified direction, or the opposite
      * direction, if nothing is found in that direction
      */
-    protected int findNextValidIndex(short[][] arr, Direction dir, int x, int y, int limit) {
+    protected int findNextValidIndex(ShortGrid arr, Direction dir, int x, int y, int limit) {
         int idx = dir.nextIndex(arr, x, y, limit);
         if(idx == notfound) {
             // find in opposite direction
@@ -263,7 +372,7 @@ public class GapInterpolator {
      * @param y y-index of the missing data point (first/outer array)
      * @return the next valid value using star-search
      */
-    protected short findNearestValidValue(short[][] arr, int x, int y) {
+    protected short findNearestValidValue(ShortGrid arr, int x, int y) {
         return findNearestValidValue(arr, x, y, Integer.MAX_VALUE);
     }
 
@@ -279,32 +388,32 @@ public class GapInterpolator {
      * @param limit distance after which the search is aborted (returns 0)
      * @return the next valid value using star-search
      */
-    protected short findNearestValidValue(short[][] arr, int x, int y, int limit) {
+    protected short findNearestValidValue(ShortGrid arr, int x, int y, int limit) {
         // shortcut
-        if(arr[y][x] != gap) {
-            return arr[y][x];
+        if(arr.get(x, y) != gap) {
+            return arr.get(x, y);
         }
 
         // star-search ;)
-        int lenY = arr.length;
-        int lenX = arr[0].length;
+        int lenY = arr.getHeight();
+        int lenX = arr.getWidth();
         int pos, dist = 1;
         while(dist <= limit && (x-dist >= 0 || x+dist < lenX || y-dist >= 0 || y+dist < lenY)) {
             pos = x-dist;
-            if(pos >= 0 && arr[y][pos] != gap) {
-                return arr[y][pos];
+            if(pos >= 0 && arr.get(pos, y) != gap) {
+                return arr.get(pos, y);
             }
             pos = x+dist;
-            if(pos < lenX && arr[y][pos] != gap) {
-                return arr[y][pos];
+            if(pos < lenX && arr.get(pos, y) != gap) {
+                return arr.get(pos, y);
             }
             pos = y-dist;
-            if(pos >= 0 && arr[pos][x] != gap) {
-                return arr[pos][x];
+            if(pos >= 0 && arr.get(x, pos) != gap) {
+                return arr.get(x, pos);
             }
             pos = y+dist;
-            if(pos < lenY && arr[pos][x] != gap) {
-                return arr[pos][x];
+            if(pos < lenY && arr.get(x, pos) != gap) {
+                return arr.get(x, pos);
             }
             dist++;
         }
@@ -312,6 +421,250 @@ public class GapInterpolator {
     }
 
 
+    /**
+     * The distances from each data point to the next valid sample in each
+     * direction on both axes (up to the limit), calculated for a whole grid.
+     * Based on these distances, the search functions of the gap
+     * interpolator can be answered in constant time.
+     */
+    protected class Distances {
+
+        /** max. distance that can be stored (unsigned byte, 0 means not found) */
+        protected static final int maxDistance = 255;
+
+        protected final ShortGrid arr;
+        protected final int width;
+        protected final int height;
+        /** distances to the next valid sample in each direction */
+        protected final byte[] xMinus, xPlus, yMinus, yPlus;
+
+        /**
+         * Calculates the distances for all data points of the grid
+         * @param arr the grid to analyze
+         */
+        public Distances(final ShortGrid arr) {
+            this.arr = arr;
+            this.width = arr.getWidth();
+            this.height = arr.getHeight();
+            int size = width * height;
+            this.xMinus = new byte[size];
+            this.xPlus = new byte[size];
+            this.yMinus = new byte[size];
+            this.yPlus = new byte[size];
+
+            // rows: forward and backward pass (only rows that contain gaps)
+            final boolean[] gapColumns = new boolean[width];
+            Parallel.forEachBand(height, new Band() {
+                @Override
+                public void process(int from, int to) {
+                    short[] row = new short[width];
+                    for (int y = from; y < to; y++) {
+                        arr.getRow(y, row);
+                        if(!containsGap(row)) {
+                            continue;
+                        }
+                        int offset = y * width;
+                        int dist = 0;
+                        for (int x = 0; x < width; x++) {
+                            xMinus[offset + x] = (byte) dist;
+                            dist = next(dist, row[x]);
+                            if(row[x] == gap) {
+                                gapColumns[x] = true;
+                            }
+                        }
+                        dist = 0;
+                        for (int x = width - 1; x >= 0; x--) {
+                            xPlus[offset + x] = (byte) dist;
+                            dist = next(dist, row[x]);
+                        }
+                    }
+                }
+            });
+
+            // columns: forward and backward pass (only columns that contain
+            // gaps), processed row by row in bands of columns
+            final int[] columns = indicesOf(gapColumns);
+            Parallel.forEachBand(columns.length, new Band() {
+                @Override
+                public void process(int from, int to) {
+                    for (int y = 1; y < height; y++) {
+                        int offset = y * width;
+                        for (int i = from; i < to; i++) {
+                            int x = columns[i];
+                            yMinus[offset + x] = (byte) next(
+                                    yMinus[offset - width + x] & 0xFF, arr.get(x, y - 1));
+                        }
+                    }
+                    for (int y = height - 2; y >= 0; y--) {
+                        int offset = y * width;
+                        for (int i = from; i < to; i++) {
+                            int x = columns[i];
+                            yPlus[offset + x] = (byte) next(
+                                    yPlus[offset + width + x] & 0xFF, arr.get(x, y + 1));
+                        }
+                    }
+                }
+            });
+        }
+
+        /**
+         * @param dist the distance of the previous data point (0: not found)
+         * @param prev the value of the previous data point
+         * @return the distance of the current data point to the next valid
+         * sample, or 0 if it is beyond the limit
+         */
+        protected int next(int dist, short prev) {
+            if(prev != gap) {
+                return 1;
+            }
+            return dist == 0 || dist >= limit ? 0 : dist + 1;
+        }
+
+        /**
+         * Distances are only read for gaps, so rows and columns without any
+         * gaps can be skipped
+         * @param row the values of a row
+         * @return true, iff the row contains at least one gap
+         */
+        protected boolean containsGap(short[] row) {
+            for (int i = 0; i < row.length; i++) {
+                if(row[i] == gap) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @param flags an array of flags
+         * @return the indices of all flags that are true, in ascending order
+         */
+        protected int[] indicesOf(boolean[] flags) {
+            int count = 0;
+            for (boolean flag : flags) {
+                if(flag) {
+                    count++;
+                }
+            }
+            int[] indices = new int[count];
+            for (int i = 0, j = 0; i < flags.length; i++) {
+                if(flags[i]) {
+                    indices[j++] = i;
+                }
+            }
+            return indices;
+        }
+
+        /**
+         * Same as {@link GapInterpolator#star(ShortGrid, int, int)}, but
+         * based on the precalculated distances
+         * @param x x-index of the missing data point
+         * @param y y-index of the missing data point
+         * @param samplesX buffer for the samples on the x-axis (length 4)
+         * @param samplesY buffer for the samples on the y-axis (length 4)
+         * @return interpolated value for the missing data point
+         */
+        public float star(int x, int y, float[] samplesX, float[] samplesY) {
+            int idx = y * width + x;
+            int left = xMinus[idx] & 0xFF;
+            int right = xPlus[idx] & 0xFF;
+            int top = yMinus[idx] & 0xFF;
+            int bottom = yPlus[idx] & 0xFF;
+
+            // indices of next valid samples (see findNextValidIndex)
+            int x1 = left > 0 ? x - left : right > 0 ? x + right : notfound;
+            int x2 = right > 0 ? x + right : left > 0 ? x - left : notfound;
+            int y1 = top > 0 ? y - top : bottom > 0 ? y + bottom : notfound;
+            int y2 = bottom > 0 ? y + bottom : top > 0 ? y - top : notfound;
+
+            boolean useX = x1 >= 0;
+            boolean useY = y1 >= 0;
+
+            float interpX = 0;
+            float interpY = 0;
+
+            if(useX) {
+                int xWidth = x2 - x1;
+                int maxX = width - 1;
+                int x0 = x1 - xWidth < 0 ? 0 : x1 - xWidth;
+                int x3 = x2 + xWidth > maxX ? maxX : x2 + xWidth;
+
+                samplesX[0] = findNearestValidValue(x0, y);
+                samplesX[1] = arr.get(x1, y);
+                samplesX[2] = arr.get(x2, y);
+                samplesX[3] = findNearestValidValue(x3, y);
+
+                float fracX = xWidth == 0 ? 0 : (x-x1) / (float) xWidth;
+                interpX = igap.interpolateSampleX(samplesX, fracX);
+            }
+
+            if(useY) {
+                int yWidth = y2 - y1;
+                int maxY = height - 1;
+                int y0 = y1 - yWidth < 0 ? 0 : y1 - yWidth;
+                int y3 = y2 + yWidth > maxY ? maxY : y2 + yWidth;
+
+                samplesY[0] = findNearestValidValue(x, y0);
+                samplesY[1] = arr.get(x, y1);
+                samplesY[2] = arr.get(x, y2);
+                samplesY[3] = findNearestValidValue(x, y3);
+
+                float fracY = yWidth == 0 ? 0 : (y-y1) / (float) yWidth;
+                interpY = igap.interpolateSampleY(samplesY, fracY);
+            }
+
+            if(useX && useY) {
+                return (interpX + interpY) / 2f;
+            } else if(useX) {
+                return interpX;
+            } else if(useY) {
+                return interpY;
+            } else {
+                return 0;
+            }
+        }
+
+        /**
+         * Same as {@link GapInterpolator#findNearestValidValue(ShortGrid, int, int, int)}
+         * (within the limit), but based on the precalculated distances. On
+         * equal distances, the same order is used (x-, x+, y-, y+).
+         * @param x x-index of the data point
+         * @param y y-index of the data point
+         * @return the next valid value using star-search, or 0 if there is
+         * none within the limit
+         */
+        protected short findNearestValidValue(int x, int y) {
+            short val = arr.get(x, y);
+            if(val != gap) {
+                return val;
+            }
+            int idx = y * width + x;
+            int best = 0;
+            val = 0;
+            int dist = xMinus[idx] & 0xFF;
+            if(dist > 0) {
+                best = dist;
+                val = arr.get(x - dist, y);
+            }
+            dist = xPlus[idx] & 0xFF;
+            if(dist > 0 && (best == 0 || dist < best)) {
+                best = dist;
+                val = arr.get(x + dist, y);
+            }
+            dist = yMinus[idx] & 0xFF;
+            if(dist > 0 && (best == 0 || dist < best)) {
+                best = dist;
+                val = arr.get(x, y - dist);
+            }
+            dist = yPlus[idx] & 0xFF;
+            if(dist > 0 && (best == 0 || dist < best)) {
+                val = arr.get(x, y + dist);
+            }
+            return val;
+        }
+
+    }
+
     /**
      * Defines the four directions available in a 2D-Array.
      *
@@ -324,11 +677,11 @@ public class GapInterpolator {
     protected enum Direction {
         Y_MINUS {
             @Override
-            public int nextIndex(short[][] arr, int x, int y, int limit) {
+            public int nextIndex(ShortGrid arr, int x, int y, int limit) {
                 int yIdx = y;
                 int count = 0;
                 while(count < limit && yIdx > 0) {
-                    if(arr[--yIdx][x] != gap) {
+                    if(arr.get(x, --yIdx) != gap) {
                         return yIdx;
                     }
                     count++;
@@ -342,12 +695,12 @@ public class GapInterpolator {
         },
         Y_PLUS {
             @Override
-            public int nextIndex(short[][] arr, int x, int y, int limit) {
+            public int nextIndex(ShortGrid arr, int x, int y, int limit) {
                 int yIdx = y;
-                int maxIdx = arr.length-2;  // -2 for decrement AFTER comparison
+                int maxIdx = arr.getHeight()-2;  // -2 for decrement AFTER comparison
                 int count = 0;
                 while(count < limit && yIdx <= maxIdx) {
-                    if(arr[++yIdx][x] != gap) {
+                    if(arr.get(x, ++yIdx) != gap) {
                         return yIdx;
                     }
                     count++;
@@ -361,11 +714,11 @@ public class GapInterpolator {
         },
         X_MINUS {
             @Override
-            public int nextIndex(short[][] arr, int x, int y, int limit) {
+            public int nextIndex(ShortGrid arr, int x, int y, int limit) {
                 int xIdx = x;
                 int count = 0;
                 while(count < limit && xIdx > 0) {
-                    if(arr[y][--xIdx] != gap) {
+                    if(arr.get(--xIdx, y) != gap) {
                         return xIdx;
                     }
                     count++;
@@ -379,12 +732,12 @@ public class GapInterpolator {
         },
         X_PLUS {
             @Override
-            public int nextIndex(short[][] arr, int x, int y, int limit) {
+            public int nextIndex(ShortGrid arr, int x, int y, int limit) {
                 int xIdx = x;
-                int maxIdx = arr[0].length-2;  // -2 for decrement AFTER comparison
+                int maxIdx = arr.getWidth()-2;  // -2 for decrement AFTER comparison
                 int count = 0;
                 while(count < limit && xIdx <= maxIdx) {
-                    if(arr[y][++xIdx] != gap) {
+                    if(arr.get(++xIdx, y) != gap) {
                         return xIdx;
                     }
                     count++;
@@ -406,7 +759,7 @@ public class GapInterpolator {
          * @param y y-index of the missing data point (first/outer array)
          * @return the next valid index in the specified direction
          */
-        public int nextIndex(short[][] arr, int x, int y) {
+        public int nextIndex(ShortGrid arr, int x, int y) {
             return nextIndex(arr, x, y, Integer.MAX_VALUE);
         };
 
@@ -421,7 +774,7 @@ public class GapInterpolator {
          * (returns {@link GapInterpolator#notfound})
          * @return the next valid index in the specified direction
          */
-        public abstract int nextIndex(short[][] arr, int x, int y, int limit);
+        public abstract int nextIndex(ShortGrid arr, int x, int y, int limit);
 
         /**
          * @return the opposite of the current direction
@@ -0,0 +1,155 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.util.arr2d;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Base class for flat two-dimensional grids of primitive values.
+ *
+ * All data points of a grid are stored in a single one-dimensional array
+ * (or buffer) in row-major order, so the value at (x,y) is found at index
+ * {@code y * width + x}. Compared to jagged java arrays (e.g. float[y][x]),
+ * this saves one indirection for each access, keeps all rows in one
+ * contiguous block of memory and allows to pass the data to other libraries
+ * (e.g. ImageJ) or to I/O channels without any conversion.
+ *
+ * Grids are either backed by an array on the java heap (the default) or by
+ * a buffer outside of the heap (direct or memory mapped), see the static
+ * factory methods of the implementations.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public abstract class Grid {
+
+    /** number of columns (extent in x-direction) */
+    protected final int width;
+    /** number of rows (extent in y-direction) */
+    protected final int height;
+
+    /**
+     * Creates a new grid with the specified dimensions
+     * @param width the number of columns
+     * @param height the number of rows
+     */
+    protected Grid(int width, int height) {
+        if(width < 0 || height < 0) {
+            throw new IllegalArgumentException(String.format(
+                    "invalid grid size %sx%s", width, height));
+        }
+        if((long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format(
+                    "grid size %sx%s exceeds the maximum array size", width, height));
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @return the number of columns (extent in x-direction)
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the number of rows (extent in y-direction)
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the total number of data points in this grid
+     */
+    public int size() {
+        return width * height;
+    }
+
+    /**
+     * Calculates the position of the data point (x,y) in the underlying
+     * linear storage
+     * @param x the column (second index)
+     * @param y the row (first index)
+     * @return the index of the data point in the linear storage
+     */
+    public int index(int x, int y) {
+        return y * width + x;
+    }
+
+    /**
+     * @param other another grid
+     * @return true, iff both grids have the same width and height
+     */
+    public boolean sameSize(Grid other) {
+        return width == other.width && height == other.height;
+    }
+
+    /**
+     * @return true, iff this grid is backed by an accessible array on the
+     * java heap
+     */
+    public abstract boolean hasArray();
+
+    /**
+     * @return the size of a single data point in bytes
+     */
+    public abstract int getBytesPerElement();
+
+    /**
+     * @return the memory that is occupied by the data points of this grid,
+     * in bytes (on or off the heap)
+     */
+    public long getByteSize() {
+        return (long) size() * getBytesPerElement();
+    }
+
+    /**
+     * Allocates a direct byte buffer in native byte order, to be used as
+     * storage for grids outside of the java heap
+     * @param elements the number of elements to store
+     * @param bytesPerElement the size of a single element in bytes
+     * @return a new direct byte buffer
+     */
+    protected static ByteBuffer allocateDirectBytes(int elements, int bytesPerElement) {
+        return ByteBuffer.allocateDirect(elements * bytesPerElement).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Checks, if the length of a storage array or buffer matches the size of
+     * the grid.
+     * @param length the length of the storage
+     * @param width the number of columns
+     * @param height the number of rows
+     * @throws IllegalArgumentException if the storage does not match
+     */
+    protected static void checkLength(int length, int width, int height) {
+        if(length != width * height) {
+            throw new IllegalArgumentException(String.format(
+                    "storage of length %s does not match a grid of %sx%s",
+                    length, width, height));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [%sx%s, %s]", getClass().getSimpleName(),
+                width, height, hasArray() ? "heap" : "off-heap");
+    }
+
+}
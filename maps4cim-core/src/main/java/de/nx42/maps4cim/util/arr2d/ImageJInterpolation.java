@@ -19,6 +19,7 @@ package de.nx42.maps4cim.util.arr2d;
 import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
+import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 
 public class ImageJInterpolation {
@@ -89,6 +90,59 @@ public class ImageJInterpolation {
         return linearizedArrayTo2D(resized, lenX, lenY);
     }
 
+    /**
+     * Resizes the grid to the given dimensions.
+     * The data is passed to ImageJ without conversion, if the grid is stored
+     * on the java heap.
+     * @param input the grid to resize
+     * @param lenX the desired length in x-direction (with, horizontal length)
+     * @param lenY the desired length in y-direction (height, vertical length)
+     * @return a new grid with the specified dimensions, and values
+     * interpolated from the input grid.
+     */
+    public static FloatGrid resize(FloatGrid input, int lenX, int lenY) {
+        ImageProcessor ip = toProcessor(input);
+        float[] resized = (float[]) ip.resize(lenX, lenY).getPixels();
+        return FloatGrid.wrap(resized, lenX, lenY);
+    }
+
+    /**
+     * Crops and resizes the input grid into a new output grid, see
+     * {@link ImageJInterpolation#cropAndResize(float[][], int, int, float, float, float, float)}.
+     * The data is passed to ImageJ without conversion, if the grid is stored
+     * on the java heap.
+     * @param input the grid to work on
+     * @param lenX the desired length in x-direction (with, horizontal length)
+     * @param lenY the desired length in y-direction (height, vertical length)
+     * @param minX the lower index in x-direction
+     * @param minY the lower index in y-direction
+     * @param maxX the higher index in x-direction
+     * @param maxY the higher index in y-direction
+     * @return a new cropped and resized version of the input grid
+     */
+    public static FloatGrid cropAndResize(FloatGrid input, int lenX, int lenY,
+            float minX, float minY, float maxX, float maxY) {
+
+        ImageProcessor ip = toProcessor(input);
+        ip.setRoi((int) minX, (int) minY, (int) Math.ceil(maxX - minX), (int) Math.ceil(maxY - minY));
+
+        float[] resized = (float[]) ip.crop().resize(lenX, lenY).getPixels();
+        return FloatGrid.wrap(resized, lenX, lenY);
+    }
+
+    /**
+     * Creates an ImageJ image processor for bicubic interpolation, that
+     * shares the data of the grid (if possible).
+     * @param input the grid to wrap
+     * @return an image processor for the grid
+     */
+    protected static ImageProcessor toProcessor(FloatGrid input) {
+        float[] pixels = input.hasArray() ? input.array() : input.copy().array();
+        ImageProcessor ip = new FloatProcessor(input.getWidth(), input.getHeight(), pixels, null);
+        ip.setInterpolationMethod(ImageProcessor.BICUBIC);
+        return ip;
+    }
+
     public static void pngExport(float[][] input, String path) {
         float[] linearized = linearize2DArray(input);
         ImageStack is = ImageStack.create(input[0].length, input.length, 1, 32);
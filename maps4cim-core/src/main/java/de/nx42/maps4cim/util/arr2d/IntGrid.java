@@ -0,0 +1,290 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.util.arr2d;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A flat, row-major grid of int values.
+ *
+ * @see Grid
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class IntGrid extends Grid {
+
+    /** size of a single value in bytes */
+    public static final int bytesPerElement = 4;
+
+    /** heap storage, null if the grid is stored off-heap */
+    protected final int[] array;
+    /** off-heap storage, null if the grid is stored on the heap */
+    protected final IntBuffer buffer;
+
+    protected IntGrid(int width, int height, int[] array) {
+        super(width, height);
+        checkLength(array.length, width, height);
+        this.array = array;
+        this.buffer = null;
+    }
+
+    protected IntGrid(int width, int height, IntBuffer buffer) {
+        super(width, height);
+        checkLength(buffer.capacity(), width, height);
+        this.array = null;
+        this.buffer = buffer;
+    }
+
+    // factories
+
+    /**
+     * Creates a new grid on the java heap, all values are initialized with 0
+     * @param width the number of columns
+     * @param height the number of rows
+     * @return a new grid
+     */
+    public static IntGrid allocate(int width, int height) {
+        return new IntGrid(width, height, new int[width * height]);
+    }
+
+    /**
+     * Creates a new grid outside of the java heap, all values are initialized
+     * with 0
+     * @param width the number of columns
+     * @param height the number of rows
+     * @return a new grid
+     */
+    public static IntGrid allocateDirect(int width, int height) {
+        return new IntGrid(width, height,
+                allocateDirectBytes(width * height, bytesPerElement).asIntBuffer());
+    }
+
+    /**
+     * Wraps an existing array in row-major order. The array is not copied,
+     * changes in the grid are visible in the array and vice versa.
+     * @param array the array to wrap, must have a length of width * height
+     * @param width the number of columns
+     * @param height the number of rows
+     * @return a grid that is backed by the specified array
+     */
+    public static IntGrid wrap(int[] array, int width, int height) {
+        return new IntGrid(width, height, array);
+    }
+
+    /**
+     * Wraps an existing buffer in row-major order. The buffer is not copied,
+     * changes in the grid are visible in the buffer and vice versa.
+     * @param buffer the buffer to wrap, must have a capacity of width * height
+     * @param width the number of columns
+     * @param height the number of rows
+     * @return a grid that is backed by the specified buffer
+     */
+    public static IntGrid wrap(IntBuffer buffer, int width, int height) {
+        return new IntGrid(width, height, buffer);
+    }
+
+    /**
+     * Copies the contents of a 2d-array (addressed as input[y][x]) into a
+     * new grid
+     * @param input the 2d-array to copy
+     * @return a new grid with the same contents as the input array
+     */
+    public static IntGrid of(int[][] input) {
+        int height = input.length;
+        int width = height > 0 ? input[0].length : 0;
+        IntGrid grid = allocate(width, height);
+        for (int y = 0; y < height; y++) {
+            grid.setRow(y, input[y]);
+        }
+        return grid;
+    }
+
+    // access
+
+    /**
+     * @param x the column
+     * @param y the row
+     * @return the value at (x,y)
+     */
+    public int get(int x, int y) {
+        return get(y * width + x);
+    }
+
+    /**
+     * @param index the index in the linear storage, see {@link #index(int, int)}
+     * @return the value at the specified index
+     */
+    public int get(int index) {
+        return array != null ? array[index] : buffer.get(index);
+    }
+
+    /**
+     * @param x the column
+     * @param y the row
+     * @param value the new value at (x,y)
+     */
+    public void set(int x, int y, int value) {
+        set(y * width + x, value);
+    }
+
+    /**
+     * @param index the index in the linear storage, see {@link #index(int, int)}
+     * @param value the new value at the specified index
+     */
+    public void set(int index, int value) {
+        if(array != null) {
+            array[index] = value;
+        } else {
+            buffer.put(index, value);
+        }
+    }
+
+    /**
+     * Copies a part of a row into the specified array
+     * @param y the row to read
+     * @param x the first column to read
+     * @param dst the array to write into
+     * @param off the first index in the destination array
+     * @param len the number of values to copy
+     */
+    public void getRow(int y, int x, int[] dst, int off, int len) {
+        int start = y * width + x;
+        if(array != null) {
+            System.arraycopy(array, start, dst, off, len);
+        } else {
+            IntBuffer view = buffer.duplicate();
+            view.position(start);
+            view.get(dst, off, len);
+        }
+    }
+
+    /**
+     * Copies a full row into the specified array
+     * @param y the row to read
+     * @param dst the array to write into, must hold at least width values
+     */
+    public void getRow(int y, int[] dst) {
+        getRow(y, 0, dst, 0, width);
+    }
+
+    /**
+     * Overwrites a part of a row with the contents of the specified array
+     * @param y the row to write
+     * @param x the first column to write
+     * @param src the array to read from
+     * @param off the first index in the source array
+     * @param len the number of values to copy
+     */
+    public void setRow(int y, int x, int[] src, int off, int len) {
+        int start = y * width + x;
+        if(array != null) {
+            System.arraycopy(src, off, array, start, len);
+        } else {
+            IntBuffer view = buffer.duplicate();
+            view.position(start);
+            view.put(src, off, len);
+        }
+    }
+
+    /**
+     * Overwrites a full row with the contents of the specified array
+     * @param y the row to write
+     * @param src the array to read from, must hold at least width values
+     */
+    public void setRow(int y, int[] src) {
+        setRow(y, 0, src, 0, width);
+    }
+
+    /**
+     * Sets all values of this grid to the specified value
+     * @param value the value to set
+     */
+    public void fill(int value) {
+        if(array != null) {
+            Arrays.fill(array, value);
+        } else {
+            for (int i = 0; i < buffer.capacity(); i++) {
+                buffer.put(i, value);
+            }
+        }
+    }
+
+    // storage
+
+    @Override
+    public boolean hasArray() {
+        return array != null;
+    }
+
+    @Override
+    public int getBytesPerElement() {
+        return bytesPerElement;
+    }
+
+    /**
+     * Returns the array that backs this grid (no copy!)
+     * @return the backing array
+     * @throws UnsupportedOperationException if the grid is stored off-heap
+     */
+    public int[] array() {
+        if(array == null) {
+            throw new UnsupportedOperationException("grid is not backed by an array");
+        }
+        return array;
+    }
+
+    /**
+     * Returns a new buffer that shares the contents of this grid, with
+     * position 0 and limit = capacity = width * height
+     * @return a buffer view of this grid
+     */
+    public IntBuffer buffer() {
+        if(array != null) {
+            return IntBuffer.wrap(array);
+        } else {
+            IntBuffer view = buffer.duplicate();
+            view.clear();
+            return view;
+        }
+    }
+
+    /**
+     * @return a copy of this grid on the java heap
+     */
+    public IntGrid copy() {
+        if(array != null) {
+            return wrap(array.clone(), width, height);
+        } else {
+            int[] copy = new int[size()];
+            buffer().get(copy);
+            return wrap(copy, width, height);
+        }
+    }
+
+    /**
+     * @return the contents of this grid as new 2d-array, addressed as
+     * result[y][x]
+     */
+    public int[][] toArray2D() {
+        int[][] result = new int[height][width];
+        for (int y = 0; y < height; y++) {
+            getRow(y, result[y]);
+        }
+        return result;
+    }
+
+}
@@ -197,6 +197,16 @@ public class Area {
         return new Coordinate((minLat+maxLat)/2, (minLon+maxLon)/2);
     }
 
+    /**
+     * @param lat the latitude of a point
+     * @param lon the longitude of a point
+     * @return true, iff the point is within the bounds of this area
+     * (inclusive)
+     */
+    public boolean contains(double lat, double lon) {
+        return lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon;
+    }
+
     public String getStringOsmUrl() {
     	return String.format("minlon=%s&minlat=%s&maxlon=%s&maxlat=%s", minLon, minLat, maxLon, maxLat);
     }
@@ -0,0 +1,90 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.util.gis;
+
+/**
+ * Projects geographic coordinates into the pixel space of an image that
+ * covers a rectangular area. Latitude and longitude are mapped linearly,
+ * the north-west corner of the area is the origin of the image.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class Projection {
+
+    protected final Area area;
+    protected final int width;
+    protected final int height;
+
+    // cached area properties
+    protected final double minLat;
+    protected final double minLon;
+    protected final double heightDeg;
+    protected final double widthDeg;
+
+    /**
+     * @param area the area that is covered by the image
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     */
+    public Projection(Area area, int width, int height) {
+        this.area = area;
+        this.width = width;
+        this.height = height;
+        this.minLat = area.getMinLat();
+        this.minLon = area.getMinLon();
+        this.heightDeg = area.getHeightDeg();
+        this.widthDeg = area.getWidthDeg();
+    }
+
+    /**
+     * @param lon a longitude
+     * @return the horizontal position in the image (pixels from the left border)
+     */
+    public double x(double lon) {
+        return (lon - minLon) / widthDeg * width;
+    }
+
+    /**
+     * @param lat a latitude
+     * @return the vertical position in the image (pixels from the top border)
+     */
+    public double y(double lat) {
+        return (1.0 - (lat - minLat) / heightDeg) * height;
+    }
+
+    /**
+     * @return the area that is covered by the image
+     */
+    public Area getArea() {
+        return area;
+    }
+
+    /**
+     * @return the width of the image in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the image in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+}
@@ -0,0 +1,306 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.util.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.nx42.maps4cim.util.arr2d.Grid;
+
+/**
+ * Collects the timing and memory metrics of the stages of a single map
+ * generation (see {@link Stage}).
+ *
+ * Each stage is measured by a {@link Timer}, which is started before and
+ * stopped after the stage has been executed in the same thread. Listeners
+ * are notified as soon as a stage has been completed and after the whole
+ * map has been generated. Stages of the relief and the texture may be
+ * executed concurrently, all methods are thread safe.
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class Metrics {
+
+    private static final Logger log = LoggerFactory.getLogger(Metrics.class);
+
+    /** measures the allocations of the current thread, null if not supported */
+    protected static final com.sun.management.ThreadMXBean threadBean = getThreadBean();
+
+    /** the completed stages, in the order of completion */
+    protected final List<StageMetrics> stages = new ArrayList<StageMetrics>();
+    /** the listeners to notify */
+    protected final List<MetricsListener> listeners = new CopyOnWriteArrayList<MetricsListener>();
+    /** the start time of the map generation */
+    protected final long startNanos = System.nanoTime();
+    /** the total time of the map generation, -1 while it is running */
+    protected volatile long totalNanos = -1;
+
+    /**
+     * Creates a new collector for the metrics of a map generation. The
+     * total time is measured from now on.
+     */
+    public Metrics() {
+    }
+
+    /**
+     * Creates a new collector for the metrics of a map generation that
+     * notifies the specified listeners
+     * @param listeners the listeners to notify
+     */
+    public Metrics(List<MetricsListener> listeners) {
+        this.listeners.addAll(listeners);
+    }
+
+    /**
+     * @param listener is notified about each completed stage
+     */
+    public void addListener(MetricsListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener the listener that is no longer notified
+     */
+    public void removeListener(MetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts the measurement of a stage in the current thread
+     * @param stage the stage that is started
+     * @return the timer of the stage, which must be stopped in the same thread
+     */
+    public Timer start(Stage stage) {
+        return new Timer(stage);
+    }
+
+    /**
+     * Marks the map generation as completed: stops the total time and
+     * notifies all listeners
+     */
+    public void complete() {
+        this.totalNanos = System.nanoTime() - startNanos;
+        for (MetricsListener listener : listeners) {
+            try {
+                listener.completed(this);
+            } catch (RuntimeException e) {
+                log.warn("Metrics listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * Stores the metrics of a completed stage and notifies all listeners
+     * @param metrics the metrics of the completed stage
+     */
+    protected void record(StageMetrics metrics) {
+        synchronized (stages) {
+            stages.add(metrics);
+        }
+        for (MetricsListener listener : listeners) {
+            try {
+                listener.stageCompleted(metrics);
+            } catch (RuntimeException e) {
+                log.warn("Metrics listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * @return the metrics of all stages that have been completed so far,
+     * in the order of completion
+     */
+    public List<StageMetrics> getStages() {
+        synchronized (stages) {
+            return new ArrayList<StageMetrics>(stages);
+        }
+    }
+
+    /**
+     * @param stage the stage to look for
+     * @return the metrics of the specified stage, or null if the stage has
+     * not been completed
+     */
+    public StageMetrics get(Stage stage) {
+        synchronized (stages) {
+            for (StageMetrics sm : stages) {
+                if(sm.getStage() == stage) {
+                    return sm;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the total time of the map generation in nanoseconds, or -1
+     * if the map generation has not been completed
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return the highest peak grid memory of all stages, in bytes
+     */
+    public long getPeakGridBytes() {
+        long peak = 0;
+        for (StageMetrics sm : getStages()) {
+            peak = Math.max(peak, sm.getPeakGridBytes());
+        }
+        return peak;
+    }
+
+    /**
+     * @return all metrics as JSON object
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(128 + stages.size() * 96);
+        sb.append("{\"totalNanos\":").append(totalNanos);
+        sb.append(",\"peakGridBytes\":").append(getPeakGridBytes());
+        sb.append(",\"stages\":[");
+        List<StageMetrics> completed = getStages();
+        for (int i = 0; i < completed.size(); i++) {
+            if(i > 0) {
+                sb.append(',');
+            }
+            sb.append(completed.get(i).toJson());
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("Metrics (total: ").append(totalNanos / 1000000).append(" ms)");
+        for (StageMetrics sm : getStages()) {
+            sb.append("\n  ").append(sm);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Quotes a string for use in JSON
+     * @param s the string to quote
+     * @return the quoted and escaped string
+     */
+    public static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if(c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if(c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * @return the number of bytes allocated by the current thread so far,
+     * or -1 if not supported
+     */
+    protected static long allocatedBytes() {
+        if(threadBean == null) {
+            return -1;
+        }
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    protected static com.sun.management.ThreadMXBean getThreadBean() {
+        try {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if(bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+                if(sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled()) {
+                    return sun;
+                }
+            }
+        } catch (LinkageError e) {
+            // not a HotSpot VM
+        }
+        log.debug("Allocated memory of threads can't be measured on this VM");
+        return null;
+    }
+
+    /**
+     * Measures a single stage. Grids that are used by the stage can be
+     * added to the peak grid memory, the stage is recorded when the timer
+     * is stopped.
+     */
+    public class Timer {
+
+        protected final Stage stage;
+        protected final long start;
+        protected final long startAllocated;
+        protected long gridBytes = 0;
+
+        protected Timer(Stage stage) {
+            this.stage = stage;
+            this.startAllocated = allocatedBytes();
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Adds the size of a grid that is held during this stage to the
+         * peak grid memory of the stage
+         * @param grid a grid used by this stage (input or output)
+         * @return this timer
+         */
+        public Timer grid(Grid grid) {
+            if(grid != null) {
+                gridBytes += grid.getByteSize();
+            }
+            return this;
+        }
+
+        /**
+         * Adds the size of a raster that is not stored in a {@link Grid}
+         * (e.g. a rendered image) to the peak grid memory of the stage
+         * @param bytes the size of the raster in bytes
+         * @return this timer
+         */
+        public Timer grid(long bytes) {
+            gridBytes += bytes;
+            return this;
+        }
+
+        /**
+         * Stops the measurement and records the stage
+         * @return the metrics of the stage
+         */
+        public StageMetrics stop() {
+            long wall = System.nanoTime() - start;
+            long allocated = startAllocated < 0 ? -1 : allocatedBytes() - startAllocated;
+            StageMetrics sm = new StageMetrics(stage, wall, allocated, gridBytes);
+            record(sm);
+            return sm;
+        }
+
+    }
+
+}
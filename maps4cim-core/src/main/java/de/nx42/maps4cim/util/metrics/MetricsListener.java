@@ -0,0 +1,40 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.util.metrics;
+
+/**
+ * Is notified about the stages of a map generation, as soon as they are
+ * completed. Stages may be executed concurrently, so the callbacks can be
+ * called from different threads at the same time!
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public interface MetricsListener {
+
+    /**
+     * Called after a stage has been completed
+     * @param stage the metrics of the stage
+     */
+    void stageCompleted(StageMetrics stage);
+
+    /**
+     * Called after all stages of a map have been completed
+     * @param metrics the metrics of all stages
+     */
+    void completed(Metrics metrics);
+
+}
@@ -0,0 +1,73 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.util.metrics;
+
+/**
+ * The stages of the map generation that are measured. Depending on the
+ * configuration, only some of them are executed for a map (e.g. there is
+ * no relief fetch stage for a planar relief).
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public enum Stage {
+
+    /** generation of the map's header */
+    HEADER("header"),
+    /** download of missing SRTM tiles */
+    RELIEF_FETCH("relief.fetch"),
+    /** decoding of SRTM tiles and reading of the required window */
+    RELIEF_DECODE("relief.decode"),
+    /** interpolation of voids in the SRTM data */
+    RELIEF_INTERPOLATE("relief.interpolate"),
+    /** resizing of the relief to the map size, height offset and scale */
+    RELIEF_SCALE("relief.scale"),
+    /** conversion of the relief into the map format */
+    RELIEF_ENCODE("relief.encode"),
+    /** reading or storing of the encoded relief in the section cache */
+    RELIEF_CACHE("relief.cache"),
+    /** download of the OSM data from the Overpass API */
+    OSM_FETCH("osm.fetch"),
+    /** parsing of the OSM XML */
+    OSM_PARSE("osm.parse"),
+    /** matching of the OSM entities and conversion into render primitives */
+    OSM_MATCH("osm.match"),
+    /** rendering of the OSM primitives into ground textures */
+    OSM_RENDER("osm.render"),
+    /** conversion of the texture into the map format */
+    TEXTURE_ENCODE("texture.encode"),
+    /** reading or storing of the encoded texture in the section cache */
+    TEXTURE_CACHE("texture.cache"),
+    /** copying of unchanged sections from the previous version of the map */
+    REUSE("reuse"),
+    /** generation of the game objects */
+    GAME_OBJECTS("objects");
+
+    protected final String key;
+
+    private Stage(String key) {
+        this.key = key;
+    }
+
+    /**
+     * @return the short name of this stage, as used in reports
+     * (e.g. "relief.decode")
+     */
+    public String getKey() {
+        return key;
+    }
+
+}
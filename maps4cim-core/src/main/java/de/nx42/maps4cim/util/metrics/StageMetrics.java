@@ -0,0 +1,100 @@
+/**
+ * maps4cim - a real world map generator for CiM 2
+ * Copyright 2013 - 2014 Sebastian Straub
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.nx42.maps4cim.util.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The measurements of a single stage of the map generation:
+ * <ul>
+ * <li>the wall time from the start to the end of the stage</li>
+ * <li>the number of bytes that were allocated on the heap by the thread
+ * that executed the stage (-1, if the JVM can't measure this). Allocations
+ * of other threads, e.g. concurrent bands of rows, are not included.</li>
+ * <li>the peak grid memory: the size of all grids that were held by the
+ * stage at the same time (input and output), in bytes</li>
+ * </ul>
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class StageMetrics {
+
+    protected final Stage stage;
+    protected final long wallNanos;
+    protected final long allocatedBytes;
+    protected final long peakGridBytes;
+
+    public StageMetrics(Stage stage, long wallNanos, long allocatedBytes, long peakGridBytes) {
+        this.stage = stage;
+        this.wallNanos = wallNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.peakGridBytes = peakGridBytes;
+    }
+
+    /**
+     * @return the stage that was measured
+     */
+    public Stage getStage() {
+        return stage;
+    }
+
+    /**
+     * @return the wall time of the stage in nanoseconds
+     */
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * @param unit the unit of the result
+     * @return the wall time of the stage in the specified unit
+     */
+    public long getWallTime(TimeUnit unit) {
+        return unit.convert(wallNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the bytes that were allocated by the stage, or -1 if the JVM
+     * does not support the measurement of allocations
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return the size of all grids that were held by the stage at the same
+     * time, in bytes
+     */
+    public long getPeakGridBytes() {
+        return peakGridBytes;
+    }
+
+    /**
+     * @return this stage as JSON object
+     */
+    public String toJson() {
+        return String.format("{\"stage\":\"%s\",\"wallNanos\":%s,\"allocatedBytes\":%s,"
+                + "\"peakGridBytes\":%s}", stage.getKey(), wallNanos, allocatedBytes, peakGridBytes);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %s ms, %s KB allocated, %s KB grids", stage.getKey(),
+                getWallTime(TimeUnit.MILLISECONDS), allocatedBytes >> 10, peakGridBytes >> 10);
+    }
+
+}
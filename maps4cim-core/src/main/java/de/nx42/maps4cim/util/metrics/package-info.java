@@ -0,0 +1,6 @@
+/**
+ * Timing and memory metrics of the stages of the map generation, see
+ * {@link de.nx42.maps4cim.util.metrics.Metrics}
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+package de.nx42.maps4cim.util.metrics;
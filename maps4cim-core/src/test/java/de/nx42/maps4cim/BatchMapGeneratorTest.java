@@ -0,0 +1,163 @@
+package de.nx42.maps4cim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.io.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.nx42.maps4cim.BatchMapGenerator.Job;
+import de.nx42.maps4cim.config.Config;
+import de.nx42.maps4cim.config.relief.PlanarReliefDef;
+import de.nx42.maps4cim.config.texture.TextureDef;
+import de.nx42.maps4cim.map.Cache;
+import de.nx42.maps4cim.map.MapManifest;
+
+public class BatchMapGeneratorTest {
+
+    protected File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDir();
+        Files.touch(new File(dir, "b.xml"));
+        Files.touch(new File(dir, "a.xml"));
+        Files.touch(new File(dir, "readme.txt"));
+        new File(dir, "sub.xml").mkdir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testFindConfigs() {
+        File single = new File("single.xml");
+        List<File> configs = BatchMapGenerator.findConfigs(Arrays.asList(single, dir));
+        assertEquals(Arrays.asList(single, new File(dir, "a.xml"), new File(dir, "b.xml")), configs);
+    }
+
+    @Test
+    public void testGetOutput() {
+        BatchMapGenerator bmg = new BatchMapGenerator(1);
+        File config = new File(dir, "munich.xml");
+        assertEquals(new File(dir, "munich.map"), bmg.getOutput(config));
+
+        File out = new File("maps");
+        bmg.setOutputDir(out);
+        assertEquals(new File(out, "munich.map"), bmg.getOutput(config));
+    }
+
+    @Test
+    public void testSameNameInDifferentDirectories() throws Exception {
+        File a = new File(dir, "a");
+        File b = new File(dir, "b");
+        try {
+            a.mkdir();
+            b.mkdir();
+            Files.touch(new File(a, "x.xml"));
+            Files.touch(new File(b, "x.xml"));
+
+            // planar reliefs, 100m in directory a and 200m in directory b
+            BatchMapGenerator bmg = new BatchMapGenerator(2) {
+                @Override
+                protected Config readConfig(File config) {
+                    final PlanarReliefDef relief = new PlanarReliefDef();
+                    relief.height = config.getParentFile().getName().equals("a") ? 100.0 : 200.0;
+                    Config conf = Config.getMinimalConfig();
+                    conf.setReliefTrans(relief);
+                    conf.texture = TextureDef.none();
+                    return conf;
+                }
+                @Override
+                protected MapGenerator createMapGenerator(Config conf) {
+                    return new MapGenerator(conf, MapGenerator.getReliefMap(conf, resources),
+                            MapGenerator.getTextureMap(conf, resources),
+                            MapGeneratorTest.header, MapGeneratorTest.objects);
+                }
+            };
+            List<Job> jobs = bmg.execute(Arrays.asList(new File(a, "x.xml"), new File(b, "x.xml")));
+            for (Job job : jobs) {
+                assertTrue(job.isSuccess());
+            }
+            assertEquals(100000, readRelief(new File(a, "x.map")));
+            assertEquals(200000, readRelief(new File(b, "x.map")));
+        } finally {
+            Cache.deleteFolder(a);
+            Cache.deleteFolder(b);
+        }
+    }
+
+    @Test
+    public void testIncremental() throws Exception {
+        File inc = new File(dir, "inc");
+        try {
+            inc.mkdir();
+            File config = new File(inc, "x.xml");
+            Files.touch(config);
+            final MapGeneratorTest.KeyedRelief relief = new MapGeneratorTest.KeyedRelief("relief", 10);
+            final MapGeneratorTest.KeyedTexture texture = new MapGeneratorTest.KeyedTexture("texture");
+            BatchMapGenerator bmg = new BatchMapGenerator(1) {
+                @Override
+                protected Config readConfig(File config) {
+                    return Config.getMinimalConfig();
+                }
+                @Override
+                protected MapGenerator createMapGenerator(Config conf) {
+                    return new MapGenerator(conf, relief, texture,
+                            MapGeneratorTest.header, MapGeneratorTest.objects);
+                }
+            };
+            File manifest = MapManifest.getFile(new File(inc, "x.map"));
+
+            // the sections of the first map are reused by the second run
+            bmg.setIncremental(true);
+            for (int i = 0; i < 2; i++) {
+                assertTrue(bmg.execute(Arrays.asList(config)).get(0).isSuccess());
+                assertTrue(manifest.isFile());
+            }
+            assertEquals(1, relief.generated);
+            assertEquals(1, texture.generated);
+
+            // without incremental mode, everything is generated again
+            bmg.setIncremental(false);
+            assertTrue(bmg.execute(Arrays.asList(config)).get(0).isSuccess());
+            assertFalse(manifest.exists());
+            assertEquals(2, relief.generated);
+            assertEquals(2, texture.generated);
+        } finally {
+            Cache.deleteFolder(inc);
+        }
+    }
+
+    /**
+     * @return the value of the control point in the center of the map's relief
+     */
+    protected static int readRelief(File map) throws Exception {
+        byte[] data = Files.toByteArray(map);
+        int objects = MapGeneratorTest.objects.generateGameObjects().length;
+        int relief = data.length - objects - 2048 * 2048 * 4 - 2049 * 2049 * 4;
+        return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN)
+                .getInt(relief + (2049 * 1024 + 1024) * 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThreads() {
+        new BatchMapGenerator(0);
+    }
+
+}
@@ -0,0 +1,176 @@
+package de.nx42.maps4cim;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import de.nx42.maps4cim.config.Config;
+import de.nx42.maps4cim.header.Header;
+import de.nx42.maps4cim.map.Cache;
+import de.nx42.maps4cim.map.MapManifest;
+import de.nx42.maps4cim.map.ReliefMap;
+import de.nx42.maps4cim.map.TextureMap;
+import de.nx42.maps4cim.map.ex.ReliefProcessingException;
+import de.nx42.maps4cim.map.ex.TextureProcessingException;
+import de.nx42.maps4cim.map.relief.MandelbrotRelief;
+import de.nx42.maps4cim.map.relief.PlanarRelief;
+import de.nx42.maps4cim.map.texture.SingleTexture;
+import de.nx42.maps4cim.map.texture.TestTexture;
+import de.nx42.maps4cim.objects.GameObjects;
+import de.nx42.maps4cim.util.Result;
+import de.nx42.maps4cim.util.arr2d.FloatGrid;
+import de.nx42.maps4cim.util.arr2d.IntGrid;
+
+public class MapGeneratorTest {
+
+    protected static final Header header = new Header() {
+        @Override
+        public byte[] generateHeader() throws IOException {
+            return new byte[] { 1, 2, 3, 4 };
+        }
+    };
+
+    protected static final GameObjects objects = new GameObjects() {
+        @Override
+        public byte[] generateGameObjects() throws IOException {
+            return new byte[] { 5, 6, 7 };
+        }
+    };
+
+    protected static final ReliefMap failingRelief = new ReliefMap() {
+        @Override
+        public FloatGrid generateRelief() throws ReliefProcessingException {
+            throw new ReliefProcessingException("relief failed");
+        }
+    };
+
+    protected static final TextureMap failingTexture = new TextureMap() {
+        @Override
+        public IntGrid generateTexture() throws TextureProcessingException {
+            throw new IllegalStateException("texture failed");
+        }
+    };
+
+    /** a relief with a fixed key, which counts how often it is generated */
+    protected static class KeyedRelief extends PlanarRelief {
+        protected final String key;
+        protected int generated = 0;
+        public KeyedRelief(String key, float height) {
+            super(height);
+            this.key = key;
+        }
+        @Override
+        public FloatGrid generateRelief() {
+            generated++;
+            return super.generateRelief();
+        }
+        @Override
+        public String sectionKey() {
+            return key;
+        }
+    }
+
+    /** a texture with a fixed key, which counts how often it is generated */
+    protected static class KeyedTexture extends TestTexture {
+        protected final String key;
+        protected int generated = 0;
+        public KeyedTexture(String key) {
+            this.key = key;
+        }
+        @Override
+        public IntGrid generateTexture() {
+            generated++;
+            return super.generateTexture();
+        }
+        @Override
+        public String sectionKey() {
+            return key;
+        }
+    }
+
+    protected static byte[] generate(ReliefMap rm, TextureMap tm, boolean parallel,
+            Result res) throws Exception {
+        MapGenerator mg = new MapGenerator(null, rm, tm, header, objects);
+        mg.setParallel(parallel);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        mg.writeMapToStream(bos, res);
+        return bos.toByteArray();
+    }
+
+    @Test
+    public void testParallelEqualsSequential() throws Exception {
+        Result seqRes = new Result("sequential", true);
+        Result parRes = new Result("parallel", true);
+        byte[] sequential = generate(new MandelbrotRelief(), new TestTexture(), false, seqRes);
+        byte[] parallel = generate(new MandelbrotRelief(), new TestTexture(), true, parRes);
+        assertArrayEquals(sequential, parallel);
+        assertTrue(seqRes.isSuccess());
+        assertTrue(parRes.isSuccess());
+    }
+
+    @Test
+    public void testFallback() throws Exception {
+        byte[] expected = generate(new PlanarRelief(), new SingleTexture(), false,
+                new Result("reference", true));
+        for (boolean parallel : new boolean[] { false, true }) {
+            Result res = new Result("fallback", true);
+            byte[] actual = generate(failingRelief, failingTexture, parallel, res);
+            assertArrayEquals(expected, actual);
+            assertFalse(res.isSuccess());
+        }
+    }
+
+    @Test
+    public void testIncremental() throws Exception {
+        File dir = Files.createTempDir();
+        File map = new File(dir, "incremental.map");
+        try {
+            KeyedRelief relief = new KeyedRelief("relief", 10);
+            KeyedTexture texture = new KeyedTexture("texture");
+            generateMap(map, relief, texture, false, true);
+            byte[] first = Files.toByteArray(map);
+            assertTrue(MapManifest.getFile(map).isFile());
+
+            // nothing changed: relief and texture are copied
+            for (boolean parallel : new boolean[] { false, true }) {
+                generateMap(map, relief, texture, parallel, true);
+                assertEquals(1, relief.generated);
+                assertEquals(1, texture.generated);
+                assertArrayEquals(first, Files.toByteArray(map));
+            }
+
+            // another relief, same texture
+            KeyedRelief other = new KeyedRelief("other", 20);
+            generateMap(map, other, texture, true, true);
+            assertEquals(1, other.generated);
+            assertEquals(1, texture.generated);
+            byte[] second = Files.toByteArray(map);
+            assertFalse(Arrays.equals(first, second));
+            generateMap(map, other, new KeyedTexture(null), false, false);
+            assertArrayEquals(second, Files.toByteArray(map));
+            assertFalse(MapManifest.getFile(map).exists());
+        } finally {
+            Cache.deleteFolder(dir);
+        }
+    }
+
+    protected static void generateMap(File map, ReliefMap rm, TextureMap tm,
+            boolean parallel, boolean incremental) throws Exception {
+        MapGenerator mg = new MapGenerator(Config.getMinimalConfig(), rm, tm, header, objects);
+        mg.setParallel(parallel);
+        mg.setIncremental(incremental);
+        mg.setClearTemp(false);
+        assertTrue(mg.generateMap(map).isSuccess());
+    }
+
+}
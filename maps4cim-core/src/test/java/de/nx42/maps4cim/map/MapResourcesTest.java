@@ -0,0 +1,65 @@
+package de.nx42.maps4cim.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import de.nx42.maps4cim.map.relief.srtm.SrtmResolution;
+import de.nx42.maps4cim.map.relief.srtm.TileCache;
+import de.nx42.maps4cim.map.relief.srtm.TileDownload.CoordinateInt;
+import de.nx42.maps4cim.util.arr2d.ShortGrid;
+
+public class MapResourcesTest {
+
+    @Test
+    public void testSrtmTileLoadedOnce() throws Exception {
+        MapResources res = new MapResources(new TileCache(1 << 20), 1);
+        final AtomicInteger loads = new AtomicInteger();
+        Callable<ShortGrid> loader = new Callable<ShortGrid>() {
+            @Override
+            public ShortGrid call() {
+                loads.incrementAndGet();
+                return ShortGrid.allocate(3, 3);
+            }
+        };
+        ShortGrid first = res.getSrtmTile(SrtmResolution.SRTM3, new CoordinateInt(48, 11), loader);
+        ShortGrid second = res.getSrtmTile(SrtmResolution.SRTM3, new CoordinateInt(48, 11), loader);
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+
+        res.getSrtmTile(SrtmResolution.SRTM3, new CoordinateInt(47, 11), loader);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testFailureNotCached() throws Exception {
+        MapResources res = new MapResources(new TileCache(1 << 20), 1);
+        Callable<ShortGrid> failing = new Callable<ShortGrid>() {
+            @Override
+            public ShortGrid call() throws IOException {
+                throw new IOException("not available");
+            }
+        };
+        try {
+            res.getSrtmTile(SrtmResolution.SRTM3, new CoordinateInt(48, 11), failing);
+            fail("Should have thrown IOException!");
+        } catch (IOException e) {
+            assertEquals("not available", e.getMessage());
+        }
+
+        final ShortGrid tile = ShortGrid.allocate(3, 3);
+        assertSame(tile, res.getSrtmTile(SrtmResolution.SRTM3, new CoordinateInt(48, 11), new Callable<ShortGrid>() {
+            @Override
+            public ShortGrid call() {
+                return tile;
+            }
+        }));
+    }
+
+}
@@ -0,0 +1,99 @@
+package de.nx42.maps4cim.map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.google.common.io.Files;
+import com.google.common.io.LittleEndianDataOutputStream;
+
+import org.junit.Test;
+
+import de.nx42.maps4cim.map.ex.MapGeneratorException;
+import de.nx42.maps4cim.map.ex.ReliefProcessingException;
+import de.nx42.maps4cim.util.arr2d.FloatGrid;
+
+public class ReliefMapTest {
+
+    protected static class StaticRelief extends ReliefMap {
+        protected final FloatGrid relief;
+        public StaticRelief(float[][] relief) {
+            this.relief = FloatGrid.of(relief);
+        }
+        @Override
+        public FloatGrid generateRelief() throws ReliefProcessingException {
+            return relief;
+        }
+    }
+
+    protected static float[][] randomRelief() {
+        Random rand = new Random(42);
+        float[][] relief = new float[ReliefMap.edgeLength][ReliefMap.edgeLength];
+        for (int y = 0; y < relief.length; y++) {
+            for (int x = 0; x < relief[y].length; x++) {
+                relief[y][x] = (rand.nextFloat() - 0.5f) * 2000;
+            }
+        }
+        return relief;
+    }
+
+    /**
+     * the byte stream as it was produced by the original implementation
+     */
+    protected static byte[] legacyEncoding(float[][] relief) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(ReliefMap.byteAmount);
+        LittleEndianDataOutputStream dos = new LittleEndianDataOutputStream(bos);
+        for (int y = 0; y < ReliefMap.edgeLength; y++) {
+            for (int x = 0; x < ReliefMap.edgeLength; x++) {
+                dos.writeInt((int) (relief[y][x] * 1000));
+            }
+        }
+        dos.close();
+        return bos.toByteArray();
+    }
+
+    @Test
+    public void testWriteToStream() throws Exception {
+        float[][] relief = randomRelief();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new StaticRelief(relief).writeTo(bos);
+        assertArrayEquals(legacyEncoding(relief), bos.toByteArray());
+    }
+
+    @Test
+    public void testWriteToFile() throws Exception {
+        float[][] relief = randomRelief();
+        File tmp = File.createTempFile("relief", ".bin");
+        try {
+            FileOutputStream fos = new FileOutputStream(tmp);
+            // some leading bytes, the relief must be appended after them
+            fos.write(new byte[] { 1, 2, 3 });
+            new StaticRelief(relief).writeTo(fos);
+            fos.close();
+
+            byte[] expected = legacyEncoding(relief);
+            byte[] actual = Files.toByteArray(tmp);
+            assertArrayEquals(new byte[] { 1, 2, 3 }, Arrays.copyOf(actual, 3));
+            assertArrayEquals(expected, Arrays.copyOfRange(actual, 3, actual.length));
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    @Test
+    public void testInvalidSize() throws Exception {
+        try {
+            new StaticRelief(new float[10][10]).writeTo(new ByteArrayOutputStream());
+            fail("relief of invalid size was accepted");
+        } catch (MapGeneratorException e) {
+            // expected
+        }
+    }
+
+}
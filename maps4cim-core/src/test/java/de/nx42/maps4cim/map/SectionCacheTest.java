@@ -0,0 +1,153 @@
+package de.nx42.maps4cim.map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+public class SectionCacheTest {
+
+	protected File root;
+	protected SectionCache cache;
+
+	@Before
+	public void setUp() {
+		root = Files.createTempDir();
+		cache = new SectionCache(new File(root, "sections"));
+	}
+
+	@After
+	public void tearDown() {
+		Cache.deleteFolder(root);
+	}
+
+	@Test
+	public void testStoreAndRead() throws IOException {
+		final byte[] data = new byte[240000];
+		Random rnd = new Random(42);
+		for (int i = 0; i < data.length; i++) {
+			data[i] = rnd.nextInt(4) == 0 ? (byte) rnd.nextInt() : 0;
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertFalse(cache.transfer(SectionCache.texture, "a", data.length, out));
+		store("a", data);
+		assertTrue(cache.has(SectionCache.texture, "a"));
+		assertFalse(cache.has(SectionCache.texture, "b"));
+		assertNotEquals(cache.getFile(SectionCache.texture, "a"), cache.getFile(SectionCache.texture, "b"));
+
+		assertTrue(cache.transfer(SectionCache.texture, "a", data.length, out));
+		assertArrayEquals(data, out.toByteArray());
+		// no temporary files are left
+		assertArrayEquals(new String[] { cache.getFile(SectionCache.texture, "a").getName() },
+				cache.getDirectory().list());
+	}
+
+	@Test
+	public void testBrokenSection() throws IOException {
+		store("a", new byte[2400]);
+		// wrong size: the section is discarded
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertFalse(cache.transfer(SectionCache.texture, "a", 2520, out));
+		assertFalse(cache.has(SectionCache.texture, "a"));
+
+		// not compressed at all
+		Files.write(new byte[100], cache.getFile(SectionCache.texture, "b"));
+		assertFalse(cache.transfer(SectionCache.texture, "b", 100, out));
+		assertFalse(cache.has(SectionCache.texture, "b"));
+		assertEquals(0, out.size());
+	}
+
+	@Test
+	public void testTransfer() throws IOException {
+		byte[] data = new byte[100000];
+		new Random(42).nextBytes(data);
+		store("a", data);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertTrue(cache.transfer(SectionCache.texture, "a", data.length, out));
+		assertArrayEquals(data, out.toByteArray());
+		assertFalse(cache.transfer(SectionCache.texture, "b", data.length, out));
+
+		// truncated: nothing is written, the section is discarded
+		File file = cache.getFile(SectionCache.texture, "a");
+		byte[] compressed = Files.toByteArray(file);
+		Files.write(Arrays.copyOf(compressed, compressed.length / 2), file);
+		out.reset();
+		assertFalse(cache.transfer(SectionCache.texture, "a", data.length, out));
+		assertEquals(0, out.size());
+		assertFalse(cache.has(SectionCache.texture, "a"));
+	}
+
+	@Test
+	public void testTee() throws IOException {
+		byte[] data = new byte[4000];
+		new Random(42).nextBytes(data);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		// the section is written together with the output
+		SectionCache.Entry entry = cache.create(SectionCache.relief, "a");
+		WritableByteChannel tee = entry.tee(Channels.newChannel(out));
+		ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+		direct.put(data).flip();
+		tee.write(direct);
+		assertFalse(cache.has(SectionCache.relief, "a"));
+		entry.commit();
+		entry.abort();
+		assertArrayEquals(data, out.toByteArray());
+
+		ByteArrayOutputStream cached = new ByteArrayOutputStream();
+		assertTrue(cache.transfer(SectionCache.relief, "a", data.length, cached));
+		assertArrayEquals(data, cached.toByteArray());
+
+		// aborted sections leave nothing behind
+		entry = cache.create(SectionCache.relief, "b");
+		entry.tee(Channels.newChannel(new ByteArrayOutputStream())).write(ByteBuffer.wrap(data));
+		entry.abort();
+		assertFalse(cache.has(SectionCache.relief, "b"));
+		assertEquals(1, cache.getDirectory().list().length);
+	}
+
+	@Test
+	public void testJanitorDiskSpace() throws IOException {
+		File[] files = new File[4];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = new File(root, i + SectionCache.sectionExt);
+			Files.write(new byte[1000], files[i]);
+			files[i].setLastModified(1000000000000L + i * 10000L);
+		}
+		// only the two most recently used files fit
+		new Cache.Janitor().deleteLeastRecentlyUsed(Arrays.asList(files), 2500, 0);
+		assertFalse(files[0].exists());
+		assertFalse(files[1].exists());
+		assertTrue(files[2].exists());
+		assertTrue(files[3].exists());
+	}
+
+	protected void store(String key, final byte[] data) throws IOException {
+		cache.store(SectionCache.texture, key, new SectionCache.Writer() {
+			@Override
+			public void write(OutputStream out) throws IOException {
+				out.write(data);
+			}
+		});
+	}
+
+}
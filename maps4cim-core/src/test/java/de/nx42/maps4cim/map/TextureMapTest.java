@@ -0,0 +1,105 @@
+package de.nx42.maps4cim.map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.google.common.io.Files;
+import com.google.common.io.LittleEndianDataOutputStream;
+
+import org.junit.Test;
+
+import de.nx42.maps4cim.map.ex.MapGeneratorException;
+import de.nx42.maps4cim.map.ex.TextureProcessingException;
+import de.nx42.maps4cim.util.arr2d.IntGrid;
+
+public class TextureMapTest {
+
+    protected static class StaticTexture extends TextureMap {
+        protected final IntGrid texture;
+        public StaticTexture(int[][] texture) {
+            // the legacy texture map is addressed as texture[x][y]
+            this.texture = IntGrid.allocate(texture.length, texture[0].length);
+            for (int x = 0; x < texture.length; x++) {
+                for (int y = 0; y < texture[x].length; y++) {
+                    this.texture.set(x, y, texture[x][y]);
+                }
+            }
+        }
+        @Override
+        public IntGrid generateTexture() throws TextureProcessingException {
+            return texture;
+        }
+    }
+
+    protected static int[][] randomTexture() {
+        Random rand = new Random(42);
+        int[][] texture = new int[TextureMap.edgeLength][TextureMap.edgeLength];
+        for (int x = 0; x < texture.length; x++) {
+            for (int y = 0; y < texture[x].length; y++) {
+                texture[x][y] = rand.nextInt();
+            }
+        }
+        return texture;
+    }
+
+    /**
+     * the byte stream as it was produced by the original implementation
+     */
+    protected static byte[] legacyEncoding(int[][] texture) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(TextureMap.byteAmount);
+        LittleEndianDataOutputStream dos = new LittleEndianDataOutputStream(bos);
+        for (int y = 0; y < TextureMap.edgeLength; y++) {
+            for (int x = 0; x < TextureMap.edgeLength; x++) {
+                dos.writeInt(texture[x][y]);
+            }
+        }
+        dos.close();
+        return bos.toByteArray();
+    }
+
+    @Test
+    public void testWriteToStream() throws Exception {
+        int[][] texture = randomTexture();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new StaticTexture(texture).writeTo(bos);
+        assertArrayEquals(legacyEncoding(texture), bos.toByteArray());
+    }
+
+    @Test
+    public void testWriteToFile() throws Exception {
+        int[][] texture = randomTexture();
+        File tmp = File.createTempFile("texture", ".bin");
+        try {
+            FileOutputStream fos = new FileOutputStream(tmp);
+            // some leading bytes, the texture must be appended after them
+            fos.write(new byte[] { 1, 2, 3 });
+            new StaticTexture(texture).writeTo(fos);
+            fos.close();
+
+            byte[] expected = legacyEncoding(texture);
+            byte[] actual = Files.toByteArray(tmp);
+            assertArrayEquals(new byte[] { 1, 2, 3 }, Arrays.copyOf(actual, 3));
+            assertArrayEquals(expected, Arrays.copyOfRange(actual, 3, actual.length));
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    @Test
+    public void testInvalidSize() throws Exception {
+        try {
+            new StaticTexture(new int[10][10]).writeTo(new ByteArrayOutputStream());
+            fail("texture of invalid size was accepted");
+        } catch (MapGeneratorException e) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,242 @@
+package de.nx42.maps4cim.map.relief;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import de.nx42.maps4cim.config.relief.SrtmDef;
+import de.nx42.maps4cim.map.Cache;
+import de.nx42.maps4cim.map.MapResources;
+import de.nx42.maps4cim.map.SectionCache;
+import de.nx42.maps4cim.map.relief.srtm.SrtmResolution;
+import de.nx42.maps4cim.map.relief.srtm.TileCache;
+import de.nx42.maps4cim.map.relief.srtm.TileDirectory;
+import de.nx42.maps4cim.map.relief.srtm.TileDownload;
+import de.nx42.maps4cim.map.relief.srtm.TileDownload.CoordinateInt;
+import de.nx42.maps4cim.util.arr2d.Arrays2D;
+import de.nx42.maps4cim.util.arr2d.FloatGrid;
+import de.nx42.maps4cim.util.arr2d.ShortGrid;
+import de.nx42.maps4cim.util.gis.Area;
+import de.nx42.maps4cim.util.metrics.Metrics;
+import de.nx42.maps4cim.util.metrics.Stage;
+
+public class SRTMTest {
+
+    protected static final Area area = new Area(46.5, 10.5, 48.5, 12.5);
+
+    @Test
+    public void testRetrieveWindow() throws IOException {
+        FakeTiles srtm = new FakeTiles();
+        CoordinateInt[][] coords = TileDownload.getCoordinates(area);
+        ShortGrid full = srtm.retrieveAll(coords);
+        assertEquals(3 * SRTM.srtm3maxIndex + 1, full.getWidth());
+
+        // windows within a tile, across tile edges and on the edges
+        int[][] windows = {
+            { 0, 0, full.getWidth(), full.getHeight() },
+            { 100, 200, 50, 40 },
+            { 1150, 1190, 200, 30 },
+            { 1200, 1200, 1, 1 },
+            { 1199, 2399, 1203, 3 },
+            { 3500, 0, 101, 3601 },
+        };
+        for (int[] w : windows) {
+            ShortGrid window = srtm.retrieveSRTMdata(coords, w[0], w[1], w[2], w[3]);
+            assertEquals(w[2], window.getWidth());
+            assertEquals(w[3], window.getHeight());
+            for (int y = 0; y < w[3]; y++) {
+                for (int x = 0; x < w[2]; x++) {
+                    assertEquals(full.get(w[0] + x, w[1] + y), window.get(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRetrieveWindowTiles() throws IOException {
+        FakeTiles srtm = new FakeTiles();
+        CoordinateInt[][] coords = TileDownload.getCoordinates(area);
+
+        // inside of the north-west tile
+        srtm.retrieveSRTMdata(coords, 10, 10, 100, 100);
+        assertEquals(1, srtm.requested.size());
+
+        // the shared edge is read from the north-west tile only
+        srtm.requested.clear();
+        srtm.retrieveSRTMdata(coords, 0, SRTM.srtm3maxIndex, SRTM.srtm3length, 1);
+        assertEquals(1, srtm.requested.size());
+
+        // one row below the shared edge
+        srtm.requested.clear();
+        srtm.retrieveSRTMdata(coords, 0, SRTM.srtm3length, SRTM.srtm3length + 1, 1);
+        assertEquals(2, srtm.requested.size());
+    }
+
+    @Test
+    public void testGetTileIndex() {
+        FakeTiles srtm = new FakeTiles();
+        assertEquals(0, srtm.getTileIndex(0));
+        assertEquals(0, srtm.getTileIndex(1200));
+        assertEquals(1, srtm.getTileIndex(1201));
+        assertEquals(1, srtm.getTileIndex(2400));
+        assertEquals(2, srtm.getTileIndex(2401));
+    }
+
+    @Test
+    public void testGenerateFromDirectory() throws Exception {
+        File dir = Files.createTempDir();
+        File tile = new File(dir, "N47E011.hgt");
+        try {
+            // raw SRTM3 tile, rising from west to east
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tile)));
+            for (int y = 0; y < SRTM.srtm3length; y++) {
+                for (int x = 0; x < SRTM.srtm3length; x++) {
+                    dos.writeShort(x);
+                }
+            }
+            dos.close();
+
+            for (boolean mapped : new boolean[] { false, true }) {
+                MapResources res = new MapResources(new TileCache(1 << 23), 1);
+                res.setMappedTiles(mapped);
+                res.setTileDownload(new TileDirectory(dir, SrtmResolution.SRTM3));
+                SrtmDef def = SrtmDef.of("0", "1");
+                def.resolution = "3";
+
+                SRTM srtm = new SRTM(def, new Area(47.2, 11.2, 47.8, 11.8), res);
+                Metrics metrics = new Metrics();
+                srtm.setMetrics(metrics);
+                FloatGrid relief = srtm.generateRelief();
+                assertEquals(2049, relief.getWidth());
+                for (Stage stage : new Stage[] { Stage.RELIEF_FETCH, Stage.RELIEF_DECODE,
+                        Stage.RELIEF_INTERPOLATE, Stage.RELIEF_SCALE }) {
+                    assertNotNull(metrics.get(stage));
+                }
+                assertTrue(metrics.get(Stage.RELIEF_SCALE).getPeakGridBytes() >= relief.getByteSize());
+                int mid = relief.getHeight() / 2;
+                assertTrue(relief.get(600, mid) < relief.get(1000, mid));
+                assertTrue(relief.get(1000, mid) < relief.get(1400, mid));
+                assertEquals(relief.get(1000, mid), relief.get(1000, mid + 300), 1f);
+            }
+        } finally {
+            tile.delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testSectionCache() throws Exception {
+        File dir = Files.createTempDir();
+        File sections = Files.createTempDir();
+        File tile = new File(dir, "N47E011.hgt");
+        try {
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tile)));
+            for (int i = 0; i < SRTM.srtm3length * SRTM.srtm3length; i++) {
+                dos.writeShort(i % 1000);
+            }
+            dos.close();
+
+            MapResources res = new MapResources(new TileCache(1 << 23), 1);
+            res.setTileDownload(new TileDirectory(dir, SrtmResolution.SRTM3));
+            res.setSectionCache(new SectionCache(sections));
+            SrtmDef def = SrtmDef.of("auto", "2");
+            def.resolution = "3";
+            Area bounds = new Area(47.2, 11.2, 47.8, 11.8);
+
+            // generate and store the relief
+            SRTM srtm = new SRTM(def, bounds, res);
+            assertFalse(srtm.isCached());
+            assertFalse(srtm.writeCached(new ByteArrayOutputStream()));
+            ByteArrayOutputStream generated = new ByteArrayOutputStream();
+            srtm.writeTo(generated);
+
+            // the next map with the same settings reuses the relief
+            srtm = new SRTM(def, bounds, res);
+            Metrics metrics = new Metrics();
+            srtm.setMetrics(metrics);
+            assertTrue(srtm.isCached());
+            ByteArrayOutputStream cached = new ByteArrayOutputStream();
+            assertTrue(srtm.writeCached(cached));
+            assertArrayEquals(generated.toByteArray(), cached.toByteArray());
+            assertNotNull(metrics.get(Stage.RELIEF_CACHE));
+            assertNull(metrics.get(Stage.RELIEF_DECODE));
+
+            // a broken relief is discarded before anything is written
+            File section = res.getSectionCache().getFile(SectionCache.relief, srtm.sectionKey());
+            byte[] compressed = Files.toByteArray(section);
+            Files.write(Arrays.copyOf(compressed, compressed.length - 100), section);
+            cached.reset();
+            assertFalse(srtm.writeCached(cached));
+            assertEquals(0, cached.size());
+            assertFalse(srtm.isCached());
+
+            // other settings or bounds
+            assertFalse(new SRTM(SrtmDef.of("auto", "auto"), bounds, res).isCached());
+            assertFalse(new SRTM(def, new Area(47.2, 11.2, 47.8, 11.7), res).isCached());
+        } finally {
+            Cache.deleteFolder(dir);
+            Cache.deleteFolder(sections);
+        }
+    }
+
+    /**
+     * SRTM with generated tiles. The overlapping edges differ between
+     * neighbouring tiles, so it is visible which tile a sample was read from.
+     */
+    protected static class FakeTiles extends SRTM {
+
+        protected final Set<CoordinateInt> requested = new HashSet<CoordinateInt>();
+
+        public FakeTiles() {
+            super(SrtmDef.of("auto", "auto"), area,
+                    new MapResources(new TileCache(1 << 20), 1));
+        }
+
+        @Override
+        protected void prefetchSRTMTiles(List<CoordinateInt> coords) {
+            // nothing to download
+        }
+
+        @Override
+        protected ShortGrid getSRTMTile(CoordinateInt coord) throws IOException {
+            requested.add(coord);
+            ShortGrid tile = ShortGrid.allocate(srtmLength, srtmLength);
+            for (int y = 0; y < srtmLength; y++) {
+                for (int x = 0; x < srtmLength; x++) {
+                    tile.set(x, y, (short) (coord.lat * 1000 + coord.lon * 100 + (x * 7 + y * 13) % 97));
+                }
+            }
+            return tile;
+        }
+
+        /** the reference: all tiles combined, north to south */
+        protected ShortGrid retrieveAll(CoordinateInt[][] coords) throws IOException {
+            ShortGrid[][] tiles = new ShortGrid[coords.length][coords[0].length];
+            for (int y = 0; y < coords.length; y++) {
+                for (int x = 0; x < coords[y].length; x++) {
+                    tiles[y][x] = getSRTMTile(coords[coords.length - 1 - y][x]);
+                }
+            }
+            return Arrays2D.combine(tiles, 1, false);
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package de.nx42.maps4cim.map.relief.srtm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import org.junit.Test;
+
+import de.nx42.maps4cim.util.arr2d.ShortGrid;
+
+public class RawTileStoreTest {
+
+    @Test
+    public void testGetRawFileName() {
+        assertEquals("N47E011.SRTMGL3.hgt",
+                RawTileStore.getRawFileName(new File("N47E011.SRTMGL3.hgt.zip")));
+    }
+
+    @Test
+    public void testGetEdgeLength() {
+        assertEquals(1201, RawTileStore.getEdgeLength(1201 * 1201 * 2));
+        assertEquals(3601, RawTileStore.getEdgeLength(3601 * 3601 * 2));
+        assertEquals(-1, RawTileStore.getEdgeLength(1201 * 1200 * 2));
+        assertEquals(-1, RawTileStore.getEdgeLength(0));
+        assertEquals(-1, RawTileStore.getEdgeLength(9 * 2 + 1));
+    }
+
+    @Test
+    public void testMap() throws Exception {
+        File raw = File.createTempFile("N00E000", ".hgt");
+        try {
+            // 3x3 tile, big endian, including a void
+            DataOutputStream dos = new DataOutputStream(new FileOutputStream(raw));
+            short[] values = { 1, 2, 3, 400, -500, 600, 7000, Short.MIN_VALUE, 9 };
+            for (short v : values) {
+                dos.writeShort(v);
+            }
+            dos.close();
+
+            ShortGrid grid = RawTileStore.map(raw);
+            assertFalse(grid.hasArray());
+            assertEquals(3, grid.getWidth());
+            assertEquals(3, grid.getHeight());
+            for (int i = 0; i < values.length; i++) {
+                assertEquals(values[i], grid.get(i));
+            }
+            assertEquals(-500, grid.get(1, 1));
+        } finally {
+            raw.delete();
+        }
+    }
+
+}
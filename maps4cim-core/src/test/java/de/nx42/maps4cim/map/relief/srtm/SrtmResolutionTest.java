@@ -0,0 +1,42 @@
+package de.nx42.maps4cim.map.relief.srtm;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.nx42.maps4cim.util.gis.Area;
+
+public class SrtmResolutionTest {
+
+    @Test
+    public void testSelect() {
+        // 2x2 degrees: 2400 SRTM3 samples for 2049 pixels
+        assertEquals(SrtmResolution.SRTM3, SrtmResolution.select(new Area(46.5, 10.5, 48.5, 12.5), 2049));
+        // 8x8km: only ~100 SRTM3 samples
+        assertEquals(SrtmResolution.SRTM1, SrtmResolution.select(new Area(47.0, 11.0, 47.072, 11.106), 2049));
+        // the longer side is relevant: 0.3 degrees of longitude at 70N are just ~11km
+        assertEquals(SrtmResolution.SRTM1, SrtmResolution.select(new Area(70.0, 20.0, 70.1, 20.3), 2049));
+    }
+
+    @Test
+    public void testSelectThreshold() {
+        // 0.9 degrees: 1080 samples, more than half of the map
+        assertEquals(SrtmResolution.SRTM3, SrtmResolution.select(new Area(0, 0, 0.9, 0.9), 2049));
+        // 0.8 degrees: 960 samples, less than half of the map
+        assertEquals(SrtmResolution.SRTM1, SrtmResolution.select(new Area(0, 0, 0.8, 0.8), 2049));
+    }
+
+    @Test
+    public void testOf() {
+        assertEquals(SrtmResolution.SRTM1, SrtmResolution.of(1));
+        assertEquals(SrtmResolution.SRTM3, SrtmResolution.of(3));
+        assertEquals(3600, SrtmResolution.SRTM1.getMaxIndex());
+        assertEquals("SRTMGL3", SrtmResolution.SRTM3.getDataset());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOfInvalid() {
+        SrtmResolution.of(2);
+    }
+
+}
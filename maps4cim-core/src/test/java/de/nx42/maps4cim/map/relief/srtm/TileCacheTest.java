@@ -0,0 +1,82 @@
+package de.nx42.maps4cim.map.relief.srtm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+import com.google.common.cache.CacheStats;
+
+import de.nx42.maps4cim.map.relief.srtm.TileDownload.CoordinateInt;
+import de.nx42.maps4cim.util.arr2d.ShortGrid;
+
+public class TileCacheTest {
+
+    /** a tile of 100x100 shorts = 20000 bytes */
+    protected static final Callable<ShortGrid> loader = new Callable<ShortGrid>() {
+        @Override
+        public ShortGrid call() {
+            return ShortGrid.allocate(100, 100);
+        }
+    };
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        TileCache tc = new TileCache(100000);
+        ShortGrid first = tc.get(SrtmResolution.SRTM3, new CoordinateInt(48, 11), loader);
+        ShortGrid second = tc.get(SrtmResolution.SRTM3, new CoordinateInt(48, 11), loader);
+        assertSame(first, second);
+
+        CacheStats stats = tc.getStats();
+        assertEquals(1, stats.hitCount());
+        assertEquals(1, stats.missCount());
+        assertEquals(20000, tc.getMemoryUsage());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        // room for 2 tiles
+        TileCache tc = new TileCache(50000);
+        tc.get(SrtmResolution.SRTM3, new CoordinateInt(1, 1), loader);
+        tc.get(SrtmResolution.SRTM3, new CoordinateInt(2, 2), loader);
+        tc.get(SrtmResolution.SRTM3, new CoordinateInt(1, 1), loader);
+        tc.get(SrtmResolution.SRTM3, new CoordinateInt(3, 3), loader);
+
+        assertNotNull(tc.getIfPresent(SrtmResolution.SRTM3, new CoordinateInt(1, 1)));
+        assertNull(tc.getIfPresent(SrtmResolution.SRTM3, new CoordinateInt(2, 2)));
+        assertNotNull(tc.getIfPresent(SrtmResolution.SRTM3, new CoordinateInt(3, 3)));
+        assertEquals(1, tc.getStats().evictionCount());
+        assertEquals(40000, tc.getMemoryUsage());
+    }
+
+    @Test
+    public void testChangeBudget() throws Exception {
+        TileCache tc = new TileCache(100000);
+        tc.get(SrtmResolution.SRTM3, new CoordinateInt(1, 1), loader);
+        tc.get(SrtmResolution.SRTM3, new CoordinateInt(2, 2), loader);
+        tc.get(SrtmResolution.SRTM3, new CoordinateInt(2, 2), loader);
+
+        tc.setMemoryBudget(30000);
+        assertEquals(1, tc.size());
+        assertEquals(30000, tc.getMemoryBudget());
+        // statistics are kept
+        assertEquals(1, tc.getStats().hitCount());
+        assertEquals(2, tc.getStats().missCount());
+    }
+
+    @Test
+    public void testResolutionsSeparate() throws Exception {
+        TileCache tc = new TileCache(100000);
+        ShortGrid srtm3 = tc.get(SrtmResolution.SRTM3, new CoordinateInt(48, 11), loader);
+        ShortGrid srtm1 = tc.get(SrtmResolution.SRTM1, new CoordinateInt(48, 11), loader);
+        assertNotSame(srtm3, srtm1);
+        assertSame(srtm1, tc.getIfPresent(SrtmResolution.SRTM1, new CoordinateInt(48, 11)));
+        assertEquals(2, tc.size());
+    }
+
+}
@@ -0,0 +1,72 @@
+package de.nx42.maps4cim.map.relief.srtm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import de.nx42.maps4cim.map.relief.srtm.TileDownload.CoordinateInt;
+
+public class TileDirectoryTest {
+
+    protected File dir;
+
+    @Before
+    public void setUp() {
+        dir = Files.createTempDir();
+    }
+
+    @After
+    public void tearDown() {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testGetTile() throws IOException {
+        TileDirectory td = new TileDirectory(dir, SrtmResolution.SRTM1);
+        assertFalse(td.exists(47, 11));
+        assertNull(td.getTile(47, 11));
+
+        File raw = touch("N47E011.hgt");
+        assertTrue(td.exists(47, 11));
+        assertEquals(raw, td.getTile(new CoordinateInt(47, 11)));
+
+        // zipped tiles are preferred, the USGS name first
+        File zip = touch("N47E011.hgt.zip");
+        assertEquals(zip, td.getTile(47, 11));
+        File usgs = touch("N47E011.SRTMGL1.hgt.zip");
+        assertEquals(usgs, td.getTile(47, 11));
+
+        // tiles of other resolutions are ignored
+        touch("S01W001.SRTMGL3.hgt.zip");
+        assertNull(td.getTile(-1, -1));
+    }
+
+    @Test
+    public void testGetTiles() throws IOException {
+        TileDirectory td = new TileDirectory(dir, SrtmResolution.SRTM3);
+        File a = touch("N00E000.hgt");
+        File[] tiles = td.getTiles(new CoordinateInt(0, 0), new CoordinateInt(0, 1));
+        assertEquals(a, tiles[0]);
+        assertNull(tiles[1]);
+    }
+
+    protected File touch(String name) throws IOException {
+        File f = new File(dir, name);
+        Files.touch(f);
+        return f;
+    }
+
+}
@@ -1,12 +1,34 @@
 package de.nx42.maps4cim.map.relief.srtm;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
 import java.text.ParseException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import de.nx42.maps4cim.map.Cache;
 import de.nx42.maps4cim.map.relief.srtm.TileDownload.CoordinateInt;
 import de.nx42.maps4cim.util.gis.Area;
 
@@ -84,4 +106,177 @@ public class TileDownloadTest {
         assertEquals(new CoordinateInt(49,-179), coords[1][6]);
     }
 
+    @Test
+    public void testGetTileDeduplicated() throws Exception {
+        final BlockingDownload td = new BlockingDownload();
+        ExecutorService threads = Executors.newFixedThreadPool(3);
+        try {
+            Callable<File> request = new Callable<File>() {
+                @Override
+                public File call() throws IOException {
+                    return td.getTile(new CoordinateInt(47, 11));
+                }
+            };
+            Future<File> f1 = threads.submit(request);
+            Future<File> f2 = threads.submit(request);
+            Future<File> f3 = threads.submit(request);
+            assertTrue(td.started.await(5, TimeUnit.SECONDS));
+            Thread.sleep(50);
+            td.release.countDown();
+            assertEquals(new File("N47E011"), f1.get());
+            assertEquals(new File("N47E011"), f2.get());
+            assertEquals(new File("N47E011"), f3.get());
+            assertEquals(1, td.downloads.get());
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testGetTilesParallelism() throws Exception {
+        BlockingDownload td = new BlockingDownload();
+        td.setParallelism(2);
+        td.release.countDown();
+        td.delay = 20;
+
+        CoordinateInt[] coords = new CoordinateInt[8];
+        File[] expected = new File[coords.length];
+        for (int i = 0; i < coords.length; i++) {
+            coords[i] = new CoordinateInt(40 + i, -5);
+            expected[i] = new File(TileDownload.getNonationNSEW(40 + i, -5));
+        }
+        assertArrayEquals(expected, td.getTiles(coords));
+        assertEquals(8, td.downloads.get());
+        assertEquals(2, td.maxConcurrent.get());
+    }
+
+    @Test
+    public void testGetTilesCached() throws Exception {
+        BlockingDownload td = new BlockingDownload();
+        td.cached = true;
+        td.release.countDown();
+        File[] tiles = td.getTiles(new CoordinateInt(1, 2), new CoordinateInt(1, 3));
+        assertEquals(new File("N01E002"), tiles[0]);
+        assertEquals(new File("N01E003"), tiles[1]);
+        // cached tiles are retrieved in the calling thread
+        assertEquals(Thread.currentThread().getName(), td.lastThread);
+    }
+
+    @Test
+    public void testGetTilesCancelled() throws Exception {
+        final BlockingDownload td = new BlockingDownload();
+        ExecutorService threads = Executors.newSingleThreadExecutor();
+        try {
+            Future<File[]> request = threads.submit(new Callable<File[]>() {
+                @Override
+                public File[] call() throws IOException {
+                    return td.getTiles(new CoordinateInt(10, 10), new CoordinateInt(10, 11));
+                }
+            });
+            assertTrue(td.started.await(5, TimeUnit.SECONDS));
+            request.cancel(true);
+
+            // the running downloads are interrupted
+            assertTrue(td.interrupted.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 100 && !td.pending.isEmpty(); i++) {
+                Thread.sleep(50);
+            }
+            assertTrue(td.pending.isEmpty());
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testGetTilesHttp() throws Exception {
+        // a local stand-in for the tile server
+        final byte[] content = "not really a tile".getBytes("UTF-8");
+        final AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/srtm/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                boolean found = exchange.getRequestURI().getPath().contains("N00W179");
+                exchange.sendResponseHeaders(found ? 200 : 404, found ? content.length : -1);
+                OutputStream out = exchange.getResponseBody();
+                if (found) {
+                    out.write(content);
+                }
+                out.close();
+            }
+        });
+        server.start();
+
+        Cache cache = new Cache();
+        String[] names = { "N00W179.SRTMGL3.hgt.zip", "N00W178.SRTMGL3.hgt.zip" };
+        try {
+            URL base = new URL("http", "localhost", server.getAddress().getPort(), "/srtm/");
+            TileDownload td = new TileDownloadUSGS(base);
+            File[] tiles = td.getTiles(new CoordinateInt(0, -179), new CoordinateInt(0, -178));
+            assertEquals(cache.getUnchecked(names[0]), tiles[0]);
+            assertArrayEquals(content, Files.toByteArray(tiles[0]));
+            assertNull(tiles[1]);
+
+            // the first tile is cached now
+            td.getTile(new CoordinateInt(0, -179));
+            assertEquals(2, requests.get());
+        } finally {
+            server.stop(0);
+            for (String name : names) {
+                cache.getUnchecked(name).delete();
+            }
+        }
+    }
+
+    /**
+     * Pretends to download tiles, which may be blocked until released
+     */
+    protected static class BlockingDownload extends TileDownload {
+
+        protected final CountDownLatch started = new CountDownLatch(1);
+        protected final CountDownLatch release = new CountDownLatch(1);
+        protected final CountDownLatch interrupted = new CountDownLatch(1);
+        protected final AtomicInteger downloads = new AtomicInteger();
+        protected final AtomicInteger concurrent = new AtomicInteger();
+        protected final AtomicInteger maxConcurrent = new AtomicInteger();
+        protected volatile boolean cached = false;
+        protected volatile long delay = 0;
+        protected volatile String lastThread;
+
+        @Override
+        public boolean exists(int lat, int lon) {
+            return true;
+        }
+
+        @Override
+        protected boolean isCached(int lat, int lon) {
+            return cached;
+        }
+
+        @Override
+        public File getTile(int lat, int lon) throws IOException {
+            lastThread = Thread.currentThread().getName();
+            downloads.incrementAndGet();
+            int now = concurrent.incrementAndGet();
+            while (true) {
+                int max = maxConcurrent.get();
+                if (now <= max || maxConcurrent.compareAndSet(max, now)) {
+                    break;
+                }
+            }
+            try {
+                started.countDown();
+                release.await();
+                Thread.sleep(delay);
+                return new File(getNonationNSEW(lat, lon));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw new InterruptedIOException();
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+    }
+
 }
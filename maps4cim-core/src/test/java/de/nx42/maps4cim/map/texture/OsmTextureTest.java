@@ -0,0 +1,90 @@
+package de.nx42.maps4cim.map.texture;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import de.nx42.maps4cim.config.Config;
+import de.nx42.maps4cim.config.bounds.BBoxDef;
+import de.nx42.maps4cim.config.texture.ColorDef;
+import de.nx42.maps4cim.config.texture.OsmFileDef;
+import de.nx42.maps4cim.config.texture.osm.EntityDef;
+import de.nx42.maps4cim.config.texture.osm.WayDef;
+import de.nx42.maps4cim.map.Cache;
+import de.nx42.maps4cim.map.MapResources;
+import de.nx42.maps4cim.map.SectionCache;
+import de.nx42.maps4cim.util.metrics.Metrics;
+import de.nx42.maps4cim.util.metrics.Stage;
+
+public class OsmTextureTest {
+
+	@Test
+	public void testSectionCache() throws Exception {
+		File root = Files.createTempDir();
+		try {
+			File osmXml = new File(root, "test.osm");
+			Files.write("<?xml version='1.0' encoding='UTF-8'?>\n<osm version=\"0.6\">\n"
+					+ "<node id=\"1\" lat=\"48.02\" lon=\"11.02\" version=\"1\"/>\n"
+					+ "<node id=\"2\" lat=\"48.08\" lon=\"11.07\" version=\"1\"/>\n"
+					+ "<way id=\"10\" version=\"1\"><nd ref=\"1\"/><nd ref=\"2\"/><tag k=\"highway\" v=\"primary\"/></way>\n"
+					+ "</osm>\n", osmXml, Charsets.UTF_8);
+			OsmFileDef def = new OsmFileDef();
+			def.osmXmlFilePath = osmXml.getAbsolutePath();
+			def.colors = ColorDef.getDefaults();
+			def.entities = EntityDef.getDefaults();
+			Config config = new Config();
+			config.setBoundsTrans(BBoxDef.of(48.0, 11.0, 48.1, 11.1));
+			config.setTextureTrans(def);
+
+			MapResources resources = new MapResources();
+			SectionCache sections = new SectionCache(new File(root, "sections"));
+			resources.setSectionCache(sections);
+			OsmTexture texture = new OsmTexture(config, resources);
+			String key = texture.sectionKey();
+			assertFalse(sections.has(SectionCache.texture, key));
+
+			assertFalse(texture.isCached());
+			ByteArrayOutputStream rendered = new ByteArrayOutputStream();
+			texture.writeTo(rendered);
+			assertTrue(sections.has(SectionCache.texture, key));
+
+			// the next map with the same settings copies the encoded texture
+			texture = new OsmTexture(config, resources);
+			Metrics metrics = new Metrics();
+			texture.setMetrics(metrics);
+			assertTrue(texture.isCached());
+			ByteArrayOutputStream cached = new ByteArrayOutputStream();
+			assertTrue(texture.writeCached(cached));
+			assertArrayEquals(rendered.toByteArray(), cached.toByteArray());
+			assertNotNull(metrics.get(Stage.TEXTURE_CACHE));
+			assertNull(metrics.get(Stage.OSM_RENDER));
+
+			// a broken texture is discarded before anything is written
+			File section = sections.getFile(SectionCache.texture, key);
+			Files.write(new byte[100], section);
+			cached.reset();
+			assertFalse(texture.writeCached(cached));
+			assertEquals(0, cached.size());
+			assertFalse(texture.isCached());
+
+			// other stroke widths, other texture
+			((WayDef) def.entities.get(def.entities.size() - 1)).strokeWidth = 5.0;
+			assertNotEquals(key, new OsmTexture(config, resources).sectionKey());
+		} finally {
+			Cache.deleteFolder(root);
+		}
+	}
+
+}
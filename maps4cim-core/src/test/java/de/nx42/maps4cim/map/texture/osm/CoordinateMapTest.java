@@ -0,0 +1,74 @@
+package de.nx42.maps4cim.map.texture.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import de.nx42.maps4cim.util.gis.Coordinate;
+
+public class CoordinateMapTest {
+
+	@Test
+	public void testPutGet() {
+		CoordinateMap map = new CoordinateMap();
+		// enforce several resize operations
+		for (long id = 1; id <= 10000; id++) {
+			map.put(id * 7, id * 0.001, -id * 0.002);
+		}
+		assertEquals(10000, map.size());
+		for (long id = 1; id <= 10000; id++) {
+			Coordinate c = map.get(id * 7);
+			assertEquals(id * 0.001, c.getLatitude(), 0);
+			assertEquals(-id * 0.002, c.getLongitude(), 0);
+		}
+		assertNull(map.get(8));
+		assertFalse(map.contains(0));
+		assertFalse(map.contains(Long.MIN_VALUE));
+	}
+
+	@Test
+	public void testReplace() {
+		CoordinateMap map = new CoordinateMap(1);
+		map.put(-42, 1, 2);
+		map.put(-42, 3, 4);
+		assertEquals(1, map.size());
+		assertEquals(new Coordinate(3, 4), map.get(-42));
+	}
+
+	@Test
+	public void testRetain() {
+		CoordinateMap map = new CoordinateMap();
+		for (long id = 0; id < 100; id++) {
+			map.put(id, id, id);
+		}
+		long[] retain = new long[] { 5, 5, 17, 1000, 99, 3 };
+		CoordinateMap result = map.retain(retain, 5);
+		assertEquals(3, result.size());
+		assertTrue(result.contains(5));
+		assertTrue(result.contains(17));
+		assertTrue(result.contains(99));
+		assertFalse(result.contains(3));
+		assertFalse(result.contains(1000));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidId() {
+		new CoordinateMap().put(Long.MIN_VALUE, 0, 0);
+	}
+
+	@Test
+	public void testCapacity() {
+		assertEquals(CoordinateMap.maxCapacity, CoordinateMap.tableSize(600000000));
+		try {
+			CoordinateMap.tableSize(Integer.MAX_VALUE);
+			fail("the table size must not overflow");
+		} catch(IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+package de.nx42.maps4cim.map.texture.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.openstreetmap.osmosis.core.container.v0_6.NodeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.RelationContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.WayContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.CommonEntityData;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.RelationMember;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+
+import de.nx42.maps4cim.config.texture.osm.EntityDef;
+import de.nx42.maps4cim.config.texture.osm.NodeDef;
+import de.nx42.maps4cim.config.texture.osm.WayDef;
+import de.nx42.maps4cim.map.ex.OsmXmlFormatException;
+import de.nx42.maps4cim.util.gis.Coordinate;
+
+public class SimpleOsmDumpTest {
+
+	protected static final List<EntityDef> defs = Arrays.<EntityDef>asList(
+			new WayDef() {{ key="highway"; color="asphalt"; }},
+			new NodeDef() {{ key="amenity"; value="biergarten"; color="yellow"; }});
+
+	@Test
+	public void testFiltered() throws OsmXmlFormatException {
+		SimpleOsmDump dump = new SimpleOsmDump(TagFilter.of(defs));
+		feed(dump);
+
+		assertEquals(1, dump.getNodes().size());
+		assertEquals(5, dump.getNodes().get(0).getId());
+		assertEquals(1, dump.getWays().size());
+		assertEquals(10, dump.getWays().get(0).getId());
+		assertTrue(dump.getRelations().isEmpty());
+		assertEquals(dump.getWays(), dump.getMatches(0));
+		assertEquals(dump.getNodes(), dump.getMatches(1));
+
+		// only the waypoints of the retained way are kept
+		List<Coordinate> coords = dump.getCoordinates(dump.getWays().get(0));
+		assertEquals(Arrays.asList(new Coordinate(1, 1), new Coordinate(2, 2),
+				new Coordinate(1, 1)), coords);
+		assertNull(dump.getCoordinate(3));
+		assertNull(dump.getCoordinate(4));
+		assertNull(dump.getCoordinate(5));
+	}
+
+	@Test
+	public void testUnfiltered() throws OsmXmlFormatException {
+		SimpleOsmDump dump = new SimpleOsmDump();
+		feed(dump);
+
+		assertEquals(5, dump.getNodes().size());
+		assertEquals(2, dump.getWays().size());
+		assertEquals(1, dump.getRelations().size());
+		assertEquals(2, dump.getCoordinates(dump.getWays().get(1)).size());
+		assertEquals(new Coordinate(5, 5), dump.getCoordinate(5));
+	}
+
+	@Test(expected = OsmXmlFormatException.class)
+	public void testMissingNode() throws OsmXmlFormatException {
+		SimpleOsmDump dump = new SimpleOsmDump();
+		Way way = way(10, "highway", "primary", 1, 2);
+		dump.process(new WayContainer(way));
+		dump.process(new NodeContainer(node(1, "name", "a", 1)));
+		dump.complete();
+		dump.getCoordinates(way);
+	}
+
+	/**
+	 * Feeds some entities into the sink, ways before nodes (the order of
+	 * entities is not defined in the output of the overpass api)
+	 */
+	protected void feed(SimpleOsmDump dump) {
+		dump.process(new WayContainer(way(10, "highway", "primary", 1, 2, 1)));
+		dump.process(new WayContainer(way(11, "building", "yes", 3, 4)));
+		dump.process(new NodeContainer(node(1, "created_by", "test", 1)));
+		dump.process(new NodeContainer(node(2, null, null, 2)));
+		dump.process(new NodeContainer(node(3, null, null, 3)));
+		dump.process(new NodeContainer(node(4, null, null, 4)));
+		dump.process(new NodeContainer(node(5, "amenity", "biergarten", 5)));
+		dump.process(new RelationContainer(new Relation(data(20, "type", "multipolygon"),
+				new ArrayList<RelationMember>())));
+		dump.complete();
+	}
+
+	protected static Node node(long id, String key, String value, double pos) {
+		return new Node(data(id, key, value), pos, pos);
+	}
+
+	protected static Way way(long id, String key, String value, long... nodes) {
+		List<WayNode> wayNodes = new ArrayList<WayNode>(nodes.length);
+		for (long node : nodes) {
+			wayNodes.add(new WayNode(node));
+		}
+		return new Way(data(id, key, value), wayNodes);
+	}
+
+	protected static CommonEntityData data(long id, String key, String value) {
+		List<Tag> tags = new ArrayList<Tag>(1);
+		if(key != null) {
+			tags.add(new Tag(key, value));
+		}
+		return new CommonEntityData(id, 1, new Date(), new OsmUser(3, "test"), 4, tags);
+	}
+
+}
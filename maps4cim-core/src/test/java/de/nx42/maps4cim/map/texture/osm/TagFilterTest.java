@@ -0,0 +1,88 @@
+package de.nx42.maps4cim.map.texture.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.openstreetmap.osmosis.core.domain.v0_6.CommonEntityData;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+
+import de.nx42.maps4cim.config.texture.osm.EntityDef;
+
+public class TagFilterTest {
+
+	@Test
+	public void testMatch() {
+		TagFilter filter = TagFilter.of(EntityDef.getDefaults());
+		BitSet matched = new BitSet();
+
+		// compare with the plain matchers for some common tags
+		String[][] tags = new String[][] {
+				{ "highway", "primary" }, { "highway", "footway" }, { "landuse", "forest" },
+				{ "landuse", "farmland" }, { "natural", "water" }, { "waterway", "river" },
+				{ "building", "yes" }, { "railway", "rail" }, { "amenity", "parking" },
+				{ "name", "x" } };
+		for (String[] tag : tags) {
+			for (Entity e : Arrays.<Entity>asList(new Way(data(tag[0], tag[1])),
+					new Node(data(tag[0], tag[1]), 1, 1))) {
+				BitSet expected = new BitSet();
+				List<OverpassTagMatcher> matchers = filter.getMatchers();
+				for (int i = 0; i < matchers.size(); i++) {
+					if(matchers.get(i).matches(e)) {
+						expected.set(i);
+					}
+				}
+				assertEquals(!expected.isEmpty(), filter.match(e, matched));
+				assertEquals(expected, matched);
+				assertEquals(!expected.isEmpty(), filter.matchesAny(e));
+			}
+		}
+	}
+
+	@Test
+	public void testMultipleMatches() {
+		TagFilter filter = TagFilter.of(Arrays.asList(
+				OverpassTagMatcherTest.defAny, OverpassTagMatcherTest.defPattern,
+				OverpassTagMatcherTest.defExact, OverpassTagMatcherTest.defPattern));
+		BitSet matched = new BitSet();
+
+		assertTrue(filter.match(new Way(data("landuse", "forest", "highway", "track")), matched));
+		assertEquals(3, matched.cardinality());
+		assertFalse(matched.get(2));
+
+		assertTrue(filter.match(new Node(data("amenity", "biergarten"), 1, 1), matched));
+		assertEquals(1, matched.cardinality());
+		assertTrue(matched.get(2));
+
+		assertFalse(filter.match(new Way(data("amenity", "biergarten")), matched));
+		assertTrue(matched.isEmpty());
+	}
+
+	@Test
+	public void testKey() {
+		String key = TagFilter.of(EntityDef.getDefaults()).getKey();
+		assertEquals(key, TagFilter.of(EntityDef.getDefaults()).getKey());
+		assertNotEquals(key, TagFilter.of(EntityDef.getDefaults().subList(1, 3)).getKey());
+	}
+
+	protected static CommonEntityData data(String... keyValues) {
+		List<Tag> tags = new ArrayList<Tag>(keyValues.length / 2);
+		for (int i = 0; i < keyValues.length; i += 2) {
+			tags.add(new Tag(keyValues[i], keyValues[i + 1]));
+		}
+		return new CommonEntityData(1, 2, new Date(), new OsmUser(3, "test"), 4, tags);
+	}
+
+}
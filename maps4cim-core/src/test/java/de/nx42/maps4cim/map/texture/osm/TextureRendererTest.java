@@ -0,0 +1,144 @@
+package de.nx42.maps4cim.map.texture.osm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.nx42.maps4cim.map.texture.data.Texture;
+import de.nx42.maps4cim.map.texture.osm.primitives.Point;
+import de.nx42.maps4cim.map.texture.osm.primitives.Polygon;
+import de.nx42.maps4cim.map.texture.osm.primitives.Polyline;
+import de.nx42.maps4cim.map.texture.osm.primitives.RenderPrimitive;
+import de.nx42.maps4cim.util.arr2d.IntGrid;
+import de.nx42.maps4cim.util.gis.Area;
+import de.nx42.maps4cim.util.gis.Coordinate;
+import de.nx42.maps4cim.util.gis.Projection;
+
+public class TextureRendererTest {
+
+	protected static final Area area = new Area(48.0, 11.0, 48.1, 11.1);
+	protected static final int size = 256;
+	protected static final Projection projection = new Projection(area, size, size);
+
+	@Test
+	public void testCoverage() {
+		TextureRenderer tr = new TextureRenderer(size, size, area, 4);
+		int dirt = Texture.DIRT.draw();
+		// covers 3/4 of column 10, half of row 10 and a quarter of row 30
+		tr.add(new TextureRenderer.Job(new Rectangle2D.Double(10.25, 10.5, 10.5, 19.75), dirt, false));
+		IntGrid texture = tr.getTexture();
+
+		assertEquals(dirt, pixel(texture, 15, 20));
+		assertEquals(TextureRenderer.background, pixel(texture, 9, 20));
+		assertEquals(TextureRenderer.background, pixel(texture, 15, 31));
+		assertEquals(Texture.draw(0, 0, 191), pixel(texture, 10, 20));
+		assertEquals(Texture.draw(0, 0, 191), pixel(texture, 20, 20));
+		assertEquals(Texture.draw(0, 0, 128), pixel(texture, 15, 10));
+		assertEquals(Texture.draw(0, 0, 64), pixel(texture, 15, 30));
+		assertEquals(Texture.draw(0, 0, 96), pixel(texture, 10, 10));
+	}
+
+	@Test
+	public void testTilesMatchSingleTexture() {
+		List<RenderContainer> layers = layers();
+		int[] single = render(layers, 1).getTexture().array();
+		assertArrayEquals(single, render(layers, 4).getTexture().array());
+		assertArrayEquals(single, render(layers, 7).getTexture().array());
+
+		// something has been drawn
+		int drawn = 0;
+		for (int px : single) {
+			if(px != TextureRenderer.background) drawn++;
+		}
+		assertTrue(drawn > 0);
+	}
+
+	@Test
+	public void testDrawOrder() {
+		// the second layer covers the first one, across tile borders
+		List<Coordinate> square = Arrays.asList(new Coordinate(48.01, 11.01), new Coordinate(48.01, 11.09),
+				new Coordinate(48.09, 11.09), new Coordinate(48.09, 11.01));
+		TextureRenderer tr = new TextureRenderer(size, size, area, 4);
+		tr.draw(new Polygon(xs(square), ys(square), Texture.DIRT.draw()));
+		tr.draw(new Polygon(xs(square), ys(square), Texture.PAVEMENT.draw()));
+		assertEquals(Texture.PAVEMENT.draw(), pixel(tr.getTexture(), size / 2, size / 2));
+	}
+
+	@Test
+	public void testBaseChannel() {
+		TextureRenderer tr = new TextureRenderer(size, size, area, 4);
+		tr.add(new TextureRenderer.Job(new Rectangle2D.Double(10, 10.5, 100, 100), Texture.PAVEMENT.draw(), false));
+		IntGrid texture = tr.getTexture();
+		assertEquals(Texture.PAVEMENT.draw(), pixel(texture, 50, 50));
+		// half way between grass and pavement
+		assertEquals(0xC8000000, pixel(texture, 50, 10));
+	}
+
+	protected static TextureRenderer render(List<RenderContainer> layers, int tiles) {
+		TextureRenderer tr = new TextureRenderer(size, size, area, tiles);
+		for (RenderContainer rc : layers) {
+			tr.draw(rc);
+		}
+		return tr;
+	}
+
+	/**
+	 * @return the texture at the specified pixel (rows top to bottom)
+	 */
+	protected static int pixel(IntGrid texture, int x, int y) {
+		return texture.get(x, texture.getHeight() - 1 - y);
+	}
+
+	protected static List<RenderContainer> layers() {
+		List<RenderPrimitive> polygons = new ArrayList<RenderPrimitive>();
+		polygons.add(polygon(0x330000, new Coordinate(48.02, 11.02), new Coordinate(48.03, 11.08),
+				new Coordinate(48.08, 11.05)));
+		List<RenderPrimitive> lines = new ArrayList<RenderPrimitive>();
+		lines.add(polyline(0x440000, 6.0, new Coordinate(47.99, 10.99), new Coordinate(48.05, 11.05),
+				new Coordinate(48.11, 11.03)));
+		lines.add(polyline(0x550000, 2.5, new Coordinate(48.05, 11.0), new Coordinate(48.05, 11.1)));
+		List<RenderPrimitive> points = new ArrayList<RenderPrimitive>();
+		points.add(new Point((float) projection.x(11.05), (float) projection.y(48.05), 0x660000, 5));
+		List<RenderPrimitive> overlay = new ArrayList<RenderPrimitive>();
+		// outlined with the stroke of the last polyline
+		overlay.add(polygon(0x770000, new Coordinate(48.04, 11.04), new Coordinate(48.04, 11.06),
+				new Coordinate(48.06, 11.06)));
+
+		return Arrays.asList(new RenderContainer(polygons), new RenderContainer(lines),
+				new RenderContainer(points), new RenderContainer(overlay));
+	}
+
+	protected static Polygon polygon(int color, Coordinate... coords) {
+		List<Coordinate> list = Arrays.asList(coords);
+		return new Polygon(xs(list), ys(list), color);
+	}
+
+	protected static Polyline polyline(int color, double strokeWidth, Coordinate... coords) {
+		List<Coordinate> list = Arrays.asList(coords);
+		return new Polyline(xs(list), ys(list), color, strokeWidth);
+	}
+
+	protected static float[] xs(List<Coordinate> coords) {
+		float[] xs = new float[coords.size()];
+		for (int i = 0; i < xs.length; i++) {
+			xs[i] = (float) projection.x(coords.get(i).getLongitude());
+		}
+		return xs;
+	}
+
+	protected static float[] ys(List<Coordinate> coords) {
+		float[] ys = new float[coords.size()];
+		for (int i = 0; i < ys.length; i++) {
+			ys[i] = (float) projection.y(coords.get(i).getLatitude());
+		}
+		return ys;
+	}
+
+}
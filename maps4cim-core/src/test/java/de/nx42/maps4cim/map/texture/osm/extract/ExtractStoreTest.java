@@ -0,0 +1,124 @@
+package de.nx42.maps4cim.map.texture.osm.extract;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import de.nx42.maps4cim.config.texture.osm.EntityDef;
+import de.nx42.maps4cim.config.texture.osm.NodeDef;
+import de.nx42.maps4cim.config.texture.osm.WayDef;
+import de.nx42.maps4cim.map.Cache;
+import de.nx42.maps4cim.map.ex.OsmXmlFormatException;
+import de.nx42.maps4cim.map.texture.osm.SimpleOsmDump;
+import de.nx42.maps4cim.map.texture.osm.TagFilter;
+import de.nx42.maps4cim.util.gis.Area;
+import de.nx42.maps4cim.util.gis.Coordinate;
+
+public class ExtractStoreTest {
+
+	protected static final Area bounds = new Area(48.0, 11.0, 48.1, 11.1);
+	protected static final List<EntityDef> defs = Arrays.<EntityDef>asList(
+			new WayDef() {{ key="highway"; color="asphalt"; }},
+			new NodeDef() {{ key="amenity"; value="biergarten"; color="yellow"; }});
+
+	protected File root;
+	protected File osm;
+
+	@Before
+	public void setUp() throws IOException {
+		root = Files.createTempDir();
+		osm = new File(root, "extract.osm");
+		Files.write(testXml(), osm, Charsets.UTF_8);
+	}
+
+	@After
+	public void tearDown() {
+		Cache.deleteFolder(root);
+	}
+
+	@Test
+	public void testQuery() throws IOException, OsmXmlFormatException {
+		ExtractStore store = new ExtractStore(osm, root);
+		SimpleOsmDump dump = new SimpleOsmDump(TagFilter.of(defs));
+		store.query(bounds, dump);
+
+		// the biergarten inside the bounds
+		assertEquals(1, dump.getNodes().size());
+		assertEquals(2, dump.getNodes().get(0).getId());
+		assertEquals(48.05, dump.getNodes().get(0).getLatitude(), 0);
+		assertEquals("biergarten", dump.getNodes().get(0).getTags().iterator().next().getValue());
+
+		// way 10 crosses the bounds (and tiles), way 11 is outside, way 12 is no highway
+		assertEquals(1, dump.getWays().size());
+		assertEquals(10, dump.getWays().get(0).getId());
+		assertEquals(Arrays.asList(new Coordinate(48.02, 11.02), new Coordinate(48.05, 11.05),
+				new Coordinate(48.5, 11.5)), dump.getCoordinates(dump.getWays().get(0)));
+		assertNull(dump.getCoordinate(5));
+	}
+
+	@Test
+	public void testUnfiltered() throws IOException {
+		SimpleOsmDump dump = new SimpleOsmDump();
+		new ExtractStore(osm, root).query(bounds, dump);
+
+		// only tagged nodes are stored; ways 10 and 12 (once, although they span several tiles)
+		assertEquals(1, dump.getNodes().size());
+		assertEquals(2, dump.getWays().size());
+	}
+
+	@Test
+	public void testImport() throws IOException {
+		ExtractStore store = new ExtractStore(osm, root);
+		assertFalse(store.isImported());
+		store.ensureImported();
+		assertTrue(store.isImported());
+		assertTrue(new File(store.getDirectory(), ExtractStore.manifestName).isFile());
+
+		// a modified extract is stored separately
+		Files.append("<!-- modified -->", osm, Charsets.UTF_8);
+		assertFalse(new ExtractStore(osm, root).isImported());
+	}
+
+	protected static String testXml() {
+		return "<?xml version='1.0' encoding='UTF-8'?>\n"
+				+ "<osm version=\"0.6\" generator=\"test\">\n"
+				+ node(1, 48.02, 11.02, "")
+				+ node(2, 48.05, 11.05, "<tag k=\"amenity\" v=\"biergarten\"/>")
+				+ node(3, 48.5, 11.5, "")
+				+ node(4, 49.0, 12.0, "")
+				+ node(5, 49.1, 12.1, "")
+				+ way(10, "highway", "primary", 1, 2, 3)
+				+ way(11, "highway", "primary", 4, 5)
+				+ way(12, "building", "yes", 1, 2)
+				+ "</osm>\n";
+	}
+
+	protected static String node(long id, double lat, double lon, String tags) {
+		return String.format("<node id=\"%d\" version=\"1\" timestamp=\"2014-01-01T00:00:00Z\" "
+				+ "lat=\"%s\" lon=\"%s\">%s</node>\n", id, lat, lon, tags);
+	}
+
+	protected static String way(long id, String key, String value, long... refs) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("<way id=\"%d\" version=\"1\" timestamp=\"2014-01-01T00:00:00Z\">", id));
+		for (long ref : refs) {
+			sb.append(String.format("<nd ref=\"%d\"/>", ref));
+		}
+		sb.append(String.format("<tag k=\"%s\" v=\"%s\"/></way>\n", key, value));
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,129 @@
+package de.nx42.maps4cim.map.texture.osm.extract;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import de.nx42.maps4cim.map.Cache;
+
+public class NodeStoreTest {
+
+	protected File root;
+	protected File file;
+
+	@Before
+	public void setUp() {
+		root = Files.createTempDir();
+		file = new File(root, "nodes.tmp");
+	}
+
+	@After
+	public void tearDown() {
+		Cache.deleteFolder(root);
+	}
+
+	@Test
+	public void testInMemory() throws IOException {
+		NodeStore store = new NodeStore(file, 1000);
+		for (long id = 1; id <= 1000; id++) {
+			store.put(id * 3, (int) id, (int) -id);
+		}
+		assertCoordinates(store, 1000);
+		assertFalse(store.isSpilled());
+		assertFalse(file.exists());
+		store.close();
+	}
+
+	@Test
+	public void testSpilled() throws IOException {
+		NodeStore store = new NodeStore(file, 100);
+		for (long id = 1; id <= 10000; id++) {
+			store.put(id * 3, (int) id, (int) -id);
+		}
+		assertCoordinates(store, 10000);
+		assertTrue(store.isSpilled());
+		// sorted input forms a single run
+		assertEquals(1, store.runs.size());
+		assertEquals(10000 * 16, file.length());
+		store.close();
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void testUnsorted() throws IOException {
+		long[] ids = new long[5000];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = (i + 1) * 3;
+		}
+		Random random = new Random(42);
+		for (int i = ids.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			long tmp = ids[i];
+			ids[i] = ids[j];
+			ids[j] = tmp;
+		}
+
+		for (int chunkSize : new int[] { 10000, 300 }) {
+			NodeStore store = new NodeStore(file, chunkSize);
+			for (long id : ids) {
+				store.put(id, (int) (id / 3), (int) -(id / 3));
+			}
+			assertCoordinates(store, ids.length);
+			assertEquals(chunkSize < ids.length, store.isSpilled());
+			store.close();
+		}
+	}
+
+	@Test
+	public void testLateNodes() throws IOException {
+		for (int chunkSize : new int[] { 1000, 10 }) {
+			NodeStore store = new NodeStore(file, chunkSize);
+			for (long id = 1; id <= 100; id++) {
+				store.put(id * 3, (int) id, (int) -id);
+			}
+			assertEquals(NodeStore.unknown, store.get(-3));
+			// nodes that are stored after the first lookup are found as well
+			store.put(-3, -90, 180);
+			store.put(3000, 90, -180);
+			assertEquals(NodeStore.pack(-90, 180), store.get(-3));
+			assertEquals(NodeStore.pack(90, -180), store.get(3000));
+			assertCoordinates(store, 100);
+			store.close();
+		}
+	}
+
+	@Test
+	public void testPack() {
+		long c = NodeStore.pack(-900000000, -1800000000);
+		assertEquals(-900000000, NodeStore.latitude(c));
+		assertEquals(-1800000000, NodeStore.longitude(c));
+		c = NodeStore.pack(900000000, 1800000000);
+		assertEquals(900000000, NodeStore.latitude(c));
+		assertEquals(1800000000, NodeStore.longitude(c));
+	}
+
+	/**
+	 * Checks the nodes 3, 6, ..., count * 3 and some unknown nodes
+	 */
+	protected static void assertCoordinates(NodeStore store, int count) throws IOException {
+		for (long id = 1; id <= count; id++) {
+			long c = store.get(id * 3);
+			assertEquals(id, NodeStore.latitude(c));
+			assertEquals(-id, NodeStore.longitude(c));
+			assertEquals(NodeStore.unknown, store.get(id * 3 + 1));
+		}
+		assertEquals(NodeStore.unknown, store.get(0));
+		assertEquals(NodeStore.unknown, store.get(count * 3 + 3));
+	}
+
+}
@@ -0,0 +1,250 @@
+package de.nx42.maps4cim.map.texture.osm.pbf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+
+import com.google.common.base.Charsets;
+
+import de.nx42.maps4cim.config.texture.osm.EntityDef;
+import de.nx42.maps4cim.config.texture.osm.NodeDef;
+import de.nx42.maps4cim.config.texture.osm.WayDef;
+import de.nx42.maps4cim.map.ex.OsmXmlFormatException;
+import de.nx42.maps4cim.map.texture.osm.SimpleOsmDump;
+import de.nx42.maps4cim.map.texture.osm.TagFilter;
+import de.nx42.maps4cim.util.gis.Area;
+import de.nx42.maps4cim.util.gis.Coordinate;
+
+public class PbfReaderTest {
+
+	protected static final Area bounds = new Area(48.0, 11.0, 48.1, 11.1);
+	protected static final List<EntityDef> defs = Arrays.<EntityDef>asList(
+			new WayDef() {{ key="highway"; color="asphalt"; }},
+			new NodeDef() {{ key="amenity"; value="biergarten"; color="yellow"; }});
+
+	protected File pbf;
+
+	@Before
+	public void setUp() throws IOException {
+		pbf = File.createTempFile("maps4cim-test", ".osm.pbf");
+	}
+
+	@After
+	public void tearDown() {
+		pbf.delete();
+	}
+
+	@Test
+	public void testRead() throws IOException, OsmXmlFormatException {
+		writeTestFile(pbf, "OsmSchema-V0.6", "DenseNodes");
+		SimpleOsmDump dump = new SimpleOsmDump(TagFilter.of(defs));
+		new PbfReader(pbf, bounds).read(dump);
+
+		// the biergarten inside the bounds, with tags and metadata
+		assertEquals(1, dump.getNodes().size());
+		Node node = dump.getNodes().get(0);
+		assertEquals(2, node.getId());
+		assertEquals(48.05, node.getLatitude(), 0);
+		assertEquals(11.05, node.getLongitude(), 0);
+		Tag tag = node.getTags().iterator().next();
+		assertEquals("amenity", tag.getKey());
+		assertEquals("biergarten", tag.getValue());
+		assertEquals(3, node.getVersion());
+		assertEquals("tester", node.getUser().getName());
+
+		// way 10 crosses the bounds, way 11 is outside, way 12 is no highway
+		assertEquals(1, dump.getWays().size());
+		Way way = dump.getWays().get(0);
+		assertEquals(10, way.getId());
+		assertEquals(Arrays.asList(new Coordinate(48.02, 11.02), new Coordinate(48.05, 11.05),
+				new Coordinate(48.5, 11.5)), dump.getCoordinates(way));
+		assertNull(dump.getCoordinate(5));
+	}
+
+	@Test
+	public void testUnfiltered() throws IOException {
+		writeTestFile(pbf, "OsmSchema-V0.6", "DenseNodes");
+		SimpleOsmDump dump = new SimpleOsmDump();
+		new PbfReader(pbf, bounds).read(dump);
+
+		// nodes 1, 2 (inside), 3 (outside, used by way 10), ways 10 and 12
+		assertEquals(3, dump.getNodes().size());
+		assertEquals(2, dump.getWays().size());
+		assertNotNull(dump.getCoordinate(3));
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnsupportedFeature() throws IOException {
+		writeTestFile(pbf, "OsmSchema-V0.6", "HistoricalInformation");
+		new PbfReader(pbf, bounds).read(new SimpleOsmDump());
+	}
+
+	@Test
+	public void testProtoReader() throws IOException {
+		Proto p = new Proto().varint(1, 300).sint(2, -3).string(3, "äbc").sint(4, Long.MIN_VALUE);
+		ProtoReader pr = new ProtoReader(p.toByteArray());
+		assertEquals(1, pr.readField());
+		assertEquals(300, pr.readVarint());
+		assertEquals(2, pr.readField());
+		pr.skip();
+		assertEquals(3, pr.readField());
+		assertEquals("äbc", pr.readString());
+		assertEquals(4, pr.readField());
+		assertEquals(Long.MIN_VALUE, pr.readSInt());
+		assertTrue(!pr.hasNext());
+	}
+
+	/**
+	 * Writes a small PBF file:
+	 * - a dense node block (raw): 1 and 2 inside, 3 and 4 outside the bounds
+	 * - a simple node (zlib): 5 outside
+	 * - a way block (zlib): way 10 (1, 2, 3, highway), way 11 (4, 5, highway),
+	 *   way 12 (1, 2, building)
+	 */
+	protected static void writeTestFile(File file, String... features) throws IOException {
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			Proto header = new Proto();
+			for (String feature : features) {
+				header.string(4, feature);
+			}
+			blob(out, "OSMHeader", header.toByteArray(), false);
+
+			String[] strings = { "", "amenity", "biergarten", "highway", "primary",
+					"building", "yes", "tester" };
+			long[][] nodes = { { 1, 480200000, 110200000 }, { 2, 480500000, 110500000 },
+					{ 3, 485000000, 115000000 }, { 4, 490000000, 120000000 } };
+			Proto ids = new Proto(), lats = new Proto(), lons = new Proto();
+			long[] prev = new long[3];
+			for (long[] n : nodes) {
+				ids.sint(n[0] - prev[0]);
+				lats.sint(n[1] - prev[1]);
+				lons.sint(n[2] - prev[2]);
+				prev = n;
+			}
+			Proto keysVals = new Proto().varint(0).varint(1).varint(2).varint(0).varint(0).varint(0);
+			Proto info = new Proto().bytes(1, new Proto().varint(1).varint(3).varint(1).varint(1))
+					.bytes(4, new Proto().sint(5).sint(0).sint(0).sint(0))
+					.bytes(5, new Proto().sint(7).sint(0).sint(0).sint(0));
+			Proto dense = new Proto().bytes(1, ids).bytes(5, info).bytes(8, lats)
+					.bytes(9, lons).bytes(10, keysVals);
+			blob(out, "OSMData", block(strings, new Proto().bytes(2, dense)), false);
+
+			Proto node = new Proto().sint(1, 5).sint(8, 500000000).sint(9, 130000000);
+			blob(out, "OSMData", block(strings, new Proto().bytes(1, node)), true);
+
+			Proto ways = new Proto()
+					.bytes(3, way(10, 3, 4, 1, 2, 3))
+					.bytes(3, way(11, 3, 4, 4, 5))
+					.bytes(3, way(12, 5, 6, 1, 2));
+			blob(out, "OSMData", block(strings, ways), true);
+		} finally {
+			out.close();
+		}
+	}
+
+	protected static Proto way(long id, int key, int value, long... refs) {
+		Proto r = new Proto();
+		long prev = 0;
+		for (long ref : refs) {
+			r.sint(ref - prev);
+			prev = ref;
+		}
+		return new Proto().varint(1, id).bytes(2, new Proto().varint(key))
+				.bytes(3, new Proto().varint(value)).bytes(8, r);
+	}
+
+	protected static byte[] block(String[] strings, Proto group) {
+		Proto table = new Proto();
+		for (String s : strings) {
+			table.string(1, s);
+		}
+		// granularity after the groups, like most writers do it
+		return new Proto().bytes(1, table).bytes(2, group).varint(17, 100).toByteArray();
+	}
+
+	protected static void blob(DataOutputStream out, String type, byte[] data, boolean zlib)
+			throws IOException {
+		Proto blob = new Proto();
+		if(zlib) {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			DeflaterOutputStream dos = new DeflaterOutputStream(bos);
+			dos.write(data);
+			dos.close();
+			blob.varint(2, data.length).bytes(3, bos.toByteArray());
+		} else {
+			blob.bytes(1, data);
+		}
+		byte[] blobBytes = blob.toByteArray();
+		byte[] header = new Proto().string(1, type).varint(3, blobBytes.length).toByteArray();
+		out.writeInt(header.length);
+		out.write(header);
+		out.write(blobBytes);
+	}
+
+	/**
+	 * Encodes protocol buffer messages
+	 */
+	protected static class Proto {
+
+		protected final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+		public Proto varint(long value) {
+			while((value & ~0x7FL) != 0) {
+				buf.write((int) (value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buf.write((int) value);
+			return this;
+		}
+
+		public Proto sint(long value) {
+			return varint((value << 1) ^ (value >> 63));
+		}
+
+		public Proto varint(int field, long value) {
+			return varint(field << 3).varint(value);
+		}
+
+		public Proto sint(int field, long value) {
+			return varint(field << 3).sint(value);
+		}
+
+		public Proto bytes(int field, Proto message) {
+			return bytes(field, message.toByteArray());
+		}
+
+		public Proto bytes(int field, byte[] value) {
+			varint(field << 3 | 2).varint(value.length);
+			buf.write(value, 0, value.length);
+			return this;
+		}
+
+		public Proto string(int field, String value) {
+			return bytes(field, value.getBytes(Charsets.UTF_8));
+		}
+
+		public byte[] toByteArray() {
+			return buf.toByteArray();
+		}
+
+	}
+
+}
@@ -0,0 +1,67 @@
+package de.nx42.maps4cim.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+import de.nx42.maps4cim.util.Parallel.Band;
+
+public class ParallelTest {
+
+    @Test
+    public void testForEachBand() {
+        for (int rows : new int[] { 0, 1, 31, 33, 100, 2049 }) {
+            final AtomicIntegerArray visits = new AtomicIntegerArray(rows);
+            Parallel.forEachBand(rows, 8, new Band() {
+                @Override
+                public void process(int from, int to) {
+                    for (int i = from; i < to; i++) {
+                        visits.incrementAndGet(i);
+                    }
+                }
+            });
+            for (int i = 0; i < rows; i++) {
+                assertEquals(1, visits.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testNested() {
+        final AtomicIntegerArray visits = new AtomicIntegerArray(64 * 64);
+        Parallel.forEachBand(64, 1, new Band() {
+            @Override
+            public void process(int from, int to) {
+                for (int y = from; y < to; y++) {
+                    final int row = y;
+                    Parallel.forEachBand(64, 1, new Band() {
+                        @Override
+                        public void process(int from, int to) {
+                            for (int x = from; x < to; x++) {
+                                visits.incrementAndGet(row * 64 + x);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+        for (int i = 0; i < visits.length(); i++) {
+            assertEquals(1, visits.get(i));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testException() {
+        Parallel.forEachBand(1000, 1, new Band() {
+            @Override
+            public void process(int from, int to) {
+                if(from <= 500 && to > 500) {
+                    throw new IllegalStateException();
+                }
+            }
+        });
+    }
+
+}
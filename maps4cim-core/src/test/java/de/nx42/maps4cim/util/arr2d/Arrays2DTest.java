@@ -103,6 +103,30 @@ public class Arrays2DTest {
 	}
 
 
+	@Test
+	public void testCombineShortGrid() {
+		ShortGrid[][] grids = new ShortGrid[][] {
+			{ ShortGrid.of(arr00), ShortGrid.of(arr01) },
+			{ ShortGrid.of(arr10), ShortGrid.of(arr11) }
+		};
+		ShortGrid actual = Arrays2D.combine(grids, 1, true);
+		assertArray2dEquals(exp, actual.toArray2D());
+	}
+
+	@Test
+	public void testCombineShortGridFail() {
+		ShortGrid[][] grids = new ShortGrid[][] {
+			{ ShortGrid.of(arr00), ShortGrid.of(arr01) },
+			{ ShortGrid.of(arr10), ShortGrid.of(arr11fail) }
+		};
+		try {
+			Arrays2D.combine(grids, 1, true);
+			fail("Should have thrown InputMismatchException!");
+		} catch(InputMismatchException e) {
+			// exception caught, success!
+		}
+	}
+
 	public static void assertArray2dEquals(short[][] expected, short[][] actual) {
 		if (expected.length != actual.length || expected[0].length != actual[0].length) {
 			fail("Arrays are of different size!");
@@ -0,0 +1,93 @@
+package de.nx42.maps4cim.util.arr2d;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BicubicResamplerTest {
+
+    /** the results are expected to be identical, but a small tolerance is acceptable */
+    private static final float delta = 0.001f;
+
+    @Test
+    public void testDownsize() {
+        FloatGrid input = random(300, 280);
+        assertSameAsImageJ(input, 200, 180, 0, 0, 300, 280);
+    }
+
+    @Test
+    public void testUpsize() {
+        FloatGrid input = random(60, 45);
+        assertSameAsImageJ(input, 257, 190, 0, 0, 60, 45);
+    }
+
+    @Test
+    public void testCrop() {
+        FloatGrid input = random(120, 100);
+        assertSameAsImageJ(input, 150, 90, 10.4f, 7.9f, 95.2f, 70.1f);
+        assertSameAsImageJ(input, 64, 64, 50, 20, 120, 100);
+    }
+
+    @Test
+    public void testSmall() {
+        FloatGrid input = random(5, 4);
+        assertSameAsImageJ(input, 17, 13, 0, 0, 5, 4);
+        assertSameAsImageJ(input, 3, 2, 0, 0, 5, 4);
+        assertSameAsImageJ(input, 9, 9, 1, 1, 3, 3);
+    }
+
+    @Test
+    public void testNaN() {
+        FloatGrid input = random(30, 30);
+        input.set(0, 0, Float.NaN);
+        input.set(15, 0, Float.NaN);
+        assertSameAsImageJ(input, 50, 50, 0, 0, 30, 30);
+    }
+
+    @Test
+    public void testReuseOutput() {
+        FloatGrid input = random(80, 80);
+        FloatGrid output = FloatGrid.allocate(40, 40);
+        BicubicResampler.resize(input, 10, 10, 60, 60, output);
+        FloatGrid expected = BicubicResampler.cropAndResize(input, 40, 40, 10, 10, 70, 70);
+        assertGridEquals(expected, output);
+        BicubicResampler.resize(input, 0, 0, 80, 80, output);
+        assertGridEquals(BicubicResampler.resize(input, 40, 40), output);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutOfBounds() {
+        BicubicResampler.resize(random(10, 10), 5, 5, 6, 5, FloatGrid.allocate(3, 3));
+    }
+
+    protected static void assertSameAsImageJ(FloatGrid input, int lenX, int lenY,
+            float minX, float minY, float maxX, float maxY) {
+        FloatGrid expected = ImageJInterpolation.cropAndResize(input.copy(), lenX, lenY, minX, minY, maxX, maxY);
+        FloatGrid actual = BicubicResampler.cropAndResize(input, lenX, lenY, minX, minY, maxX, maxY);
+        assertGridEquals(expected, actual);
+    }
+
+    protected static void assertGridEquals(FloatGrid expected, FloatGrid actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(String.format("(%s,%s)", x, y), expected.get(x, y), actual.get(x, y), delta);
+            }
+        }
+    }
+
+    protected static FloatGrid random(int width, int height) {
+        Random rnd = new Random(width * 31 + height);
+        FloatGrid grid = FloatGrid.allocate(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                grid.set(x, y, x * 3f + y * 2f + rnd.nextFloat() * 100);
+            }
+        }
+        return grid;
+    }
+
+}
@@ -0,0 +1,81 @@
+package de.nx42.maps4cim.util.arr2d;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class FloatGridTest {
+
+	protected static final float[][] arr = new float[][] {
+		{ 1, 2, 3, 4 },
+		{ 5, 6, 7, 8 },
+		{ 9, 10, 11, 12 }
+	};
+
+	@Test
+	public void testOf() {
+		FloatGrid grid = FloatGrid.of(arr);
+		assertEquals(4, grid.getWidth());
+		assertEquals(3, grid.getHeight());
+		assertEquals(7f, grid.get(2, 1), 0f);
+		assertEquals(7f, grid.get(grid.index(2, 1)), 0f);
+		assertArrayEquals(new float[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 },
+				grid.array(), 0f);
+	}
+
+	@Test
+	public void testToArray2D() {
+		float[][] actual = FloatGrid.of(arr).toArray2D();
+		for (int y = 0; y < arr.length; y++) {
+			assertArrayEquals(arr[y], actual[y], 0f);
+		}
+	}
+
+	@Test
+	public void testDirect() {
+		FloatGrid grid = FloatGrid.allocateDirect(4, 3);
+		assertFalse(grid.hasArray());
+		for (int y = 0; y < arr.length; y++) {
+			grid.setRow(y, arr[y]);
+		}
+		assertEquals(11f, grid.get(2, 2), 0f);
+		grid.set(1, 0, -1f);
+		assertEquals(-1f, grid.get(1, 0), 0f);
+
+		float[] row = new float[2];
+		grid.getRow(1, 2, row, 0, 2);
+		assertArrayEquals(new float[] { 7, 8 }, row, 0f);
+
+		FloatGrid copy = grid.copy();
+		assertTrue(copy.hasArray());
+		assertTrue(copy.sameSize(grid));
+		assertEquals(-1f, copy.get(1, 0), 0f);
+	}
+
+	@Test
+	public void testFill() {
+		FloatGrid heap = FloatGrid.allocate(5, 5);
+		FloatGrid direct = FloatGrid.allocateDirect(5, 5);
+		heap.fill(3.5f);
+		direct.fill(3.5f);
+		for (int i = 0; i < heap.size(); i++) {
+			assertEquals(3.5f, heap.get(i), 0f);
+			assertEquals(3.5f, direct.get(i), 0f);
+		}
+	}
+
+	@Test
+	public void testWrapInvalidLength() {
+		try {
+			FloatGrid.wrap(new float[10], 4, 3);
+			fail("Should have thrown IllegalArgumentException!");
+		} catch(IllegalArgumentException e) {
+			// exception caught, success!
+		}
+	}
+
+}
@@ -1,8 +1,12 @@
 package de.nx42.maps4cim.util.arr2d;
 
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.util.Random;
+
 import org.junit.Test;
 
 public class GapInterpolatorTest {
@@ -71,6 +75,61 @@ public class GapInterpolatorTest {
 		float res = gip.star(testArr, 5, 5);
 	}
 
+    @Test
+    public void testFill() {
+        GapInterpolator gip = new GapInterpolator(g);
+        for (short[][] arr : new short[][][] { testArr, testArr2, testArr3 }) {
+            ShortGrid grid = ShortGrid.of(arr);
+            assertFillEqualsStar(gip, grid, 0, 0, grid.getWidth(), grid.getHeight());
+            assertFillEqualsStar(gip, grid, 2, 1, 3, 4);
+        }
+    }
+
+    @Test
+    public void testFillLargeGrid() {
+        // isolated gaps, gap clusters and a void larger than the search limit
+        GapInterpolator gip = new GapInterpolator(g);
+        Random rnd = new Random(42);
+        ShortGrid grid = ShortGrid.allocate(400, 300);
+        for (int y = 0; y < grid.getHeight(); y++) {
+            for (int x = 0; x < grid.getWidth(); x++) {
+                grid.set(x, y, rnd.nextInt(20) == 0 ? g : (short) (x * 3 + y * 2 + rnd.nextInt(10)));
+            }
+        }
+        for (int y = 20; y < 50; y++) {
+            for (int x = 30; x < 60; x++) {
+                grid.set(x, y, g);
+            }
+        }
+        for (int y = 100; y < 300; y++) {
+            for (int x = 150; x < 320; x++) {
+                grid.set(x, y, g);
+            }
+        }
+        assertFillEqualsStar(gip, grid, 0, 0, grid.getWidth(), grid.getHeight());
+        assertFillEqualsStar(gip, grid, 25, 15, 310, 200);
+    }
+
+    @Test
+    public void testFillWithoutGaps() {
+        GapInterpolator gip = new GapInterpolator(g);
+        ShortGrid grid = ShortGrid.of(new short[][] { { 1, 2, 3 }, { 4, 5, 6 } });
+        FloatGrid filled = gip.fill(grid, 1, 0, 2, 2);
+        assertArrayEquals(new float[] { 2, 3, 5, 6 }, filled.array(), 0f);
+    }
+
+    protected static void assertFillEqualsStar(GapInterpolator gip, ShortGrid grid,
+            int x, int y, int width, int height) {
+        FloatGrid filled = gip.fill(grid, x, y, width, height);
+        for (int iy = 0; iy < height; iy++) {
+            for (int ix = 0; ix < width; ix++) {
+                short val = grid.get(x + ix, y + iy);
+                float expected = val == g ? gip.star(grid, x + ix, y + iy) : val;
+                assertEquals(expected, filled.get(ix, iy), 0f);
+            }
+        }
+    }
+
     protected static float[][] copy(short[][] input) {
         float[][] output = new float[input.length][input[0].length];
         for (int i = 0; i < input.length; i++) {
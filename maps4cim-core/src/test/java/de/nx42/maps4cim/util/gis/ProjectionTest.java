@@ -0,0 +1,33 @@
+package de.nx42.maps4cim.util.gis;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ProjectionTest {
+
+    protected static final Area area = new Area(48.0, 11.0, 48.1, 11.2);
+    protected static final Projection projection = new Projection(area, 2048, 1024);
+
+    @Test
+    public void testCorners() {
+        // north-west corner is the origin
+        assertEquals(0.0, projection.x(11.0), 1e-9);
+        assertEquals(0.0, projection.y(48.1), 1e-9);
+        // south-east corner
+        assertEquals(2048.0, projection.x(11.2), 1e-9);
+        assertEquals(1024.0, projection.y(48.0), 1e-9);
+        // center
+        assertEquals(1024.0, projection.x(11.1), 1e-9);
+        assertEquals(512.0, projection.y(48.05), 1e-9);
+    }
+
+    @Test
+    public void testSameAsRelativeCoordinate() {
+        Coordinate c = new Coordinate(48.0123, 11.1789);
+        Coordinate.RelativeCoord rc = c.relativeWithinArea(area);
+        assertEquals(rc.x * 2048, projection.x(c.getLongitude()), 0);
+        assertEquals(rc.y * 1024, projection.y(c.getLatitude()), 0);
+    }
+
+}
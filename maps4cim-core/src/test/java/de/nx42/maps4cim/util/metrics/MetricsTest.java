@@ -0,0 +1,83 @@
+package de.nx42.maps4cim.util.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.nx42.maps4cim.util.arr2d.FloatGrid;
+import de.nx42.maps4cim.util.arr2d.ShortGrid;
+
+public class MetricsTest {
+
+    @Test
+    public void testTimer() {
+        Metrics metrics = new Metrics();
+        Metrics.Timer timer = metrics.start(Stage.RELIEF_INTERPOLATE);
+        ShortGrid input = ShortGrid.allocate(100, 50);
+        FloatGrid output = FloatGrid.allocate(100, 50);
+        StageMetrics sm = timer.grid(input).grid(output).grid(1000).stop();
+
+        assertEquals(Stage.RELIEF_INTERPOLATE, sm.getStage());
+        assertEquals(100 * 50 * 2 + 100 * 50 * 4 + 1000, sm.getPeakGridBytes());
+        assertTrue(sm.getWallNanos() >= 0);
+        assertTrue(sm.getAllocatedBytes() == -1 || sm.getAllocatedBytes() >= 30000);
+
+        assertSame(sm, metrics.get(Stage.RELIEF_INTERPOLATE));
+        assertNull(metrics.get(Stage.RELIEF_SCALE));
+        assertEquals(sm.getPeakGridBytes(), metrics.getPeakGridBytes());
+        assertEquals(-1, metrics.getTotalNanos());
+    }
+
+    @Test
+    public void testListener() {
+        final List<StageMetrics> stages = new ArrayList<StageMetrics>();
+        final List<Metrics> completed = new ArrayList<Metrics>();
+        Metrics metrics = new Metrics();
+        metrics.addListener(new MetricsListener() {
+            @Override
+            public void stageCompleted(StageMetrics stage) {
+                stages.add(stage);
+            }
+            @Override
+            public void completed(Metrics metrics) {
+                completed.add(metrics);
+            }
+        });
+
+        metrics.start(Stage.HEADER).stop();
+        metrics.start(Stage.GAME_OBJECTS).stop();
+        metrics.complete();
+
+        assertEquals(2, stages.size());
+        assertEquals(Stage.HEADER, stages.get(0).getStage());
+        assertEquals(Stage.GAME_OBJECTS, stages.get(1).getStage());
+        assertEquals(1, completed.size());
+        assertTrue(metrics.getTotalNanos() >= 0);
+    }
+
+    @Test
+    public void testToJson() {
+        Metrics metrics = new Metrics();
+        metrics.record(new StageMetrics(Stage.OSM_PARSE, 1500, 2048, 0));
+        metrics.record(new StageMetrics(Stage.OSM_RENDER, 2500, -1, 4096));
+        String json = metrics.toJson();
+
+        assertTrue(json.startsWith("{\"totalNanos\":-1,\"peakGridBytes\":4096,\"stages\":["));
+        assertTrue(json.contains("{\"stage\":\"osm.parse\",\"wallNanos\":1500,"
+                + "\"allocatedBytes\":2048,\"peakGridBytes\":0}"));
+        assertTrue(json.endsWith("\"peakGridBytes\":4096}]}"));
+    }
+
+    @Test
+    public void testQuote() {
+        assertEquals("\"C:\\\\maps\\\\a \\\"b\\\".map\"", Metrics.quote("C:\\maps\\a \"b\".map"));
+        assertEquals("\"a\\u000ab\"", Metrics.quote("a\nb"));
+    }
+
+}
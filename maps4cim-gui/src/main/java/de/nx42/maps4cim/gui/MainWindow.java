@@ -1289,7 +1289,7 @@ public class MainWindow extends JFrame {
 
 		FileExtensionFilter xmlFilter = new FileExtensionFilter("XML", "xml");
 		FileExtensionFilter mapFilter = new FileExtensionFilter("CiM 2 Map", "map");
-		FileExtensionFilter osmFilter = new FileExtensionFilter("OSM XML", true, "osm", "osm.gz", "osm.bz2", "xml", "xml.gz", "xml.bz2");
+		FileExtensionFilter osmFilter = new FileExtensionFilter("OSM XML / PBF", true, "osm", "osm.gz", "osm.bz2", "xml", "xml.gz", "xml.bz2", "osm.pbf", "pbf");
 
 		saveConfig = setupFileSaver("Save configuration", xmlFilter, new File("config.xml"), "xml");
 		loadConfig = setupFileLoader("Load configuration", xmlFilter, new File("config.xml"));